@@ -0,0 +1,73 @@
+package com.celadonsea.palm.publisher;
+
+import com.celadonsea.palm.core.ProducingProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the append latency of the {@link MessageSpool}. The disk quota is small
+ * enough to reach the steady state where new segments evict the oldest ones.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageSpoolBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    private int payloadSize;
+
+    private File directory;
+
+    private MessageSpool messageSpool;
+
+    private byte[] payload;
+
+    private ProducingProperties producingProperties;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("palm-spool-benchmark").toFile();
+        messageSpool = new MessageSpool(directory, 256L * 1024 * 1024);
+        payload = new byte[payloadSize];
+        producingProperties = new ProducingProperties("benchmark/spool/device/42", 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        messageSpool.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void append() {
+        messageSpool.append(payload, producingProperties);
+    }
+}
@@ -0,0 +1,102 @@
+package com.celadonsea.palm.scanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the reflective call of a listener method with the {@link ListenerInvoker} compiled by
+ * {@link ListenerCalls} for listener methods with 0 to 6 parameters (a mix of object and primitive
+ * parameters).
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListenerInvokerBenchmark {
+
+    private static final Object[] ARGUMENTS = {"body", 42, "device", 7L, "context", (short) 3};
+
+    @Param({"0", "1", "2", "3", "4", "5", "6"})
+    private int parameterCount;
+
+    private Listeners listeners;
+
+    private Method method;
+
+    private ListenerInvoker listenerInvoker;
+
+    private Object[] parameters;
+
+    @Setup
+    public void setup() {
+        listeners = new Listeners();
+        method = Arrays.stream(Listeners.class.getDeclaredMethods())
+            .filter(declaredMethod -> declaredMethod.getName().equals("listen" + parameterCount))
+            .findFirst()
+            .orElseThrow(IllegalStateException::new);
+        listenerInvoker = ListenerInvoker.of(listeners, method);
+        parameters = Arrays.copyOf(ARGUMENTS, parameterCount);
+    }
+
+    @Benchmark
+    public Object reflective() throws InvocationTargetException, IllegalAccessException {
+        return method.invoke(listeners, parameters);
+    }
+
+    @Benchmark
+    public Object methodHandle() throws InvocationTargetException {
+        return listenerInvoker.invoke(parameters);
+    }
+
+    public static class Listeners {
+
+        private long counter;
+
+        public void listen0() {
+            counter++;
+        }
+
+        public void listen1(String body) {
+            counter += body.length();
+        }
+
+        public void listen2(String body, int id) {
+            counter += body.length() + id;
+        }
+
+        public void listen3(String body, int id, String device) {
+            counter += body.length() + id + device.length();
+        }
+
+        public void listen4(String body, int id, String device, long time) {
+            counter += body.length() + id + device.length() + time;
+        }
+
+        public void listen5(String body, int id, String device, long time, Object context) {
+            counter += body.length() + id + device.length() + time + context.hashCode();
+        }
+
+        public void listen6(String body, int id, String device, long time, Object context, short level) {
+            counter += body.length() + id + device.length() + time + context.hashCode() + level;
+        }
+    }
+}
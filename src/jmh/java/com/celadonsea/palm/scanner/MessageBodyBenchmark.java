@@ -0,0 +1,92 @@
+package com.celadonsea.palm.scanner;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the deserialization of the message bodies: resolving the type and the reader
+ * for every message (the former behaviour), a reader prepared at the registration, and
+ * a prepared reader of an object mapper with the Afterburner module.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageBodyBenchmark {
+
+    private static final String PAYLOAD = "{\"device\":\"sensor-42\",\"timestamp\":1546300800000,\"temperature\":21.5,"
+        + "\"humidity\":48,\"active\":true,\"tags\":[\"kitchen\",\"first-floor\",\"north\"]}";
+
+    private byte[] content;
+
+    private Type type;
+
+    private ObjectMapper objectMapper;
+
+    private ObjectReader objectReader;
+
+    private ObjectReader afterburnerReader;
+
+    @Setup
+    public void setup() {
+        content = PAYLOAD.getBytes();
+        type = SensorReading.class;
+        objectMapper = new ObjectMapper();
+        objectReader = objectMapper.readerFor(objectMapper.getTypeFactory().constructType(type));
+        ObjectMapper afterburnerMapper = new ObjectMapper().registerModule(new AfterburnerModule());
+        afterburnerReader = afterburnerMapper.readerFor(afterburnerMapper.getTypeFactory().constructType(type));
+    }
+
+    @Benchmark
+    public Object resolvedPerMessage() throws IOException {
+        JavaType javaType = objectMapper.getTypeFactory().constructType(type);
+        return objectMapper.readValue(content, javaType);
+    }
+
+    @Benchmark
+    public Object preparedReader() throws IOException {
+        return objectReader.readValue(content);
+    }
+
+    @Benchmark
+    public Object preparedAfterburnerReader() throws IOException {
+        return afterburnerReader.readValue(content);
+    }
+
+    public static class SensorReading {
+
+        public String device;
+
+        public long timestamp;
+
+        public double temperature;
+
+        public int humidity;
+
+        public boolean active;
+
+        public List<String> tags;
+    }
+}
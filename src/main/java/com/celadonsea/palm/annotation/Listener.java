@@ -36,4 +36,35 @@ public @interface Listener {
      * @return the topic definition extending the topic definition of the {@link MessagingController @MessagingController}
      */
     String value() default "";
+
+    /**
+     * The value may indicate the name of the {@link com.celadonsea.palm.codec.MessageCodec codec}
+     * of the message body. It overrides the codec of the {@link MessagingController @MessagingController}.
+     * If both are empty, the codec is detected by the content-type marker of the payload.
+     * @return the name of the message codec
+     */
+    String codec() default "";
+
+    /**
+     * The value may indicate a predicate over the message which must be true to call the method.
+     * It compares JSON pointers of the payload (eg. /alarm/type) and topic variables
+     * (eg. {device}) with string, number, boolean or null literals by == and !=, and the
+     * comparisons can be combined with &amp;&amp;, || and ! and grouped by parentheses:
+     * <pre>
+     * /type == 'ALARM' &amp;&amp; ({device} != 'test' || /severity == 1)
+     * </pre>
+     * The payload is scanned by a streaming parser until the result is known, so the rejected
+     * messages aren't deserialized. A missing value isn't equal to any literal.
+     * @return the filter predicate, empty for no filter
+     */
+    String filter() default "";
+
+    /**
+     * The value may limit the number of the calls in flight. A call of a method returning a
+     * {@link java.util.concurrent.CompletionStage CompletionStage} is in flight until the stage
+     * completes, so the dispatch thread is released before. If the limit is reached, the
+     * dispatch of the next message waits for a completion. Zero means no limit.
+     * @return the maximum number of the calls in flight
+     */
+    int maxInFlight() default 0;
 }
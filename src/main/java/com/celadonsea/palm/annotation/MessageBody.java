@@ -11,7 +11,13 @@ import java.lang.annotation.Target;
 /**
  * Indicates that the annotated parameter of a {@link Listener @Listener} method
  * is a payload of a message. The payload coming as byte array will be parsed
- * to the type of this parameter.
+ * to the type of this parameter. The parsing of a {@link com.celadonsea.palm.message.Lazy Lazy}
+ * or {@link java.util.function.Supplier Supplier} parameter is deferred to its first access.
+ * An array payload can be iterated element by element with a {@link java.util.stream.Stream Stream}
+ * or {@link java.util.Iterator Iterator} parameter.
+ * A method with an {@link org.reactivestreams.Publisher Publisher} parameter is called only once
+ * at the registration, and the payloads are published by the demand of its subscriber. The other
+ * parameters of such method are null.
  * The annotation will be processed during the auto-detection and auto-subscription
  * process.
  *
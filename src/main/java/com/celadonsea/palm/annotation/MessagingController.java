@@ -48,4 +48,32 @@ public @interface MessagingController {
      * @return
      */
     String client();
+
+    /**
+     * The value may indicate the name of the {@link com.celadonsea.palm.codec.MessageCodec codec}
+     * of the message bodies for all the {@link Listener @Listener} methods. If it's empty,
+     * the codec is detected by the content-type marker of the payload.
+     * @return the name of the message codec
+     */
+    String codec() default "";
+
+    /**
+     * The value may indicate the number of the connections consuming the messages of the
+     * {@link Listener @Listener} methods. If it's greater than one, the framework opens that many
+     * connections with the configuration of the client, and the listeners subscribe by every
+     * connection as a shared subscription ($share/client/topic, the group is the name of the
+     * client bean), so the broker balances the messages between the connections. The controllers
+     * of the same client must have the same parallelism.
+     * @return the number of the consuming connections
+     * @see com.celadonsea.palm.client.ShardedMessageClient
+     */
+    int parallelism() default 1;
+
+    /**
+     * The value may indicate the name of the {@link com.celadonsea.palm.config.MessageClientConfig
+     * message client configuration} bean of the connections opened for the {@link #parallelism()}.
+     * If it's empty, the only configuration bean of the spring context is used.
+     * @return the name of the message client configuration bean
+     */
+    String clientConfig() default "";
 }
@@ -0,0 +1,63 @@
+package com.celadonsea.palm.annotation;
+
+import com.celadonsea.palm.scanner.ListenerCallbackPostProcessor;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that the return value of a {@link Listener @Listener} method is published
+ * as a new message, so processing pipelines can be built from listeners without
+ * publishing by hand.
+ * The value is encoded with the codec of the listener, and published to the topic
+ * template of the annotation, where the variables are replaced with the topic variables
+ * of the incoming message. Eg.:
+ *   listener topic:  sensors/{deviceId}/raw
+ *   send to:         sensors/{deviceId}/enriched
+ *   incoming topic:  sensors/42/raw  -&gt;  the return value is published to sensors/42/enriched
+ *
+ * A null return value isn't published. The result of a returned
+ * {@link java.util.concurrent.CompletionStage CompletionStage} is published when it completes.
+ * If the batch size is greater than one, the return values for the same topic are collected
+ * and published together as an array, which can be consumed with a
+ * {@link java.util.stream.Stream Stream} or {@link java.util.List List} message body.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see Listener
+ * @see ListenerCallbackPostProcessor
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SendTo {
+
+    /**
+     * The topic template of the output messages. The variables ({variable}) must be
+     * defined in the topic of the listener.
+     * @return the topic template
+     */
+    String value();
+
+    /**
+     * The quality of service of the output messages, the default is the one of the client.
+     * @return the quality of service
+     */
+    int qos() default -1;
+
+    /**
+     * The maximum number of the return values published in one message. One disables the batching.
+     * @return the maximum size of a batch
+     */
+    int batchSize() default 1;
+
+    /**
+     * The maximum time in milliseconds the first value of an incomplete batch waits for
+     * the other ones. It's applied only if the batch size is greater than one.
+     * @return the maximum delay of a batch in milliseconds
+     */
+    long lingerMillis() default 10;
+}
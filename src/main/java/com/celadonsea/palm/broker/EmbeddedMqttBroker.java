@@ -0,0 +1,790 @@
+package com.celadonsea.palm.broker;
+
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.mqtt.BufferPool;
+import com.celadonsea.palm.mqtt.ChannelHandler;
+import com.celadonsea.palm.mqtt.EventLoop;
+import com.celadonsea.palm.mqtt.EventLoopGroup;
+import com.celadonsea.palm.mqtt.FrameHandler;
+import com.celadonsea.palm.mqtt.MqttConnection;
+import com.celadonsea.palm.mqtt.MqttFrame;
+import com.celadonsea.palm.mqtt.MqttPackets;
+import com.celadonsea.palm.topic.TopicFormat;
+import com.celadonsea.palm.topic.TopicMatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal MQTT 3.1.1 broker running in the JVM, eg. as the broker of an edge node or as the
+ * target of the load tests. The connections are served by the {@link EventLoop event loops}
+ * of an {@link EventLoopGroup} with the same non-blocking transport as the
+ * {@link com.celadonsea.palm.client.NioMqttMessageClient NIO client}.
+ * <p>
+ * The messages are routed with a {@link SubscriptionTrie subscription trie}. The broker
+ * supports QoS 0 and 1 towards the subscribers, the QoS 2 flow of the publishers is completed
+ * but the message is delivered with QoS 1 at most. The retained messages are kept in memory
+ * and sent to the new subscribers, and the shared subscriptions ($share/group/filter) are
+ * served in round robin. The sessions are clean: the subscriptions are dropped when the client
+ * disconnects, and the unacknowledged messages are not redelivered. A client sending a packet
+ * larger than the maximal packet size is disconnected.
+ * <p>
+ * The brokers started from a broker URL with the format embedded://host:port are kept in a
+ * registry, so the clients configured with the same URL connect to the same broker. The host
+ * defaults to localhost, and the port 0 or a missing port selects a free port.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+@Slf4j
+public class EmbeddedMqttBroker implements FrameHandler {
+
+    /**
+     * Scheme of the broker URLs of the embedded brokers
+     */
+    public static final String SCHEME = "embedded";
+
+    /**
+     * Prefix of the broker URLs of the embedded brokers
+     */
+    private static final String URL_PREFIX = SCHEME + "://";
+
+    /**
+     * Maximal quality of service granted to the subscriptions
+     */
+    private static final int MAX_QOS = 1;
+
+    /**
+     * Return code of the rejected subscriptions
+     */
+    private static final byte SUBSCRIPTION_FAILURE = (byte) 0x80;
+
+    /**
+     * Return code of the rejected protocol versions
+     */
+    private static final int UNACCEPTABLE_PROTOCOL_VERSION = 1;
+
+    /**
+     * Prefix of the shared subscription filters
+     */
+    private static final String SHARED_PREFIX = "$share/";
+
+    /**
+     * Format of the MQTT topics
+     */
+    private static final TopicFormat TOPIC_FORMAT = new TopicFormat('/', '+', '#');
+
+    /**
+     * The brokers started from broker URLs by URL
+     */
+    private static final Map<String, EmbeddedMqttBroker> BROKERS = new ConcurrentHashMap<>();
+
+    /**
+     * The address to bind
+     */
+    private final InetSocketAddress bindAddress;
+
+    /**
+     * The event loops of the connections
+     */
+    private final EventLoopGroup eventLoopGroup;
+
+    /**
+     * The pool of the read buffers
+     */
+    private final BufferPool bufferPool;
+
+    /**
+     * Maximal size of a packet received from a client in bytes
+     */
+    private final int maxPacketSize;
+
+    /**
+     * The subscriptions of the sessions
+     */
+    private final SubscriptionTrie<Session, Subscription> subscriptions = new SubscriptionTrie<>();
+
+    /**
+     * The retained messages by topic
+     */
+    private final Map<String, RetainedMessage> retainedMessages = new ConcurrentHashMap<>();
+
+    /**
+     * The connected sessions by client identifier
+     */
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * The listening channel, null if the broker is not started
+     */
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * The local address of the listening channel
+     */
+    private volatile InetSocketAddress localAddress;
+
+    /**
+     * Constructs a broker served by the shared event loops.
+     *
+     * @param bindAddress the address to bind, the port 0 selects a free port
+     */
+    public EmbeddedMqttBroker(InetSocketAddress bindAddress) {
+        this(bindAddress, EventLoopGroup.shared(), new BufferPool());
+    }
+
+    /**
+     * Constructs a broker.
+     *
+     * @param bindAddress the address to bind, the port 0 selects a free port
+     * @param eventLoopGroup the event loops of the connections, they are not closed by the broker
+     * @param bufferPool the pool of the read buffers
+     */
+    public EmbeddedMqttBroker(InetSocketAddress bindAddress, EventLoopGroup eventLoopGroup, BufferPool bufferPool) {
+        this(bindAddress, eventLoopGroup, bufferPool, MqttConnection.DEFAULT_MAX_PACKET_SIZE);
+    }
+
+    /**
+     * Constructs a broker which closes the connection of a client sending a packet
+     * larger than the maximal packet size.
+     *
+     * @param bindAddress the address to bind, the port 0 selects a free port
+     * @param eventLoopGroup the event loops of the connections, they are not closed by the broker
+     * @param bufferPool the pool of the read buffers
+     * @param maxPacketSize maximal size of a packet received from a client in bytes
+     */
+    public EmbeddedMqttBroker(InetSocketAddress bindAddress, EventLoopGroup eventLoopGroup, BufferPool bufferPool, int maxPacketSize) {
+        Assert.notNull(bindAddress, "Bind address must not be null");
+        Assert.notNull(eventLoopGroup, "Event loop group must not be null");
+        Assert.notNull(bufferPool, "Buffer pool must not be null");
+        Assert.isTrue(maxPacketSize > 0, "Maximal packet size must be positive");
+        this.bindAddress = bindAddress;
+        this.eventLoopGroup = eventLoopGroup;
+        this.bufferPool = bufferPool;
+        this.maxPacketSize = maxPacketSize;
+    }
+
+    /**
+     * Returns true if the broker URL refers to an embedded broker.
+     *
+     * @param brokerUrl the broker URL
+     * @return true if the scheme of the URL is embedded
+     */
+    public static boolean isEmbedded(String brokerUrl) {
+        return brokerUrl != null && brokerUrl.startsWith(URL_PREFIX);
+    }
+
+    /**
+     * Returns the broker of the URL, the broker is started if it's not started yet.
+     *
+     * @param brokerUrl the broker URL with the format embedded://host:port
+     * @return the started broker
+     * @throws IllegalArgumentException if the URL is not an embedded broker URL
+     * @throws ConnectionException if the broker cannot be started
+     */
+    public static EmbeddedMqttBroker forUrl(String brokerUrl) {
+        Assert.isTrue(isEmbedded(brokerUrl), "Not an embedded broker URL: " + brokerUrl);
+        return BROKERS.computeIfAbsent(brokerUrl, url -> {
+            String authority = url.substring(URL_PREFIX.length());
+            URI uri = URI.create("tcp://" + (authority.isEmpty() ? "localhost" : authority));
+            String host = uri.getHost() == null ? "localhost" : uri.getHost();
+            EmbeddedMqttBroker broker = new EmbeddedMqttBroker(new InetSocketAddress(host, Math.max(uri.getPort(), 0)));
+            broker.start();
+            return broker;
+        });
+    }
+
+    /**
+     * Binds the listening channel and starts accepting the connections.
+     *
+     * @throws ConnectionException if the address cannot be bound
+     */
+    public synchronized void start() {
+        if (serverChannel != null) {
+            return;
+        }
+        EventLoop eventLoop = eventLoopGroup.next();
+        ServerSocketChannel channel = null;
+        try {
+            channel = ServerSocketChannel.open();
+            channel.bind(bindAddress);
+            eventLoop.register(channel, SelectionKey.OP_ACCEPT, new Acceptor(channel, eventLoop)).get();
+        } catch (IOException | ExecutionException e) {
+            closeQuietly(channel);
+            throw new ConnectionException("Cannot start embedded MQTT broker on " + bindAddress, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closeQuietly(channel);
+            throw new ConnectionException("Interrupted while starting embedded MQTT broker", e);
+        }
+        serverChannel = channel;
+        localAddress = (InetSocketAddress) channel.socket().getLocalSocketAddress();
+        log.info("Embedded MQTT broker listens on {}", localAddress);
+    }
+
+    /**
+     * Stops accepting the connections, closes the connected sessions and drops the retained
+     * messages. The broker is removed from the registry of the broker URLs.
+     */
+    public synchronized void stop() {
+        BROKERS.values().remove(this);
+        if (serverChannel == null) {
+            return;
+        }
+        closeQuietly(serverChannel);
+        serverChannel = null;
+        sessions.values().forEach(session -> session.connection.close());
+        retainedMessages.clear();
+        log.info("Embedded MQTT broker on {} stopped", localAddress);
+    }
+
+    /**
+     * Returns the address of the broker for the clients. The loopback address is returned if the
+     * broker listens on every interface.
+     *
+     * @return the address
+     * @throws IllegalStateException if the broker was not started
+     */
+    public InetSocketAddress getAddress() {
+        InetSocketAddress address = localAddress;
+        Assert.state(address != null, "Embedded MQTT broker is not started");
+        if (address.getAddress().isAnyLocalAddress()) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), address.getPort());
+        }
+        return address;
+    }
+
+    /**
+     * Returns the port of the broker.
+     *
+     * @return the local port
+     * @throws IllegalStateException if the broker was not started
+     */
+    public int getPort() {
+        return getAddress().getPort();
+    }
+
+    /**
+     * Returns the number of the connected sessions.
+     *
+     * @return the number of the sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Returns the number of the retained messages.
+     *
+     * @return the number of the topics with retained message
+     */
+    public int getRetainedCount() {
+        return retainedMessages.size();
+    }
+
+    /**
+     * Handles a packet of a client on the event loop of its connection.
+     *
+     * @param connection the connection of the client
+     * @param frame the received packet
+     */
+    @Override
+    public void onFrame(MqttConnection connection, MqttFrame frame) {
+        Session session = (Session) connection.getAttachment();
+        if (session == null && frame.getType() != MqttPackets.CONNECT) {
+            log.warn("Packet {} before CONNECT from {}", frame.getType(), connection.getRemoteAddress());
+            connection.close(null);
+            return;
+        }
+        switch (frame.getType()) {
+            case MqttPackets.CONNECT:
+                onConnect(connection, session, frame);
+                break;
+            case MqttPackets.PUBLISH:
+                onPublish(session, frame);
+                break;
+            case MqttPackets.PUBREL:
+                int packetId = frame.readShort();
+                session.pendingReleases.remove(packetId);
+                session.connection.send(MqttPackets.ack(MqttPackets.PUBCOMP, packetId));
+                break;
+            case MqttPackets.SUBSCRIBE:
+                onSubscribe(session, frame);
+                break;
+            case MqttPackets.UNSUBSCRIBE:
+                onUnsubscribe(session, frame);
+                break;
+            case MqttPackets.PINGREQ:
+                session.connection.send(MqttPackets.empty(MqttPackets.PINGRESP));
+                break;
+            case MqttPackets.DISCONNECT:
+                connection.close();
+                break;
+            case MqttPackets.PUBACK:
+                break;
+            default:
+                log.warn("Unexpected packet {} from {}", frame.getType(), session.clientId);
+                connection.close(null);
+        }
+    }
+
+    /**
+     * Drops the session of the closed connection with its subscriptions.
+     *
+     * @param connection the closed connection
+     * @param cause the reason of the closing, null for a regular close
+     */
+    @Override
+    public void onClose(MqttConnection connection, Throwable cause) {
+        Session session = (Session) connection.getAttachment();
+        if (session == null) {
+            return;
+        }
+        sessions.remove(session.clientId, session);
+        session.subscriptions.values().forEach(subscription -> subscriptions.unsubscribe(subscription.filter, subscription.group, session));
+        log.debug("Session {} closed", session.clientId);
+    }
+
+    /**
+     * Accepts the connection of a client. The previous connection of the same client is closed.
+     *
+     * @param connection the connection of the client
+     * @param current the session of the connection, not null if CONNECT is repeated
+     * @param frame the CONNECT packet
+     */
+    private void onConnect(MqttConnection connection, Session current, MqttFrame frame) {
+        if (current != null) {
+            log.warn("Repeated CONNECT from {}", current.clientId);
+            connection.close(null);
+            return;
+        }
+        frame.readString();
+        int protocolLevel = frame.getBody().get();
+        frame.getBody().get();
+        frame.readShort();
+        if (protocolLevel != 3 && protocolLevel != 4) {
+            connection.send(MqttPackets.connack(false, UNACCEPTABLE_PROTOCOL_VERSION));
+            connection.close();
+            return;
+        }
+        String clientId = frame.readString();
+        if (clientId.isEmpty()) {
+            clientId = UUID.randomUUID().toString();
+        }
+        Session session = new Session(clientId, connection);
+        connection.setAttachment(session);
+        Session previous = sessions.put(clientId, session);
+        if (previous != null) {
+            log.info("Session {} is taken over by a new connection", clientId);
+            previous.connection.close();
+        }
+        connection.send(MqttPackets.connack(false, 0));
+    }
+
+    /**
+     * Acknowledges a message of a client, and routes it to the matching subscriptions.
+     *
+     * @param session the session of the publisher
+     * @param frame the PUBLISH packet
+     */
+    private void onPublish(Session session, MqttFrame frame) {
+        int qos = frame.getQos();
+        String topic = frame.readString();
+        int packetId = qos > 0 ? frame.readShort() : 0;
+        byte[] payload = frame.readRemaining();
+        if (topic.indexOf('+') >= 0 || topic.indexOf('#') >= 0) {
+            log.warn("Topic name with wildcard from {}: {}", session.clientId, topic);
+            session.connection.close(null);
+            return;
+        }
+        if (qos == 1) {
+            session.connection.send(MqttPackets.ack(MqttPackets.PUBACK, packetId));
+        } else if (qos == 2) {
+            boolean duplicate = !session.pendingReleases.add(packetId);
+            session.connection.send(MqttPackets.ack(MqttPackets.PUBREC, packetId));
+            if (duplicate) {
+                return;
+            }
+        }
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        if (frame.isRetain()) {
+            if (payload.length == 0) {
+                retainedMessages.remove(topic);
+            } else {
+                retainedMessages.put(topic, new RetainedMessage(topicBytes, payload, Math.min(qos, MAX_QOS)));
+            }
+        }
+        route(topic, topicBytes, payload, qos);
+    }
+
+    /**
+     * Sends a message to the matching subscriptions. The header of the QoS 0 deliveries is
+     * encoded once, and the payload is shared by the deliveries.
+     *
+     * @param topic the topic name
+     * @param topicBytes the encoded topic name
+     * @param payload the payload
+     * @param qos the quality of service of the publisher
+     */
+    private void route(String topic, byte[] topicBytes, byte[] payload, int qos) {
+        ByteBuffer[] sharedHeader = new ByteBuffer[1];
+        subscriptions.match(topic, subscription -> {
+            int deliveryQos = Math.min(qos, subscription.qos);
+            if (deliveryQos == 0) {
+                if (sharedHeader[0] == null) {
+                    sharedHeader[0] = MqttPackets.publishHeader(topicBytes, 0, false, 0, payload.length);
+                }
+                subscription.session.send(sharedHeader[0].duplicate(), ByteBuffer.wrap(payload));
+            } else {
+                subscription.session.send(MqttPackets.publishHeader(topicBytes, deliveryQos, false,
+                    subscription.session.nextPacketId(), payload.length), ByteBuffer.wrap(payload));
+            }
+        });
+    }
+
+    /**
+     * Adds the subscriptions of a client, acknowledges them, and sends the matching retained
+     * messages. The retained messages are not sent to the shared subscriptions.
+     *
+     * @param session the session of the subscriber
+     * @param frame the SUBSCRIBE packet
+     */
+    private void onSubscribe(Session session, MqttFrame frame) {
+        int packetId = frame.readShort();
+        ByteBuffer body = frame.getBody();
+        List<Subscription> added = new ArrayList<>();
+        ByteArrayOutputStream returnCodes = new ByteArrayOutputStream();
+        while (body.hasRemaining()) {
+            String topicFilter = frame.readString();
+            int requestedQos = body.get() & 0x03;
+            Subscription subscription = createSubscription(session, topicFilter, Math.min(requestedQos, MAX_QOS));
+            if (subscription == null) {
+                returnCodes.write(SUBSCRIPTION_FAILURE);
+                continue;
+            }
+            Subscription previous = session.subscriptions.put(topicFilter, subscription);
+            if (previous != null) {
+                subscriptions.unsubscribe(previous.filter, previous.group, session);
+            }
+            subscriptions.subscribe(subscription.filter, subscription.group, session, subscription);
+            returnCodes.write(subscription.qos);
+            added.add(subscription);
+        }
+        session.connection.send(MqttPackets.suback(packetId, returnCodes.toByteArray()));
+        for (Subscription subscription : added) {
+            if (subscription.group == null) {
+                sendRetained(subscription);
+            }
+        }
+    }
+
+    /**
+     * Removes the subscriptions of a client and acknowledges the request.
+     *
+     * @param session the session of the subscriber
+     * @param frame the UNSUBSCRIBE packet
+     */
+    private void onUnsubscribe(Session session, MqttFrame frame) {
+        int packetId = frame.readShort();
+        while (frame.getBody().hasRemaining()) {
+            Subscription subscription = session.subscriptions.remove(frame.readString());
+            if (subscription != null) {
+                subscriptions.unsubscribe(subscription.filter, subscription.group, session);
+            }
+        }
+        session.connection.send(MqttPackets.ack(MqttPackets.UNSUBACK, packetId));
+    }
+
+    /**
+     * Sends the retained messages matching the filter of a new subscription with retain flag.
+     *
+     * @param subscription the new subscription
+     */
+    private void sendRetained(Subscription subscription) {
+        if (retainedMessages.isEmpty()) {
+            return;
+        }
+        TopicMatcher matcher = TopicMatcher.compile(subscription.filter, TOPIC_FORMAT);
+        retainedMessages.forEach((topic, message) -> {
+            if (matcher.matches(topic)) {
+                int qos = Math.min(message.qos, subscription.qos);
+                subscription.session.send(MqttPackets.publishHeader(message.topic, qos, true,
+                    qos > 0 ? subscription.session.nextPacketId() : 0, message.payload.length), ByteBuffer.wrap(message.payload));
+            }
+        });
+    }
+
+    /**
+     * Parses and validates a topic filter.
+     *
+     * @param session the session of the subscriber
+     * @param topicFilter the topic filter, it may be a shared subscription filter
+     * @param qos the granted quality of service
+     * @return the subscription or null if the filter is invalid
+     */
+    private Subscription createSubscription(Session session, String topicFilter, int qos) {
+        String group = null;
+        String filter = topicFilter;
+        if (topicFilter.startsWith(SHARED_PREFIX)) {
+            int separator = topicFilter.indexOf('/', SHARED_PREFIX.length());
+            if (separator <= SHARED_PREFIX.length()) {
+                return null;
+            }
+            group = topicFilter.substring(SHARED_PREFIX.length(), separator);
+            filter = topicFilter.substring(separator + 1);
+        }
+        return isValidFilter(filter) ? new Subscription(session, filter, group, qos) : null;
+    }
+
+    /**
+     * Checks that the wildcards of a topic filter fill whole levels, and the multi-level
+     * wildcard is the last level.
+     *
+     * @param filter the topic filter
+     * @return true if the filter is valid
+     */
+    private static boolean isValidFilter(String filter) {
+        if (filter.isEmpty()) {
+            return false;
+        }
+        String[] levels = filter.split("/", -1);
+        for (int index = 0; index < levels.length; index++) {
+            String level = levels[index];
+            if (level.length() > 1 && (level.indexOf('+') >= 0 || level.indexOf('#') >= 0)) {
+                return false;
+            }
+            if (SubscriptionTrie.MULTI_LEVEL_WILDCARD.equals(level) && index < levels.length - 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Closes a channel and logs the failure.
+     *
+     * @param channel the channel or null
+     */
+    private static void closeQuietly(ServerSocketChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Cannot close server channel", e);
+        }
+    }
+
+    /**
+     * Accepts the connections of the listening channel.
+     */
+    private final class Acceptor implements ChannelHandler {
+
+        /**
+         * The listening channel
+         */
+        private final ServerSocketChannel channel;
+
+        /**
+         * The event loop of the listening channel
+         */
+        private final EventLoop eventLoop;
+
+        /**
+         * Constructs the acceptor.
+         *
+         * @param channel the listening channel
+         * @param eventLoop the event loop of the listening channel
+         */
+        private Acceptor(ServerSocketChannel channel, EventLoop eventLoop) {
+            this.channel = channel;
+            this.eventLoop = eventLoop;
+        }
+
+        /**
+         * Accepts the pending connections, and assigns them to the event loops in round robin.
+         *
+         * @param key the selection key of the listening channel
+         */
+        @Override
+        public void ready(SelectionKey key) {
+            try {
+                SocketChannel accepted;
+                while ((accepted = channel.accept()) != null) {
+                    MqttConnection.accept(accepted, eventLoopGroup.next(), bufferPool, EmbeddedMqttBroker.this, maxPacketSize);
+                }
+            } catch (IOException e) {
+                log.warn("Cannot accept connection on {}", localAddress, e);
+            }
+        }
+
+        /**
+         * Closes the listening channel.
+         *
+         * @param cause the reason of the closing
+         */
+        @Override
+        public void close(Throwable cause) {
+            eventLoop.execute(() -> closeQuietly(channel));
+        }
+    }
+
+    /**
+     * State of a connected client.
+     */
+    private static final class Session {
+
+        /**
+         * The client identifier
+         */
+        private final String clientId;
+
+        /**
+         * The connection of the client
+         */
+        private final MqttConnection connection;
+
+        /**
+         * The subscriptions of the client by the requested topic filter
+         */
+        private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+        /**
+         * The identifiers of the QoS 2 messages received but not released, confined to the event loop
+         */
+        private final Set<Integer> pendingReleases = new HashSet<>();
+
+        /**
+         * The counter of the packet identifiers of the deliveries
+         */
+        private final AtomicInteger packetIds = new AtomicInteger();
+
+        /**
+         * Constructs the session.
+         *
+         * @param clientId the client identifier
+         * @param connection the connection of the client
+         */
+        private Session(String clientId, MqttConnection connection) {
+            this.clientId = clientId;
+            this.connection = connection;
+        }
+
+        /**
+         * Returns the next packet identifier, it's between 1 and 65535.
+         *
+         * @return the packet identifier
+         */
+        private int nextPacketId() {
+            return Math.floorMod(packetIds.getAndIncrement(), 0xFFFF) + 1;
+        }
+
+        /**
+         * Sends a packet to the client, the packet is dropped if the connection is closed.
+         *
+         * @param buffers the buffers of the packet
+         */
+        private void send(ByteBuffer... buffers) {
+            try {
+                connection.send(buffers);
+            } catch (ConnectionException e) {
+                log.debug("Delivery to closed session {} dropped", clientId);
+            }
+        }
+    }
+
+    /**
+     * A subscription of a session.
+     */
+    private static final class Subscription {
+
+        /**
+         * The session of the subscriber
+         */
+        private final Session session;
+
+        /**
+         * The topic filter without the shared subscription prefix
+         */
+        private final String filter;
+
+        /**
+         * The shared subscription group or null
+         */
+        private final String group;
+
+        /**
+         * The granted quality of service
+         */
+        private final int qos;
+
+        /**
+         * Constructs the subscription.
+         *
+         * @param session the session of the subscriber
+         * @param filter the topic filter
+         * @param group the shared subscription group or null
+         * @param qos the granted quality of service
+         */
+        private Subscription(Session session, String filter, String group, int qos) {
+            this.session = session;
+            this.filter = filter;
+            this.group = group;
+            this.qos = qos;
+        }
+    }
+
+    /**
+     * A retained message of a topic.
+     */
+    private static final class RetainedMessage {
+
+        /**
+         * The encoded topic name
+         */
+        private final byte[] topic;
+
+        /**
+         * The payload
+         */
+        private final byte[] payload;
+
+        /**
+         * The quality of service of the publisher, limited to the maximal QoS of the broker
+         */
+        private final int qos;
+
+        /**
+         * Constructs the retained message.
+         *
+         * @param topic the encoded topic name
+         * @param payload the payload
+         * @param qos the quality of service
+         */
+        private RetainedMessage(byte[] topic, byte[] payload, int qos) {
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+        }
+    }
+}
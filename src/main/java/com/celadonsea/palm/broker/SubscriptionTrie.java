@@ -0,0 +1,287 @@
+package com.celadonsea.palm.broker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Trie of the MQTT topic filters, a node per topic level. A topic is matched by walking the
+ * levels of the topic, following the literal child, the single-level wildcard child and the
+ * multi-level wildcard child of the nodes, so the cost depends on the depth of the topic and
+ * not on the number of the subscriptions.
+ * <p>
+ * The subscribers are stored by key, a key has at most one subscription per filter. The members
+ * of a shared subscription group are stored in the node of the filter, and one member of a group
+ * is selected in round robin for a topic. The topics starting with $ are not matched by the
+ * wildcards of the first level.
+ * <p>
+ * The trie is guarded by a read-write lock, so the topics are matched concurrently.
+ *
+ * @param <K> type of the subscriber keys, eg. the sessions
+ * @param <V> type of the subscriptions
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+class SubscriptionTrie<K, V> {
+
+    /**
+     * Separator of the topic levels
+     */
+    static final char LEVEL_SEPARATOR = '/';
+
+    /**
+     * Single-level wildcard
+     */
+    static final String SINGLE_LEVEL_WILDCARD = "+";
+
+    /**
+     * Multi-level wildcard
+     */
+    static final String MULTI_LEVEL_WILDCARD = "#";
+
+    /**
+     * The root node, its children are the first topic levels
+     */
+    private final Node<K, V> root = new Node<>();
+
+    /**
+     * The lock of the trie
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds or replaces the subscription of the key to the filter.
+     *
+     * @param filter the topic filter
+     * @param group the shared subscription group or null
+     * @param key the subscriber key
+     * @param subscription the subscription
+     */
+    void subscribe(String filter, String group, K key, V subscription) {
+        lock.writeLock().lock();
+        try {
+            Node<K, V> node = root;
+            for (String level : split(filter)) {
+                node = node.children.computeIfAbsent(level, name -> new Node<>());
+            }
+            if (group == null) {
+                node.subscribers.put(key, subscription);
+            } else {
+                node.groups.computeIfAbsent(group, name -> new SharedGroup<>()).members.put(key, subscription);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the subscription of the key to the filter, and the nodes left empty.
+     *
+     * @param filter the topic filter
+     * @param group the shared subscription group or null
+     * @param key the subscriber key
+     * @return true if the subscription existed
+     */
+    boolean unsubscribe(String filter, String group, K key) {
+        lock.writeLock().lock();
+        try {
+            String[] levels = split(filter);
+            List<Node<K, V>> path = new ArrayList<>(levels.length + 1);
+            Node<K, V> node = root;
+            path.add(node);
+            for (String level : levels) {
+                node = node.children.get(level);
+                if (node == null) {
+                    return false;
+                }
+                path.add(node);
+            }
+            boolean removed;
+            if (group == null) {
+                removed = node.subscribers.remove(key) != null;
+            } else {
+                SharedGroup<K, V> sharedGroup = node.groups.get(group);
+                removed = sharedGroup != null && sharedGroup.members.remove(key) != null;
+                if (sharedGroup != null && sharedGroup.members.isEmpty()) {
+                    node.groups.remove(group);
+                }
+            }
+            for (int index = levels.length; index > 0 && path.get(index).isEmpty(); index--) {
+                path.get(index - 1).children.remove(levels[index - 1]);
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Passes the subscriptions matching the topic to the collector, and one member of every
+     * matching shared subscription group.
+     *
+     * @param topic the topic name
+     * @param collector the collector of the subscriptions
+     */
+    void match(String topic, Consumer<V> collector) {
+        String[] levels = split(topic);
+        lock.readLock().lock();
+        try {
+            match(root, levels, 0, !topic.isEmpty() && topic.charAt(0) == '$', collector);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true if the trie has no subscription.
+     *
+     * @return true if it's empty
+     */
+    boolean isEmpty() {
+        lock.readLock().lock();
+        try {
+            return root.isEmpty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Matches the levels of the topic from the given index under the node.
+     *
+     * @param node the node of the previous level
+     * @param levels the topic levels
+     * @param index the index of the next level
+     * @param systemTopic true if the topic starts with $
+     * @param collector the collector of the subscriptions
+     */
+    private void match(Node<K, V> node, String[] levels, int index, boolean systemTopic, Consumer<V> collector) {
+        boolean wildcardAllowed = index > 0 || !systemTopic;
+        Node<K, V> multiLevel = wildcardAllowed ? node.children.get(MULTI_LEVEL_WILDCARD) : null;
+        if (multiLevel != null) {
+            multiLevel.collect(collector);
+        }
+        if (index == levels.length) {
+            node.collect(collector);
+            return;
+        }
+        Node<K, V> literal = node.children.get(levels[index]);
+        if (literal != null) {
+            match(literal, levels, index + 1, systemTopic, collector);
+        }
+        Node<K, V> singleLevel = wildcardAllowed ? node.children.get(SINGLE_LEVEL_WILDCARD) : null;
+        if (singleLevel != null) {
+            match(singleLevel, levels, index + 1, systemTopic, collector);
+        }
+    }
+
+    /**
+     * Splits a topic or a topic filter to levels, keeping the empty levels.
+     *
+     * @param topic the topic or the filter
+     * @return the levels
+     */
+    private static String[] split(String topic) {
+        List<String> levels = new ArrayList<>();
+        int start = 0;
+        int separator;
+        while ((separator = topic.indexOf(LEVEL_SEPARATOR, start)) >= 0) {
+            levels.add(topic.substring(start, separator));
+            start = separator + 1;
+        }
+        levels.add(topic.substring(start));
+        return levels.toArray(new String[0]);
+    }
+
+    /**
+     * A node of a topic level.
+     *
+     * @param <K> type of the subscriber keys
+     * @param <V> type of the subscriptions
+     */
+    private static final class Node<K, V> {
+
+        /**
+         * The nodes of the next level by level name or wildcard
+         */
+        private final Map<String, Node<K, V>> children = new HashMap<>();
+
+        /**
+         * The subscriptions of the filter ending at this node
+         */
+        private final Map<K, V> subscribers = new LinkedHashMap<>();
+
+        /**
+         * The shared subscription groups of the filter ending at this node
+         */
+        private final Map<String, SharedGroup<K, V>> groups = new HashMap<>();
+
+        /**
+         * Passes the subscriptions of the node and one member of every group to the collector.
+         *
+         * @param collector the collector of the subscriptions
+         */
+        private void collect(Consumer<V> collector) {
+            subscribers.values().forEach(collector);
+            for (SharedGroup<K, V> group : groups.values()) {
+                V member = group.next();
+                if (member != null) {
+                    collector.accept(member);
+                }
+            }
+        }
+
+        /**
+         * Returns true if the node has no subscription and no child.
+         *
+         * @return true if it can be removed
+         */
+        private boolean isEmpty() {
+            return children.isEmpty() && subscribers.isEmpty() && groups.isEmpty();
+        }
+    }
+
+    /**
+     * The members of a shared subscription group.
+     *
+     * @param <K> type of the subscriber keys
+     * @param <V> type of the subscriptions
+     */
+    private static final class SharedGroup<K, V> {
+
+        /**
+         * The members by subscriber key
+         */
+        private final Map<K, V> members = new LinkedHashMap<>();
+
+        /**
+         * The counter of the round robin, it's incremented under the read lock
+         */
+        private final AtomicInteger counter = new AtomicInteger();
+
+        /**
+         * Returns the next member in round robin.
+         *
+         * @return the member or null if the group is empty
+         */
+        private V next() {
+            int size = members.size();
+            if (size == 0) {
+                return null;
+            }
+            int position = Math.floorMod(counter.getAndIncrement(), size);
+            for (V member : members.values()) {
+                if (position-- == 0) {
+                    return member;
+                }
+            }
+            return null;
+        }
+    }
+}
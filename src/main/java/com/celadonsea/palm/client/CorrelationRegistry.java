@@ -0,0 +1,171 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.core.HashedWheelTimer;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Registry of the outstanding requests by their correlation id.
+ * <p>
+ * The requests are stored in lock striped maps, so the registration and the completion
+ * of requests in different stripes don't contend. The timeouts are scheduled on a
+ * {@link HashedWheelTimer}, so the outstanding requests don't occupy any thread.
+ * A request is removed from the registry before its future completes in any way
+ * (reply, timeout or failure), or right after the cancellation by the caller, so expired
+ * requests don't leak.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see RequestingMessageClient
+ */
+public class CorrelationRegistry {
+
+    /**
+     * Default number of the stripes
+     */
+    public static final int DEFAULT_STRIPES = 16;
+
+    /**
+     * The stripes, the requests of a stripe are guarded by the map of the stripe
+     */
+    private final List<Map<Long, CompletableFuture<byte[]>>> stripes;
+
+    /**
+     * Mask to calculate the stripe index from the correlation id
+     */
+    private final int mask;
+
+    /**
+     * Timer of the request timeouts
+     */
+    private final HashedWheelTimer timer;
+
+    /**
+     * Constructs the registry with the default number of stripes.
+     *
+     * @param timer timer of the request timeouts
+     */
+    public CorrelationRegistry(HashedWheelTimer timer) {
+        this(timer, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Constructs the registry.
+     *
+     * @param timer timer of the request timeouts
+     * @param stripeCount number of the stripes, it will be rounded up to a power of two
+     * @throws IllegalArgumentException if the timer is null or the stripe count is not positive
+     */
+    public CorrelationRegistry(HashedWheelTimer timer, int stripeCount) {
+        Assert.notNull(timer, "Timer must be set");
+        Assert.isTrue(stripeCount > 0 && stripeCount <= 1 << 16, "Stripe count must be positive");
+        this.timer = timer;
+        int size = Integer.highestOneBit(stripeCount);
+        if (size < stripeCount) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.stripes = new ArrayList<>(size);
+        for (int index = 0; index < size; index++) {
+            stripes.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Registers a new request. The returned future completes with the reply, or completes
+     * exceptionally with a {@link TimeoutException} if no reply arrives within the timeout.
+     *
+     * @param correlationId the unique id of the request
+     * @param timeoutMillis the timeout of the request in milliseconds
+     * @return the future of the reply
+     * @throws IllegalStateException if a request with the same id is outstanding or the timer is stopped
+     */
+    public CompletableFuture<byte[]> register(long correlationId, long timeoutMillis) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        Map<Long, CompletableFuture<byte[]>> stripe = stripe(correlationId);
+        HashedWheelTimer.Timeout timeout = timer.schedule(() -> {
+            synchronized (stripe) {
+                stripe.remove(correlationId, future);
+            }
+            future.completeExceptionally(new TimeoutException("No reply for request " + correlationId + " within " + timeoutMillis + " ms"));
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        synchronized (stripe) {
+            if (stripe.putIfAbsent(correlationId, future) != null) {
+                timeout.cancel();
+                throw new IllegalStateException("Request " + correlationId + " is already registered");
+            }
+        }
+        future.whenComplete((reply, failure) -> {
+            timeout.cancel();
+            synchronized (stripe) {
+                stripe.remove(correlationId, future);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Removes the request and completes it with the arrived reply. The future is completed outside
+     * of the lock of the stripe, so the callbacks of the caller don't block the other requests.
+     *
+     * @param correlationId the id of the request
+     * @param reply the reply payload
+     * @return false if the request isn't outstanding anymore (eg. it was expired)
+     */
+    public boolean complete(long correlationId, byte[] reply) {
+        CompletableFuture<byte[]> future;
+        Map<Long, CompletableFuture<byte[]>> stripe = stripe(correlationId);
+        synchronized (stripe) {
+            future = stripe.remove(correlationId);
+        }
+        return future != null && future.complete(reply);
+    }
+
+    /**
+     * Removes the request and completes it exceptionally, eg. if the request cannot be published.
+     *
+     * @param correlationId the id of the request
+     * @param failure the cause of the failure
+     * @return false if the request isn't outstanding anymore
+     */
+    public boolean fail(long correlationId, Throwable failure) {
+        CompletableFuture<byte[]> future;
+        Map<Long, CompletableFuture<byte[]>> stripe = stripe(correlationId);
+        synchronized (stripe) {
+            future = stripe.remove(correlationId);
+        }
+        return future != null && future.completeExceptionally(failure);
+    }
+
+    /**
+     * Returns the number of the outstanding requests.
+     *
+     * @return the number of the outstanding requests
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (Map<Long, CompletableFuture<byte[]>> stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the stripe of the correlation id.
+     *
+     * @param correlationId the id of the request
+     * @return the map of the stripe
+     */
+    private Map<Long, CompletableFuture<byte[]>> stripe(long correlationId) {
+        return stripes.get((int) (correlationId ^ correlationId >>> 32) & mask);
+    }
+}
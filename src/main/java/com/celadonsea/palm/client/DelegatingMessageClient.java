@@ -0,0 +1,185 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.listener.CallBack;
+import com.celadonsea.palm.publisher.DefaultMessagePublisher;
+import com.celadonsea.palm.publisher.MessagePublisher;
+import com.celadonsea.palm.topic.TopicFormat;
+import lombok.Getter;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Base class for message clients which decorate another message client.
+ * All calls are forwarded to the wrapped client, subclasses override only
+ * the functionality they extend.
+ *
+ * The publisher of a delegating client publishes through the delegating client
+ * itself, so the decoration is applied to builder style publishing too.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+public abstract class DelegatingMessageClient implements MessageClient {
+
+    /**
+     * The wrapped message client
+     * -- GETTER --
+     * Returns the wrapped message client
+     *
+     * @return the wrapped message client
+     */
+    @Getter
+    private final MessageClient delegate;
+
+    /**
+     * Constructs the client with the wrapped message client.
+     *
+     * @param delegate the wrapped message client
+     * @throws IllegalArgumentException if the wrapped client is null
+     */
+    protected DelegatingMessageClient(MessageClient delegate) {
+        Assert.notNull(delegate, "Delegate message client must be set");
+        this.delegate = delegate;
+    }
+
+    /**
+     * Connects the wrapped client.
+     */
+    @Override
+    public void connect() {
+        delegate.connect();
+    }
+
+    /**
+     * Reconnects the wrapped client.
+     *
+     * @param callBack the message call back instance
+     */
+    @Override
+    public void reconnect(CallBack callBack) {
+        delegate.reconnect(callBack);
+    }
+
+    /**
+     * Publishes the message with the wrapped client.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     */
+    @Override
+    public void publish(byte[] message, ProducingProperties producingProperties) {
+        delegate.publish(message, producingProperties);
+    }
+
+    /**
+     * Publishes the message buffer with the wrapped client.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     */
+    @Override
+    public void publish(ByteBuffer message, ProducingProperties producingProperties) {
+        delegate.publish(message, producingProperties);
+    }
+
+    /**
+     * Subscribes with the wrapped client.
+     *
+     * @param consumingProperties the consuming properties
+     * @param messageConsumer the message consumer function
+     */
+    @Override
+    public void subscribe(ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer) {
+        delegate.subscribe(consumingProperties, messageConsumer);
+    }
+
+    /**
+     * Subscribes the wrapped client to several topics at once.
+     *
+     * @param subscriptions the message consumer functions by the consuming properties
+     */
+    @Override
+    public void subscribe(Map<ConsumingProperties, BiConsumer<String, byte[]>> subscriptions) {
+        delegate.subscribe(subscriptions);
+    }
+
+    /**
+     * Pauses the subscription of the wrapped client.
+     *
+     * @param consumingProperties the consuming properties of the paused subscription
+     */
+    @Override
+    public void pause(ConsumingProperties consumingProperties) {
+        delegate.pause(consumingProperties);
+    }
+
+    /**
+     * Resumes the subscription of the wrapped client.
+     *
+     * @param consumingProperties the consuming properties of the paused subscription
+     */
+    @Override
+    public void resume(ConsumingProperties consumingProperties) {
+        delegate.resume(consumingProperties);
+    }
+
+    /**
+     * Publishes a request with the wrapped client.
+     *
+     * @param topic the topic of the request
+     * @param payload the request payload
+     * @param timeoutMillis the time to wait for the reply in milliseconds
+     * @return the future of the reply payload
+     */
+    @Override
+    public CompletableFuture<byte[]> request(String topic, byte[] payload, long timeoutMillis) {
+        return delegate.request(topic, payload, timeoutMillis);
+    }
+
+    /**
+     * Returns the topic format of the wrapped client.
+     *
+     * @return topic format description
+     */
+    @Override
+    public TopicFormat getTopicFormat() {
+        return delegate.getTopicFormat();
+    }
+
+    /**
+     * Sets the topic format of the wrapped client.
+     *
+     * @param topicFormat the new topic format
+     */
+    @Override
+    public void setTopicFormat(TopicFormat topicFormat) {
+        delegate.setTopicFormat(topicFormat);
+    }
+
+    /**
+     * Returns a message publisher which publishes through this client.
+     *
+     * @return message publisher
+     */
+    @Override
+    public MessagePublisher publisher() {
+        return new DefaultMessagePublisher(this);
+    }
+
+    /**
+     * Returns the topic transformer of the wrapped client.
+     *
+     * @return client specific transformation function for topics
+     */
+    @Override
+    public Function<String, String> topicTransformer() {
+        return delegate.topicTransformer();
+    }
+}
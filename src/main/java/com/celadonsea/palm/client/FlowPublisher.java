@@ -0,0 +1,368 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.core.ConsumingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.util.Assert;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * A Reactive Streams {@link Publisher} of the messages of a subscription with demand-driven
+ * backpressure.
+ * <p>
+ * The transport subscription is created at the first {@link #subscribe(Subscriber) subscribe}.
+ * The arrived messages are converted and buffered until the subscriber requests them. When
+ * the buffer is full, the message client is {@link MessageClient#pause(ConsumingProperties) paused},
+ * and it's {@link MessageClient#resume(ConsumingProperties) resumed} when the subscriber has
+ * drained the half of the buffer. If the client cannot pause its transport, the messages
+ * arriving to the full buffer are dropped, so the memory usage is bounded anyway.
+ * <p>
+ * The publisher is unicast: it accepts a new subscriber only after the previous one has
+ * cancelled. A subscription never completes, because the messages of a topic have no end.
+ * The messages arriving without subscriber, and the ones converted to null (eg. undecodable
+ * payloads), are dropped.
+ *
+ * @param <T> the type of the published elements
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see MessageClient#flow(ConsumingProperties)
+ */
+@Slf4j
+public class FlowPublisher<T> implements Publisher<T> {
+
+    /**
+     * The default number of the buffered messages per subscription
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    /**
+     * Subscription of the rejected subscribers, it ignores the calls
+     */
+    private static final Subscription REJECTED = new Subscription() {
+        @Override
+        public void request(long n) {
+            // the subscriber is rejected, there is nothing to request
+        }
+
+        @Override
+        public void cancel() {
+            // the subscriber is rejected, there is nothing to cancel
+        }
+    };
+
+    /**
+     * The message client which is paused and resumed
+     */
+    private final MessageClient client;
+
+    /**
+     * The consuming properties of the subscription
+     */
+    private final ConsumingProperties consumingProperties;
+
+    /**
+     * Converts the topic and the payload of an arrived message to the published element
+     */
+    private final BiFunction<String, byte[], T> converter;
+
+    /**
+     * The maximum number of the buffered messages
+     */
+    private final int bufferSize;
+
+    /**
+     * Creates the transport subscription with the consuming properties and the message consumer
+     */
+    private final BiConsumer<ConsumingProperties, BiConsumer<String, byte[]>> transportSubscriber;
+
+    /**
+     * The subscription of the current subscriber
+     */
+    private final AtomicReference<FlowSubscription> currentSubscription = new AtomicReference<>();
+
+    /**
+     * Indicates that the transport subscription is created
+     */
+    private final AtomicBoolean transportSubscribed = new AtomicBoolean();
+
+    /**
+     * Indicates that the message client is paused by this publisher
+     */
+    private final AtomicBoolean paused = new AtomicBoolean();
+
+    /**
+     * Number of the dropped messages
+     */
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Constructs the publisher which subscribes the message client directly.
+     *
+     * @param client the message client
+     * @param consumingProperties the consuming properties of the subscription
+     * @param converter converts the topic and the payload of an arrived message to the published element
+     * @throws IllegalArgumentException if any argument is null
+     */
+    public FlowPublisher(MessageClient client, ConsumingProperties consumingProperties, BiFunction<String, byte[], T> converter) {
+        this(client, consumingProperties, converter, DEFAULT_BUFFER_SIZE, client::subscribe);
+    }
+
+    /**
+     * Constructs the publisher.
+     *
+     * @param client the message client
+     * @param consumingProperties the consuming properties of the subscription
+     * @param converter converts the topic and the payload of an arrived message to the published element
+     * @param bufferSize the maximum number of the buffered messages
+     * @param transportSubscriber creates the transport subscription, eg. through a subscription registrar
+     * @throws IllegalArgumentException if any argument is null or the buffer size isn't positive
+     */
+    public FlowPublisher(MessageClient client,
+                         ConsumingProperties consumingProperties,
+                         BiFunction<String, byte[], T> converter,
+                         int bufferSize,
+                         BiConsumer<ConsumingProperties, BiConsumer<String, byte[]>> transportSubscriber) {
+        Assert.notNull(client, "Message client must be set");
+        Assert.notNull(consumingProperties, "Consuming properties must be set");
+        Assert.notNull(converter, "Converter must be set");
+        Assert.isTrue(bufferSize > 0, "Buffer size must be positive");
+        Assert.notNull(transportSubscriber, "Transport subscriber must be set");
+        this.client = client;
+        this.consumingProperties = consumingProperties;
+        this.converter = converter;
+        this.bufferSize = bufferSize;
+        this.transportSubscriber = transportSubscriber;
+    }
+
+    /**
+     * Subscribes a subscriber to the messages. The transport subscription is created at the
+     * first call. A subscriber is rejected with {@link IllegalStateException} if there is
+     * another active subscriber.
+     *
+     * @param subscriber the subscriber
+     * @throws NullPointerException if the subscriber is null
+     */
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber must be set");
+        }
+        FlowSubscription previous = currentSubscription.get();
+        FlowSubscription subscription = new FlowSubscription(subscriber);
+        if ((previous != null && !previous.cancelled) || !currentSubscription.compareAndSet(previous, subscription)) {
+            subscriber.onSubscribe(REJECTED);
+            subscriber.onError(new IllegalStateException("Message flow of " + consumingProperties.getTopic() + " has already a subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(subscription);
+        if (transportSubscribed.compareAndSet(false, true)) {
+            transportSubscriber.accept(consumingProperties, this::arrived);
+        }
+    }
+
+    /**
+     * Returns the number of the dropped messages.
+     *
+     * @return the number of dropped messages
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Passes an arrived message to the current subscription.
+     *
+     * @param topic the topic of the message
+     * @param content the message payload
+     */
+    private void arrived(String topic, byte[] content) {
+        FlowSubscription subscription = currentSubscription.get();
+        if (subscription == null || subscription.cancelled) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        T element = converter.apply(topic, content);
+        if (element == null) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        subscription.offer(element);
+    }
+
+    /**
+     * Pauses the message client if it isn't paused yet.
+     */
+    private void pause() {
+        if (paused.compareAndSet(false, true)) {
+            log.debug("Pause message flow of {}", consumingProperties.getTopic());
+            client.pause(consumingProperties);
+        }
+    }
+
+    /**
+     * Resumes the message client if it's paused.
+     */
+    private void resume() {
+        if (paused.compareAndSet(true, false)) {
+            log.debug("Resume message flow of {}", consumingProperties.getTopic());
+            client.resume(consumingProperties);
+        }
+    }
+
+    /**
+     * The subscription of a subscriber with the buffer of the elements and the requested demand.
+     * The elements are emitted by a serialized drain loop, so the subscriber is called by one
+     * thread at a time, and the request calls from the subscriber aren't recursive.
+     */
+    private final class FlowSubscription implements Subscription {
+
+        /**
+         * The subscriber
+         */
+        private final Subscriber<? super T> subscriber;
+
+        /**
+         * The buffered elements
+         */
+        private final Queue<T> buffer = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Number of the buffered elements
+         */
+        private final AtomicInteger size = new AtomicInteger();
+
+        /**
+         * The requested and not yet emitted elements
+         */
+        private final AtomicLong demand = new AtomicLong();
+
+        /**
+         * Number of the pending drain requests
+         */
+        private final AtomicInteger drainRequests = new AtomicInteger();
+
+        /**
+         * The error of an invalid request, it's signalled by the drain loop
+         */
+        private volatile Throwable requestError;
+
+        /**
+         * Indicates that the subscription is cancelled
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * Constructs the subscription.
+         *
+         * @param subscriber the subscriber
+         */
+        private FlowSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Adds the demand of the subscriber, it's capped at {@link Long#MAX_VALUE}.
+         *
+         * @param n the number of the requested elements
+         */
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                requestError = new IllegalArgumentException("Requested number of elements must be positive, but it's " + n);
+            } else {
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            drain();
+        }
+
+        /**
+         * Cancels the subscription. The buffered elements are dropped, and the publisher accepts
+         * a new subscriber. The transport subscription remains, so the messages arriving without
+         * subscriber are dropped.
+         */
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        /**
+         * Buffers an element and pauses the message client if the buffer is full. The element
+         * is dropped if the buffer is full already.
+         *
+         * @param element the element to publish
+         */
+        private void offer(T element) {
+            if (size.get() >= bufferSize) {
+                if (droppedCount.getAndIncrement() == 0) {
+                    log.warn("Buffer of message flow {} is full, the client cannot be paused, messages are dropped", consumingProperties.getTopic());
+                }
+                return;
+            }
+            buffer.offer(element);
+            if (size.incrementAndGet() >= bufferSize) {
+                pause();
+            }
+            drain();
+        }
+
+        /**
+         * Emits the buffered elements while there is demand. Only one thread runs the loop,
+         * the other callers only mark that the loop has to run again.
+         */
+        private void drain() {
+            if (drainRequests.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (!cancelled && requestError != null) {
+                    cancelled = true;
+                    subscriber.onError(requestError);
+                }
+                if (cancelled) {
+                    buffer.clear();
+                    size.set(0);
+                } else {
+                    emit();
+                }
+                if (size.get() <= bufferSize / 2) {
+                    resume();
+                }
+                missed = drainRequests.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Emits the buffered elements while there is demand.
+         */
+        private void emit() {
+            while (!cancelled && demand.get() > 0) {
+                T element = buffer.poll();
+                if (element == null) {
+                    return;
+                }
+                size.decrementAndGet();
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                try {
+                    subscriber.onNext(element);
+                } catch (RuntimeException e) {
+                    log.error("Subscriber of message flow {} failed, the subscription is cancelled", consumingProperties.getTopic(), e);
+                    cancelled = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.HashedWheelTimer;
+import com.celadonsea.palm.topic.TopicMatcher;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Message broker inside the JVM for the {@link InMemoryMessageClient in-memory clients}.
+ * <p>
+ * The published messages are routed to the subscriptions by the wildcard rules of the topic
+ * format of the subscribing client. Every subscription has a bounded queue, which is drained
+ * in order on the executor of its client. The quality of service of a delivery is the lower one
+ * of the publishing and the subscription:
+ * <ul>
+ *     <li>QoS 0 messages are dropped if the queue of the subscription is full,</li>
+ *     <li>QoS 1 and 2 messages block the publisher until the queue has room, or fail the
+ *     publishing after the block timeout.</li>
+ * </ul>
+ * The members of a shared subscription group ($share/group/filter) get the messages in
+ * round robin. A constant latency can be injected, then every message is delivered after
+ * the latency, in order of the publishing.
+ * <p>
+ * The brokers are registered by name, so the clients configured with the same broker URL
+ * (memory://name) share the broker.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see InMemoryMessageClient
+ */
+@Slf4j
+public class InMemoryBroker {
+
+    /**
+     * Default capacity of the subscription queues
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * Default time in milliseconds while a QoS 1 or 2 publishing waits for a full queue
+     */
+    public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * The brokers by name
+     */
+    private static final Map<String, InMemoryBroker> BROKERS = new ConcurrentHashMap<>();
+
+    /**
+     * Name of the broker
+     * -- GETTER --
+     * Returns the name of the broker
+     *
+     * @return the broker name
+     */
+    @Getter
+    private final String name;
+
+    /**
+     * Latency of the deliveries in milliseconds
+     * -- GETTER --
+     * Returns the latency of the deliveries
+     *
+     * @return the latency in milliseconds
+     */
+    @Getter
+    private final long latencyMillis;
+
+    /**
+     * Capacity of the subscription queues
+     */
+    private final int queueCapacity;
+
+    /**
+     * Time in milliseconds while a QoS 1 or 2 publishing waits for a full queue
+     */
+    private final long blockTimeoutMillis;
+
+    /**
+     * The timer of the delayed deliveries, null if there is no latency
+     */
+    private final HashedWheelTimer timer;
+
+    /**
+     * The non-shared subscriptions
+     */
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * The shared subscription groups by group name and topic filter
+     */
+    private final Map<String, SharedGroup> sharedGroups = new ConcurrentHashMap<>();
+
+    /**
+     * Number of the QoS 0 messages dropped because of full queues
+     */
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Constructs a broker without latency.
+     *
+     * @param name name of the broker
+     */
+    public InMemoryBroker(String name) {
+        this(name, 0, DEFAULT_QUEUE_CAPACITY, DEFAULT_BLOCK_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructs a broker.
+     *
+     * @param name name of the broker
+     * @param latencyMillis latency of the deliveries in milliseconds, 0 for immediate delivery
+     * @param queueCapacity capacity of the subscription queues
+     * @param blockTimeoutMillis time in milliseconds while a QoS 1 or 2 publishing waits for a full queue
+     * @throws IllegalArgumentException if the name is empty, the latency is negative or the capacity or the timeout is not positive
+     */
+    public InMemoryBroker(String name, long latencyMillis, int queueCapacity, long blockTimeoutMillis) {
+        Assert.hasText(name, "Broker name must be set");
+        Assert.isTrue(latencyMillis >= 0, "Latency must not be negative");
+        Assert.isTrue(queueCapacity > 0, "Queue capacity must be positive");
+        Assert.isTrue(blockTimeoutMillis > 0, "Block timeout must be positive");
+        this.name = name;
+        this.latencyMillis = latencyMillis;
+        this.queueCapacity = queueCapacity;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.timer = latencyMillis > 0
+            ? new HashedWheelTimer("palm-memory-" + name, 1, TimeUnit.MILLISECONDS, HashedWheelTimer.DEFAULT_WHEEL_SIZE)
+            : null;
+    }
+
+    /**
+     * Returns the broker registered with the name of the broker URL, or registers a new one.
+     * The URL has the format memory://name?latencyMillis=5&amp;queueCapacity=1024, the parameters
+     * are optional and they are used only if the broker is created.
+     *
+     * @param brokerUrl the broker URL
+     * @return the registered broker
+     * @throws IllegalArgumentException if the URL is invalid
+     */
+    public static InMemoryBroker forUrl(String brokerUrl) {
+        Assert.hasText(brokerUrl, "Broker URL must be set");
+        String address = brokerUrl.startsWith("memory://") ? brokerUrl.substring("memory://".length()) : brokerUrl;
+        int queryStart = address.indexOf('?');
+        String brokerName = queryStart < 0 ? address : address.substring(0, queryStart);
+        return BROKERS.computeIfAbsent(brokerName, key -> {
+            long latency = 0;
+            int capacity = DEFAULT_QUEUE_CAPACITY;
+            if (queryStart >= 0) {
+                for (String parameter : address.substring(queryStart + 1).split("&")) {
+                    String[] keyValue = parameter.split("=", 2);
+                    Assert.isTrue(keyValue.length == 2, "Invalid broker URL parameter: " + parameter);
+                    if ("latencyMillis".equals(keyValue[0])) {
+                        latency = Long.parseLong(keyValue[1]);
+                    } else if ("queueCapacity".equals(keyValue[0])) {
+                        capacity = Integer.parseInt(keyValue[1]);
+                    } else {
+                        throw new IllegalArgumentException("Unknown broker URL parameter: " + keyValue[0]);
+                    }
+                }
+            }
+            return new InMemoryBroker(key, latency, capacity, DEFAULT_BLOCK_TIMEOUT_MILLIS);
+        });
+    }
+
+    /**
+     * Registers a broker by its name, so the clients of its URL are connected to it.
+     *
+     * @param broker the broker to register
+     * @throws IllegalArgumentException if another broker is registered with the same name
+     */
+    public static void register(InMemoryBroker broker) {
+        Assert.isTrue(BROKERS.putIfAbsent(broker.getName(), broker) == null, "Broker " + broker.getName() + " is already registered");
+    }
+
+    /**
+     * Removes the broker from the registry and stops its timer.
+     *
+     * @param broker the broker to remove
+     */
+    public static void unregister(InMemoryBroker broker) {
+        BROKERS.remove(broker.getName(), broker);
+        if (broker.timer != null) {
+            broker.timer.stop();
+        }
+    }
+
+    /**
+     * Routes a message to the matching subscriptions and to one member of every matching
+     * shared subscription group.
+     *
+     * @param topic the topic of the message
+     * @param message the payload, it's not copied
+     * @param qos the quality of service of the publishing
+     * @throws ConnectionException if a QoS 1 or 2 message cannot be queued in time
+     */
+    public void publish(String topic, byte[] message, int qos) {
+        long dueNanos = latencyMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(latencyMillis) : 0;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.matcher.matches(topic)) {
+                subscription.enqueue(new Delivery(topic, message, dueNanos), Math.min(qos, subscription.qos));
+            }
+        }
+        for (SharedGroup sharedGroup : sharedGroups.values()) {
+            if (sharedGroup.matcher.matches(topic)) {
+                Subscription member = sharedGroup.next();
+                if (member != null) {
+                    member.enqueue(new Delivery(topic, message, dueNanos), Math.min(qos, member.qos));
+                }
+            }
+        }
+    }
+
+    /**
+     * Subscribes a consumer to a topic filter.
+     *
+     * @param filter the topic filter without the shared subscription prefix
+     * @param matcher the compiled topic filter
+     * @param group the shared subscription group, null for a non-shared subscription
+     * @param qos the quality of service of the subscription
+     * @param executor the executor of the deliveries
+     * @param consumer the message consumer
+     * @return the subscription
+     */
+    public Subscription subscribe(String filter, TopicMatcher matcher, String group, int qos, Executor executor, BiConsumer<String, byte[]> consumer) {
+        Subscription subscription = new Subscription(matcher, group == null ? null : group + "/" + filter, qos, executor, consumer);
+        if (group == null) {
+            subscriptions.add(subscription);
+        } else {
+            sharedGroups.computeIfAbsent(subscription.groupKey, key -> new SharedGroup(matcher)).members.add(subscription);
+        }
+        return subscription;
+    }
+
+    /**
+     * Returns the number of the QoS 0 messages dropped because of full queues.
+     *
+     * @return the number of the dropped messages
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * A subscription with its queue of the deliveries.
+     */
+    public final class Subscription {
+
+        /**
+         * The compiled topic filter
+         */
+        private final TopicMatcher matcher;
+
+        /**
+         * The key of the shared subscription group, null if it's not shared
+         */
+        private final String groupKey;
+
+        /**
+         * The quality of service of the subscription
+         */
+        private final int qos;
+
+        /**
+         * The executor of the deliveries
+         */
+        private final Executor executor;
+
+        /**
+         * The message consumer
+         */
+        private final BiConsumer<String, byte[]> consumer;
+
+        /**
+         * The deliveries in order of the publishing
+         */
+        private final BlockingQueue<Delivery> queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        /**
+         * True while a task drains the queue
+         */
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        /**
+         * True if the deliveries are suspended
+         */
+        private volatile boolean paused;
+
+        /**
+         * True if the subscription is cancelled
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * Constructs the subscription.
+         *
+         * @param matcher the compiled topic filter
+         * @param groupKey the key of the shared subscription group or null
+         * @param qos the quality of service
+         * @param executor the executor of the deliveries
+         * @param consumer the message consumer
+         */
+        private Subscription(TopicMatcher matcher, String groupKey, int qos, Executor executor, BiConsumer<String, byte[]> consumer) {
+            this.matcher = matcher;
+            this.groupKey = groupKey;
+            this.qos = qos;
+            this.executor = executor;
+            this.consumer = consumer;
+        }
+
+        /**
+         * Suspends the deliveries. The messages are queued until the queue is full.
+         */
+        public void pause() {
+            paused = true;
+        }
+
+        /**
+         * Resumes the deliveries.
+         */
+        public void resume() {
+            paused = false;
+            scheduleDrain();
+        }
+
+        /**
+         * Removes the subscription from the broker and drops its queued messages.
+         */
+        public void cancel() {
+            cancelled = true;
+            if (groupKey == null) {
+                subscriptions.remove(this);
+            } else {
+                SharedGroup sharedGroup = sharedGroups.get(groupKey);
+                if (sharedGroup != null) {
+                    sharedGroup.members.remove(this);
+                }
+            }
+            queue.clear();
+        }
+
+        /**
+         * Returns the number of the queued messages.
+         *
+         * @return the queue size
+         */
+        public int getQueueSize() {
+            return queue.size();
+        }
+
+        /**
+         * Queues a delivery with the given quality of service and starts the draining.
+         *
+         * @param delivery the delivery
+         * @param qos the quality of service of the delivery
+         * @throws ConnectionException if a QoS 1 or 2 delivery cannot be queued in time
+         */
+        private void enqueue(Delivery delivery, int qos) {
+            if (qos <= 0) {
+                if (!queue.offer(delivery)) {
+                    droppedCount.incrementAndGet();
+                    log.debug("Queue is full, QoS 0 message of topic {} is dropped", delivery.topic);
+                }
+            } else {
+                try {
+                    if (!queue.offer(delivery, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        throw new ConnectionException("Cannot deliver message of topic " + delivery.topic + ", the queue of the subscription is full");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ConnectionException("Interrupted while delivering message of topic " + delivery.topic, e);
+                }
+            }
+            scheduleDrain();
+        }
+
+        /**
+         * Submits the draining task unless it's running or the subscription is paused.
+         */
+        private void scheduleDrain() {
+            if (!paused && !cancelled && !queue.isEmpty() && draining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        /**
+         * Delivers the queued messages in order until the queue is empty, the subscription is
+         * paused or the next message is not due yet.
+         */
+        private void drain() {
+            try {
+                Delivery delivery;
+                while (!paused && !cancelled && (delivery = queue.peek()) != null) {
+                    long delayNanos = delivery.dueNanos - System.nanoTime();
+                    if (timer != null && delayNanos > 0) {
+                        timer.schedule(this::scheduleDrain, delayNanos, TimeUnit.NANOSECONDS);
+                        return;
+                    }
+                    queue.poll();
+                    try {
+                        consumer.accept(delivery.topic, delivery.message);
+                    } catch (RuntimeException e) {
+                        log.error("Cannot consume message of topic {}", delivery.topic, e);
+                    }
+                }
+            } finally {
+                draining.set(false);
+            }
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * The members of a shared subscription group.
+     */
+    private static final class SharedGroup {
+
+        /**
+         * The compiled topic filter of the group
+         */
+        private final TopicMatcher matcher;
+
+        /**
+         * The members of the group
+         */
+        private final List<Subscription> members = new CopyOnWriteArrayList<>();
+
+        /**
+         * The counter of the round robin
+         */
+        private final AtomicInteger counter = new AtomicInteger();
+
+        /**
+         * Constructs the group.
+         *
+         * @param matcher the compiled topic filter
+         */
+        private SharedGroup(TopicMatcher matcher) {
+            this.matcher = matcher;
+        }
+
+        /**
+         * Returns the next member in round robin.
+         *
+         * @return the next member, or null if the group is empty
+         */
+        private Subscription next() {
+            Object[] current = members.toArray();
+            if (current.length == 0) {
+                return null;
+            }
+            return (Subscription) current[Math.floorMod(counter.getAndIncrement(), current.length)];
+        }
+    }
+
+    /**
+     * A message queued for a subscription.
+     */
+    private static final class Delivery {
+
+        /**
+         * The topic of the message
+         */
+        private final String topic;
+
+        /**
+         * The payload of the message
+         */
+        private final byte[] message;
+
+        /**
+         * The time of the delivery by {@link System#nanoTime()}, it's used only if the broker has latency
+         */
+        private final long dueNanos;
+
+        /**
+         * Constructs the delivery.
+         *
+         * @param topic the topic of the message
+         * @param message the payload of the message
+         * @param dueNanos the time of the delivery
+         */
+        private Delivery(String topic, byte[] message, long dueNanos) {
+            this.topic = topic;
+            this.message = message;
+            this.dueNanos = dueNanos;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.config.MessageClientConfig;
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.listener.CallBack;
+import com.celadonsea.palm.publisher.DefaultMessagePublisher;
+import com.celadonsea.palm.publisher.MessagePublisher;
+import com.celadonsea.palm.security.CredentialStore;
+import com.celadonsea.palm.topic.TopicFormat;
+import com.celadonsea.palm.topic.TopicMatcher;
+import com.celadonsea.palm.topic.TopicTransformer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Message client connected to an {@link InMemoryBroker} inside the JVM. It can be used for
+ * embedded single-node deployments and as the baseline transport of the benchmarks.
+ * <p>
+ * The broker is selected by the broker URL of the configuration (memory://name), the clients
+ * with the same URL exchange messages. The deliveries of the client run on its own thread pool,
+ * sized by the {@link MessageClientConfig#getMaxThread() max thread} configuration, and every
+ * subscription gets its messages in order of the publishing. The subscriptions have the
+ * {@link MessageClientConfig#getQos() QoS} of the configuration, the shared subscriptions
+ * ($share/group/filter) are load balanced among the members of the group.
+ * <p>
+ * The payloads aren't copied, so they must not be modified after the publishing.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see InMemoryBroker
+ */
+@Slf4j
+public class InMemoryMessageClient implements MessageClient {
+
+    /**
+     * Default maximal number of the delivery threads
+     */
+    private static final int DEFAULT_MAX_THREAD = 10;
+
+    /**
+     * The client configuration
+     */
+    private final MessageClientConfig messageClientConfig;
+
+    /**
+     * The broker of the client
+     */
+    private final InMemoryBroker broker;
+
+    /**
+     * The subscriptions by the subscribed topic
+     */
+    private final Map<String, InMemoryBroker.Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    /**
+     * The topic format of the client
+     */
+    private volatile TopicFormat topicFormat = new TopicFormat('/', '+', '#');
+
+    /**
+     * The executor of the deliveries, null until the connection
+     */
+    private volatile ExecutorService executorService;
+
+    /**
+     * Constructs the client connected to the broker of the configured broker URL.
+     *
+     * @param messageClientConfig the client configuration
+     * @throws IllegalArgumentException if the broker URL is invalid
+     */
+    public InMemoryMessageClient(MessageClientConfig messageClientConfig) {
+        this(messageClientConfig, InMemoryBroker.forUrl(messageClientConfig.getBrokerUrl()));
+    }
+
+    /**
+     * Constructs the client connected to the broker of the configured broker URL. The in-memory
+     * connection is not secured, the credential store is not used.
+     *
+     * @param messageClientConfig the client configuration
+     * @param credentialStore the credential store, it's ignored
+     * @throws IllegalArgumentException if the broker URL is invalid
+     */
+    public InMemoryMessageClient(MessageClientConfig messageClientConfig, CredentialStore credentialStore) {
+        this(messageClientConfig);
+    }
+
+    /**
+     * Constructs the client connected to the given broker.
+     *
+     * @param messageClientConfig the client configuration
+     * @param broker the broker
+     * @throws IllegalArgumentException if the configuration or the broker is null
+     */
+    public InMemoryMessageClient(MessageClientConfig messageClientConfig, InMemoryBroker broker) {
+        Assert.notNull(messageClientConfig, "Message client config must be set");
+        Assert.notNull(broker, "Broker must be set");
+        this.messageClientConfig = messageClientConfig;
+        this.broker = broker;
+    }
+
+    /**
+     * Starts the delivery threads of the client.
+     */
+    @Override
+    public synchronized void connect() {
+        if (executorService == null) {
+            int maxThread = messageClientConfig.getMaxThread() > 0 ? messageClientConfig.getMaxThread() : DEFAULT_MAX_THREAD;
+            int keepAliveTime = messageClientConfig.getThreadKeepAliveTime() < 0
+                ? CallBack.DEFAULT_KEEP_ALIVE_TIME
+                : messageClientConfig.getThreadKeepAliveTime();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThread, maxThread, keepAliveTime, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            executor.allowCoreThreadTimeOut(keepAliveTime > 0);
+            executorService = executor;
+            log.info("Connected to in-memory broker {}", broker.getName());
+        }
+    }
+
+    /**
+     * Connects the client if it's not connected. The subscriptions of the client are kept
+     * by the broker, so they aren't lost.
+     *
+     * @param callBack the callback of the client, it's not used
+     */
+    @Override
+    public void reconnect(CallBack callBack) {
+        connect();
+    }
+
+    /**
+     * Removes the subscriptions of the client and stops its delivery threads.
+     */
+    public synchronized void disconnect() {
+        subscriptions.values().forEach(InMemoryBroker.Subscription::cancel);
+        subscriptions.clear();
+        if (executorService != null) {
+            executorService.shutdown();
+            executorService = null;
+        }
+    }
+
+    /**
+     * Publishes the message to the broker. The unset QoS is replaced by the QoS of the configuration.
+     *
+     * @param message message payload, it must not be modified after the publishing
+     * @param producingProperties properties for the publishing
+     * @throws ConnectionException if the client is not connected or a QoS 1 or 2 message cannot be delivered
+     */
+    @Override
+    public void publish(byte[] message, ProducingProperties producingProperties) {
+        checkConnected();
+        int qos = producingProperties.getQos() == ProducingProperties.DEFAULT_UNSET_QOS
+            ? messageClientConfig.getQos()
+            : producingProperties.getQos();
+        broker.publish(producingProperties.getTopic(), message, qos);
+    }
+
+    /**
+     * Subscribes the consumer to the topic. A previous subscription of the same topic is replaced.
+     *
+     * @param consumingProperties the consuming properties
+     * @param messageConsumer the message consumer function
+     * @throws ConnectionException if the client is not connected
+     */
+    @Override
+    public void subscribe(ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer) {
+        checkConnected();
+        String topic = consumingProperties.getTopic();
+        String filter = topicTransformer().apply(topic);
+        String group = null;
+        if (!filter.equals(topic)) {
+            String groupAndFilter = topic.substring(topic.indexOf(topicFormat.getLevelSeparator()) + 1);
+            group = groupAndFilter.substring(0, groupAndFilter.indexOf(topicFormat.getLevelSeparator()));
+        }
+        InMemoryBroker.Subscription subscription = broker.subscribe(filter, TopicMatcher.compile(filter, topicFormat), group,
+            messageClientConfig.getQos(), executorService, messageConsumer);
+        InMemoryBroker.Subscription previous = subscriptions.put(topic, subscription);
+        if (previous != null) {
+            previous.cancel();
+        }
+        log.info("Subscribed to topic {} of in-memory broker {}", topic, broker.getName());
+    }
+
+    /**
+     * Suspends the deliveries of the subscription, the messages are queued by the broker.
+     *
+     * @param consumingProperties the consuming properties of the subscription
+     */
+    @Override
+    public void pause(ConsumingProperties consumingProperties) {
+        InMemoryBroker.Subscription subscription = subscriptions.get(consumingProperties.getTopic());
+        if (subscription != null) {
+            subscription.pause();
+        }
+    }
+
+    /**
+     * Resumes the deliveries of the subscription.
+     *
+     * @param consumingProperties the consuming properties of the subscription
+     */
+    @Override
+    public void resume(ConsumingProperties consumingProperties) {
+        InMemoryBroker.Subscription subscription = subscriptions.get(consumingProperties.getTopic());
+        if (subscription != null) {
+            subscription.resume();
+        }
+    }
+
+    /**
+     * Returns the topic format of the client.
+     *
+     * @return topic format description
+     */
+    @Override
+    public TopicFormat getTopicFormat() {
+        return topicFormat;
+    }
+
+    /**
+     * Sets the topic format of the client, it's used by the later subscriptions.
+     *
+     * @param topicFormat the new topic format
+     */
+    @Override
+    public void setTopicFormat(TopicFormat topicFormat) {
+        this.topicFormat = topicFormat;
+    }
+
+    /**
+     * Returns a message publisher which publishes through this client.
+     *
+     * @return message publisher
+     */
+    @Override
+    public MessagePublisher publisher() {
+        return new DefaultMessagePublisher(this);
+    }
+
+    /**
+     * Returns the transformation of the shared subscription topics to their topic filter.
+     *
+     * @return client specific transformation function for topics
+     */
+    @Override
+    public Function<String, String> topicTransformer() {
+        return originalTopic -> TopicTransformer.transform(originalTopic).ifShared().andReturn();
+    }
+
+    /**
+     * Checks that the client is connected.
+     *
+     * @throws ConnectionException if the client is not connected
+     */
+    private void checkConnected() {
+        if (executorService == null) {
+            throw new ConnectionException("Client is not connected to in-memory broker " + broker.getName());
+        }
+    }
+}
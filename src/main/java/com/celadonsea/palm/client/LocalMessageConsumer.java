@@ -0,0 +1,26 @@
+package com.celadonsea.palm.client;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Message consumer which can take the published objects directly, when the message is
+ * delivered inside the same JVM by a {@link LoopbackMessageClient}. The encoding and the
+ * decoding of the payload is skipped in this case.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see LoopbackMessageClient
+ */
+public interface LocalMessageConsumer extends BiConsumer<String, byte[]> {
+
+    /**
+     * Consumes a published object without its payload. The consumer may refuse the object,
+     * eg. if it's not an instance of the expected message body type, then the message is
+     * encoded and passed to {@link #accept(Object, Object)}.
+     *
+     * @param topic the topic of the message
+     * @param message the published object, it must not be modified by the consumer
+     * @return true if the object was consumed, false if the consumer needs the payload
+     */
+    boolean acceptObject(String topic, Object message);
+}
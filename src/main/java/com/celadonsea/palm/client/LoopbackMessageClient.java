@@ -0,0 +1,493 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.codec.MessageCodec;
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.topic.TopicMatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Message client which delivers the published messages to the matching subscriptions of the
+ * same client directly, without the round trip through the message broker.
+ * <p>
+ * The subscriptions are registered at the wrapped client too, so the messages of other
+ * publishers still arrive through the broker. The broker copy of a message which was
+ * delivered locally is recognized and dropped, so the local subscribers get every message
+ * once. The messages of the topics marked as local-only aren't published to the broker at all.
+ * <p>
+ * The objects published by {@link #publishObject(Object, MessageCodec, ProducingProperties)}
+ * are passed to the {@link LocalMessageConsumer local consumers} as they are, so the listeners
+ * expecting the type of the object skip the encoding and the decoding. The payload is encoded
+ * only if the broker or a consumer needs it.
+ * <p>
+ * Shared subscriptions are served only by the broker, because a local delivery would bypass
+ * the load balancing of the group.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see LocalMessageConsumer
+ */
+@Slf4j
+public class LoopbackMessageClient extends DelegatingMessageClient {
+
+    /**
+     * Default time in milliseconds while the broker copy of a local message is expected
+     */
+    public static final long DEFAULT_ECHO_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * Maximum number of the expected broker copies per subscription
+     */
+    private static final int MAX_EXPECTED_ECHOES = 1024;
+
+    /**
+     * Executor of the local deliveries
+     */
+    private final Executor executor;
+
+    /**
+     * The filters of the topics which aren't published to the broker
+     */
+    private final List<TopicMatcher> localOnlyTopics;
+
+    /**
+     * The filter definitions of the local-only topics, compiled at the first publishing
+     */
+    private final Collection<String> localOnlyFilters;
+
+    /**
+     * Time in milliseconds while the broker copy of a local message is expected
+     */
+    private final long echoTimeoutMillis;
+
+    /**
+     * The local subscriptions
+     */
+    private final List<LocalSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructs the client which publishes every message to the broker too.
+     *
+     * @param delegate the wrapped message client
+     * @param executor executor of the local deliveries
+     * @throws IllegalArgumentException if the client or the executor is null
+     */
+    public LoopbackMessageClient(MessageClient delegate, Executor executor) {
+        this(delegate, executor, Collections.emptyList(), DEFAULT_ECHO_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructs the client.
+     *
+     * @param delegate the wrapped message client
+     * @param executor executor of the local deliveries
+     * @param localOnlyFilters the topic filters of the messages which aren't published to the broker
+     * @param echoTimeoutMillis time in milliseconds while the broker copy of a local message is expected
+     * @throws IllegalArgumentException if any of the parameters is null or the timeout is not positive
+     */
+    public LoopbackMessageClient(MessageClient delegate, Executor executor, Collection<String> localOnlyFilters, long echoTimeoutMillis) {
+        super(delegate);
+        Assert.notNull(executor, "Executor must be set");
+        Assert.notNull(localOnlyFilters, "Local-only topics must be set");
+        Assert.isTrue(echoTimeoutMillis > 0, "Echo timeout must be positive");
+        this.executor = executor;
+        this.localOnlyFilters = localOnlyFilters;
+        this.localOnlyTopics = new CopyOnWriteArrayList<>();
+        this.echoTimeoutMillis = echoTimeoutMillis;
+    }
+
+    /**
+     * Publishes the message with the wrapped client unless the topic is local-only, and delivers it
+     * to the matching local subscriptions. The broker copy is expected only after the wrapped client
+     * accepted the message, so a failed publishing leaves no expectation behind.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     */
+    @Override
+    public void publish(byte[] message, ProducingProperties producingProperties) {
+        String topic = producingProperties.getTopic();
+        boolean localOnly = isLocalOnly(topic);
+        if (!localOnly) {
+            getDelegate().publish(message, producingProperties);
+        }
+        byte[] echo = null;
+        for (LocalSubscription subscription : subscriptions) {
+            if (subscription.matcher.matches(topic)) {
+                if (!localOnly && echo == null) {
+                    echo = message.clone();
+                }
+                deliver(subscription, topic, echo, () -> subscription.consumer.accept(topic, message));
+            }
+        }
+    }
+
+    /**
+     * Publishes the remaining bytes of the buffer like {@link #publish(byte[], ProducingProperties)}.
+     * The bytes are copied, because the local consumers may get them later.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     */
+    @Override
+    public void publish(ByteBuffer message, ProducingProperties producingProperties) {
+        ByteBuffer source = message.duplicate();
+        byte[] payload = new byte[source.remaining()];
+        source.get(payload);
+        publish(payload, producingProperties);
+    }
+
+    /**
+     * Publishes an object. The local consumers accepting the object get it directly,
+     * the payload is encoded with the codec only for the broker and the other consumers.
+     * The object must not be modified after the publishing.
+     *
+     * @param message the object to publish
+     * @param messageCodec the codec of the payload
+     * @param producingProperties properties for the publishing
+     * @throws IllegalArgumentException if the message or the codec is null
+     * @throws ConnectionException if the object cannot be encoded for the broker
+     */
+    public void publishObject(Object message, MessageCodec messageCodec, ProducingProperties producingProperties) {
+        Assert.notNull(message, "Message must be set");
+        Assert.notNull(messageCodec, "Message codec must be set");
+        String topic = producingProperties.getTopic();
+        boolean localOnly = isLocalOnly(topic);
+        EncodedPayload payload = new EncodedPayload(message, messageCodec);
+        if (!localOnly) {
+            getDelegate().publish(payload.get(), producingProperties);
+        }
+        for (LocalSubscription subscription : subscriptions) {
+            if (subscription.matcher.matches(topic)) {
+                BiConsumer<String, byte[]> consumer = subscription.consumer;
+                byte[] echo = localOnly ? null : payload.get();
+                if (consumer instanceof LocalMessageConsumer) {
+                    deliver(subscription, topic, echo, () -> {
+                        if (!((LocalMessageConsumer) consumer).acceptObject(topic, message)) {
+                            consumer.accept(topic, payload.get());
+                        }
+                    });
+                } else {
+                    deliver(subscription, topic, echo, () -> consumer.accept(topic, payload.get()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Subscribes with the wrapped client, and registers the subscription for the local delivery
+     * unless it's a shared subscription.
+     *
+     * @param consumingProperties the consuming properties
+     * @param messageConsumer the message consumer function
+     */
+    @Override
+    public void subscribe(ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer) {
+        getDelegate().subscribe(consumingProperties, register(consumingProperties, messageConsumer));
+    }
+
+    /**
+     * Subscribes with the wrapped client at once, and registers the subscriptions for the local delivery.
+     *
+     * @param subscriptions the message consumer functions by the consuming properties
+     */
+    @Override
+    public void subscribe(Map<ConsumingProperties, BiConsumer<String, byte[]>> subscriptions) {
+        Map<ConsumingProperties, BiConsumer<String, byte[]>> brokerSubscriptions = new LinkedHashMap<>();
+        subscriptions.forEach((consumingProperties, messageConsumer) ->
+            brokerSubscriptions.put(consumingProperties, register(consumingProperties, messageConsumer)));
+        getDelegate().subscribe(brokerSubscriptions);
+    }
+
+    /**
+     * Registers a local subscription and returns the consumer of the broker messages, which
+     * drops the copies of the messages delivered locally.
+     *
+     * @param consumingProperties the consuming properties
+     * @param messageConsumer the message consumer function
+     * @return the consumer of the messages arriving from the broker
+     */
+    private BiConsumer<String, byte[]> register(ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer) {
+        String topic = consumingProperties.getTopic();
+        Function<String, String> transformer = topicTransformer();
+        if (transformer != null && !topic.equals(transformer.apply(topic))) {
+            log.debug("Shared subscription {} is served only by the broker", topic);
+            return messageConsumer;
+        }
+        LocalSubscription subscription = new LocalSubscription(TopicMatcher.compile(topic, getTopicFormat()), messageConsumer);
+        subscriptions.add(subscription);
+        return (arrivedTopic, message) -> {
+            if (!subscription.isEcho(arrivedTopic, message)) {
+                messageConsumer.accept(arrivedTopic, message);
+            }
+        };
+    }
+
+    /**
+     * Expects the broker copy of a message at a local subscription, and delivers the message on the executor.
+     * The expectation is removed if the delivery cannot be scheduled, so the broker copy isn't dropped.
+     *
+     * @param subscription the local subscription
+     * @param topic the topic of the message
+     * @param echo the expected payload of the broker copy, null if the message isn't published to the broker
+     * @param delivery the delivery of the message to the consumer of the subscription
+     */
+    private void deliver(LocalSubscription subscription, String topic, byte[] echo, Runnable delivery) {
+        if (echo == null) {
+            executor.execute(delivery);
+            return;
+        }
+        subscription.expectEcho(topic, echo);
+        try {
+            executor.execute(delivery);
+        } catch (RuntimeException e) {
+            subscription.forgetEcho(topic, echo);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if the topic matches a local-only filter.
+     *
+     * @param topic the topic of the message
+     * @return true if the message mustn't be published to the broker
+     */
+    private boolean isLocalOnly(String topic) {
+        if (localOnlyTopics.size() != localOnlyFilters.size()) {
+            synchronized (localOnlyTopics) {
+                if (localOnlyTopics.size() != localOnlyFilters.size()) {
+                    localOnlyTopics.addAll(localOnlyFilters.stream()
+                        .map(filter -> TopicMatcher.compile(filter, getTopicFormat()))
+                        .collect(Collectors.toList()));
+                }
+            }
+        }
+        for (TopicMatcher localOnlyTopic : localOnlyTopics) {
+            if (localOnlyTopic.matches(topic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Payload of a published object, encoded at the first request.
+     */
+    private static final class EncodedPayload {
+
+        /**
+         * The published object
+         */
+        private final Object message;
+
+        /**
+         * The codec of the payload
+         */
+        private final MessageCodec messageCodec;
+
+        /**
+         * The encoded payload, null until the first request
+         */
+        private volatile byte[] payload;
+
+        /**
+         * Constructs the payload.
+         *
+         * @param message the published object
+         * @param messageCodec the codec of the payload
+         */
+        private EncodedPayload(Object message, MessageCodec messageCodec) {
+            this.message = message;
+            this.messageCodec = messageCodec;
+        }
+
+        /**
+         * Returns the encoded payload.
+         *
+         * @return the payload
+         * @throws ConnectionException if the object cannot be encoded
+         */
+        private byte[] get() {
+            byte[] encoded = payload;
+            if (encoded == null) {
+                synchronized (this) {
+                    encoded = payload;
+                    if (encoded == null) {
+                        try {
+                            encoded = messageCodec.encode(message);
+                        } catch (IOException e) {
+                            throw new ConnectionException("Cannot encode message with codec " + messageCodec.getName(), e);
+                        }
+                        payload = encoded;
+                    }
+                }
+            }
+            return encoded;
+        }
+    }
+
+    /**
+     * A subscription served locally, with the broker copies expected of the local messages.
+     */
+    private final class LocalSubscription {
+
+        /**
+         * The topic filter of the subscription
+         */
+        private final TopicMatcher matcher;
+
+        /**
+         * The message consumer of the subscription
+         */
+        private final BiConsumer<String, byte[]> consumer;
+
+        /**
+         * The broker copies expected in order of the publishing, guarded by the deque itself
+         */
+        private final Deque<Echo> expectedEchoes = new ArrayDeque<>();
+
+        /**
+         * Constructs the subscription.
+         *
+         * @param matcher the topic filter
+         * @param consumer the message consumer
+         */
+        private LocalSubscription(TopicMatcher matcher, BiConsumer<String, byte[]> consumer) {
+            this.matcher = matcher;
+            this.consumer = consumer;
+        }
+
+        /**
+         * Registers the broker copy of a locally delivered message.
+         *
+         * @param topic the topic of the message
+         * @param payload the payload of the message
+         */
+        private void expectEcho(String topic, byte[] payload) {
+            long now = System.currentTimeMillis();
+            synchronized (expectedEchoes) {
+                expire(now);
+                if (expectedEchoes.size() >= MAX_EXPECTED_ECHOES) {
+                    expectedEchoes.pollFirst();
+                }
+                expectedEchoes.addLast(new Echo(topic, payload, now + echoTimeoutMillis));
+            }
+        }
+
+        /**
+         * Removes the expectation of a broker copy whose local delivery failed.
+         *
+         * @param topic the topic of the message
+         * @param payload the payload of the message
+         */
+        private void forgetEcho(String topic, byte[] payload) {
+            synchronized (expectedEchoes) {
+                Iterator<Echo> iterator = expectedEchoes.descendingIterator();
+                while (iterator.hasNext()) {
+                    Echo echo = iterator.next();
+                    if (echo.payload == payload && echo.topic.equals(topic)) {
+                        iterator.remove();
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns true and forgets the expectation if the arrived message is the broker copy
+         * of a locally delivered message.
+         *
+         * @param topic the topic of the arrived message
+         * @param payload the payload of the arrived message
+         * @return true if the message was already delivered locally
+         */
+        private boolean isEcho(String topic, byte[] payload) {
+            synchronized (expectedEchoes) {
+                if (expectedEchoes.isEmpty()) {
+                    return false;
+                }
+                expire(System.currentTimeMillis());
+                int hash = Arrays.hashCode(payload);
+                Iterator<Echo> iterator = expectedEchoes.iterator();
+                while (iterator.hasNext()) {
+                    Echo echo = iterator.next();
+                    if (echo.hash == hash && echo.topic.equals(topic) && Arrays.equals(echo.payload, payload)) {
+                        iterator.remove();
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+
+        /**
+         * Removes the expectations whose broker copy didn't arrive in time.
+         *
+         * @param now the current time in epoch milliseconds
+         */
+        private void expire(long now) {
+            while (!expectedEchoes.isEmpty() && expectedEchoes.peekFirst().deadline < now) {
+                expectedEchoes.pollFirst();
+            }
+        }
+    }
+
+    /**
+     * The expected broker copy of a locally delivered message.
+     */
+    private static final class Echo {
+
+        /**
+         * The topic of the message
+         */
+        private final String topic;
+
+        /**
+         * The payload of the message
+         */
+        private final byte[] payload;
+
+        /**
+         * The hash of the payload
+         */
+        private final int hash;
+
+        /**
+         * The time in epoch milliseconds until the copy is expected
+         */
+        private final long deadline;
+
+        /**
+         * Constructs the expectation.
+         *
+         * @param topic the topic of the message
+         * @param payload the payload of the message
+         * @param deadline the time in epoch milliseconds until the copy is expected
+         */
+        private Echo(String topic, byte[] payload, long deadline) {
+            this.topic = topic;
+            this.payload = payload;
+            this.hash = Arrays.hashCode(payload);
+            this.deadline = deadline;
+        }
+    }
+}
@@ -3,9 +3,14 @@ package com.celadonsea.palm.client;
 import com.celadonsea.palm.core.ConsumingProperties;
 import com.celadonsea.palm.core.ProducingProperties;
 import com.celadonsea.palm.listener.CallBack;
+import com.celadonsea.palm.message.InboundMessage;
 import com.celadonsea.palm.publisher.MessagePublisher;
 import com.celadonsea.palm.topic.TopicFormat;
+import org.reactivestreams.Publisher;
 
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
@@ -37,6 +42,25 @@ public interface MessageClient {
      */
     void publish(byte[] message, ProducingProperties producingProperties);
 
+    /**
+     * Publishes a message payload held by a byte buffer with the given properties.
+     * The remaining bytes of the buffer (from its position to its limit) are published,
+     * the position and limit of the given buffer are not changed.
+     *
+     * The default implementation copies the remaining bytes to a heap array and calls
+     * {@link #publish(byte[], ProducingProperties)}. Client implementations which are able
+     * to write buffers directly (eg. direct buffers to a channel) should override it to avoid the copy.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     */
+    default void publish(ByteBuffer message, ProducingProperties producingProperties) {
+        ByteBuffer source = message.duplicate();
+        byte[] payload = new byte[source.remaining()];
+        source.get(payload);
+        publish(payload, producingProperties);
+    }
+
     /**
      * Sets the consuming of messages with the given properties handling with a lambda function as callback
      *
@@ -45,6 +69,83 @@ public interface MessageClient {
      */
     void subscribe(ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer);
 
+    /**
+     * Sets the consuming of messages for several subscriptions at once, eg. the listeners
+     * collected at the startup of the application context.
+     *
+     * The default implementation calls {@link #subscribe(ConsumingProperties, BiConsumer)} for
+     * each subscription in the iteration order. Client implementations which are able to
+     * subscribe to several topics with one request (eg. MQTT SUBSCRIBE with a topic list)
+     * should override it to save the round trips to the broker.
+     *
+     * @param subscriptions the message consumer functions by the consuming properties
+     */
+    default void subscribe(Map<ConsumingProperties, BiConsumer<String, byte[]>> subscriptions) {
+        subscriptions.forEach(this::subscribe);
+    }
+
+    /**
+     * Returns a Reactive Streams publisher of the messages with the given properties. The
+     * messages are buffered by the demand of the subscriber, and the client is
+     * {@link #pause(ConsumingProperties) paused} while the buffer is full, so reactive pipelines
+     * (eg. Reactor or RxJava) can consume the messages without unbounded buffers.
+     *
+     * The transport subscription is created when the publisher is subscribed first.
+     *
+     * @param consumingProperties the consuming properties
+     * @return the publisher of the arrived messages
+     * @see FlowPublisher
+     */
+    default Publisher<InboundMessage> flow(ConsumingProperties consumingProperties) {
+        return new FlowPublisher<>(this, consumingProperties, InboundMessage::new);
+    }
+
+    /**
+     * Stops the delivery of the messages with the given properties from the transport, eg. by
+     * stopping the reads of the connection or by the flow control of the protocol. It's called
+     * by the {@link FlowPublisher flow publishers} when their buffer is full.
+     *
+     * The default implementation does nothing, so the messages still arrive, and the flow
+     * publishers drop the messages exceeding their buffer.
+     *
+     * @param consumingProperties the consuming properties of the paused subscription
+     */
+    default void pause(ConsumingProperties consumingProperties) {
+    }
+
+    /**
+     * Restarts the delivery of the messages paused by {@link #pause(ConsumingProperties)}.
+     *
+     * @param consumingProperties the consuming properties of the paused subscription
+     */
+    default void resume(ConsumingProperties consumingProperties) {
+    }
+
+    /**
+     * Publishes a request and returns the future of its reply. The reply topic is sent along
+     * with the payload in a {@link com.celadonsea.palm.message.RequestEnvelope RequestEnvelope},
+     * and the return value of the {@link com.celadonsea.palm.annotation.Listener @Listener} method
+     * consuming the request is published to it.
+     *
+     * The reply carries only the payload, so the failures of the consumer are not replied:
+     * if the listener method throws an exception or its returned stage completes exceptionally,
+     * nothing is published and the returned future completes with the timeout.
+     *
+     * The default implementation doesn't support the requests, the client should be wrapped
+     * with a {@link RequestingMessageClient} which holds the reply subscription and the
+     * outstanding requests.
+     *
+     * @param topic the topic of the request
+     * @param payload the request payload
+     * @param timeoutMillis the time to wait for the reply in milliseconds
+     * @return the future of the reply payload, it completes exceptionally with a
+     *         {@link java.util.concurrent.TimeoutException TimeoutException} if no reply arrives in time
+     * @throws UnsupportedOperationException if the client doesn't support requests
+     */
+    default CompletableFuture<byte[]> request(String topic, byte[] payload, long timeoutMillis) {
+        throw new UnsupportedOperationException(getClass().getName() + " doesn't support requests, wrap it with a RequestingMessageClient");
+    }
+
     /**
      * Returns the protocol specific topic format description.
      *
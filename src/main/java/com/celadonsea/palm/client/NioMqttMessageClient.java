@@ -0,0 +1,801 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.broker.EmbeddedMqttBroker;
+import com.celadonsea.palm.config.MessageClientConfig;
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.core.HashedWheelTimer;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.listener.CallBack;
+import com.celadonsea.palm.mqtt.BufferPool;
+import com.celadonsea.palm.mqtt.EventLoopGroup;
+import com.celadonsea.palm.mqtt.FrameHandler;
+import com.celadonsea.palm.mqtt.MqttConnection;
+import com.celadonsea.palm.mqtt.MqttFrame;
+import com.celadonsea.palm.mqtt.MqttPackets;
+import com.celadonsea.palm.publisher.DefaultMessagePublisher;
+import com.celadonsea.palm.publisher.InFlightWindow;
+import com.celadonsea.palm.publisher.MessagePublisher;
+import com.celadonsea.palm.security.CredentialStore;
+import com.celadonsea.palm.topic.TopicFormat;
+import com.celadonsea.palm.topic.TopicMatcher;
+import com.celadonsea.palm.topic.TopicTransformer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Non-blocking MQTT 3.1.1 client dialect. The connections are served by the
+ * {@link com.celadonsea.palm.mqtt.EventLoop event loops} of an {@link EventLoopGroup}, so a loop thread handles the
+ * connections of many clients, and the publishing doesn't wait for the socket.
+ * <p>
+ * The received packets are decoded from pooled buffers without copying, only the topic and
+ * the payload of a message is copied for the message consumers, which are called on the
+ * thread pool of the client. The packets sent in a burst are written with one gathering write,
+ * and the payload of a message is written after its header without copying.
+ * <p>
+ * The QoS 1 and 2 flows are completed asynchronously. The number of the unacknowledged
+ * messages is limited by the {@link MessageClientConfig#getMaxInFlight() max in-flight}
+ * configuration. The client connects with a clean session, and if the connection is lost,
+ * it reconnects and subscribes again after a delay. Secured connections are not supported.
+ * <p>
+ * The dialect is selected with the class name of the client in the configuration, the broker
+ * URL has the format tcp://host:port, or embedded://host:port for an {@link EmbeddedMqttBroker}
+ * started in the JVM.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see MessageClientFactory
+ */
+@Slf4j
+public class NioMqttMessageClient implements MessageClient, FrameHandler {
+
+    /**
+     * Default port of the MQTT brokers
+     */
+    public static final int DEFAULT_PORT = 1883;
+
+    /**
+     * Keep alive interval of the connections in seconds
+     */
+    public static final int KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * Default connection timeout in seconds
+     */
+    private static final int DEFAULT_CONNECTION_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Delay of the reconnection after a lost connection in milliseconds
+     */
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    /**
+     * Default maximal number of the dispatcher threads
+     */
+    private static final int DEFAULT_MAX_THREAD = 10;
+
+    /**
+     * Return code of a failed subscription in a SUBACK packet
+     */
+    private static final int SUBSCRIPTION_FAILURE = 0x80;
+
+    /**
+     * The read buffers of the clients using the shared event loops
+     */
+    private static final BufferPool SHARED_BUFFER_POOL = new BufferPool();
+
+    /**
+     * The client configuration
+     */
+    private final MessageClientConfig messageClientConfig;
+
+    /**
+     * The event loops of the connections
+     */
+    private final EventLoopGroup eventLoopGroup;
+
+    /**
+     * The pool of the read buffers
+     */
+    private final BufferPool bufferPool;
+
+    /**
+     * The subscriptions by the subscribed topic
+     */
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    /**
+     * The futures of the SUBSCRIBE and UNSUBSCRIBE packets by packet identifier
+     */
+    private final Map<Integer, CompletableFuture<Void>> pendingAcks = new ConcurrentHashMap<>();
+
+    /**
+     * The quality of service of the unacknowledged messages by packet identifier
+     */
+    private final Map<Integer, Integer> outgoing = new ConcurrentHashMap<>();
+
+    /**
+     * The packet identifiers of the received QoS 2 messages until their release
+     */
+    private final Set<Integer> receivedQos2 = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The topics of the paused subscriptions, guarded by the set itself
+     */
+    private final Set<String> pausedTopics = new HashSet<>();
+
+    /**
+     * The counter of the packet identifiers
+     */
+    private final AtomicInteger packetIds = new AtomicInteger();
+
+    /**
+     * The limit of the unacknowledged messages, null if it's not limited
+     */
+    private final InFlightWindow inFlightWindow;
+
+    /**
+     * The topic format of the client
+     */
+    private volatile TopicFormat topicFormat = new TopicFormat('/', '+', '#');
+
+    /**
+     * The current connection, null before the first connection
+     */
+    private volatile MqttConnection connection;
+
+    /**
+     * The future of the CONNACK packet of the current connection
+     */
+    private volatile CompletableFuture<Void> connAck;
+
+    /**
+     * The executor of the message consumers, null until the connection
+     */
+    private volatile ExecutorService executorService;
+
+    /**
+     * The timeout of the next keep alive ping
+     */
+    private volatile HashedWheelTimer.Timeout keepAlive;
+
+    /**
+     * True if the client was disconnected on purpose
+     */
+    private volatile boolean disconnecting;
+
+    /**
+     * Constructs the client with the shared event loops.
+     *
+     * @param messageClientConfig the client configuration
+     * @throws IllegalArgumentException if the configuration requires a secured connection
+     */
+    public NioMqttMessageClient(MessageClientConfig messageClientConfig) {
+        this(messageClientConfig, EventLoopGroup.shared(), SHARED_BUFFER_POOL);
+    }
+
+    /**
+     * Constructs the client with the shared event loops. The credential store is not used,
+     * because the client doesn't support secured connections.
+     *
+     * @param messageClientConfig the client configuration
+     * @param credentialStore the credential store, it's ignored
+     * @throws IllegalArgumentException if the configuration requires a secured connection
+     */
+    public NioMqttMessageClient(MessageClientConfig messageClientConfig, CredentialStore credentialStore) {
+        this(messageClientConfig);
+    }
+
+    /**
+     * Constructs the client.
+     *
+     * @param messageClientConfig the client configuration
+     * @param eventLoopGroup the event loops of the connections
+     * @param bufferPool the pool of the read buffers
+     * @throws IllegalArgumentException if any of the parameters is null or the configuration requires a secured connection
+     */
+    public NioMqttMessageClient(MessageClientConfig messageClientConfig, EventLoopGroup eventLoopGroup, BufferPool bufferPool) {
+        Assert.notNull(messageClientConfig, "Message client config must be set");
+        Assert.notNull(eventLoopGroup, "Event loop group must be set");
+        Assert.notNull(bufferPool, "Buffer pool must be set");
+        Assert.isTrue(!messageClientConfig.isConnectionSecured(), "Secured connections are not supported by the NIO MQTT client");
+        this.messageClientConfig = messageClientConfig;
+        this.eventLoopGroup = eventLoopGroup;
+        this.bufferPool = bufferPool;
+        this.inFlightWindow = messageClientConfig.getMaxInFlight() > 0 ? new InFlightWindow(messageClientConfig.getMaxInFlight()) : null;
+    }
+
+    /**
+     * Opens the connection, and waits for the acknowledgement of the broker. The stored
+     * subscriptions are renewed, so the method is used for the reconnection too.
+     *
+     * @throws ConnectionException if the connection cannot be established in the connection timeout
+     */
+    @Override
+    public synchronized void connect() {
+        MqttConnection current = connection;
+        if (current != null && current.isOpen()) {
+            return;
+        }
+        disconnecting = false;
+        if (executorService == null) {
+            executorService = createExecutor();
+        }
+        InetSocketAddress address = brokerAddress(messageClientConfig.getBrokerUrl());
+        int timeout = messageClientConfig.getConnectionTimeout() > 0 ? messageClientConfig.getConnectionTimeout() : DEFAULT_CONNECTION_TIMEOUT_SECONDS;
+        CompletableFuture<Void> acknowledged = new CompletableFuture<>();
+        connAck = acknowledged;
+        try {
+            MqttConnection opened = MqttConnection.connect(address, eventLoopGroup.next(), bufferPool, this, maxPacketSize()).get(timeout, TimeUnit.SECONDS);
+            connection = opened;
+            opened.send(MqttPackets.connect(messageClientConfig.getClientId(), KEEP_ALIVE_SECONDS, true));
+            acknowledged.get(timeout, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted while connecting to " + messageClientConfig.getBrokerUrl(), e);
+        } catch (ExecutionException | TimeoutException e) {
+            if (connection != null) {
+                connection.close();
+            }
+            throw new ConnectionException("Cannot connect to " + messageClientConfig.getBrokerUrl(), e);
+        }
+        synchronized (pausedTopics) {
+            if (!pausedTopics.isEmpty()) {
+                connection.pauseReading();
+            }
+        }
+        scheduleKeepAlive(connection);
+        if (!subscriptions.isEmpty()) {
+            sendSubscribe(subscriptions.keySet().toArray(new String[0]));
+        }
+        log.info("Connected to {} as {}", messageClientConfig.getBrokerUrl(), messageClientConfig.getClientId());
+    }
+
+    /**
+     * Reconnects the client if the connection is lost.
+     *
+     * @param callBack the callback of the client, it's not used
+     */
+    @Override
+    public void reconnect(CallBack callBack) {
+        connect();
+    }
+
+    /**
+     * Sends a DISCONNECT packet, closes the connection and stops the dispatcher threads.
+     * The client doesn't reconnect until {@link #connect()} is called.
+     */
+    public synchronized void disconnect() {
+        disconnecting = true;
+        cancelKeepAlive();
+        MqttConnection current = connection;
+        if (current != null && current.isOpen()) {
+            current.send(MqttPackets.empty(MqttPackets.DISCONNECT));
+            current.close();
+        }
+        if (executorService != null) {
+            executorService.shutdown();
+            executorService = null;
+        }
+    }
+
+    /**
+     * Publishes the message. The payload array is written without copying.
+     *
+     * @param message message payload, it must not be modified after the publishing
+     * @param producingProperties properties for the publishing
+     * @throws ConnectionException if the client is not connected or the in-flight window is full
+     */
+    @Override
+    public void publish(byte[] message, ProducingProperties producingProperties) {
+        publish(ByteBuffer.wrap(message), producingProperties);
+    }
+
+    /**
+     * Publishes the remaining bytes of the buffer. The bytes are written after the header of
+     * the packet without copying, the position of the buffer is not changed.
+     *
+     * @param message message payload, it must not be modified until it's written
+     * @param producingProperties properties for the publishing
+     * @throws ConnectionException if the client is not connected or the in-flight window is full
+     */
+    @Override
+    public void publish(ByteBuffer message, ProducingProperties producingProperties) {
+        MqttConnection current = checkConnected();
+        int qos = producingProperties.getQos() == ProducingProperties.DEFAULT_UNSET_QOS
+            ? messageClientConfig.getQos()
+            : producingProperties.getQos();
+        qos = Math.max(0, Math.min(qos, 2));
+        int packetId = 0;
+        if (qos > 0) {
+            if (inFlightWindow != null) {
+                inFlightWindow.acquire();
+            }
+            packetId = nextPacketId();
+            outgoing.put(packetId, qos);
+        }
+        ByteBuffer payload = message.duplicate();
+        byte[] topic = producingProperties.getTopic().getBytes(StandardCharsets.UTF_8);
+        try {
+            current.send(MqttPackets.publishHeader(topic, qos, producingProperties.isRetained(), packetId, payload.remaining()), payload);
+        } catch (RuntimeException e) {
+            if (qos > 0) {
+                acknowledged(packetId);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Subscribes the consumer to the topic and waits for the acknowledgement of the broker.
+     *
+     * @param consumingProperties the consuming properties
+     * @param messageConsumer the message consumer function
+     * @throws ConnectionException if the client is not connected or the broker refused the subscription
+     */
+    @Override
+    public void subscribe(ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer) {
+        checkConnected();
+        addSubscription(consumingProperties.getTopic(), messageConsumer);
+        awaitAck(sendSubscribe(new String[] {consumingProperties.getTopic()}), consumingProperties.getTopic());
+    }
+
+    /**
+     * Subscribes the consumers with one SUBSCRIBE packet and waits for the acknowledgement of the broker.
+     *
+     * @param subscriptions the message consumer functions by the consuming properties
+     * @throws ConnectionException if the client is not connected or the broker refused a subscription
+     */
+    @Override
+    public void subscribe(Map<ConsumingProperties, BiConsumer<String, byte[]>> subscriptions) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        checkConnected();
+        String[] topics = subscriptions.keySet().stream().map(ConsumingProperties::getTopic).toArray(String[]::new);
+        subscriptions.forEach((consumingProperties, messageConsumer) -> addSubscription(consumingProperties.getTopic(), messageConsumer));
+        awaitAck(sendSubscribe(topics), String.join(", ", topics));
+    }
+
+    /**
+     * Stops reading the connection while any subscription is paused, so the broker is held back
+     * by the flow control of TCP. The connection carries every subscription of the client, so the
+     * other subscriptions and the acknowledgements of the broker wait too. A connection opened
+     * later is paused after its CONNACK.
+     *
+     * @param consumingProperties the consuming properties of the paused subscription
+     */
+    @Override
+    public void pause(ConsumingProperties consumingProperties) {
+        synchronized (pausedTopics) {
+            MqttConnection current = connection;
+            if (pausedTopics.add(consumingProperties.getTopic()) && pausedTopics.size() == 1 && current != null) {
+                current.pauseReading();
+            }
+        }
+    }
+
+    /**
+     * Restarts the reading of the connection when no subscription is paused any more.
+     *
+     * @param consumingProperties the consuming properties of the paused subscription
+     */
+    @Override
+    public void resume(ConsumingProperties consumingProperties) {
+        synchronized (pausedTopics) {
+            MqttConnection current = connection;
+            if (pausedTopics.remove(consumingProperties.getTopic()) && pausedTopics.isEmpty() && current != null) {
+                current.resumeReading();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of the QoS 1 and 2 messages which are not acknowledged yet.
+     *
+     * @return the number of the unacknowledged messages
+     */
+    public int getUnacknowledgedCount() {
+        return outgoing.size();
+    }
+
+    /**
+     * Returns the topic format of the client.
+     *
+     * @return topic format description
+     */
+    @Override
+    public TopicFormat getTopicFormat() {
+        return topicFormat;
+    }
+
+    /**
+     * Sets the topic format of the client, it's used by the later subscriptions.
+     *
+     * @param topicFormat the new topic format
+     */
+    @Override
+    public void setTopicFormat(TopicFormat topicFormat) {
+        this.topicFormat = topicFormat;
+    }
+
+    /**
+     * Returns a message publisher which publishes through this client.
+     *
+     * @return message publisher
+     */
+    @Override
+    public MessagePublisher publisher() {
+        return new DefaultMessagePublisher(this);
+    }
+
+    /**
+     * Returns the transformation of the shared subscription topics to their topic filter.
+     *
+     * @return client specific transformation function for topics
+     */
+    @Override
+    public Function<String, String> topicTransformer() {
+        return originalTopic -> TopicTransformer.transform(originalTopic).ifShared().andReturn();
+    }
+
+    /**
+     * Handles the packets of the broker on the thread of the event loop.
+     *
+     * @param connection the connection of the packet
+     * @param frame the decoded packet
+     */
+    @Override
+    public void onFrame(MqttConnection connection, MqttFrame frame) {
+        switch (frame.getType()) {
+            case MqttPackets.CONNACK:
+                frame.getBody().get();
+                int returnCode = frame.getBody().get() & 0xFF;
+                if (returnCode == 0) {
+                    connAck.complete(null);
+                } else {
+                    connAck.completeExceptionally(new ConnectionException("Connection refused with return code " + returnCode));
+                }
+                break;
+            case MqttPackets.PUBLISH:
+                received(connection, frame);
+                break;
+            case MqttPackets.PUBACK:
+            case MqttPackets.PUBCOMP:
+                acknowledged(frame.readShort());
+                break;
+            case MqttPackets.PUBREC:
+                connection.send(MqttPackets.ack(MqttPackets.PUBREL, frame.readShort()));
+                break;
+            case MqttPackets.PUBREL:
+                int releasedId = frame.readShort();
+                receivedQos2.remove(releasedId);
+                connection.send(MqttPackets.ack(MqttPackets.PUBCOMP, releasedId));
+                break;
+            case MqttPackets.SUBACK:
+                subscribed(frame);
+                break;
+            case MqttPackets.UNSUBACK:
+                CompletableFuture<Void> unsubscribed = pendingAcks.remove(frame.readShort());
+                if (unsubscribed != null) {
+                    unsubscribed.complete(null);
+                }
+                break;
+            case MqttPackets.PINGRESP:
+                log.trace("Ping response from {}", messageClientConfig.getBrokerUrl());
+                break;
+            default:
+                log.warn("Unexpected MQTT packet type {} from {}", frame.getType(), messageClientConfig.getBrokerUrl());
+        }
+    }
+
+    /**
+     * Handles the closed connection. The unacknowledged messages are released, and if the
+     * connection was established, the client reconnects after a delay unless it was
+     * disconnected on purpose.
+     *
+     * @param closedConnection the closed connection
+     * @param cause the reason of the closing
+     */
+    @Override
+    public void onClose(MqttConnection closedConnection, Throwable cause) {
+        if (closedConnection != connection) {
+            return;
+        }
+        cancelKeepAlive();
+        CompletableFuture<Void> acknowledged = connAck;
+        boolean established = acknowledged != null && acknowledged.isDone() && !acknowledged.isCompletedExceptionally();
+        if (acknowledged != null && !established) {
+            acknowledged.completeExceptionally(new ConnectionException("Connection closed before CONNACK"));
+        }
+        if (!outgoing.isEmpty()) {
+            log.warn("{} unacknowledged messages are lost with the connection to {}", outgoing.size(), messageClientConfig.getBrokerUrl());
+            outgoing.keySet().forEach(this::acknowledged);
+        }
+        pendingAcks.values().forEach(ack -> ack.completeExceptionally(new ConnectionException("Connection lost")));
+        pendingAcks.clear();
+        receivedQos2.clear();
+        if (established && !disconnecting) {
+            log.error("Connection lost to {}", messageClientConfig.getBrokerUrl(), cause);
+            scheduleReconnect();
+        }
+    }
+
+    /**
+     * Acknowledges a received message and passes it to the matching consumers.
+     *
+     * @param connection the connection of the message
+     * @param frame the PUBLISH packet
+     */
+    private void received(MqttConnection connection, MqttFrame frame) {
+        String topic = frame.readString();
+        int qos = frame.getQos();
+        int packetId = qos > 0 ? frame.readShort() : 0;
+        boolean duplicate = false;
+        if (qos == 1) {
+            connection.send(MqttPackets.ack(MqttPackets.PUBACK, packetId));
+        } else if (qos == 2) {
+            duplicate = !receivedQos2.add(packetId);
+            connection.send(MqttPackets.ack(MqttPackets.PUBREC, packetId));
+        }
+        if (duplicate) {
+            return;
+        }
+        byte[] payload = frame.readRemaining();
+        ExecutorService executor = executorService;
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.matcher.matches(topic) && executor != null) {
+                executor.execute(() -> {
+                    try {
+                        subscription.consumer.accept(topic, payload);
+                    } catch (RuntimeException e) {
+                        log.error("Cannot consume message of topic {}", topic, e);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Completes the subscription of a SUBACK packet.
+     *
+     * @param frame the SUBACK packet
+     */
+    private void subscribed(MqttFrame frame) {
+        CompletableFuture<Void> ack = pendingAcks.remove(frame.readShort());
+        if (ack == null) {
+            return;
+        }
+        while (frame.getBody().hasRemaining()) {
+            if ((frame.getBody().get() & 0xFF) == SUBSCRIPTION_FAILURE) {
+                ack.completeExceptionally(new ConnectionException("Subscription refused by " + messageClientConfig.getBrokerUrl()));
+                return;
+            }
+        }
+        ack.complete(null);
+    }
+
+    /**
+     * Forgets an unacknowledged message and releases its permit of the in-flight window.
+     *
+     * @param packetId the packet identifier of the message
+     */
+    private void acknowledged(int packetId) {
+        if (outgoing.remove(packetId) != null && inFlightWindow != null) {
+            inFlightWindow.release();
+        }
+    }
+
+    /**
+     * Stores a subscription for the dispatching and for the renewal after a reconnection.
+     *
+     * @param topic the subscribed topic
+     * @param messageConsumer the message consumer
+     */
+    private void addSubscription(String topic, BiConsumer<String, byte[]> messageConsumer) {
+        String filter = topicTransformer().apply(topic);
+        subscriptions.put(topic, new Subscription(TopicMatcher.compile(filter, topicFormat), messageConsumer));
+    }
+
+    /**
+     * Sends a SUBSCRIBE packet with the QoS of the configuration.
+     *
+     * @param topics the topics to subscribe
+     * @return the future of the acknowledgement
+     */
+    private CompletableFuture<Void> sendSubscribe(String[] topics) {
+        int packetId = nextPacketId();
+        CompletableFuture<Void> ack = new CompletableFuture<>();
+        pendingAcks.put(packetId, ack);
+        int[] qos = new int[topics.length];
+        Arrays.fill(qos, Math.max(0, Math.min(messageClientConfig.getQos(), 2)));
+        checkConnected().send(MqttPackets.subscribe(packetId, topics, qos));
+        return ack;
+    }
+
+    /**
+     * Waits for the acknowledgement of a subscription.
+     *
+     * @param ack the future of the acknowledgement
+     * @param topics the subscribed topics for the error message
+     * @throws ConnectionException if the subscription failed or timed out
+     */
+    private void awaitAck(CompletableFuture<Void> ack, String topics) {
+        int timeout = messageClientConfig.getConnectionTimeout() > 0 ? messageClientConfig.getConnectionTimeout() : DEFAULT_CONNECTION_TIMEOUT_SECONDS;
+        try {
+            ack.get(timeout, TimeUnit.SECONDS);
+            log.info("Subscribed to topic {}", topics);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted while subscribing to " + topics, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new ConnectionException("Cannot subscribe to " + topics, e);
+        }
+    }
+
+    /**
+     * Returns the next packet identifier, it's between 1 and 65535.
+     *
+     * @return the packet identifier
+     */
+    private int nextPacketId() {
+        int packetId;
+        do {
+            packetId = packetIds.incrementAndGet() & 0xFFFF;
+        } while (packetId == 0);
+        return packetId;
+    }
+
+    /**
+     * Returns the open connection.
+     *
+     * @return the connection
+     * @throws ConnectionException if the client is not connected
+     */
+    private MqttConnection checkConnected() {
+        MqttConnection current = connection;
+        if (current == null || !current.isOpen()) {
+            throw new ConnectionException("Client is not connected to " + messageClientConfig.getBrokerUrl());
+        }
+        return current;
+    }
+
+    /**
+     * Schedules the next ping of the connection in the half of the keep alive interval.
+     *
+     * @param pinged the connection to ping
+     */
+    private void scheduleKeepAlive(MqttConnection pinged) {
+        keepAlive = TimerHolder.TIMER.schedule(() -> {
+            if (pinged == connection && pinged.isOpen()) {
+                pinged.send(MqttPackets.empty(MqttPackets.PINGREQ));
+                scheduleKeepAlive(pinged);
+            }
+        }, KEEP_ALIVE_SECONDS / 2, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Cancels the next ping.
+     */
+    private void cancelKeepAlive() {
+        HashedWheelTimer.Timeout timeout = keepAlive;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Schedules a reconnection, it's repeated until it succeeds or the client is disconnected.
+     */
+    private void scheduleReconnect() {
+        TimerHolder.TIMER.schedule(() -> {
+            if (disconnecting) {
+                return;
+            }
+            try {
+                connect();
+            } catch (ConnectionException e) {
+                log.warn("Cannot reconnect to {}: {}", messageClientConfig.getBrokerUrl(), e.getMessage());
+                scheduleReconnect();
+            }
+        }, RECONNECT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Resolves the address of the broker. The embedded broker of an embedded:// URL is started
+     * in the JVM if it's not running yet.
+     *
+     * @param brokerUrl the broker URL
+     * @return the address of the broker
+     */
+    private InetSocketAddress brokerAddress(String brokerUrl) {
+        if (EmbeddedMqttBroker.isEmbedded(brokerUrl)) {
+            return EmbeddedMqttBroker.forUrl(brokerUrl).getAddress();
+        }
+        URI uri = URI.create(brokerUrl);
+        return new InetSocketAddress(uri.getHost(), uri.getPort() < 0 ? DEFAULT_PORT : uri.getPort());
+    }
+
+    /**
+     * Returns the maximal size of the packets received from the broker.
+     *
+     * @return the configured maximal packet size or the default one
+     */
+    private int maxPacketSize() {
+        int configured = messageClientConfig.getMaxPacketSize();
+        return configured > 0 ? configured : MqttConnection.DEFAULT_MAX_PACKET_SIZE;
+    }
+
+    /**
+     * Creates the thread pool of the message consumers.
+     *
+     * @return the executor
+     */
+    private ExecutorService createExecutor() {
+        int maxThread = messageClientConfig.getMaxThread() > 0 ? messageClientConfig.getMaxThread() : DEFAULT_MAX_THREAD;
+        int keepAliveTime = messageClientConfig.getThreadKeepAliveTime() < 0
+            ? CallBack.DEFAULT_KEEP_ALIVE_TIME
+            : messageClientConfig.getThreadKeepAliveTime();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThread, maxThread, keepAliveTime, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        executor.allowCoreThreadTimeOut(keepAliveTime > 0);
+        return executor;
+    }
+
+    /**
+     * A subscription of the client.
+     */
+    private static final class Subscription {
+
+        /**
+         * The compiled topic filter
+         */
+        private final TopicMatcher matcher;
+
+        /**
+         * The message consumer
+         */
+        private final BiConsumer<String, byte[]> consumer;
+
+        /**
+         * Constructs the subscription.
+         *
+         * @param matcher the compiled topic filter
+         * @param consumer the message consumer
+         */
+        private Subscription(TopicMatcher matcher, BiConsumer<String, byte[]> consumer) {
+            this.matcher = matcher;
+            this.consumer = consumer;
+        }
+    }
+
+    /**
+     * Holder of the timer of the keep alive pings and the reconnections, it's created at the first use.
+     */
+    private static final class TimerHolder {
+
+        /**
+         * The shared timer of the clients
+         */
+        private static final HashedWheelTimer TIMER = new HashedWheelTimer("palm-mqtt-timer");
+    }
+}
@@ -0,0 +1,170 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.core.HashedWheelTimer;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.message.RequestEnvelope;
+import com.celadonsea.palm.topic.TopicFormat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Message client which supports request/reply messaging over the publish/subscribe transport.
+ *
+ * The client subscribes once to a wildcard reply topic of its own at the first request. Every
+ * request gets a correlation id, which is the last level of its reply topic, so the replies
+ * are matched by the topic without parsing the reply payload. The outstanding requests are
+ * stored in a {@link CorrelationRegistry}, and they expire on a {@link HashedWheelTimer}.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see CorrelationRegistry
+ * @see RequestEnvelope
+ */
+@Slf4j
+public class RequestingMessageClient extends DelegatingMessageClient {
+
+    /**
+     * Default first level of the reply topics
+     */
+    public static final String DEFAULT_REPLY_PREFIX = "palm-reply";
+
+    /**
+     * Quality of service of the requests
+     */
+    private static final int REQUEST_QOS = 1;
+
+    /**
+     * The outstanding requests
+     */
+    private final CorrelationRegistry correlationRegistry;
+
+    /**
+     * The first level of the reply topics
+     */
+    private final String replyPrefix;
+
+    /**
+     * Unique id of the client in the reply topics
+     */
+    private final String instanceId = UUID.randomUUID().toString().replace("-", "");
+
+    /**
+     * Generator of the correlation ids
+     */
+    private final AtomicLong correlationIds = new AtomicLong();
+
+    /**
+     * The reply topic without the correlation id, null until the reply subscription
+     */
+    private volatile String replyTopicBase;
+
+    /**
+     * Constructs the client with the default reply prefix.
+     *
+     * @param delegate the wrapped message client
+     * @param timer timer of the request timeouts
+     * @throws IllegalArgumentException if the client or the timer is null
+     */
+    public RequestingMessageClient(MessageClient delegate, HashedWheelTimer timer) {
+        this(delegate, new CorrelationRegistry(timer), DEFAULT_REPLY_PREFIX);
+    }
+
+    /**
+     * Constructs the client.
+     *
+     * @param delegate the wrapped message client
+     * @param correlationRegistry the registry of the outstanding requests
+     * @param replyPrefix the first level of the reply topics, the broker must allow the subscription to it
+     * @throws IllegalArgumentException if any of the parameters is null or the prefix is empty
+     */
+    public RequestingMessageClient(MessageClient delegate, CorrelationRegistry correlationRegistry, String replyPrefix) {
+        super(delegate);
+        Assert.notNull(correlationRegistry, "Correlation registry must be set");
+        Assert.hasText(replyPrefix, "Reply prefix must be set");
+        this.correlationRegistry = correlationRegistry;
+        this.replyPrefix = replyPrefix;
+    }
+
+    /**
+     * Publishes the request wrapped with its reply topic, and registers it until the reply
+     * or the timeout. The reply topic is subscribed before the first request.
+     *
+     * @param topic the topic of the request
+     * @param payload the request payload
+     * @param timeoutMillis the time to wait for the reply in milliseconds
+     * @return the future of the reply payload
+     * @throws IllegalArgumentException if the topic or the payload is null, or the timeout is not positive
+     */
+    @Override
+    public CompletableFuture<byte[]> request(String topic, byte[] payload, long timeoutMillis) {
+        Assert.notNull(topic, "Topic must be set");
+        Assert.notNull(payload, "Payload must be set");
+        Assert.isTrue(timeoutMillis > 0, "Timeout must be positive");
+        String replyTopic = subscribeReplies();
+        long correlationId = correlationIds.incrementAndGet();
+        CompletableFuture<byte[]> reply = correlationRegistry.register(correlationId, timeoutMillis);
+        try {
+            getDelegate().publish(RequestEnvelope.wrap(replyTopic + correlationId, payload), new ProducingProperties(topic, REQUEST_QOS));
+        } catch (RuntimeException e) {
+            correlationRegistry.fail(correlationId, e);
+        }
+        return reply;
+    }
+
+    /**
+     * Returns the number of the requests waiting for reply.
+     *
+     * @return the number of the outstanding requests
+     */
+    public int getPendingRequests() {
+        return correlationRegistry.getPendingCount();
+    }
+
+    /**
+     * Subscribes to the reply topics of the client if they aren't subscribed yet.
+     *
+     * @return the reply topic without the correlation id
+     */
+    private String subscribeReplies() {
+        String topicBase = replyTopicBase;
+        if (topicBase == null) {
+            synchronized (this) {
+                topicBase = replyTopicBase;
+                if (topicBase == null) {
+                    TopicFormat topicFormat = getTopicFormat();
+                    topicBase = replyPrefix + topicFormat.getLevelSeparator() + instanceId + topicFormat.getLevelSeparator();
+                    String replyBase = topicBase;
+                    getDelegate().subscribe(new ConsumingProperties(topicBase + topicFormat.getMultiLevelWildcard()),
+                        (topic, message) -> replyArrived(replyBase, topic, message));
+                    replyTopicBase = topicBase;
+                }
+            }
+        }
+        return topicBase;
+    }
+
+    /**
+     * Completes the request of the arrived reply by the correlation id of the topic.
+     *
+     * @param replyBase the reply topic without the correlation id
+     * @param topic the topic of the reply
+     * @param message the reply payload
+     */
+    private void replyArrived(String replyBase, String topic, byte[] message) {
+        long correlationId;
+        try {
+            correlationId = Long.parseLong(topic.substring(replyBase.length()));
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            log.warn("Reply to unknown topic {} is dropped", topic);
+            return;
+        }
+        if (!correlationRegistry.complete(correlationId, message)) {
+            log.debug("Reply of request {} arrived after its timeout", correlationId);
+        }
+    }
+}
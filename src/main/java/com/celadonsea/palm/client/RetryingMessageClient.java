@@ -0,0 +1,82 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.publisher.PublishRetrier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Message client which retries the failed publishing with a {@link PublishRetrier}.
+ *
+ * The publish methods return after the first attempt, the retries run in the
+ * background. The messages which cannot be published within the retry policy
+ * are logged.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see PublishRetrier
+ */
+@Slf4j
+public class RetryingMessageClient extends DelegatingMessageClient {
+
+    /**
+     * The retrier of the failed publishing
+     */
+    private final PublishRetrier publishRetrier;
+
+    /**
+     * Constructs the client with the wrapped client and the retrier.
+     *
+     * @param delegate the wrapped message client
+     * @param publishRetrier the retrier of the failed publishing
+     * @throws IllegalArgumentException if the client or the retrier is null
+     */
+    public RetryingMessageClient(MessageClient delegate, PublishRetrier publishRetrier) {
+        super(delegate);
+        Assert.notNull(publishRetrier, "Publish retrier must be set");
+        this.publishRetrier = publishRetrier;
+    }
+
+    /**
+     * Publishes the message with the wrapped client and retries it in the background
+     * if the publishing fails.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     */
+    @Override
+    public void publish(byte[] message, ProducingProperties producingProperties) {
+        publishWithRetry(message, producingProperties);
+    }
+
+    /**
+     * Publishes the message buffer with the wrapped client and retries it in the background
+     * if the publishing fails. The buffer is copied, because the caller may reuse it
+     * before the retry.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     */
+    @Override
+    public void publish(ByteBuffer message, ProducingProperties producingProperties) {
+        ByteBuffer source = message.duplicate();
+        byte[] payload = new byte[source.remaining()];
+        source.get(payload);
+        publishWithRetry(payload, producingProperties);
+    }
+
+    /**
+     * Publishes the message with the wrapped client and retries it if necessary.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     * @return future which completes when the message is published, or completes exceptionally
+     *         with the last error if the message cannot be published within the retry policy
+     */
+    public CompletableFuture<Void> publishWithRetry(byte[] message, ProducingProperties producingProperties) {
+        return publishRetrier.publish(getDelegate(), message, producingProperties);
+    }
+}
@@ -0,0 +1,70 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.publisher.TrafficShaper;
+import lombok.Getter;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Message client which limits the rate of the outgoing messages with a {@link TrafficShaper}.
+ *
+ * The messages over the rate of their traffic class are queued and published later by
+ * the scheduler of the shaper. The messages without traffic class are published directly.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see TrafficShaper
+ */
+public class ShapingMessageClient extends DelegatingMessageClient {
+
+    /**
+     * The shaper of the outgoing messages
+     * -- GETTER --
+     * Returns the shaper of the client with the metrics of the traffic classes
+     *
+     * @return the traffic shaper
+     */
+    @Getter
+    private final TrafficShaper trafficShaper;
+
+    /**
+     * Constructs the client with the wrapped client and the shaper.
+     *
+     * @param delegate the wrapped message client
+     * @param trafficShaper the shaper of the outgoing messages
+     * @throws IllegalArgumentException if the client or the shaper is null
+     */
+    public ShapingMessageClient(MessageClient delegate, TrafficShaper trafficShaper) {
+        super(delegate);
+        Assert.notNull(trafficShaper, "Traffic shaper must be set");
+        this.trafficShaper = trafficShaper;
+    }
+
+    /**
+     * Publishes the message with the wrapped client within the rate of its traffic class.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     */
+    @Override
+    public void publish(byte[] message, ProducingProperties producingProperties) {
+        trafficShaper.publish(getDelegate(), message, producingProperties);
+    }
+
+    /**
+     * Publishes the message buffer with the wrapped client within the rate of its traffic class.
+     * The buffer is copied, because the message may be queued.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     */
+    @Override
+    public void publish(ByteBuffer message, ProducingProperties producingProperties) {
+        ByteBuffer source = message.duplicate();
+        byte[] payload = new byte[source.remaining()];
+        source.get(payload);
+        trafficShaper.publish(getDelegate(), payload, producingProperties);
+    }
+}
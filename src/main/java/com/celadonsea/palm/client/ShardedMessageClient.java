@@ -0,0 +1,510 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.config.MessageClientConfig;
+import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.listener.CallBack;
+import com.celadonsea.palm.publisher.DefaultMessagePublisher;
+import com.celadonsea.palm.publisher.MessagePublisher;
+import com.celadonsea.palm.security.CredentialStore;
+import com.celadonsea.palm.topic.TopicFormat;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Message client backed by several connections to the broker, so the publishing is not
+ * limited by the per-connection processing of the broker.
+ * <p>
+ * The shard clients are created from one configuration, the client identifier of a shard is
+ * suffixed with its index (eg. client-0, client-1). The messages are published by the shard
+ * selected by the hash of the topic, so the messages of a topic keep their order. A plain
+ * subscription is made by one shard selected by the hash of its topic filter, because the
+ * broker would deliver every message to every shard otherwise. A shared subscription is made
+ * by every shard, so the broker balances the messages of the group between the connections.
+ * The messages of the shards are passed to the same message consumer, so the listeners see one
+ * stream of messages whichever connection they arrived on. The consumers are called by the
+ * dispatcher threads of the shards, and the {@link MessageClientConfig#getMaxThread() max thread}
+ * configuration is divided between the shards, so the shards together don't start more
+ * dispatcher threads than one client would.
+ * <p>
+ * If the client has a share group, every subscription is made as a shared subscription of the
+ * group ($share/group/topic) by every shard, so the consumption of the listeners is spread over
+ * the connections too.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+@Slf4j
+public class ShardedMessageClient implements MessageClient {
+
+    /**
+     * Separator of the client identifier and the shard index
+     */
+    public static final String SHARD_ID_SEPARATOR = "-";
+
+    /**
+     * Prefix of the shared subscription topics
+     */
+    private static final String SHARED_TOPIC_PREFIX = "$share";
+
+    /**
+     * The shard clients
+     */
+    private final List<MessageClient> shards;
+
+    /**
+     * The share group of the subscriptions or null
+     * -- GETTER --
+     * Returns the share group of the subscriptions
+     *
+     * @return the share group or null if the plain subscriptions are not shared
+     */
+    @Getter
+    private final String shareGroup;
+
+    /**
+     * Constructs the client with shard clients created by the {@link MessageClientFactory}.
+     *
+     * @param messageClientConfig the configuration of the shards
+     * @param shardCount the number of the shards
+     * @throws IllegalArgumentException if the configuration is null, the number of the shards is
+     *                                  not positive or the shard clients cannot be created
+     */
+    public ShardedMessageClient(MessageClientConfig messageClientConfig, int shardCount) {
+        this(createShards(messageClientConfig, null, shardCount));
+    }
+
+    /**
+     * Constructs the client with shard clients created by the {@link MessageClientFactory},
+     * the shards may open secured connections.
+     *
+     * @param messageClientConfig the configuration of the shards
+     * @param credentialStore the credential store for the secured connections
+     * @param shardCount the number of the shards
+     * @throws IllegalArgumentException if the configuration is null, the number of the shards is
+     *                                  not positive or the shard clients cannot be created
+     */
+    public ShardedMessageClient(MessageClientConfig messageClientConfig, CredentialStore credentialStore, int shardCount) {
+        this(createShards(messageClientConfig, credentialStore, shardCount));
+    }
+
+    /**
+     * Constructs the client with shard clients created by the {@link MessageClientFactory},
+     * the subscriptions are shared by the shards in the given group.
+     *
+     * @param messageClientConfig the configuration of the shards
+     * @param credentialStore the credential store for the secured connections or null
+     * @param shardCount the number of the shards
+     * @param shareGroup the share group of the subscriptions, null if the plain subscriptions are not shared
+     * @throws IllegalArgumentException if the configuration is null, the number of the shards is
+     *                                  not positive or the shard clients cannot be created
+     */
+    public ShardedMessageClient(MessageClientConfig messageClientConfig, CredentialStore credentialStore, int shardCount, String shareGroup) {
+        this(createShards(messageClientConfig, credentialStore, shardCount), shareGroup);
+    }
+
+    /**
+     * Constructs the client with the given shard clients.
+     *
+     * @param shards the shard clients, they should connect to the same broker
+     * @throws IllegalArgumentException if the list is null or empty
+     */
+    public ShardedMessageClient(List<MessageClient> shards) {
+        this(shards, null);
+    }
+
+    /**
+     * Constructs the client with the given shard clients and share group.
+     *
+     * @param shards the shard clients, they should connect to the same broker
+     * @param shareGroup the share group of the subscriptions, null if the plain subscriptions are not shared
+     * @throws IllegalArgumentException if the list is null or empty
+     */
+    public ShardedMessageClient(List<MessageClient> shards, String shareGroup) {
+        Assert.notEmpty(shards, "Shard clients must be set");
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        this.shareGroup = shareGroup;
+    }
+
+    /**
+     * Returns the shard clients.
+     *
+     * @return the unmodifiable list of the shard clients
+     */
+    public List<MessageClient> getShards() {
+        return shards;
+    }
+
+    /**
+     * Connects every shard.
+     */
+    @Override
+    public void connect() {
+        shards.forEach(MessageClient::connect);
+    }
+
+    /**
+     * Disconnects every shard which has a public disconnect method, eg. the {@link NioMqttMessageClient}
+     * and the {@link InMemoryMessageClient}. The other shards are left connected. A shard which cannot be
+     * disconnected doesn't stop the disconnection of the others.
+     */
+    public void disconnect() {
+        for (MessageClient shard : shards) {
+            Method disconnect = ReflectionUtils.findMethod(shard.getClass(), "disconnect");
+            if (disconnect == null || !Modifier.isPublic(disconnect.getModifiers())) {
+                log.debug("Shard {} cannot be disconnected", shard);
+                continue;
+            }
+            try {
+                ReflectionUtils.invokeMethod(disconnect, shard);
+            } catch (RuntimeException e) {
+                log.warn("Cannot disconnect shard {}", shard, e);
+            }
+        }
+    }
+
+    /**
+     * Reconnects every shard, the connected shards ignore it.
+     *
+     * @param callBack the message call back instance
+     */
+    @Override
+    public void reconnect(CallBack callBack) {
+        shards.forEach(shard -> shard.reconnect(callBack));
+    }
+
+    /**
+     * Publishes the message by the shard of the topic.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     */
+    @Override
+    public void publish(byte[] message, ProducingProperties producingProperties) {
+        shardOf(producingProperties.getTopic()).publish(message, producingProperties);
+    }
+
+    /**
+     * Publishes the message buffer by the shard of the topic.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     */
+    @Override
+    public void publish(ByteBuffer message, ProducingProperties producingProperties) {
+        shardOf(producingProperties.getTopic()).publish(message, producingProperties);
+    }
+
+    /**
+     * Subscribes by the shard of the topic filter, or by every shard if it's a shared subscription.
+     *
+     * @param consumingProperties the consuming properties
+     * @param messageConsumer the message consumer function
+     */
+    @Override
+    public void subscribe(ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer) {
+        ConsumingProperties properties = share(consumingProperties);
+        subscribers(properties).forEach(shard -> shard.subscribe(properties, messageConsumer));
+    }
+
+    /**
+     * Subscribes to several topics at once. The subscriptions are grouped by shard, so every
+     * shard subscribes with one request.
+     *
+     * @param subscriptions the message consumer functions by the consuming properties
+     */
+    @Override
+    public void subscribe(Map<ConsumingProperties, BiConsumer<String, byte[]>> subscriptions) {
+        Map<MessageClient, Map<ConsumingProperties, BiConsumer<String, byte[]>>> subscriptionsByShard = new LinkedHashMap<>();
+        subscriptions.forEach((consumingProperties, messageConsumer) -> {
+            ConsumingProperties properties = share(consumingProperties);
+            subscribers(properties).forEach(shard ->
+                subscriptionsByShard.computeIfAbsent(shard, key -> new LinkedHashMap<>()).put(properties, messageConsumer));
+        });
+        subscriptionsByShard.forEach(MessageClient::subscribe);
+    }
+
+    /**
+     * Pauses the subscription on the shards which subscribed it.
+     *
+     * @param consumingProperties the consuming properties of the paused subscription
+     */
+    @Override
+    public void pause(ConsumingProperties consumingProperties) {
+        ConsumingProperties properties = share(consumingProperties);
+        subscribers(properties).forEach(shard -> shard.pause(properties));
+    }
+
+    /**
+     * Resumes the subscription on the shards which subscribed it.
+     *
+     * @param consumingProperties the consuming properties of the paused subscription
+     */
+    @Override
+    public void resume(ConsumingProperties consumingProperties) {
+        ConsumingProperties properties = share(consumingProperties);
+        subscribers(properties).forEach(shard -> shard.resume(properties));
+    }
+
+    /**
+     * Returns the topic format of the first shard.
+     *
+     * @return topic format description
+     */
+    @Override
+    public TopicFormat getTopicFormat() {
+        return shards.get(0).getTopicFormat();
+    }
+
+    /**
+     * Sets the topic format of every shard.
+     *
+     * @param topicFormat the new topic format
+     */
+    @Override
+    public void setTopicFormat(TopicFormat topicFormat) {
+        shards.forEach(shard -> shard.setTopicFormat(topicFormat));
+    }
+
+    /**
+     * Returns a message publisher which publishes through this client.
+     *
+     * @return message publisher
+     */
+    @Override
+    public MessagePublisher publisher() {
+        return new DefaultMessagePublisher(this);
+    }
+
+    /**
+     * Returns the topic transformer of the first shard.
+     *
+     * @return client specific transformation function for topics
+     */
+    @Override
+    public Function<String, String> topicTransformer() {
+        return shards.get(0).topicTransformer();
+    }
+
+    /**
+     * Returns the shard selected by the hash of a topic.
+     *
+     * @param topic the topic or the topic filter
+     * @return the shard client
+     */
+    private MessageClient shardOf(String topic) {
+        return shards.get(Math.floorMod(topic.hashCode(), shards.size()));
+    }
+
+    /**
+     * Returns the properties of the shared subscription of the share group, if the client has
+     * a share group and the subscription is not shared yet.
+     *
+     * @param consumingProperties the consuming properties
+     * @return the shared or the original consuming properties
+     */
+    private ConsumingProperties share(ConsumingProperties consumingProperties) {
+        if (shareGroup == null || isShared(consumingProperties.getTopic())) {
+            return consumingProperties;
+        }
+        char separator = getTopicFormat().getLevelSeparator();
+        String topic = SHARED_TOPIC_PREFIX + separator + shareGroup + separator + consumingProperties.getTopic();
+        return consumingProperties.getExchange() == null
+            ? new ConsumingProperties(topic)
+            : new ConsumingProperties(topic, consumingProperties.getExchange());
+    }
+
+    /**
+     * Returns true if the topic is a shared subscription topic, it starts with the $share level.
+     *
+     * @param topic the topic filter
+     * @return true if it's a shared subscription
+     */
+    private boolean isShared(String topic) {
+        return topic.startsWith(SHARED_TOPIC_PREFIX + getTopicFormat().getLevelSeparator());
+    }
+
+    /**
+     * Returns the shards which subscribe with the properties: every shard for a shared
+     * subscription, otherwise the shard of the topic filter.
+     *
+     * @param consumingProperties the consuming properties
+     * @return the subscribing shards
+     */
+    private List<MessageClient> subscribers(ConsumingProperties consumingProperties) {
+        String topic = consumingProperties.getTopic();
+        return isShared(topic) ? shards : Collections.singletonList(shardOf(topic));
+    }
+
+    /**
+     * Creates the shard clients with suffixed client identifiers.
+     *
+     * @param messageClientConfig the configuration of the shards
+     * @param credentialStore the credential store or null
+     * @param shardCount the number of the shards
+     * @return the shard clients
+     */
+    private static List<MessageClient> createShards(MessageClientConfig messageClientConfig, CredentialStore credentialStore, int shardCount) {
+        Assert.notNull(messageClientConfig, "Message client configuration must be set");
+        Assert.isTrue(shardCount > 0, "Shard count must be positive");
+        List<MessageClient> shards = new ArrayList<>(shardCount);
+        for (int index = 0; index < shardCount; index++) {
+            MessageClientConfig shardConfig = new ShardConfig(messageClientConfig, messageClientConfig.getClientId() + SHARD_ID_SEPARATOR + index, shardCount);
+            shards.add(credentialStore == null
+                ? MessageClientFactory.getFactory().getClient(shardConfig)
+                : MessageClientFactory.getFactory().getClient(shardConfig, credentialStore));
+        }
+        log.info("{} shard clients created for {}", shardCount, messageClientConfig.getClientId());
+        return shards;
+    }
+
+    /**
+     * Configuration of a shard, it differs from the original configuration in the client identifier
+     * and in the maximal number of threads, which is divided between the shards.
+     */
+    private static final class ShardConfig implements MessageClientConfig {
+
+        /**
+         * The original configuration
+         */
+        private final MessageClientConfig config;
+
+        /**
+         * The client identifier of the shard
+         */
+        private final String clientId;
+
+        /**
+         * The number of the shards
+         */
+        private final int shardCount;
+
+        /**
+         * Constructs the configuration of a shard.
+         *
+         * @param config the original configuration
+         * @param clientId the client identifier of the shard
+         * @param shardCount the number of the shards
+         */
+        private ShardConfig(MessageClientConfig config, String clientId, int shardCount) {
+            this.config = config;
+            this.clientId = clientId;
+            this.shardCount = shardCount;
+        }
+
+        /**
+         * Returns the client dialect of the original configuration.
+         *
+         * @return the client dialect
+         */
+        @Override
+        public String getClientDialect() {
+            return config.getClientDialect();
+        }
+
+        /**
+         * Returns the client identifier of the shard.
+         *
+         * @return the suffixed client identifier
+         */
+        @Override
+        public String getClientId() {
+            return clientId;
+        }
+
+        /**
+         * Returns the broker URL of the original configuration.
+         *
+         * @return the broker URL
+         */
+        @Override
+        public String getBrokerUrl() {
+            return config.getBrokerUrl();
+        }
+
+        /**
+         * Returns the connection timeout of the original configuration.
+         *
+         * @return the connection timeout
+         */
+        @Override
+        public int getConnectionTimeout() {
+            return config.getConnectionTimeout();
+        }
+
+        /**
+         * Returns the quality of service of the original configuration.
+         *
+         * @return the quality of service
+         */
+        @Override
+        public int getQos() {
+            return config.getQos();
+        }
+
+        /**
+         * Returns true if the original configuration needs secured connection.
+         *
+         * @return true if the connection is secured
+         */
+        @Override
+        public boolean isConnectionSecured() {
+            return config.isConnectionSecured();
+        }
+
+        /**
+         * Returns the share of the shard from the maximal number of threads of the original configuration,
+         * at least one thread. A non-positive maximum is kept, it means the default of the client dialect.
+         *
+         * @return the maximal number of threads of the shard
+         */
+        @Override
+        public int getMaxThread() {
+            int maxThread = config.getMaxThread();
+            return maxThread > 0 ? (maxThread + shardCount - 1) / shardCount : maxThread;
+        }
+
+        /**
+         * Returns the thread keep alive time of the original configuration.
+         *
+         * @return the keep alive time in seconds
+         */
+        @Override
+        public int getThreadKeepAliveTime() {
+            return config.getThreadKeepAliveTime();
+        }
+
+        /**
+         * Returns the maximal number of messages in flight of the original configuration.
+         *
+         * @return the maximal number of messages in flight
+         */
+        @Override
+        public int getMaxInFlight() {
+            return config.getMaxInFlight();
+        }
+
+        /**
+         * Returns the maximal size of a received packet of the original configuration.
+         *
+         * @return the maximal size of a received packet
+         */
+        @Override
+        public int getMaxPacketSize() {
+            return config.getMaxPacketSize();
+        }
+    }
+}
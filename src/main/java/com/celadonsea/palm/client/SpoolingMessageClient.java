@@ -0,0 +1,213 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.listener.CallBack;
+import com.celadonsea.palm.publisher.MessageSpool;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Message client which stores the messages in a {@link MessageSpool} while the
+ * message broker is unreachable.
+ *
+ * A message is spooled if the wrapped client throws a {@link ConnectionException}
+ * on publishing, or if the spool still has pending messages, so the order of the
+ * messages is kept. The spool will be drained in order by a background thread
+ * after the connection or reconnection of the client. Publishing triggers the
+ * draining too (at most once per {@link #DRAIN_RETRY_INTERVAL_MILLIS} after a failed
+ * attempt), because the reconnection may happen inside of the wrapped client.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see MessageSpool
+ */
+@Slf4j
+public class SpoolingMessageClient extends DelegatingMessageClient {
+
+    /**
+     * Minimal time in milliseconds between a failed and a new draining attempt triggered by publishing
+     */
+    public static final long DRAIN_RETRY_INTERVAL_MILLIS = 1000;
+
+    /**
+     * The spool of the messages which could not be published
+     * -- GETTER --
+     * Returns the spool of the client
+     *
+     * @return the message spool
+     */
+    @Getter
+    private final MessageSpool messageSpool;
+
+    /**
+     * Single thread executor for the draining
+     */
+    private final ExecutorService drainExecutor;
+
+    /**
+     * True while a draining is scheduled or running
+     */
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * The time of the last failed draining attempt in milliseconds
+     */
+    private volatile long lastFailedDrain;
+
+    /**
+     * Constructs the client with the wrapped client and the spool.
+     *
+     * @param delegate the wrapped message client
+     * @param messageSpool the spool for the messages
+     * @throws IllegalArgumentException if the client or the spool is null
+     */
+    public SpoolingMessageClient(MessageClient delegate, MessageSpool messageSpool) {
+        super(delegate);
+        Assert.notNull(messageSpool, "Message spool must be set");
+        this.messageSpool = messageSpool;
+        this.drainExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "palm-spool-drain");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Connects the wrapped client and starts the draining of the spool.
+     */
+    @Override
+    public void connect() {
+        super.connect();
+        lastFailedDrain = 0;
+        drain();
+    }
+
+    /**
+     * Reconnects the wrapped client and starts the draining of the spool.
+     *
+     * @param callBack the message call back instance
+     */
+    @Override
+    public void reconnect(CallBack callBack) {
+        super.reconnect(callBack);
+        lastFailedDrain = 0;
+        drain();
+    }
+
+    /**
+     * Publishes the message with the wrapped client, or appends it to the spool
+     * if the spool is not empty or the publishing fails with a connection error.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     */
+    @Override
+    public void publish(byte[] message, ProducingProperties producingProperties) {
+        if (!messageSpool.isEmpty()) {
+            spoolBehindPending(ByteBuffer.wrap(message), producingProperties);
+            return;
+        }
+        try {
+            getDelegate().publish(message, producingProperties);
+        } catch (ConnectionException e) {
+            spoolFailed(ByteBuffer.wrap(message), producingProperties, e);
+        }
+    }
+
+    /**
+     * Publishes the message buffer with the wrapped client, or appends it to the spool
+     * if the spool is not empty or the publishing fails with a connection error.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     */
+    @Override
+    public void publish(ByteBuffer message, ProducingProperties producingProperties) {
+        if (!messageSpool.isEmpty()) {
+            spoolBehindPending(message, producingProperties);
+            return;
+        }
+        try {
+            getDelegate().publish(message, producingProperties);
+        } catch (ConnectionException e) {
+            spoolFailed(message, producingProperties, e);
+        }
+    }
+
+    /**
+     * Starts the draining of the spool in the background if it's not running yet.
+     */
+    public void drain() {
+        if (draining.compareAndSet(false, true)) {
+            drainExecutor.submit(this::drainSpool);
+        }
+    }
+
+    /**
+     * Stops the draining thread and closes the spool. The pending messages stay
+     * in the spool directory.
+     */
+    public void shutdown() {
+        drainExecutor.shutdown();
+        try {
+            drainExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        messageSpool.close();
+    }
+
+    /**
+     * Appends the message to the spool behind the pending messages to keep the order,
+     * and retries the draining if the last failed attempt is old enough.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     */
+    private void spoolBehindPending(ByteBuffer message, ProducingProperties producingProperties) {
+        messageSpool.append(message, producingProperties);
+        if (System.currentTimeMillis() - lastFailedDrain >= DRAIN_RETRY_INTERVAL_MILLIS) {
+            drain();
+        }
+    }
+
+    /**
+     * Appends the message which could not be published to the spool.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     * @param cause the error of the publishing
+     */
+    private void spoolFailed(ByteBuffer message, ProducingProperties producingProperties, ConnectionException cause) {
+        log.warn("Cannot publish to {}, the message is spooled", producingProperties.getTopic(), cause);
+        lastFailedDrain = System.currentTimeMillis();
+        messageSpool.append(message, producingProperties);
+    }
+
+    /**
+     * Drains the spool with the wrapped client. The pending state is checked again after
+     * the draining, because a message may have been spooled meanwhile.
+     */
+    private void drainSpool() {
+        boolean drained;
+        try {
+            drained = messageSpool.drainTo(getDelegate());
+            if (!drained) {
+                lastFailedDrain = System.currentTimeMillis();
+            }
+        } finally {
+            draining.set(false);
+        }
+        if (drained && !messageSpool.isEmpty()) {
+            drain();
+        }
+    }
+}
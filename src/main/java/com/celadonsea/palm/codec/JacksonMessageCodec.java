@@ -0,0 +1,253 @@
+package com.celadonsea.palm.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import lombok.Getter;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Message codec of the Jackson data formats: JSON, Smile and CBOR.
+ * <p>
+ * The binary formats are detected by their headers: Smile payloads start with ":)\n",
+ * CBOR payloads with the self-describe tag 0xD9D9F7, which is written by the CBOR
+ * codec of this class. JSON has no marker, it's the default format.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+public class JacksonMessageCodec implements MessageCodec {
+
+    /**
+     * Name of the JSON codec
+     */
+    public static final String JSON = "json";
+
+    /**
+     * Name of the Smile codec
+     */
+    public static final String SMILE = "smile";
+
+    /**
+     * Name of the CBOR codec
+     */
+    public static final String CBOR = "cbor";
+
+    /**
+     * Header of the Smile payloads
+     */
+    private static final byte[] SMILE_SIGNATURE = {':', ')', '\n'};
+
+    /**
+     * Self-describe tag of the CBOR payloads
+     */
+    private static final byte[] CBOR_SIGNATURE = {(byte) 0xD9, (byte) 0xD9, (byte) 0xF7};
+
+    /**
+     * Name of the codec
+     * -- GETTER --
+     * Returns the name of the codec
+     *
+     * @return the name of the codec
+     */
+    @Getter
+    private final String name;
+
+    /**
+     * Object mapper of the data format
+     * -- GETTER --
+     * Returns the object mapper of the data format
+     *
+     * @return the object mapper
+     */
+    @Getter
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Content-type marker at the beginning of the payloads, null if the format has no marker
+     */
+    private final byte[] signature;
+
+    /**
+     * Constructs a codec.
+     *
+     * @param name name of the codec
+     * @param objectMapper object mapper of the data format
+     * @param signature content-type marker of the payloads, it may be null
+     * @throws IllegalArgumentException if the name or the object mapper is not set
+     */
+    public JacksonMessageCodec(String name, ObjectMapper objectMapper, byte[] signature) {
+        Assert.hasText(name, "Codec name must be set");
+        Assert.notNull(objectMapper, "Object mapper must be set");
+        this.name = name;
+        this.objectMapper = objectMapper;
+        this.signature = signature;
+    }
+
+    /**
+     * Creates the JSON codec with the given object mapper.
+     *
+     * @param objectMapper the JSON object mapper
+     * @return the JSON codec
+     */
+    public static JacksonMessageCodec json(ObjectMapper objectMapper) {
+        return new JacksonMessageCodec(JSON, objectMapper, null);
+    }
+
+    /**
+     * Creates the Smile codec with the default object mapper settings.
+     *
+     * @return the Smile codec
+     */
+    public static JacksonMessageCodec smile() {
+        return smile(new ObjectMapper());
+    }
+
+    /**
+     * Creates the Smile codec with the settings and the registered modules of the given object mapper.
+     *
+     * @param objectMapper the object mapper of the application
+     * @return the Smile codec
+     */
+    public static JacksonMessageCodec smile(ObjectMapper objectMapper) {
+        return new JacksonMessageCodec(SMILE, copy(objectMapper, new SmileFactory()), SMILE_SIGNATURE);
+    }
+
+    /**
+     * Creates the CBOR codec with the default object mapper settings.
+     *
+     * @return the CBOR codec
+     */
+    public static JacksonMessageCodec cbor() {
+        return cbor(new ObjectMapper());
+    }
+
+    /**
+     * Creates the CBOR codec with the settings and the registered modules of the given object mapper.
+     * The encoded payloads start with the self-describe tag, so they can be detected.
+     *
+     * @param objectMapper the object mapper of the application
+     * @return the CBOR codec
+     */
+    public static JacksonMessageCodec cbor(ObjectMapper objectMapper) {
+        CBORFactory cborFactory = new CBORFactory();
+        cborFactory.enable(CBORGenerator.Feature.WRITE_TYPE_HEADER);
+        return new JacksonMessageCodec(CBOR, copy(objectMapper, cborFactory), CBOR_SIGNATURE);
+    }
+
+    /**
+     * Copies the object mapper onto another data format. The configurations, the serializer and
+     * deserializer factories (with the serializers and deserializers of the registered modules),
+     * the type factory, the subtypes and the injectable values are carried over.
+     * The {@link ObjectMapper#copy()} of Jackson 2.9 keeps the data format of the original mapper,
+     * that's why the copy is assembled here.
+     *
+     * @param objectMapper the object mapper to copy
+     * @param jsonFactory the factory of the data format
+     * @return the object mapper of the data format
+     * @throws IllegalArgumentException if the object mapper is not set
+     */
+    private static ObjectMapper copy(ObjectMapper objectMapper, JsonFactory jsonFactory) {
+        Assert.notNull(objectMapper, "Object mapper must be set");
+        ObjectMapper source = objectMapper.copy();
+        ObjectMapper copy = new ObjectMapper(jsonFactory,
+            (DefaultSerializerProvider) source.getSerializerProvider(),
+            (DefaultDeserializationContext) source.getDeserializationContext());
+        copy.setSerializerFactory(source.getSerializerFactory());
+        copy.setTypeFactory(source.getTypeFactory());
+        copy.setSubtypeResolver(source.getSubtypeResolver());
+        copy.setInjectableValues(source.getInjectableValues());
+        copy.setConfig(source.getSerializationConfig());
+        copy.setConfig(source.getDeserializationConfig());
+        return copy;
+    }
+
+    /**
+     * Returns true if the payload starts with the content-type marker of the format.
+     *
+     * @param content the message payload
+     * @return true if the payload was encoded in this format
+     */
+    @Override
+    public boolean matches(byte[] content) {
+        if (signature == null || content == null || content.length < signature.length) {
+            return false;
+        }
+        for (int index = 0; index < signature.length; index++) {
+            if (content[index] != signature[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a decoder with a prepared object reader of the type.
+     *
+     * @param type the type of the decoded values
+     * @return the decoder of the type
+     */
+    @Override
+    public MessageDecoder decoder(Type type) {
+        ObjectReader objectReader = objectMapper.readerFor(objectMapper.getTypeFactory().constructType(type));
+        return content -> objectReader.readValue(content);
+    }
+
+    /**
+     * Creates a decoder returning a {@link com.fasterxml.jackson.databind.MappingIterator MappingIterator}
+     * which walks the root array of the payload with the streaming parser, and decodes
+     * the elements one by one.
+     *
+     * @param elementType the type of the array elements
+     * @return the decoder returning an iterator of the elements
+     */
+    @Override
+    public MessageDecoder elementDecoder(Type elementType) {
+        ObjectReader objectReader = objectMapper.readerFor(objectMapper.getTypeFactory().constructType(elementType));
+        return content -> objectReader.readValues(content);
+    }
+
+    /**
+     * Creates a decoder returning a parser of the payload with the factory of the object mapper.
+     *
+     * @return the decoder returning a parser of the payload
+     */
+    @Override
+    public MessageDecoder tokenDecoder() {
+        JsonFactory jsonFactory = objectMapper.getFactory();
+        return jsonFactory::createParser;
+    }
+
+    /**
+     * Creates an encoder with a prepared object writer of the type.
+     *
+     * @param type the type of the encoded values
+     * @return the encoder of the type
+     */
+    @Override
+    public MessageEncoder encoder(Type type) {
+        ObjectWriter objectWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructType(type));
+        return objectWriter::writeValueAsBytes;
+    }
+
+    /**
+     * Encodes the value with the object mapper.
+     *
+     * @param value the value to encode
+     * @return the message payload
+     * @throws IOException if the value cannot be serialized
+     */
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        return objectMapper.writeValueAsBytes(value);
+    }
+}
@@ -0,0 +1,98 @@
+package com.celadonsea.palm.codec;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Service provider interface of the message body formats.
+ * <p>
+ * A codec is selected by its name with the codec attribute of the
+ * {@link com.celadonsea.palm.annotation.MessagingController @MessagingController} and
+ * {@link com.celadonsea.palm.annotation.Listener @Listener} annotations. If no codec is
+ * given, the codec is detected by the content-type marker at the beginning of the payload
+ * (see {@link #matches(byte[])}), and JSON is used for the payloads without marker.
+ * <p>
+ * The decoders are created once per listener parameter at the registration, so the
+ * type resolution cost isn't paid per message.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see MessageCodecs
+ */
+public interface MessageCodec {
+
+    /**
+     * Returns the name of the codec which is used in the annotations.
+     *
+     * @return the name of the codec
+     */
+    String getName();
+
+    /**
+     * Returns true if the payload starts with the content-type marker of the codec.
+     * The codecs without marker can be selected only by name.
+     *
+     * @param content the message payload
+     * @return true if the payload was encoded by this codec
+     */
+    default boolean matches(byte[] content) {
+        return false;
+    }
+
+    /**
+     * Creates a decoder for the given type.
+     *
+     * @param type the type of the decoded values
+     * @return the decoder of the type
+     * @throws IllegalArgumentException if the codec doesn't support the type
+     */
+    MessageDecoder decoder(Type type);
+
+    /**
+     * Creates a decoder for array payloads which returns an {@link java.util.Iterator Iterator}
+     * decoding the elements one by one, so only one element is in the memory at a time.
+     * The codecs without streaming support throw exception.
+     *
+     * @param elementType the type of the array elements
+     * @return the decoder returning an iterator of the elements
+     * @throws IllegalArgumentException if the codec doesn't support the streaming or the type
+     */
+    default MessageDecoder elementDecoder(Type elementType) {
+        throw new IllegalArgumentException("Codec " + getName() + " cannot decode element by element");
+    }
+
+    /**
+     * Creates a decoder returning a streaming {@link com.fasterxml.jackson.core.JsonParser JsonParser}
+     * positioned before the first token of the payload. It's used by the content filters
+     * of the listeners, which decide on a few values without the full deserialization.
+     * The codecs without token stream throw exception.
+     *
+     * @return the decoder returning a parser of the payload
+     * @throws IllegalArgumentException if the codec doesn't support the token stream
+     */
+    default MessageDecoder tokenDecoder() {
+        throw new IllegalArgumentException("Codec " + getName() + " cannot decode token by token");
+    }
+
+    /**
+     * Creates an encoder for the values of the given type. The encoders are created once
+     * per listener output at the registration, so the codecs can prepare the serialization.
+     * The default encoder calls {@link #encode(Object)}.
+     *
+     * @param type the type of the encoded values
+     * @return the encoder of the type
+     * @throws IllegalArgumentException if the codec doesn't support the type
+     */
+    default MessageEncoder encoder(Type type) {
+        return this::encode;
+    }
+
+    /**
+     * Encodes a value to message payload.
+     *
+     * @param value the value to encode
+     * @return the message payload
+     * @throws IOException if the value cannot be encoded
+     */
+    byte[] encode(Object value) throws IOException;
+}
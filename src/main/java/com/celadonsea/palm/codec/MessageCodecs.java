@@ -0,0 +1,185 @@
+package com.celadonsea.palm.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import org.springframework.util.Assert;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Registry of the message codecs by name.
+ * <p>
+ * It contains the JSON, Smile, CBOR and raw codecs by default, the custom codecs can
+ * be registered with their names. A codec registered with an existing name replaces
+ * the previous one.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see MessageCodec
+ */
+public class MessageCodecs {
+
+    /**
+     * The codecs by name
+     */
+    private final Map<String, MessageCodec> codecs = new ConcurrentHashMap<>();
+
+    /**
+     * The codec of the payloads without content-type marker
+     * -- GETTER --
+     * Returns the codec of the payloads without content-type marker
+     *
+     * @return the default codec
+     */
+    @Getter
+    private final MessageCodec defaultCodec;
+
+    /**
+     * Constructs the registry with the default codecs, where the Jackson codecs use the settings
+     * and the modules of the given object mapper.
+     *
+     * @param objectMapper the JSON object mapper
+     */
+    public MessageCodecs(ObjectMapper objectMapper) {
+        this.defaultCodec = JacksonMessageCodec.json(objectMapper);
+        register(defaultCodec);
+        register(JacksonMessageCodec.smile(objectMapper));
+        register(JacksonMessageCodec.cbor(objectMapper));
+        register(new RawMessageCodec());
+    }
+
+    /**
+     * Registers a codec with its name.
+     *
+     * @param messageCodec the codec to register
+     * @throws IllegalArgumentException if the codec or its name is not set
+     */
+    public void register(MessageCodec messageCodec) {
+        Assert.notNull(messageCodec, "Message codec must be set");
+        Assert.hasText(messageCodec.getName(), "Message codec name must be set");
+        codecs.put(messageCodec.getName(), messageCodec);
+    }
+
+    /**
+     * Returns the codec by name.
+     *
+     * @param name the name of the codec
+     * @return the codec
+     * @throws IllegalArgumentException if there is no codec with the name
+     */
+    public MessageCodec get(String name) {
+        MessageCodec messageCodec = codecs.get(name);
+        Assert.notNull(messageCodec, "Unknown message codec: " + name);
+        return messageCodec;
+    }
+
+    /**
+     * Returns the registered codecs.
+     *
+     * @return the registered codecs
+     */
+    public Collection<MessageCodec> getCodecs() {
+        return Collections.unmodifiableCollection(codecs.values());
+    }
+
+    /**
+     * Creates a decoder for the given type. If the codec name is empty, the decoder detects
+     * the codec by the content-type marker of the payload, and it uses the default codec if
+     * the payload has no known marker. The decoders of the detectable codecs are created
+     * in advance, so the detection costs only the marker comparisons per message.
+     *
+     * @param codecName the name of the codec, or empty for the detection
+     * @param type the type of the decoded values
+     * @return the decoder of the type
+     * @throws IllegalArgumentException if there is no codec with the name, or the codec doesn't support the type
+     */
+    public MessageDecoder decoder(String codecName, Type type) {
+        return decoder(codecName, messageCodec -> messageCodec.decoder(type));
+    }
+
+    /**
+     * Creates a decoder for array payloads which returns an iterator of the elements.
+     * The codec is selected the same way as by {@link #decoder(String, Type)}.
+     *
+     * @param codecName the name of the codec, or empty for the detection
+     * @param elementType the type of the array elements
+     * @return the decoder returning an iterator of the elements
+     * @throws IllegalArgumentException if there is no codec with the name, or the codec doesn't support the streaming
+     */
+    public MessageDecoder elementDecoder(String codecName, Type elementType) {
+        return decoder(codecName, messageCodec -> messageCodec.elementDecoder(elementType));
+    }
+
+    /**
+     * Creates a decoder returning a streaming parser of the payload. The codec is selected
+     * the same way as by {@link #decoder(String, Type)}.
+     *
+     * @param codecName the name of the codec, or empty for the detection
+     * @return the decoder returning a parser of the payload
+     * @throws IllegalArgumentException if there is no codec with the name, or the codec doesn't support the token stream
+     */
+    public MessageDecoder tokenDecoder(String codecName) {
+        return decoder(codecName, MessageCodec::tokenDecoder);
+    }
+
+    /**
+     * Creates an encoder for the given type with the named codec, or with the default
+     * codec if the name is empty.
+     *
+     * @param codecName the name of the codec, or empty for the default codec
+     * @param type the type of the encoded values
+     * @return the encoder of the type
+     * @throws IllegalArgumentException if there is no codec with the name, or the codec doesn't support the type
+     */
+    public MessageEncoder encoder(String codecName, Type type) {
+        MessageCodec messageCodec = codecName == null || "".equals(codecName.trim()) ? defaultCodec : get(codecName.trim());
+        return messageCodec.encoder(type);
+    }
+
+    /**
+     * Creates a decoder with the given factory of the selected or detectable codecs.
+     *
+     * @param codecName the name of the codec, or empty for the detection
+     * @param decoderFactory creates the decoder of a codec
+     * @return the decoder of the named codec or the detecting decoder
+     */
+    private MessageDecoder decoder(String codecName, Function<MessageCodec, MessageDecoder> decoderFactory) {
+        if (codecName != null && !"".equals(codecName.trim())) {
+            return decoderFactory.apply(get(codecName.trim()));
+        }
+        MessageDecoder defaultDecoder = decoderFactory.apply(defaultCodec);
+        List<MessageCodec> detectableCodecs = new ArrayList<>();
+        List<MessageDecoder> detectableDecoders = new ArrayList<>();
+        for (MessageCodec messageCodec : codecs.values()) {
+            if (messageCodec == defaultCodec) {
+                continue;
+            }
+            try {
+                detectableDecoders.add(decoderFactory.apply(messageCodec));
+                detectableCodecs.add(messageCodec);
+            } catch (IllegalArgumentException e) {
+                // the codec doesn't support the type, it won't be detected
+            }
+        }
+        if (detectableCodecs.isEmpty()) {
+            return defaultDecoder;
+        }
+        MessageCodec[] codecArray = detectableCodecs.toArray(new MessageCodec[0]);
+        MessageDecoder[] decoderArray = detectableDecoders.toArray(new MessageDecoder[0]);
+        return content -> {
+            for (int index = 0; index < codecArray.length; index++) {
+                if (codecArray[index].matches(content)) {
+                    return decoderArray[index].decode(content);
+                }
+            }
+            return defaultDecoder.decode(content);
+        };
+    }
+}
@@ -0,0 +1,23 @@
+package com.celadonsea.palm.codec;
+
+import java.io.IOException;
+
+/**
+ * Decodes message payloads to a type which was given at the creation of the decoder.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see MessageCodec#decoder(java.lang.reflect.Type)
+ */
+@FunctionalInterface
+public interface MessageDecoder {
+
+    /**
+     * Decodes the message payload.
+     *
+     * @param content the message payload
+     * @return the decoded value
+     * @throws IOException if the payload cannot be decoded
+     */
+    Object decode(byte[] content) throws IOException;
+}
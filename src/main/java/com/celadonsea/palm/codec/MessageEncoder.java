@@ -0,0 +1,23 @@
+package com.celadonsea.palm.codec;
+
+import java.io.IOException;
+
+/**
+ * Encodes values of a type which was given at the creation of the encoder to message payloads.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see MessageCodec#encoder(java.lang.reflect.Type)
+ */
+@FunctionalInterface
+public interface MessageEncoder {
+
+    /**
+     * Encodes the value.
+     *
+     * @param value the value to encode
+     * @return the message payload
+     * @throws IOException if the value cannot be encoded
+     */
+    byte[] encode(Object value) throws IOException;
+}
@@ -0,0 +1,76 @@
+package com.celadonsea.palm.codec;
+
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+
+/**
+ * Pass-through codec which doesn't change the payload.
+ * <p>
+ * It decodes to byte array, byte buffer (wrapping the payload), string or Object (the byte array itself),
+ * and it encodes byte arrays, byte buffers and strings.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+public class RawMessageCodec implements MessageCodec {
+
+    /**
+     * Name of the raw codec
+     */
+    public static final String RAW = "raw";
+
+    /**
+     * Returns the name of the codec.
+     *
+     * @return the name of the codec
+     */
+    @Override
+    public String getName() {
+        return RAW;
+    }
+
+    /**
+     * Creates a decoder for the given type.
+     *
+     * @param type byte array, byte buffer, string or Object
+     * @return the decoder of the type
+     * @throws IllegalArgumentException if the type is not supported
+     */
+    @Override
+    public MessageDecoder decoder(Type type) {
+        if (type == byte[].class || type == Object.class) {
+            return content -> content;
+        }
+        if (type == ByteBuffer.class) {
+            return ByteBuffer::wrap;
+        }
+        if (type == String.class) {
+            return String::new;
+        }
+        throw new IllegalArgumentException("Raw codec cannot decode to " + type.getTypeName());
+    }
+
+    /**
+     * Returns the value as payload.
+     *
+     * @param value byte array, byte buffer or string
+     * @return the message payload
+     * @throws IllegalArgumentException if the type of the value is not supported
+     */
+    @Override
+    public byte[] encode(Object value) {
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        if (value instanceof ByteBuffer) {
+            ByteBuffer source = ((ByteBuffer) value).duplicate();
+            byte[] payload = new byte[source.remaining()];
+            source.get(payload);
+            return payload;
+        }
+        if (value instanceof String) {
+            return ((String) value).getBytes();
+        }
+        throw new IllegalArgumentException("Raw codec cannot encode " + (value == null ? "null" : value.getClass().getName()));
+    }
+}
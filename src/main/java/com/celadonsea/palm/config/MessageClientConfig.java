@@ -62,4 +62,27 @@ public interface MessageClientConfig {
      * @see java.util.concurrent.ThreadPoolExecutor#setKeepAliveTime(long, TimeUnit)
      */
     int getThreadKeepAliveTime();
+
+    /**
+     * Returns the maximal number of unacknowledged (QoS 1 and 2) messages of the client.
+     * Zero or negative value means that the number of messages in flight is not limited.
+     *
+     * @return the maximal number of messages in flight
+     * @see com.celadonsea.palm.publisher.InFlightWindow
+     */
+    default int getMaxInFlight() {
+        return 0;
+    }
+
+    /**
+     * Returns the maximal size of a packet received by the client in bytes. The connection is
+     * closed if the broker sends a larger packet. Zero or negative value means the default of
+     * the client dialect.
+     *
+     * @return the maximal size of a received packet
+     * @see com.celadonsea.palm.mqtt.MqttConnection#DEFAULT_MAX_PACKET_SIZE
+     */
+    default int getMaxPacketSize() {
+        return 0;
+    }
 }
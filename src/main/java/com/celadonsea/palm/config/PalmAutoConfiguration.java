@@ -1,10 +1,21 @@
 package com.celadonsea.palm.config;
 
+import com.celadonsea.palm.codec.MessageCodec;
+import com.celadonsea.palm.codec.MessageCodecs;
 import com.celadonsea.palm.scanner.ListenerCallbackPostProcessor;
+import com.celadonsea.palm.scanner.ListenerCompletionHandler;
 import com.celadonsea.palm.scanner.MessagingControllerPostProcessor;
+import com.celadonsea.palm.scanner.SubscriptionRegistrar;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.util.ClassUtils;
 
 /**
  * Auto configuration which is configured in the META-INF/spring.factories.
@@ -15,16 +26,72 @@ import org.springframework.context.annotation.Configuration;
  * @author Rafael Revesz
  * @since 1.0
  */
+@Slf4j
 @Configuration
 public class PalmAutoConfiguration {
 
     /**
-     * Creates and returns the post processor for the listener callbacks
+     * Property to enable the Jackson Afterburner module for the message bodies
+     */
+    public static final String AFTERBURNER_PROPERTY = "palm.jackson.afterburner";
+
+    /**
+     * Class name of the Jackson Afterburner module, it's an optional dependency
+     */
+    private static final String AFTERBURNER_MODULE = "com.fasterxml.jackson.module.afterburner.AfterburnerModule";
+
+    /**
+     * Creates and returns the registry of the message codecs.
+     * The JSON codec uses the object mapper of the application context if there is exactly one,
+     * otherwise a default object mapper. If the {@link #AFTERBURNER_PROPERTY} is true and
+     * the Afterburner module is on the classpath, it's registered to a copy of the object mapper,
+     * so the object mapper of the application isn't changed. The message codec beans of the
+     * application context are registered too, they may replace the default codecs by name.
+     *
+     * @param objectMapperProvider provider of the object mapper bean
+     * @param messageCodecProvider provider of the custom message codec beans
+     * @param environment the environment of the application context
+     * @return the new codec registry
+     */
+    @Bean
+    public MessageCodecs messageCodecs(ObjectProvider<ObjectMapper> objectMapperProvider,
+                                       ObjectProvider<MessageCodec> messageCodecProvider,
+                                       Environment environment) {
+        ObjectMapper objectMapper = objectMapperProvider.getIfUnique(ObjectMapper::new);
+        if (environment.getProperty(AFTERBURNER_PROPERTY, Boolean.class, false)) {
+            objectMapper = registerAfterburner(objectMapper);
+        }
+        MessageCodecs messageCodecs = new MessageCodecs(objectMapper);
+        messageCodecProvider.orderedStream().forEach(messageCodecs::register);
+        return messageCodecs;
+    }
+
+    /**
+     * Creates and returns the registrar which subscribes the listeners at the refresh
+     * of the application context.
+     *
+     * @return the new subscription registrar
+     */
+    @Bean
+    public SubscriptionRegistrar subscriptionRegistrar() {
+        return new SubscriptionRegistrar();
+    }
+
+    /**
+     * Creates and returns the post processor for the listener callbacks. The subscriptions
+     * are deferred to the refresh of the application context. The listener completion handler
+     * of the application context is notified about the completed listener calls, if there is one.
+     *
+     * @param messageCodecs the codecs of the message bodies
+     * @param subscriptionRegistrar the registrar of the subscriptions
+     * @param completionHandlerProvider provider of the listener completion handler bean
      * @return the new post processor
      */
     @Bean
-    public ListenerCallbackPostProcessor messageListener() {
-        return new ListenerCallbackPostProcessor();
+    public ListenerCallbackPostProcessor messageListener(MessageCodecs messageCodecs,
+                                                         SubscriptionRegistrar subscriptionRegistrar,
+                                                         ObjectProvider<ListenerCompletionHandler> completionHandlerProvider) {
+        return new ListenerCallbackPostProcessor(messageCodecs, subscriptionRegistrar, completionHandlerProvider.getIfUnique());
     }
 
     /**
@@ -39,4 +106,21 @@ public class PalmAutoConfiguration {
                                                                         ListenerCallbackPostProcessor listenerCallbackPostProcessor) {
         return new MessagingControllerPostProcessor(configurableBeanFactory, listenerCallbackPostProcessor);
     }
+
+    /**
+     * Registers the Afterburner module to a copy of the object mapper. The module
+     * is loaded by name, because it's an optional dependency.
+     *
+     * @param objectMapper the object mapper of the application
+     * @return the copy of the object mapper with the module or the original one if the module is missing
+     */
+    private ObjectMapper registerAfterburner(ObjectMapper objectMapper) {
+        ClassLoader classLoader = getClass().getClassLoader();
+        if (!ClassUtils.isPresent(AFTERBURNER_MODULE, classLoader)) {
+            log.warn("{} is set, but {} is not on the classpath", AFTERBURNER_PROPERTY, AFTERBURNER_MODULE);
+            return objectMapper;
+        }
+        Module module = (Module) BeanUtils.instantiateClass(ClassUtils.resolveClassName(AFTERBURNER_MODULE, classLoader));
+        return objectMapper.copy().registerModule(module);
+    }
 }
@@ -0,0 +1,353 @@
+package com.celadonsea.palm.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timer for a large number of approximate timeouts with a single thread.
+ *
+ * The timeouts are stored in the buckets of a wheel, the worker thread moves to the
+ * next bucket in every tick and runs the expired tasks of it. Scheduling and cancelling
+ * a timeout costs constant time, the accuracy of the timeouts is the tick duration.
+ *
+ * The tasks run on the worker thread, so they should be short. Longer tasks should
+ * be handed over to an executor.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+@Slf4j
+public class HashedWheelTimer {
+
+    /**
+     * Default duration of a tick in milliseconds
+     */
+    public static final long DEFAULT_TICK_DURATION_MILLIS = 10;
+
+    /**
+     * Default number of buckets in the wheel
+     */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * Maximal number of new timeouts moved to the wheel in a tick
+     */
+    private static final int MAX_TRANSFER_PER_TICK = 100_000;
+
+    /**
+     * Name of the worker thread
+     */
+    private final String name;
+
+    /**
+     * Duration of a tick in nanoseconds
+     */
+    private final long tickDuration;
+
+    /**
+     * The buckets of the wheel, they are accessed only by the worker thread
+     */
+    private final List<List<Timeout>> wheel;
+
+    /**
+     * Mask to calculate the bucket index from the tick
+     */
+    private final int mask;
+
+    /**
+     * New timeouts which are not in the wheel yet
+     */
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of timeouts which are neither expired nor cancelled
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * True if the worker thread was started
+     */
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    /**
+     * Start time of the timer in nanoseconds, the deadlines and the ticks are relative to it
+     */
+    private final long startTime;
+
+    /**
+     * True if the timer was stopped
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Constructs a timer with default tick duration and wheel size.
+     *
+     * @param name name of the worker thread
+     */
+    public HashedWheelTimer(String name) {
+        this(name, DEFAULT_TICK_DURATION_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Constructs a timer. The worker thread will be started at the first scheduling.
+     *
+     * @param name name of the worker thread
+     * @param tickDuration duration of a tick
+     * @param timeUnit unit of the tick duration
+     * @param wheelSize number of buckets, it will be rounded up to a power of two
+     * @throws IllegalArgumentException if the tick duration or the wheel size is not positive
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit timeUnit, int wheelSize) {
+        Assert.isTrue(tickDuration > 0, "Tick duration must be positive");
+        Assert.isTrue(wheelSize > 0 && wheelSize <= 1 << 30, "Wheel size must be positive");
+        this.name = name;
+        this.tickDuration = timeUnit.toNanos(tickDuration);
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.wheel = new ArrayList<>(size);
+        for (int index = 0; index < size; index++) {
+            wheel.add(new LinkedList<>());
+        }
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Schedules a task to run once after the given delay.
+     *
+     * @param task the task to run
+     * @param delay the delay
+     * @param timeUnit unit of the delay
+     * @return the timeout which can be cancelled
+     * @throws IllegalStateException if the timer was stopped
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit timeUnit) {
+        Assert.notNull(task, "Task must be set");
+        Assert.state(!stopped, "Timer is stopped");
+        start();
+        long deadline = System.nanoTime() + timeUnit.toNanos(Math.max(0, delay)) - startTime;
+        Timeout timeout = new Timeout(this, task, deadline);
+        pendingCount.incrementAndGet();
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stops the worker thread. The pending timeouts won't be expired.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Returns the number of timeouts which are neither expired nor cancelled.
+     *
+     * @return the number of pending timeouts
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Starts the worker thread if it's not running yet.
+     */
+    private void start() {
+        if (started.compareAndSet(false, true)) {
+            Thread worker = new Thread(this::work, name);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * The loop of the worker thread.
+     */
+    private void work() {
+        long tick = 0;
+        while (!stopped) {
+            if (!waitForTick(tick)) {
+                return;
+            }
+            transferNewTimeouts(tick);
+            expireTimeouts(wheel.get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    /**
+     * Sleeps until the end of the given tick.
+     *
+     * @param tick the current tick
+     * @return false if the worker thread was interrupted, otherwise true
+     */
+    private boolean waitForTick(long tick) {
+        long deadline = tickDuration * (tick + 1);
+        long sleepTime;
+        while ((sleepTime = deadline - (System.nanoTime() - startTime)) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepTime);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves the new timeouts to the buckets of the wheel.
+     *
+     * @param tick the current tick
+     */
+    private void transferNewTimeouts(long tick) {
+        for (int count = 0; count < MAX_TRANSFER_PER_TICK; count++) {
+            Timeout timeout = newTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            long expirationTick = Math.max(timeout.deadline / tickDuration, tick);
+            timeout.remainingRounds = (expirationTick - tick) / wheel.size();
+            wheel.get((int) (expirationTick & mask)).add(timeout);
+        }
+    }
+
+    /**
+     * Runs the expired tasks of a bucket and removes the cancelled ones.
+     *
+     * @param bucket the bucket of the current tick
+     */
+    private void expireTimeouts(List<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.isCancelled()) {
+                iterator.remove();
+            } else if (timeout.remainingRounds <= 0) {
+                iterator.remove();
+                timeout.expire();
+            } else {
+                timeout.remainingRounds--;
+            }
+        }
+    }
+
+    /**
+     * A scheduled task of the timer.
+     */
+    public static final class Timeout {
+
+        /**
+         * State of a pending timeout
+         */
+        private static final int STATE_PENDING = 0;
+
+        /**
+         * State of a cancelled timeout
+         */
+        private static final int STATE_CANCELLED = 1;
+
+        /**
+         * State of an expired timeout
+         */
+        private static final int STATE_EXPIRED = 2;
+
+        /**
+         * The timer of the timeout
+         */
+        private final HashedWheelTimer timer;
+
+        /**
+         * The task to run
+         */
+        private final Runnable task;
+
+        /**
+         * The deadline in nanoseconds relative to the start of the timer
+         */
+        private final long deadline;
+
+        /**
+         * State of the timeout
+         */
+        private final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+
+        /**
+         * Number of wheel rounds before the expiration, it's accessed only by the worker thread
+         */
+        private long remainingRounds;
+
+        /**
+         * Constructs a timeout.
+         *
+         * @param timer the timer of the timeout
+         * @param task the task to run
+         * @param deadline the deadline relative to the start of the timer
+         */
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the timeout if it's still pending.
+         *
+         * @return true if the timeout was cancelled, false if it was already expired or cancelled
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(STATE_PENDING, STATE_CANCELLED)) {
+                timer.pendingCount.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Returns true if the timeout was cancelled.
+         *
+         * @return true if the timeout was cancelled, otherwise false
+         */
+        public boolean isCancelled() {
+            return state.get() == STATE_CANCELLED;
+        }
+
+        /**
+         * Returns true if the task of the timeout was run.
+         *
+         * @return true if the timeout was expired, otherwise false
+         */
+        public boolean isExpired() {
+            return state.get() == STATE_EXPIRED;
+        }
+
+        /**
+         * Runs the task if the timeout is still pending.
+         */
+        private void expire() {
+            if (!state.compareAndSet(STATE_PENDING, STATE_EXPIRED)) {
+                return;
+            }
+            timer.pendingCount.decrementAndGet();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Timer task failed", e);
+            }
+        }
+    }
+}
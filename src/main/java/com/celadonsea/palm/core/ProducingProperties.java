@@ -25,6 +25,16 @@ public class ProducingProperties extends TransferProperties {
     @Getter
     private int qos = DEFAULT_UNSET_QOS;
 
+    /**
+     * True if the broker should keep the message as the last retained message of the topic
+     * -- GETTER --
+     * Returns true if the message should be retained by the broker
+     *
+     * @return the retain flag
+     */
+    @Getter
+    private boolean retained;
+
     /**
      * Constructs the properties with routing key (topic) and exchange.
      * It's commonly used for AMQP publishing.
@@ -55,4 +65,29 @@ public class ProducingProperties extends TransferProperties {
         super(topic, null);
         this.qos = qos;
     }
+
+    /**
+     * Constructs the properties with topic, exchange and quality of service
+     * @param topic topic or routing key
+     * @param exchange exchange
+     * @param qos quality of service
+     */
+    public ProducingProperties(String topic, String exchange, int qos) {
+        super(topic, exchange);
+        this.qos = qos;
+    }
+
+    /**
+     * Constructs the properties of an MQTT message which may be retained by the broker.
+     * An empty retained message clears the retained message of the topic.
+     *
+     * @param topic topic
+     * @param qos quality of service
+     * @param retained true if the broker should keep the message for the later subscribers
+     */
+    public ProducingProperties(String topic, int qos, boolean retained) {
+        super(topic, null);
+        this.qos = qos;
+        this.retained = retained;
+    }
 }
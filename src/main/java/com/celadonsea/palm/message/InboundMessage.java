@@ -0,0 +1,39 @@
+package com.celadonsea.palm.message;
+
+import lombok.Getter;
+import org.springframework.util.Assert;
+
+/**
+ * An arrived message with its topic and raw payload. It's the element of the
+ * {@link com.celadonsea.palm.client.MessageClient#flow(com.celadonsea.palm.core.ConsumingProperties) message flows}.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see com.celadonsea.palm.client.FlowPublisher
+ */
+@Getter
+public final class InboundMessage {
+
+    /**
+     * The topic of the message
+     */
+    private final String topic;
+
+    /**
+     * The message payload
+     */
+    private final byte[] content;
+
+    /**
+     * Constructs the message.
+     *
+     * @param topic the topic of the message
+     * @param content the message payload
+     * @throws IllegalArgumentException if the topic is null
+     */
+    public InboundMessage(String topic, byte[] content) {
+        Assert.notNull(topic, "Topic must be set");
+        this.topic = topic;
+        this.content = content;
+    }
+}
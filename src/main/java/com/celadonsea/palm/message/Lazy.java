@@ -0,0 +1,88 @@
+package com.celadonsea.palm.message;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Message body which is decoded only at the first access.
+ * <p>
+ * A {@link com.celadonsea.palm.annotation.MessageBody @MessageBody} parameter with the type
+ * Lazy&lt;T&gt; or Supplier&lt;T&gt; gets the message payload without decoding. The payload is
+ * decoded to T at the first {@link #get()} call and the result is kept, so the listeners
+ * which drop most of the messages by the topic don't pay for the decoding. The raw payload
+ * is available for pass-through without decoding.
+ *
+ * @param <T> the type of the decoded message body
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+public final class Lazy<T> implements Supplier<T> {
+
+    /**
+     * The raw message payload
+     */
+    private final byte[] raw;
+
+    /**
+     * The decoder of the payload, it's released after the decoding
+     */
+    private Function<byte[], T> decoder;
+
+    /**
+     * The decoded message body
+     */
+    private T value;
+
+    /**
+     * True if the payload was decoded
+     */
+    private volatile boolean resolved;
+
+    /**
+     * Constructs the lazy message body.
+     *
+     * @param raw the raw message payload
+     * @param decoder the decoder of the payload
+     */
+    public Lazy(byte[] raw, Function<byte[], T> decoder) {
+        this.raw = raw;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Returns the decoded message body. The payload is decoded at the first call.
+     *
+     * @return the decoded message body, null if it cannot be decoded
+     */
+    @Override
+    public T get() {
+        if (!resolved) {
+            synchronized (this) {
+                if (!resolved) {
+                    value = decoder.apply(raw);
+                    decoder = null;
+                    resolved = true;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the raw message payload without decoding.
+     *
+     * @return the raw message payload
+     */
+    public byte[] getRaw() {
+        return raw;
+    }
+
+    /**
+     * Returns true if the payload was already decoded.
+     *
+     * @return true if the payload was decoded, otherwise false
+     */
+    public boolean isResolved() {
+        return resolved;
+    }
+}
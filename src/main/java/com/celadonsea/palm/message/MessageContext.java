@@ -1,8 +1,9 @@
 package com.celadonsea.palm.message;
 
 import com.celadonsea.palm.topic.TopicFormat;
+import com.celadonsea.palm.topic.TopicParser;
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 
 import java.util.Map;
 
@@ -13,7 +14,6 @@ import java.util.Map;
  * @since 1.0
  */
 @Getter
-@RequiredArgsConstructor
 public class MessageContext {
 
     /**
@@ -26,10 +26,60 @@ public class MessageContext {
      */
     private final String subscribedTopic;
 
+    /**
+     * The topic format for the lazy parsing of the parameters, null if the parameters were given
+     */
+    @Getter(AccessLevel.NONE)
+    private final TopicFormat topicFormat;
+
     /**
      * Contains all the parameters and values which can be parsed from the
-     * incoming and subscribed topic.
+     * incoming and subscribed topic. It's parsed at the first access.
      * @see com.celadonsea.palm.topic.TopicParser#parseVariables(String, String, TopicFormat)
      */
-    private final Map<String, String> parameterMap;
+    @Getter(AccessLevel.NONE)
+    private volatile Map<String, String> parameterMap;
+
+    /**
+     * Constructs the context with already parsed parameters.
+     *
+     * @param topic the topic which the incoming message arrived to
+     * @param subscribedTopic the topic which the message controller subscribed to
+     * @param parameterMap the parsed parameters of the topic
+     */
+    public MessageContext(String topic, String subscribedTopic, Map<String, String> parameterMap) {
+        this.topic = topic;
+        this.subscribedTopic = subscribedTopic;
+        this.topicFormat = null;
+        this.parameterMap = parameterMap;
+    }
+
+    /**
+     * Constructs the context which parses the parameters only if they are requested.
+     *
+     * @param topic the topic which the incoming message arrived to
+     * @param subscribedTopic the topic which the message controller subscribed to
+     * @param topicFormat the topic format (message broker dependent)
+     */
+    public MessageContext(String topic, String subscribedTopic, TopicFormat topicFormat) {
+        this.topic = topic;
+        this.subscribedTopic = subscribedTopic;
+        this.topicFormat = topicFormat;
+    }
+
+    /**
+     * Returns the parameters and values parsed from the incoming and subscribed topic.
+     * The topic is parsed at the first call.
+     *
+     * @return variable name - value map
+     * @throws IllegalArgumentException if the incoming topic doesn't match to the subscribed topic
+     */
+    public Map<String, String> getParameterMap() {
+        Map<String, String> parameters = parameterMap;
+        if (parameters == null) {
+            parameters = TopicParser.parseVariables(topic, subscribedTopic, topicFormat);
+            parameterMap = parameters;
+        }
+        return parameters;
+    }
 }
@@ -0,0 +1,101 @@
+package com.celadonsea.palm.message;
+
+import lombok.Getter;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The wrapper of the request payloads which carries the reply topic of the request.
+ * The protocols without message properties (eg. MQTT 3.1.1) have no place for the reply
+ * address, so it's put in front of the payload.
+ * <p>
+ * Layout: the 4 byte marker, the length of the reply topic on 2 bytes (big endian),
+ * the reply topic in UTF-8 and the original payload. The marker starts with a zero byte,
+ * so it cannot be mistaken for a JSON, Smile or CBOR payload.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see com.celadonsea.palm.client.RequestingMessageClient
+ */
+@Getter
+public final class RequestEnvelope {
+
+    /**
+     * The marker at the beginning of the wrapped payloads
+     */
+    private static final byte[] MARKER = {0, 'P', 'R', 'Q'};
+
+    /**
+     * Length of the header without the reply topic
+     */
+    private static final int HEADER_LENGTH = MARKER.length + 2;
+
+    /**
+     * The topic where the reply is expected
+     */
+    private final String replyTopic;
+
+    /**
+     * The original request payload
+     */
+    private final byte[] payload;
+
+    /**
+     * Constructs the envelope.
+     *
+     * @param replyTopic the topic where the reply is expected
+     * @param payload the original request payload
+     */
+    private RequestEnvelope(String replyTopic, byte[] payload) {
+        this.replyTopic = replyTopic;
+        this.payload = payload;
+    }
+
+    /**
+     * Wraps the request payload with the reply topic.
+     *
+     * @param replyTopic the topic where the reply is expected
+     * @param payload the original request payload
+     * @return the wrapped payload
+     * @throws IllegalArgumentException if the reply topic is empty or longer than 65535 bytes, or the payload is null
+     */
+    public static byte[] wrap(String replyTopic, byte[] payload) {
+        Assert.hasLength(replyTopic, "Reply topic must be set");
+        Assert.notNull(payload, "Payload must be set");
+        byte[] topic = replyTopic.getBytes(StandardCharsets.UTF_8);
+        Assert.isTrue(topic.length <= 0xFFFF, "Reply topic is too long");
+        byte[] wrapped = new byte[HEADER_LENGTH + topic.length + payload.length];
+        System.arraycopy(MARKER, 0, wrapped, 0, MARKER.length);
+        wrapped[MARKER.length] = (byte) (topic.length >>> 8);
+        wrapped[MARKER.length + 1] = (byte) topic.length;
+        System.arraycopy(topic, 0, wrapped, HEADER_LENGTH, topic.length);
+        System.arraycopy(payload, 0, wrapped, HEADER_LENGTH + topic.length, payload.length);
+        return wrapped;
+    }
+
+    /**
+     * Unwraps a request payload. The payloads without the marker are not requests, they
+     * cost only the comparison of the first byte.
+     *
+     * @param content the arrived message payload
+     * @return the envelope of the request or null if the payload isn't a wrapped request
+     */
+    public static RequestEnvelope unwrap(byte[] content) {
+        if (content == null || content.length < HEADER_LENGTH || content[0] != MARKER[0]) {
+            return null;
+        }
+        for (int index = 1; index < MARKER.length; index++) {
+            if (content[index] != MARKER[index]) {
+                return null;
+            }
+        }
+        int topicLength = (content[MARKER.length] & 0xFF) << 8 | content[MARKER.length + 1] & 0xFF;
+        if (topicLength == 0 || HEADER_LENGTH + topicLength > content.length) {
+            return null;
+        }
+        String replyTopic = new String(content, HEADER_LENGTH, topicLength, StandardCharsets.UTF_8);
+        return new RequestEnvelope(replyTopic, Arrays.copyOfRange(content, HEADER_LENGTH + topicLength, content.length));
+    }
+}
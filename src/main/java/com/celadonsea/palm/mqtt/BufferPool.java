@@ -0,0 +1,119 @@
+package com.celadonsea.palm.mqtt;
+
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct byte buffers with the same capacity. The read buffers of the connections
+ * are borrowed from the pool, so opening and closing connections doesn't allocate
+ * native memory again and again.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+public class BufferPool {
+
+    /**
+     * Default capacity of the buffers in bytes
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Default maximal number of the idle buffers kept by the pool
+     */
+    public static final int DEFAULT_MAX_POOLED = 256;
+
+    /**
+     * Capacity of the buffers
+     */
+    private final int bufferSize;
+
+    /**
+     * Maximal number of the idle buffers
+     */
+    private final int maxPooled;
+
+    /**
+     * The idle buffers
+     */
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of the idle buffers, the size of the queue is not constant time
+     */
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * Constructs a pool with the default buffer size and limit.
+     */
+    public BufferPool() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED);
+    }
+
+    /**
+     * Constructs a pool.
+     *
+     * @param bufferSize capacity of the buffers in bytes
+     * @param maxPooled maximal number of the idle buffers kept by the pool
+     * @throws IllegalArgumentException if the size is not positive or the limit is negative
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        Assert.isTrue(bufferSize > 0, "Buffer size must be positive");
+        Assert.isTrue(maxPooled >= 0, "Maximal number of pooled buffers must not be negative");
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Returns an idle buffer or allocates a new one. The buffer is cleared.
+     *
+     * @return the buffer
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Gives back a buffer to the pool. The buffers of other capacity are dropped.
+     *
+     * @param buffer the buffer acquired from the pool
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !buffer.isDirect()) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= maxPooled) {
+            buffers.add(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the capacity of the buffers.
+     *
+     * @return the buffer size in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the number of the idle buffers.
+     *
+     * @return the number of the pooled buffers
+     */
+    public int getPooledCount() {
+        return pooled.get();
+    }
+}
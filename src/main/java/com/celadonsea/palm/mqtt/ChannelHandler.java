@@ -0,0 +1,27 @@
+package com.celadonsea.palm.mqtt;
+
+import java.nio.channels.SelectionKey;
+
+/**
+ * Handler of the readiness events of a channel registered to an {@link EventLoop}.
+ * The handler is called on the thread of the event loop.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+public interface ChannelHandler {
+
+    /**
+     * Handles the ready operations of the channel.
+     *
+     * @param key the selection key of the channel
+     */
+    void ready(SelectionKey key);
+
+    /**
+     * Called when the event loop is closed or the handler failed. The channel must be closed.
+     *
+     * @param cause the reason of the closing
+     */
+    void close(Throwable cause);
+}
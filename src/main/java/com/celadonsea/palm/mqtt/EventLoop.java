@@ -0,0 +1,214 @@
+package com.celadonsea.palm.mqtt;
+
+import com.celadonsea.palm.core.ConnectionException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single thread which serves many channels with a {@link Selector}. The readiness events
+ * are passed to the {@link ChannelHandler handlers} of the channels, and the tasks submitted
+ * from other threads run between the selections, so the state of the channels is confined
+ * to the thread of the loop.
+ * <p>
+ * The selector is woken up only once per selection however many tasks are submitted.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see EventLoopGroup
+ */
+@Slf4j
+public class EventLoop implements Executor {
+
+    /**
+     * The selector of the loop
+     */
+    private final Selector selector;
+
+    /**
+     * The thread of the loop
+     */
+    private final Thread thread;
+
+    /**
+     * The tasks submitted to the loop
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * True if the selector was woken up since the last selection
+     */
+    private final AtomicBoolean wakenUp = new AtomicBoolean();
+
+    /**
+     * False after the loop was closed
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Opens the selector and starts the thread of the loop.
+     *
+     * @param name name of the thread
+     * @throws ConnectionException if the selector cannot be opened
+     */
+    public EventLoop(String name) {
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new ConnectionException("Cannot open selector", e);
+        }
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs the task on the thread of the loop. The task runs at once if it's called from the loop.
+     *
+     * @param task the task to run
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (inEventLoop()) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        if (wakenUp.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Runs the task on the thread of the loop after the pending readiness events are handled,
+     * even if it's called from the loop. The tasks submitted while handling the events of a
+     * selection run together, eg. one flush of the packets sent for many received packets.
+     *
+     * @param task the task to run
+     */
+    public void executeLater(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop() && wakenUp.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Returns true if the caller runs on the thread of the loop.
+     *
+     * @return true on the thread of the loop
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Registers a channel to the selector of the loop. The channel is switched to non-blocking mode.
+     *
+     * @param channel the channel to register
+     * @param interestOps the operations to select
+     * @param handler the handler of the readiness events, it's attached to the key
+     * @return the future of the selection key
+     */
+    public CompletableFuture<SelectionKey> register(SelectableChannel channel, int interestOps, ChannelHandler handler) {
+        CompletableFuture<SelectionKey> registration = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                registration.complete(channel.register(selector, interestOps, handler));
+            } catch (IOException e) {
+                registration.completeExceptionally(e);
+            }
+        });
+        return registration;
+    }
+
+    /**
+     * Returns the selector of the loop, it may be used only on the thread of the loop.
+     *
+     * @return the selector
+     */
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * Stops the loop and closes the handlers of the registered channels.
+     */
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Selects the ready channels and runs the submitted tasks until the loop is closed.
+     */
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                log.error("Selection failed", e);
+            }
+            wakenUp.set(false);
+            processSelectedKeys();
+            runTasks();
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof ChannelHandler) {
+                ((ChannelHandler) key.attachment()).close(new ClosedChannelException());
+            }
+        }
+        runTasks();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.warn("Cannot close selector", e);
+        }
+    }
+
+    /**
+     * Passes the readiness events to the handlers.
+     */
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+            ChannelHandler handler = (ChannelHandler) key.attachment();
+            if (!key.isValid()) {
+                continue;
+            }
+            try {
+                handler.ready(key);
+            } catch (RuntimeException e) {
+                log.error("Channel handler failed", e);
+                handler.close(e);
+            }
+        }
+    }
+
+    /**
+     * Runs the submitted tasks.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Event loop task failed", e);
+            }
+        }
+    }
+}
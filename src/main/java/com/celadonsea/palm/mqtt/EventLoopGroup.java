@@ -0,0 +1,78 @@
+package com.celadonsea.palm.mqtt;
+
+import org.springframework.util.Assert;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed group of {@link EventLoop event loops}. The channels are assigned to the loops in
+ * round robin, so a loop serves many connections.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+public class EventLoopGroup {
+
+    /**
+     * The loops of the group
+     */
+    private final EventLoop[] eventLoops;
+
+    /**
+     * The counter of the round robin
+     */
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Starts the loops of the group.
+     *
+     * @param name prefix of the thread names
+     * @param size number of the loops
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public EventLoopGroup(String name, int size) {
+        Assert.isTrue(size > 0, "Event loop group size must be positive");
+        eventLoops = new EventLoop[size];
+        for (int index = 0; index < size; index++) {
+            eventLoops[index] = new EventLoop(name + "-" + index);
+        }
+    }
+
+    /**
+     * Returns the group shared by the clients, it has a loop per processor.
+     *
+     * @return the shared group
+     */
+    public static EventLoopGroup shared() {
+        return SharedGroupHolder.GROUP;
+    }
+
+    /**
+     * Returns the next loop in round robin.
+     *
+     * @return the event loop
+     */
+    public EventLoop next() {
+        return eventLoops[Math.floorMod(counter.getAndIncrement(), eventLoops.length)];
+    }
+
+    /**
+     * Closes the loops of the group.
+     */
+    public void close() {
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.close();
+        }
+    }
+
+    /**
+     * Holder of the shared group, it's started at the first use.
+     */
+    private static final class SharedGroupHolder {
+
+        /**
+         * The shared group
+         */
+        private static final EventLoopGroup GROUP = new EventLoopGroup("palm-mqtt-loop", Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -0,0 +1,27 @@
+package com.celadonsea.palm.mqtt;
+
+/**
+ * Handler of the packets of an {@link MqttConnection}. It's called on the thread of the
+ * event loop of the connection, so it must not block.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+public interface FrameHandler {
+
+    /**
+     * Handles a received packet. The frame is valid only during the call.
+     *
+     * @param connection the connection of the packet
+     * @param frame the decoded packet
+     */
+    void onFrame(MqttConnection connection, MqttFrame frame);
+
+    /**
+     * Called once when the connection is closed.
+     *
+     * @param connection the closed connection
+     * @param cause the reason of the closing, null if it was closed by {@link MqttConnection#close()}
+     */
+    void onClose(MqttConnection connection, Throwable cause);
+}
@@ -0,0 +1,533 @@
+package com.celadonsea.palm.mqtt;
+
+import com.celadonsea.palm.core.ConnectionException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking MQTT connection served by an {@link EventLoop}.
+ * <p>
+ * The received bytes are read to a buffer of a {@link BufferPool}, and the packets are
+ * decoded as views of the buffer without copying. The buffer is replaced by a larger heap
+ * buffer only if a packet doesn't fit into it. The packet length comes from the peer, so the
+ * connection is closed if a packet exceeds the maximal packet size, before anything is allocated.
+ * <p>
+ * The packets can be sent from any thread. They are queued, and the queued packets are
+ * written together with one gathering write in the next turn of the loop, so the packets
+ * sent in a burst are coalesced to few system calls. If the socket cannot take all the
+ * bytes, the rest is written when the channel becomes writable.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+@Slf4j
+public class MqttConnection implements ChannelHandler {
+
+    /**
+     * Default maximal size of a received packet in bytes
+     */
+    public static final int DEFAULT_MAX_PACKET_SIZE = 1024 * 1024;
+
+    /**
+     * Maximal number of the buffers in a gathering write
+     */
+    private static final int MAX_GATHERED_BUFFERS = 64;
+
+    /**
+     * The channel of the connection
+     */
+    private final SocketChannel channel;
+
+    /**
+     * The event loop of the connection
+     */
+    private final EventLoop eventLoop;
+
+    /**
+     * The pool of the read buffers
+     */
+    private final BufferPool bufferPool;
+
+    /**
+     * The handler of the received packets
+     */
+    private final FrameHandler frameHandler;
+
+    /**
+     * Maximal size of a received packet in bytes
+     */
+    private final int maxPacketSize;
+
+    /**
+     * The frame reused for the received packets
+     */
+    private final MqttFrame frame = new MqttFrame();
+
+    /**
+     * The packets sent since the last flush, a packet may consist of more buffers
+     */
+    private final Queue<ByteBuffer[]> outbound = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The buffers which are not written yet, confined to the event loop
+     */
+    private final Deque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+
+    /**
+     * True if a flush is submitted to the event loop
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    /**
+     * The future of the connection establishment
+     */
+    private final CompletableFuture<MqttConnection> connected = new CompletableFuture<>();
+
+    /**
+     * The selection key of the channel
+     */
+    private SelectionKey key;
+
+    /**
+     * The read buffer, in write mode between the reads
+     */
+    private ByteBuffer readBuffer;
+
+    /**
+     * True while the reading of the channel is paused, it's used on the event loop only
+     */
+    private boolean readPaused;
+
+    /**
+     * True after the connection was closed
+     */
+    private volatile boolean closed;
+
+    /**
+     * Arbitrary state of the owner of the connection
+     */
+    private volatile Object attachment;
+
+    /**
+     * Constructs the connection.
+     *
+     * @param channel the channel of the connection
+     * @param eventLoop the event loop of the connection
+     * @param bufferPool the pool of the read buffers
+     * @param frameHandler the handler of the received packets
+     * @param maxPacketSize maximal size of a received packet in bytes
+     */
+    private MqttConnection(SocketChannel channel, EventLoop eventLoop, BufferPool bufferPool, FrameHandler frameHandler, int maxPacketSize) {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.bufferPool = bufferPool;
+        this.frameHandler = frameHandler;
+        this.maxPacketSize = maxPacketSize;
+    }
+
+    /**
+     * Opens a connection to the server with the default maximal packet size.
+     *
+     * @param address the address of the server
+     * @param eventLoop the event loop of the connection
+     * @param bufferPool the pool of the read buffers
+     * @param frameHandler the handler of the received packets
+     * @return the future of the connection, it completes when the TCP connection is established
+     */
+    public static CompletableFuture<MqttConnection> connect(InetSocketAddress address, EventLoop eventLoop,
+                                                            BufferPool bufferPool, FrameHandler frameHandler) {
+        return connect(address, eventLoop, bufferPool, frameHandler, DEFAULT_MAX_PACKET_SIZE);
+    }
+
+    /**
+     * Opens a connection to the server.
+     *
+     * @param address the address of the server
+     * @param eventLoop the event loop of the connection
+     * @param bufferPool the pool of the read buffers
+     * @param frameHandler the handler of the received packets
+     * @param maxPacketSize maximal size of a received packet in bytes
+     * @return the future of the connection, it completes when the TCP connection is established
+     * @throws IllegalArgumentException if the maximal packet size is not positive
+     */
+    public static CompletableFuture<MqttConnection> connect(InetSocketAddress address, EventLoop eventLoop,
+                                                            BufferPool bufferPool, FrameHandler frameHandler, int maxPacketSize) {
+        Assert.isTrue(maxPacketSize > 0, "Maximal packet size must be positive");
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+        } catch (IOException e) {
+            CompletableFuture<MqttConnection> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new ConnectionException("Cannot open channel", e));
+            return failed;
+        }
+        MqttConnection connection = new MqttConnection(channel, eventLoop, bufferPool, frameHandler, maxPacketSize);
+        eventLoop.execute(() -> {
+            try {
+                boolean established = channel.connect(address);
+                connection.key = channel.register(eventLoop.selector(), established ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, connection);
+                if (established) {
+                    connection.established();
+                }
+            } catch (IOException e) {
+                connection.close(e);
+            }
+        });
+        return connection.connected;
+    }
+
+    /**
+     * Wraps an accepted channel to a connection with the default maximal packet size
+     * and registers it to the event loop.
+     *
+     * @param channel the accepted channel
+     * @param eventLoop the event loop of the connection
+     * @param bufferPool the pool of the read buffers
+     * @param frameHandler the handler of the received packets
+     * @return the connection
+     */
+    public static MqttConnection accept(SocketChannel channel, EventLoop eventLoop, BufferPool bufferPool, FrameHandler frameHandler) {
+        return accept(channel, eventLoop, bufferPool, frameHandler, DEFAULT_MAX_PACKET_SIZE);
+    }
+
+    /**
+     * Wraps an accepted channel to a connection and registers it to the event loop.
+     *
+     * @param channel the accepted channel
+     * @param eventLoop the event loop of the connection
+     * @param bufferPool the pool of the read buffers
+     * @param frameHandler the handler of the received packets
+     * @param maxPacketSize maximal size of a received packet in bytes
+     * @return the connection
+     * @throws IllegalArgumentException if the maximal packet size is not positive
+     */
+    public static MqttConnection accept(SocketChannel channel, EventLoop eventLoop, BufferPool bufferPool,
+                                        FrameHandler frameHandler, int maxPacketSize) {
+        Assert.isTrue(maxPacketSize > 0, "Maximal packet size must be positive");
+        MqttConnection connection = new MqttConnection(channel, eventLoop, bufferPool, frameHandler, maxPacketSize);
+        eventLoop.execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                connection.key = channel.register(eventLoop.selector(), SelectionKey.OP_READ, connection);
+                connection.established();
+            } catch (IOException e) {
+                connection.close(e);
+            }
+        });
+        return connection;
+    }
+
+    /**
+     * Queues a packet and schedules the flush of the queued packets.
+     *
+     * @param buffers the buffers of the packet, eg. a header and a payload
+     */
+    public void send(ByteBuffer... buffers) {
+        if (closed) {
+            throw new ConnectionException("MQTT connection is closed");
+        }
+        outbound.add(buffers);
+        if (flushScheduled.compareAndSet(false, true)) {
+            eventLoop.executeLater(this::flush);
+        }
+    }
+
+    /**
+     * Closes the connection after the queued packets are written.
+     */
+    public void close() {
+        eventLoop.execute(() -> {
+            flush();
+            close(null);
+        });
+    }
+
+    /**
+     * Stops reading the channel, so the peer is held back by the flow control of TCP. The packets
+     * already read are passed to the handler only after {@link #resumeReading()}. The acknowledgements
+     * of the peer aren't read either while the reading is paused.
+     */
+    public void pauseReading() {
+        eventLoop.execute(() -> {
+            if (closed || readPaused) {
+                return;
+            }
+            readPaused = true;
+            updateInterestOps();
+        });
+    }
+
+    /**
+     * Restarts the reading of the channel paused by {@link #pauseReading()}. The packets left in
+     * the read buffer are passed to the handler first.
+     */
+    public void resumeReading() {
+        eventLoop.execute(() -> {
+            if (closed || !readPaused) {
+                return;
+            }
+            readPaused = false;
+            if (readBuffer != null && readBuffer.position() > 0) {
+                readBuffer.flip();
+                try {
+                    decode();
+                } catch (IOException e) {
+                    close(e);
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+                readBuffer.compact();
+            }
+            updateInterestOps();
+        });
+    }
+
+    /**
+     * Returns true if the connection is open.
+     *
+     * @return true if it's not closed
+     */
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Returns the address of the remote peer.
+     *
+     * @return the remote address or null if it's unknown
+     */
+    public SocketAddress getRemoteAddress() {
+        try {
+            return channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the state attached by the owner of the connection.
+     *
+     * @return the attachment or null
+     */
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    /**
+     * Attaches a state of the owner to the connection.
+     *
+     * @param attachment the attachment
+     */
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    /**
+     * Handles the ready operations of the channel.
+     *
+     * @param key the selection key of the channel
+     */
+    @Override
+    public void ready(SelectionKey key) {
+        try {
+            if (key.isConnectable() && channel.finishConnect()) {
+                key.interestOps(SelectionKey.OP_READ);
+                established();
+            }
+            if (key.isValid() && key.isReadable() && !readPaused) {
+                read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush();
+            }
+        } catch (IOException e) {
+            close(e);
+        }
+    }
+
+    /**
+     * Closes the channel, gives back the read buffer and notifies the handler once.
+     *
+     * @param cause the reason of the closing, null for a regular close
+     */
+    @Override
+    public void close(Throwable cause) {
+        if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(() -> close(cause));
+            return;
+        }
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Cannot close channel", e);
+        }
+        if (readBuffer != null) {
+            bufferPool.release(readBuffer);
+            readBuffer = null;
+        }
+        outbound.clear();
+        pendingWrites.clear();
+        if (!connected.isDone()) {
+            connected.completeExceptionally(cause != null ? cause : new EOFException("Connection closed"));
+        }
+        frameHandler.onClose(this, cause);
+    }
+
+    /**
+     * Prepares the read buffer and completes the future of the connection.
+     */
+    private void established() {
+        readBuffer = bufferPool.acquire();
+        connected.complete(this);
+        flush();
+    }
+
+    /**
+     * Reads the available bytes and passes the complete packets to the handler.
+     *
+     * @throws IOException if the channel cannot be read or the peer violates the protocol
+     */
+    private void read() throws IOException {
+        while (!readPaused) {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close(new EOFException("Connection closed by peer"));
+                return;
+            }
+            if (read == 0) {
+                return;
+            }
+            readBuffer.flip();
+            decode();
+            if (closed) {
+                return;
+            }
+            readBuffer.compact();
+        }
+    }
+
+    /**
+     * Decodes the complete packets of the read buffer in read mode until the reading is paused.
+     * The position is left at the beginning of the first undecoded packet, and the buffer is grown
+     * if the packet doesn't fit into it.
+     *
+     * @throws IOException if the remaining length is malformed or the packet is too large
+     */
+    private void decode() throws IOException {
+        while (!closed && !readPaused && readBuffer.remaining() >= 2) {
+            int start = readBuffer.position();
+            int index = start + 1;
+            int remainingLength = 0;
+            int shift = 0;
+            int digit;
+            do {
+                if (index >= readBuffer.limit()) {
+                    return;
+                }
+                if (shift > 21) {
+                    throw new IOException("Malformed remaining length");
+                }
+                digit = readBuffer.get(index++);
+                remainingLength |= (digit & 0x7F) << shift;
+                shift += 7;
+            } while ((digit & 0x80) != 0);
+            int frameLength = index - start + remainingLength;
+            if (frameLength > maxPacketSize) {
+                throw new IOException("Packet of " + frameLength + " bytes exceeds the maximal packet size " + maxPacketSize);
+            }
+            if (readBuffer.limit() - start < frameLength) {
+                if (frameLength > readBuffer.capacity()) {
+                    grow(frameLength);
+                }
+                return;
+            }
+            int header = readBuffer.get(start) & 0xFF;
+            ByteBuffer body = readBuffer.duplicate();
+            body.position(index).limit(index + remainingLength);
+            frame.reset(header >>> 4, header & 0x0F, body.slice());
+            readBuffer.position(start + frameLength);
+            frameHandler.onFrame(this, frame);
+        }
+    }
+
+    /**
+     * Replaces the read buffer in read mode with a larger heap buffer, keeping the unread bytes.
+     *
+     * @param frameLength the length of the packet which doesn't fit
+     */
+    private void grow(int frameLength) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(frameLength, readBuffer.capacity() * 2));
+        larger.put(readBuffer);
+        larger.flip();
+        bufferPool.release(readBuffer);
+        readBuffer = larger;
+    }
+
+    /**
+     * Writes the queued packets with gathering writes. The rest is kept and the write
+     * interest is set if the socket buffer is full.
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        if (closed || readBuffer == null) {
+            return;
+        }
+        ByteBuffer[] packet;
+        while ((packet = outbound.poll()) != null) {
+            Collections.addAll(pendingWrites, packet);
+        }
+        try {
+            while (!pendingWrites.isEmpty()) {
+                ByteBuffer[] buffers = pendingWrites.stream().limit(MAX_GATHERED_BUFFERS).toArray(ByteBuffer[]::new);
+                channel.write(buffers);
+                while (!pendingWrites.isEmpty() && !pendingWrites.peekFirst().hasRemaining()) {
+                    pendingWrites.pollFirst();
+                }
+                if (buffers[buffers.length - 1].hasRemaining()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            close(e);
+            return;
+        }
+        updateInterestOps();
+    }
+
+    /**
+     * Selects the reads unless they are paused, and the writes if there are pending writes.
+     */
+    private void updateInterestOps() {
+        if (key != null && key.isValid()) {
+            int interestOps = readPaused ? 0 : SelectionKey.OP_READ;
+            key.interestOps(pendingWrites.isEmpty() ? interestOps : interestOps | SelectionKey.OP_WRITE);
+        }
+    }
+}
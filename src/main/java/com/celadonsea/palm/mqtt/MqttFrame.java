@@ -0,0 +1,129 @@
+package com.celadonsea.palm.mqtt;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A decoded MQTT control packet. The body is a view of the read buffer of the connection,
+ * so the frame is valid only while the {@link FrameHandler} is called, and the handler
+ * has to copy the parts it keeps.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+public final class MqttFrame {
+
+    /**
+     * The packet type
+     */
+    private int type;
+
+    /**
+     * The flags of the fixed header
+     */
+    private int flags;
+
+    /**
+     * The variable header and the payload
+     */
+    private ByteBuffer body;
+
+    /**
+     * Sets the fields of the frame, it's reused for every frame of a connection.
+     *
+     * @param type the packet type
+     * @param flags the flags of the fixed header
+     * @param body the view of the variable header and the payload
+     */
+    void reset(int type, int flags, ByteBuffer body) {
+        this.type = type;
+        this.flags = flags;
+        this.body = body;
+    }
+
+    /**
+     * Returns the packet type, one of the {@link MqttPackets} constants.
+     *
+     * @return the packet type
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Returns the flags of the fixed header.
+     *
+     * @return the flags
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * Returns the quality of service of a PUBLISH packet.
+     *
+     * @return the quality of service
+     */
+    public int getQos() {
+        return (flags >> 1) & 0x03;
+    }
+
+    /**
+     * Returns true if the retain flag of a PUBLISH packet is set.
+     *
+     * @return the retain flag
+     */
+    public boolean isRetain() {
+        return (flags & 0x01) != 0;
+    }
+
+    /**
+     * Returns the body of the packet. Reading the body moves its position, the decoding
+     * has to follow the order of the fields.
+     *
+     * @return the view of the variable header and the payload
+     */
+    public ByteBuffer getBody() {
+        return body;
+    }
+
+    /**
+     * Reads a two-byte integer, eg. a packet identifier.
+     *
+     * @return the integer
+     */
+    public int readShort() {
+        return body.getShort() & 0xFFFF;
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string.
+     *
+     * @return the string
+     */
+    public String readString() {
+        return new String(readBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a length-prefixed byte array.
+     *
+     * @return the bytes
+     */
+    public byte[] readBytes() {
+        byte[] bytes = new byte[readShort()];
+        body.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Copies the remaining bytes of the body, eg. the payload of a PUBLISH packet.
+     *
+     * @return the remaining bytes
+     */
+    public byte[] readRemaining() {
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        return bytes;
+    }
+}
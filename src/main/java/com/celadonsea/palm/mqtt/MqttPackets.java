@@ -0,0 +1,325 @@
+package com.celadonsea.palm.mqtt;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants and encoders of the MQTT 3.1.1 control packets. The encoders return buffers
+ * ready to be written. A PUBLISH packet is encoded without its payload, so the payload
+ * buffer of the caller can be written after the header without copying.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+public final class MqttPackets {
+
+    /**
+     * Client request to connect to the server
+     */
+    public static final int CONNECT = 1;
+
+    /**
+     * Connect acknowledgment
+     */
+    public static final int CONNACK = 2;
+
+    /**
+     * Publish message
+     */
+    public static final int PUBLISH = 3;
+
+    /**
+     * Publish acknowledgment of QoS 1
+     */
+    public static final int PUBACK = 4;
+
+    /**
+     * Publish received, the first acknowledgment of QoS 2
+     */
+    public static final int PUBREC = 5;
+
+    /**
+     * Publish release, the second step of QoS 2
+     */
+    public static final int PUBREL = 6;
+
+    /**
+     * Publish complete, the last step of QoS 2
+     */
+    public static final int PUBCOMP = 7;
+
+    /**
+     * Subscribe request
+     */
+    public static final int SUBSCRIBE = 8;
+
+    /**
+     * Subscribe acknowledgment
+     */
+    public static final int SUBACK = 9;
+
+    /**
+     * Unsubscribe request
+     */
+    public static final int UNSUBSCRIBE = 10;
+
+    /**
+     * Unsubscribe acknowledgment
+     */
+    public static final int UNSUBACK = 11;
+
+    /**
+     * Ping request
+     */
+    public static final int PINGREQ = 12;
+
+    /**
+     * Ping response
+     */
+    public static final int PINGRESP = 13;
+
+    /**
+     * Client is disconnecting
+     */
+    public static final int DISCONNECT = 14;
+
+    /**
+     * Maximal value of the remaining length field
+     */
+    public static final int MAX_REMAINING_LENGTH = 268_435_455;
+
+    /**
+     * Protocol level of MQTT 3.1.1
+     */
+    private static final int PROTOCOL_LEVEL = 4;
+
+    /**
+     * Hidden constructor of the utility class.
+     */
+    private MqttPackets() {
+    }
+
+    /**
+     * Encodes a CONNECT packet without will, user name and password.
+     *
+     * @param clientId the client identifier
+     * @param keepAliveSeconds the keep alive interval in seconds
+     * @param cleanSession true if the session should not be kept by the server
+     * @return the packet
+     */
+    public static ByteBuffer connect(String clientId, int keepAliveSeconds, boolean cleanSession) {
+        byte[] id = clientId.getBytes(StandardCharsets.UTF_8);
+        int remainingLength = 10 + 2 + id.length;
+        ByteBuffer buffer = allocate(CONNECT, 0, remainingLength);
+        putBytes(buffer, "MQTT".getBytes(StandardCharsets.US_ASCII));
+        buffer.put((byte) PROTOCOL_LEVEL);
+        buffer.put((byte) (cleanSession ? 0x02 : 0x00));
+        buffer.putShort((short) keepAliveSeconds);
+        putBytes(buffer, id);
+        return flip(buffer);
+    }
+
+    /**
+     * Encodes a CONNACK packet.
+     *
+     * @param sessionPresent true if the server has a session of the client
+     * @param returnCode the return code, 0 if the connection is accepted
+     * @return the packet
+     */
+    public static ByteBuffer connack(boolean sessionPresent, int returnCode) {
+        ByteBuffer buffer = allocate(CONNACK, 0, 2);
+        buffer.put((byte) (sessionPresent ? 1 : 0));
+        buffer.put((byte) returnCode);
+        return flip(buffer);
+    }
+
+    /**
+     * Encodes the fixed and the variable header of a PUBLISH packet.
+     *
+     * @param topic the topic name
+     * @param qos the quality of service
+     * @param retain the retain flag
+     * @param packetId the packet identifier, it's not written for QoS 0
+     * @param payloadLength the length of the payload which follows the header
+     * @return the header of the packet
+     * @throws IllegalArgumentException if the packet is too long
+     */
+    public static ByteBuffer publishHeader(byte[] topic, int qos, boolean retain, int packetId, int payloadLength) {
+        int remainingLength = 2 + topic.length + (qos > 0 ? 2 : 0) + payloadLength;
+        ByteBuffer buffer = allocate(PUBLISH, (qos << 1) | (retain ? 1 : 0), remainingLength - payloadLength, remainingLength);
+        putBytes(buffer, topic);
+        if (qos > 0) {
+            buffer.putShort((short) packetId);
+        }
+        return flip(buffer);
+    }
+
+    /**
+     * Encodes an acknowledgment with a packet identifier: PUBACK, PUBREC, PUBREL, PUBCOMP or UNSUBACK.
+     *
+     * @param type the packet type
+     * @param packetId the packet identifier
+     * @return the packet
+     */
+    public static ByteBuffer ack(int type, int packetId) {
+        ByteBuffer buffer = allocate(type, type == PUBREL ? 0x02 : 0, 2);
+        buffer.putShort((short) packetId);
+        return flip(buffer);
+    }
+
+    /**
+     * Encodes a SUBSCRIBE packet.
+     *
+     * @param packetId the packet identifier
+     * @param topicFilters the topic filters
+     * @param qos the requested quality of service of the filters
+     * @return the packet
+     */
+    public static ByteBuffer subscribe(int packetId, String[] topicFilters, int[] qos) {
+        byte[][] filters = encode(topicFilters);
+        int remainingLength = 2;
+        for (byte[] filter : filters) {
+            remainingLength += 2 + filter.length + 1;
+        }
+        ByteBuffer buffer = allocate(SUBSCRIBE, 0x02, remainingLength);
+        buffer.putShort((short) packetId);
+        for (int index = 0; index < filters.length; index++) {
+            putBytes(buffer, filters[index]);
+            buffer.put((byte) qos[index]);
+        }
+        return flip(buffer);
+    }
+
+    /**
+     * Encodes a SUBACK packet.
+     *
+     * @param packetId the packet identifier of the subscription
+     * @param returnCodes the granted quality of service or 0x80 for every filter
+     * @return the packet
+     */
+    public static ByteBuffer suback(int packetId, byte[] returnCodes) {
+        ByteBuffer buffer = allocate(SUBACK, 0, 2 + returnCodes.length);
+        buffer.putShort((short) packetId);
+        buffer.put(returnCodes);
+        return flip(buffer);
+    }
+
+    /**
+     * Encodes an UNSUBSCRIBE packet.
+     *
+     * @param packetId the packet identifier
+     * @param topicFilters the topic filters
+     * @return the packet
+     */
+    public static ByteBuffer unsubscribe(int packetId, String[] topicFilters) {
+        byte[][] filters = encode(topicFilters);
+        int remainingLength = 2;
+        for (byte[] filter : filters) {
+            remainingLength += 2 + filter.length;
+        }
+        ByteBuffer buffer = allocate(UNSUBSCRIBE, 0x02, remainingLength);
+        buffer.putShort((short) packetId);
+        for (byte[] filter : filters) {
+            putBytes(buffer, filter);
+        }
+        return flip(buffer);
+    }
+
+    /**
+     * Encodes a packet without variable header and payload: PINGREQ, PINGRESP or DISCONNECT.
+     *
+     * @param type the packet type
+     * @return the packet
+     */
+    public static ByteBuffer empty(int type) {
+        return flip(allocate(type, 0, 0));
+    }
+
+    /**
+     * Returns the number of bytes of the remaining length field.
+     *
+     * @param remainingLength the remaining length
+     * @return the size of the field
+     */
+    static int lengthFieldSize(int remainingLength) {
+        int size = 1;
+        while (remainingLength > 127) {
+            remainingLength >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Allocates a buffer for a whole packet and writes the fixed header.
+     *
+     * @param type the packet type
+     * @param flags the flags of the fixed header
+     * @param remainingLength the remaining length
+     * @return the buffer after the fixed header
+     */
+    private static ByteBuffer allocate(int type, int flags, int remainingLength) {
+        return allocate(type, flags, remainingLength, remainingLength);
+    }
+
+    /**
+     * Allocates a buffer for the beginning of a packet and writes the fixed header.
+     *
+     * @param type the packet type
+     * @param flags the flags of the fixed header
+     * @param encodedLength the number of bytes to allocate after the fixed header
+     * @param remainingLength the remaining length of the whole packet
+     * @return the buffer after the fixed header
+     * @throws IllegalArgumentException if the packet is too long
+     */
+    private static ByteBuffer allocate(int type, int flags, int encodedLength, int remainingLength) {
+        if (remainingLength < 0 || remainingLength > MAX_REMAINING_LENGTH) {
+            throw new IllegalArgumentException("MQTT packet is too long: " + remainingLength + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 + lengthFieldSize(remainingLength) + encodedLength);
+        buffer.put((byte) ((type << 4) | flags));
+        int length = remainingLength;
+        do {
+            int digit = length & 0x7F;
+            length >>>= 7;
+            buffer.put((byte) (length > 0 ? digit | 0x80 : digit));
+        } while (length > 0);
+        return buffer;
+    }
+
+    /**
+     * Writes a length-prefixed byte array.
+     *
+     * @param buffer the target buffer
+     * @param bytes the bytes to write
+     */
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Encodes the strings to UTF-8.
+     *
+     * @param strings the strings
+     * @return the encoded strings
+     */
+    private static byte[][] encode(String[] strings) {
+        byte[][] encoded = new byte[strings.length][];
+        for (int index = 0; index < strings.length; index++) {
+            encoded[index] = strings[index].getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    /**
+     * Flips the buffer for writing it to a channel.
+     *
+     * @param buffer the filled buffer
+     * @return the flipped buffer
+     */
+    private static ByteBuffer flip(ByteBuffer buffer) {
+        buffer.flip();
+        return buffer;
+    }
+}
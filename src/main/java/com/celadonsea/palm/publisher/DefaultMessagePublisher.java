@@ -1,11 +1,14 @@
 package com.celadonsea.palm.publisher;
 
 import com.celadonsea.palm.client.MessageClient;
+import com.celadonsea.palm.codec.MessageCodec;
 import com.celadonsea.palm.core.ProducingProperties;
 import com.celadonsea.palm.topic.TopicParser;
 import lombok.RequiredArgsConstructor;
 import org.springframework.util.Assert;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -46,6 +49,11 @@ public class DefaultMessagePublisher implements MessagePublisher {
      */
     private byte[] message;
 
+    /**
+     * The message payload as a byte buffer, if it's set instead of the byte array
+     */
+    private ByteBuffer messageBuffer;
+
     /**
      * The parametrized or simple topic
      */
@@ -126,6 +134,20 @@ public class DefaultMessagePublisher implements MessagePublisher {
      */
     public DefaultMessagePublisher message(byte[] message) {
         this.message = message;
+        this.messageBuffer = null;
+        return this;
+    }
+
+    /**
+     * Sets the message payload as a byte buffer. The buffer is not copied,
+     * it will be handed over to the message client as it is.
+     *
+     * @param message message payload
+     * @return the publisher instance
+     */
+    public DefaultMessagePublisher message(ByteBuffer message) {
+        this.messageBuffer = message;
+        this.message = null;
         return this;
     }
 
@@ -143,6 +165,23 @@ public class DefaultMessagePublisher implements MessagePublisher {
         }
     }
 
+    /**
+     * Sets the message payload encoded by the given codec.
+     *
+     * @param value the value to encode
+     * @param messageCodec the codec of the payload
+     * @return the publisher instance
+     * @throws IllegalArgumentException if the codec is null or the value cannot be encoded
+     */
+    public DefaultMessagePublisher message(Object value, MessageCodec messageCodec) {
+        Assert.notNull(messageCodec, "Message codec must be set");
+        try {
+            return message(messageCodec.encode(value));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot encode message with codec " + messageCodec.getName(), e);
+        }
+    }
+
     /**
      * Sets the topic.
      *
@@ -162,8 +201,12 @@ public class DefaultMessagePublisher implements MessagePublisher {
      */
     public void publish() {
         Assert.notNull(topic, "Topic must be set");
-        Assert.notNull(message, "Message must be set");
+        Assert.isTrue(message != null || messageBuffer != null, "Message must be set");
         String resolvedTopic = TopicParser.generate(topic, variables);
-        this.messageClient.publish(message, new ProducingProperties(resolvedTopic, qos));
+        if (messageBuffer != null) {
+            this.messageClient.publish(messageBuffer, new ProducingProperties(resolvedTopic, qos));
+        } else {
+            this.messageClient.publish(message, new ProducingProperties(resolvedTopic, qos));
+        }
     }
 }
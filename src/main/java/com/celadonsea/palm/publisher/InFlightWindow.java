@@ -0,0 +1,283 @@
+package com.celadonsea.palm.publisher;
+
+import com.celadonsea.palm.core.ConnectionException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of unacknowledged messages (QoS 1 and 2) of a message client.
+ *
+ * A permit is acquired before a message is published and it's released when the
+ * message client receives the acknowledgement of the broker, so the window is owned
+ * by the client dialect which sees the acknowledgements. The permits are counted
+ * lock-free, a monitor is used only if the caller has to wait for a free permit.
+ *
+ * The behaviour for a full window is defined by the {@link WindowFullPolicy}.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see com.celadonsea.palm.client.NioMqttMessageClient
+ * @see com.celadonsea.palm.config.MessageClientConfig#getMaxInFlight()
+ */
+@Slf4j
+public class InFlightWindow {
+
+    /**
+     * Behaviour of the window if all the permits are in use.
+     */
+    public enum WindowFullPolicy {
+
+        /**
+         * The caller waits until a permit is released
+         */
+        BLOCK,
+
+        /**
+         * The caller waits until a permit is released or the timeout elapses
+         */
+        TIMEOUT,
+
+        /**
+         * The publishing is rejected immediately
+         */
+        REJECT
+    }
+
+    /**
+     * Maximal number of messages in flight
+     * -- GETTER --
+     * Returns the maximal number of messages in flight
+     *
+     * @return the capacity of the window
+     */
+    @Getter
+    private final int capacity;
+
+    /**
+     * Behaviour of the full window
+     * -- GETTER --
+     * Returns the behaviour of the full window
+     *
+     * @return the window full policy
+     */
+    @Getter
+    private final WindowFullPolicy policy;
+
+    /**
+     * Maximal waiting time in nanoseconds in case of {@link WindowFullPolicy#TIMEOUT}
+     */
+    private final long timeoutNanos;
+
+    /**
+     * Number of messages in flight
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * The highest number of messages in flight at the same time
+     */
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+
+    /**
+     * Number of rejected publishing
+     */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Number of threads waiting for a permit
+     */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /**
+     * Monitor for the waiting threads
+     */
+    private final Object monitor = new Object();
+
+    /**
+     * Constructs a window which blocks the caller if it's full.
+     *
+     * @param capacity maximal number of messages in flight
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public InFlightWindow(int capacity) {
+        this(capacity, WindowFullPolicy.BLOCK, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructs a window with the given policy.
+     *
+     * @param capacity maximal number of messages in flight
+     * @param policy behaviour of the full window
+     * @param timeout maximal waiting time in case of {@link WindowFullPolicy#TIMEOUT}
+     * @param timeUnit unit of the timeout
+     * @throws IllegalArgumentException if the capacity is not positive or the policy is null
+     */
+    public InFlightWindow(int capacity, WindowFullPolicy policy, long timeout, TimeUnit timeUnit) {
+        Assert.isTrue(capacity > 0, "In-flight window capacity must be positive");
+        Assert.notNull(policy, "Window full policy must be set");
+        this.capacity = capacity;
+        this.policy = policy;
+        this.timeoutNanos = timeUnit.toNanos(timeout);
+    }
+
+    /**
+     * Acquires a permit for a message according to the policy of the window.
+     *
+     * @throws ConnectionException if the publishing is rejected, the timeout elapsed or the waiting thread was interrupted
+     */
+    public void acquire() {
+        if (tryAcquire()) {
+            return;
+        }
+        boolean acquired;
+        switch (policy) {
+            case BLOCK:
+                acquired = await(-1);
+                break;
+            case TIMEOUT:
+                acquired = await(timeoutNanos);
+                break;
+            default:
+                acquired = false;
+        }
+        if (!acquired) {
+            rejectedCount.incrementAndGet();
+            throw new ConnectionException("In-flight window is full, " + capacity + " messages are unacknowledged");
+        }
+    }
+
+    /**
+     * Acquires a permit if there is a free one.
+     *
+     * @return true if a permit was acquired, otherwise false
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= capacity) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                updateHighWaterMark(current + 1);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a permit. It should be called when the message is acknowledged
+     * or the publishing failed.
+     */
+    public void release() {
+        while (true) {
+            int current = inFlight.get();
+            if (current <= 0) {
+                log.warn("In-flight window released without acquired permit");
+                return;
+            }
+            if (inFlight.compareAndSet(current, current - 1)) {
+                break;
+            }
+        }
+        if (waiters.get() > 0) {
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of messages in flight.
+     *
+     * @return the number of messages in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Returns the number of free permits.
+     *
+     * @return the number of free permits
+     */
+    public int getAvailable() {
+        return capacity - inFlight.get();
+    }
+
+    /**
+     * Returns the occupancy of the window between 0 and 1.
+     *
+     * @return the ratio of the messages in flight and the capacity
+     */
+    public double getOccupancy() {
+        return (double) inFlight.get() / capacity;
+    }
+
+    /**
+     * Returns the highest number of messages in flight at the same time.
+     *
+     * @return the high water mark of the window
+     */
+    public int getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    /**
+     * Returns the number of rejected publishing.
+     *
+     * @return the number of rejected publishing
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Waits for a free permit.
+     *
+     * @param nanos maximal waiting time in nanoseconds, negative value means waiting without time limit
+     * @return true if a permit was acquired, false if the time elapsed
+     * @throws ConnectionException if the waiting thread was interrupted
+     */
+    private boolean await(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        waiters.incrementAndGet();
+        try {
+            synchronized (monitor) {
+                while (!tryAcquire()) {
+                    if (nanos < 0) {
+                        monitor.wait();
+                    } else {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(monitor, remaining);
+                    }
+                }
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted while waiting for the in-flight window", e);
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Updates the high water mark if the current value is higher.
+     *
+     * @param current the current number of messages in flight
+     */
+    private void updateHighWaterMark(int current) {
+        int highest = highWaterMark.get();
+        while (current > highest && !highWaterMark.compareAndSet(highest, current)) {
+            highest = highWaterMark.get();
+        }
+    }
+}
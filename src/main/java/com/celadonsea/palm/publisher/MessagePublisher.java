@@ -1,5 +1,8 @@
 package com.celadonsea.palm.publisher;
 
+import com.celadonsea.palm.codec.MessageCodec;
+
+import java.nio.ByteBuffer;
 
 /**
  * Interface for builder style publishers supporting simple or parametrized topics.
@@ -72,6 +75,15 @@ public interface MessagePublisher {
      */
     MessagePublisher message(byte[] message);
 
+    /**
+     * Sets the message payload as a byte buffer. The buffer will be passed to the
+     * message client without copying, the remaining bytes of it will be published.
+     *
+     * @param message message payload
+     * @return the publisher instance
+     */
+    MessagePublisher message(ByteBuffer message);
+
     /**
      * Sets the message payload as a string.
      *
@@ -80,6 +92,15 @@ public interface MessagePublisher {
      */
     MessagePublisher message(String message);
 
+    /**
+     * Sets the message payload encoded by the given codec.
+     *
+     * @param value the value to encode
+     * @param messageCodec the codec of the payload
+     * @return the publisher instance
+     */
+    MessagePublisher message(Object value, MessageCodec messageCodec);
+
     /**
      * Sets the topic.
      *
@@ -0,0 +1,686 @@
+package com.celadonsea.palm.publisher;
+
+import com.celadonsea.palm.client.MessageClient;
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.ProducingProperties;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+
+/**
+ * Durable outbound message store for the time when the message broker is unreachable.
+ *
+ * The messages are appended to memory-mapped segment files in the spool directory.
+ * A segment contains records one after the other with the following layout:
+ *
+ *   record length (int), state (byte), timestamp (long), qos (byte), flags (byte),
+ *   topic length (short), exchange length (short), topic, exchange, payload
+ *
+ * The flags hold the retain flag of the message. The record length is written last,
+ * so a record which was not fully written is invisible after a restart. Published
+ * records are marked as consumed, the segment file will be deleted if all of its
+ * records are consumed. The spool is reopened with its pending records if the
+ * directory contains segment files.
+ *
+ * The disk usage is bounded by the disk quota. If a new segment would exceed it
+ * then the oldest segment will be evicted with all of its pending messages.
+ *
+ * The records are written to the mapped memory, so they survive a crash of the
+ * application, the operating system flushes them to the disk later. They are lost
+ * on a power loss or a crash of the operating system before this flush, unless a
+ * force interval is given: then the mapped segments are forced to the disk after
+ * every that many appended records and on closing.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see com.celadonsea.palm.client.SpoolingMessageClient
+ */
+@Slf4j
+public class MessageSpool implements Closeable {
+
+    /**
+     * Default size of a segment file in bytes
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * File name suffix of the segment files
+     */
+    private static final String SEGMENT_FILE_SUFFIX = ".spool";
+
+    /**
+     * Size of the fixed part of a record: length, state, timestamp, qos, flags, topic length, exchange length
+     */
+    private static final int RECORD_HEADER_SIZE = 4 + 1 + 8 + 1 + 1 + 2 + 2;
+
+    /**
+     * Offset of the state byte in a record
+     */
+    private static final int STATE_OFFSET = 4;
+
+    /**
+     * State of a record which was not published yet
+     */
+    private static final byte STATE_PENDING = 1;
+
+    /**
+     * State of a record which was already published
+     */
+    private static final byte STATE_CONSUMED = 2;
+
+    /**
+     * Flag of a record whose message is retained by the broker
+     */
+    private static final byte FLAG_RETAINED = 1;
+
+    /**
+     * Maximal length of the topic and exchange in bytes
+     */
+    private static final int MAX_NAME_LENGTH = 0xFFFF;
+
+    /**
+     * Directory of the segment files
+     */
+    private final File directory;
+
+    /**
+     * Size of the new segment files in bytes
+     */
+    private final int segmentSize;
+
+    /**
+     * Maximal number of segment files calculated from the disk quota
+     */
+    private final int maxSegments;
+
+    /**
+     * The open segments from the oldest to the newest one
+     */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    /**
+     * Identifier of the next segment file
+     */
+    private long nextSegmentId;
+
+    /**
+     * Number of appended records after which the segments are forced to the disk, 0 if never
+     */
+    private final int forceInterval;
+
+    /**
+     * Number of records appended since the last forcing
+     */
+    private int unforcedCount;
+
+    /**
+     * Number of pending messages in the spool
+     */
+    private long pendingCount;
+
+    /**
+     * Number of pending messages dropped because of the disk quota
+     */
+    private long evictedCount;
+
+    /**
+     * True if the spool was closed
+     */
+    private boolean closed;
+
+    /**
+     * Creates or reopens a spool in the given directory with the default segment size.
+     *
+     * @param directory the spool directory
+     * @param diskQuota the maximal disk usage in bytes
+     * @throws IllegalArgumentException if the directory is null or the quota is smaller than a segment
+     * @throws ConnectionException if the spool directory or the segment files cannot be opened
+     */
+    public MessageSpool(File directory, long diskQuota) {
+        this(directory, diskQuota, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates or reopens a spool in the given directory.
+     *
+     * @param directory the spool directory
+     * @param diskQuota the maximal disk usage in bytes
+     * @param segmentSize the size of the segment files in bytes
+     * @throws IllegalArgumentException if the directory is null or the quota is smaller than a segment
+     * @throws ConnectionException if the spool directory or the segment files cannot be opened
+     */
+    public MessageSpool(File directory, long diskQuota, int segmentSize) {
+        this(directory, diskQuota, segmentSize, 0);
+    }
+
+    /**
+     * Creates or reopens a spool in the given directory which forces the appended
+     * records to the disk after every given number of records.
+     *
+     * @param directory the spool directory
+     * @param diskQuota the maximal disk usage in bytes
+     * @param segmentSize the size of the segment files in bytes
+     * @param forceInterval number of appended records after which the segments are forced to the disk, 0 if never
+     * @throws IllegalArgumentException if the directory is null, the quota is smaller than a segment
+     * or the force interval is negative
+     * @throws ConnectionException if the spool directory or the segment files cannot be opened
+     */
+    public MessageSpool(File directory, long diskQuota, int segmentSize, int forceInterval) {
+        Assert.notNull(directory, "Spool directory must be set");
+        Assert.isTrue(segmentSize > RECORD_HEADER_SIZE, "Segment size is too small");
+        Assert.isTrue(diskQuota >= segmentSize, "Disk quota must be at least one segment size");
+        Assert.isTrue(forceInterval >= 0, "Force interval must not be negative");
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.forceInterval = forceInterval;
+        this.maxSegments = (int) Math.min(Integer.MAX_VALUE, diskQuota / segmentSize);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new ConnectionException("Cannot create spool directory " + directory);
+        }
+        recover();
+    }
+
+    /**
+     * Appends a message to the end of the spool.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     * @throws IllegalArgumentException if the message does not fit into a segment
+     * @throws ConnectionException if a new segment file cannot be created
+     */
+    public void append(byte[] message, ProducingProperties producingProperties) {
+        append(ByteBuffer.wrap(message), producingProperties);
+    }
+
+    /**
+     * Appends the remaining bytes of a message buffer to the end of the spool.
+     * The position of the given buffer is not changed.
+     *
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     * @throws IllegalArgumentException if the message does not fit into a segment
+     * @throws ConnectionException if a new segment file cannot be created
+     */
+    public void append(ByteBuffer message, ProducingProperties producingProperties) {
+        byte[] topic = toBytes(producingProperties.getTopic());
+        byte[] exchange = toBytes(producingProperties.getExchange());
+        Assert.isTrue(topic.length <= MAX_NAME_LENGTH && exchange.length <= MAX_NAME_LENGTH, "Topic or exchange is too long");
+        int length = RECORD_HEADER_SIZE + topic.length + exchange.length + message.remaining();
+        Assert.isTrue(length <= segmentSize, "Message is too large for the spool segment size");
+        long timestamp = System.currentTimeMillis();
+
+        synchronized (this) {
+            Assert.state(!closed, "Spool is closed");
+            Segment segment = writableSegment(length);
+            int position = segment.writePosition;
+            ByteBuffer record = segment.buffer.duplicate();
+            record.position(position + STATE_OFFSET);
+            record.put(STATE_PENDING)
+                .putLong(timestamp)
+                .put((byte) producingProperties.getQos())
+                .put(producingProperties.isRetained() ? FLAG_RETAINED : 0)
+                .putShort((short) topic.length)
+                .putShort((short) exchange.length)
+                .put(topic)
+                .put(exchange)
+                .put(message.duplicate());
+            // the length commits the record
+            segment.buffer.putInt(position, length);
+            segment.writePosition += length;
+            segment.pending++;
+            pendingCount++;
+            if (forceInterval > 0 && ++unforcedCount >= forceInterval) {
+                force();
+            }
+        }
+    }
+
+    /**
+     * Returns the oldest pending message without removing it.
+     *
+     * @return the oldest pending message or null if the spool is empty
+     */
+    public synchronized SpooledMessage peek() {
+        Segment head = headSegment();
+        return head == null ? null : head.read(head.readPosition);
+    }
+
+    /**
+     * Marks the given message as published if it's still the oldest pending message.
+     * It's not the oldest one if it was evicted in the meantime.
+     *
+     * @param message the message returned by {@link #peek()}
+     * @return true if the message was removed, otherwise false
+     */
+    public synchronized boolean remove(SpooledMessage message) {
+        Segment head = headSegment();
+        if (head == null || head.id != message.segmentId || head.readPosition != message.position) {
+            return false;
+        }
+        head.buffer.put(head.readPosition + STATE_OFFSET, STATE_CONSUMED);
+        head.readPosition += head.buffer.getInt(head.readPosition);
+        head.pending--;
+        pendingCount--;
+        if (head.pending == 0 && head != segments.peekLast()) {
+            segments.remove(head);
+            head.delete();
+        }
+        return true;
+    }
+
+    /**
+     * Publishes the pending messages in order with the given client. The draining stops
+     * at the first message which cannot be published because of a {@link ConnectionException},
+     * this message stays at the head of the spool.
+     *
+     * @param messageClient the client to publish with
+     * @return true if all the pending messages were published, otherwise false
+     */
+    public boolean drainTo(MessageClient messageClient) {
+        int published = 0;
+        SpooledMessage message;
+        while ((message = peek()) != null) {
+            try {
+                messageClient.publish(message.getPayload(), message.getProducingProperties());
+            } catch (ConnectionException e) {
+                log.warn("Draining of the spool stopped after {} messages, {} messages are pending", published, size(), e);
+                return false;
+            }
+            remove(message);
+            published++;
+        }
+        log.debug("Spool drained, {} messages published", published);
+        return true;
+    }
+
+    /**
+     * Returns the number of pending messages.
+     *
+     * @return the number of pending messages
+     */
+    public synchronized long size() {
+        return pendingCount;
+    }
+
+    /**
+     * Returns true if there is no pending message.
+     *
+     * @return true if the spool is empty, otherwise false
+     */
+    public synchronized boolean isEmpty() {
+        return pendingCount == 0;
+    }
+
+    /**
+     * Returns the number of pending messages dropped because of the disk quota.
+     *
+     * @return the number of evicted messages
+     */
+    public synchronized long getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * Forces the content of the open segments to the disk.
+     */
+    public synchronized void force() {
+        segments.forEach(segment -> segment.buffer.force());
+        unforcedCount = 0;
+    }
+
+    /**
+     * Closes the spool. The pending messages stay in the segment files and
+     * they are available if the spool is reopened in the same directory.
+     * The segments are forced to the disk before if a force interval is given.
+     */
+    @Override
+    public synchronized void close() {
+        if (forceInterval > 0 && !closed) {
+            force();
+        }
+        closed = true;
+        segments.clear();
+    }
+
+    /**
+     * Opens the existing segment files of the spool directory in the order of their identifiers
+     * and deletes the ones without pending messages.
+     */
+    private void recover() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_FILE_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(MessageSpool::segmentId));
+        for (File file : files) {
+            long id = segmentId(file);
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+            Segment segment = Segment.open(file, id, (int) file.length());
+            if (segment.pending == 0) {
+                segment.delete();
+            } else {
+                segments.addLast(segment);
+                pendingCount += segment.pending;
+            }
+        }
+        if (pendingCount > 0) {
+            log.info("Spool reopened in {} with {} pending messages", directory, pendingCount);
+        }
+    }
+
+    /**
+     * Returns the segment where a record with the given length can be appended.
+     * A new segment will be created if the last one is full, the oldest segment
+     * will be evicted if the new segment exceeds the disk quota.
+     *
+     * @param length the length of the record
+     * @return the segment to write
+     */
+    private Segment writableSegment(int length) {
+        Segment last = segments.peekLast();
+        if (last != null && last.capacity - last.writePosition >= length) {
+            return last;
+        }
+        if (segments.size() >= maxSegments) {
+            Segment oldest = segments.pollFirst();
+            pendingCount -= oldest.pending;
+            evictedCount += oldest.pending;
+            log.warn("Spool disk quota exceeded, {} messages are dropped", oldest.pending);
+            oldest.delete();
+        }
+        long id = nextSegmentId++;
+        Segment segment = Segment.open(new File(directory, String.format("%020d", id) + SEGMENT_FILE_SUFFIX), id, segmentSize);
+        segments.addLast(segment);
+        return segment;
+    }
+
+    /**
+     * Returns the oldest segment which has pending messages.
+     *
+     * @return the oldest segment with pending messages or null if there isn't any
+     */
+    private Segment headSegment() {
+        for (Segment segment : segments) {
+            if (segment.pending > 0) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the segment identifier from the segment file name.
+     *
+     * @param file the segment file
+     * @return the segment identifier
+     */
+    private static long segmentId(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new ConnectionException("Invalid spool segment file name: " + name, e);
+        }
+    }
+
+    /**
+     * Converts a nullable string to UTF-8 bytes.
+     *
+     * @param value the string value
+     * @return the bytes of the string or an empty array if it's null
+     */
+    private static byte[] toBytes(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A message read from the spool.
+     */
+    @Getter
+    public static class SpooledMessage {
+
+        /**
+         * The time when the message was appended to the spool
+         */
+        private final long timestamp;
+
+        /**
+         * Quality of service
+         */
+        private final int qos;
+
+        /**
+         * True if the message is retained by the broker
+         */
+        private final boolean retained;
+
+        /**
+         * Topic or routing key
+         */
+        private final String topic;
+
+        /**
+         * The exchange, null if it was not set
+         */
+        private final String exchange;
+
+        /**
+         * The message payload
+         */
+        private final byte[] payload;
+
+        /**
+         * Identifier of the segment containing the message
+         */
+        @Getter(AccessLevel.NONE)
+        private final long segmentId;
+
+        /**
+         * Position of the message in the segment
+         */
+        @Getter(AccessLevel.NONE)
+        private final int position;
+
+        /**
+         * Constructs a spooled message.
+         *
+         * @param timestamp the time when the message was appended
+         * @param qos quality of service
+         * @param retained true if the message is retained by the broker
+         * @param topic topic or routing key
+         * @param exchange the exchange
+         * @param payload the message payload
+         * @param segmentId identifier of the segment
+         * @param position position of the message in the segment
+         */
+        private SpooledMessage(long timestamp, int qos, boolean retained, String topic, String exchange, byte[] payload, long segmentId, int position) {
+            this.timestamp = timestamp;
+            this.qos = qos;
+            this.retained = retained;
+            this.topic = topic;
+            this.exchange = exchange;
+            this.payload = payload;
+            this.segmentId = segmentId;
+            this.position = position;
+        }
+
+        /**
+         * Returns the producing properties of the message, with the retain flag of an MQTT message.
+         *
+         * @return the producing properties
+         */
+        public ProducingProperties getProducingProperties() {
+            return exchange == null ? new ProducingProperties(topic, qos, retained) : new ProducingProperties(topic, exchange, qos);
+        }
+    }
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static final class Segment {
+
+        /**
+         * Identifier of the segment, it defines the order of the segments
+         */
+        private final long id;
+
+        /**
+         * The segment file
+         */
+        private final File file;
+
+        /**
+         * The mapped content of the file
+         */
+        private final MappedByteBuffer buffer;
+
+        /**
+         * Size of the segment in bytes
+         */
+        private final int capacity;
+
+        /**
+         * Position of the next record to write
+         */
+        private int writePosition;
+
+        /**
+         * Position of the oldest pending record
+         */
+        private int readPosition;
+
+        /**
+         * Number of pending records
+         */
+        private int pending;
+
+        /**
+         * Constructs the segment with the mapped file content.
+         *
+         * @param id identifier of the segment
+         * @param file the segment file
+         * @param buffer the mapped content
+         * @param capacity size of the segment in bytes
+         */
+        private Segment(long id, File file, MappedByteBuffer buffer, int capacity) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        /**
+         * Maps the segment file to the memory and scans its records. A new file will
+         * be created with the given capacity if it doesn't exist.
+         *
+         * @param file the segment file
+         * @param id identifier of the segment
+         * @param capacity size of the segment in bytes
+         * @return the opened segment
+         * @throws ConnectionException if the file cannot be mapped
+         */
+        private static Segment open(File file, long id, int capacity) {
+            boolean existing = file.length() > 0;
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                Segment segment = new Segment(id, file, buffer, capacity);
+                segment.scan();
+                if (existing) {
+                    segment.clearTail();
+                }
+                return segment;
+            } catch (IOException e) {
+                throw new ConnectionException("Cannot open spool segment " + file, e);
+            }
+        }
+
+        /**
+         * Scans the committed records and sets the read and write positions.
+         */
+        private void scan() {
+            int position = 0;
+            int firstPending = -1;
+            while (position + RECORD_HEADER_SIZE <= capacity) {
+                int length = buffer.getInt(position);
+                if (length < RECORD_HEADER_SIZE || length > capacity - position) {
+                    break;
+                }
+                if (buffer.get(position + STATE_OFFSET) == STATE_PENDING) {
+                    if (firstPending < 0) {
+                        firstPending = position;
+                    }
+                    pending++;
+                }
+                position += length;
+            }
+            writePosition = position;
+            readPosition = firstPending < 0 ? position : firstPending;
+        }
+
+        /**
+         * Clears the bytes after the last committed record. A record which was not fully
+         * written before a crash would be read as garbage after the next appended record.
+         */
+        private void clearTail() {
+            ByteBuffer tail = buffer.duplicate();
+            tail.position(writePosition);
+            byte[] zeros = new byte[Math.min(4096, tail.remaining())];
+            while (tail.hasRemaining()) {
+                tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+            }
+        }
+
+        /**
+         * Reads the record from the given position.
+         *
+         * @param position the position of the record
+         * @return the message of the record
+         */
+        private SpooledMessage read(int position) {
+            ByteBuffer record = buffer.duplicate();
+            record.position(position);
+            int length = record.getInt();
+            record.get();
+            long timestamp = record.getLong();
+            int qos = record.get();
+            boolean retained = (record.get() & FLAG_RETAINED) != 0;
+            byte[] topic = new byte[record.getShort() & MAX_NAME_LENGTH];
+            byte[] exchange = new byte[record.getShort() & MAX_NAME_LENGTH];
+            record.get(topic).get(exchange);
+            byte[] payload = new byte[length - RECORD_HEADER_SIZE - topic.length - exchange.length];
+            record.get(payload);
+            return new SpooledMessage(
+                timestamp,
+                qos,
+                retained,
+                new String(topic, StandardCharsets.UTF_8),
+                exchange.length == 0 ? null : new String(exchange, StandardCharsets.UTF_8),
+                payload,
+                id,
+                position);
+        }
+
+        /**
+         * Deletes the segment file.
+         */
+        private void delete() {
+            if (!file.delete()) {
+                log.warn("Cannot delete spool segment {}", file);
+            }
+        }
+    }
+}
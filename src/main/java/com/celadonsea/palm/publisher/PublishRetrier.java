@@ -0,0 +1,140 @@
+package com.celadonsea.palm.publisher;
+
+import com.celadonsea.palm.client.MessageClient;
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.HashedWheelTimer;
+import com.celadonsea.palm.core.ProducingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes messages and retries the publishing without blocking the caller if it
+ * fails with a {@link ConnectionException}.
+ *
+ * The first attempt runs on the calling thread, the retries are scheduled on a
+ * {@link HashedWheelTimer} according to the {@link PublishRetryPolicy}, so pending
+ * retries don't occupy any thread. Other exceptions are not retried.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see PublishRetryPolicy
+ * @see com.celadonsea.palm.client.RetryingMessageClient
+ */
+@Slf4j
+public class PublishRetrier {
+
+    /**
+     * The retry policy
+     */
+    private final PublishRetryPolicy retryPolicy;
+
+    /**
+     * Timer of the retries
+     */
+    private final HashedWheelTimer timer;
+
+    /**
+     * Executor of the retries
+     */
+    private final Executor executor;
+
+    /**
+     * Number of scheduled retries
+     */
+    private final AtomicInteger pendingRetries = new AtomicInteger();
+
+    /**
+     * Constructs the retrier. The retries run on the thread of the timer.
+     *
+     * @param retryPolicy the retry policy
+     * @param timer timer of the retries
+     */
+    public PublishRetrier(PublishRetryPolicy retryPolicy, HashedWheelTimer timer) {
+        this(retryPolicy, timer, Runnable::run);
+    }
+
+    /**
+     * Constructs the retrier with an executor for the retries. It's recommended if
+     * the publishing of the message client may block.
+     *
+     * @param retryPolicy the retry policy
+     * @param timer timer of the retries
+     * @param executor executor of the retries
+     * @throws IllegalArgumentException if any of the parameters is null
+     */
+    public PublishRetrier(PublishRetryPolicy retryPolicy, HashedWheelTimer timer, Executor executor) {
+        Assert.notNull(retryPolicy, "Retry policy must be set");
+        Assert.notNull(timer, "Timer must be set");
+        Assert.notNull(executor, "Executor must be set");
+        this.retryPolicy = retryPolicy;
+        this.timer = timer;
+        this.executor = executor;
+    }
+
+    /**
+     * Publishes a message with the given client and retries it if necessary.
+     *
+     * @param messageClient the client to publish with
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     * @return future which completes when the message is published, or completes exceptionally
+     *         with the last error if the message cannot be published within the policy
+     */
+    public CompletableFuture<Void> publish(MessageClient messageClient, byte[] message, ProducingProperties producingProperties) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        long deadline = System.currentTimeMillis() + retryPolicy.getDeadlineMillis();
+        attempt(messageClient, message, producingProperties, result, deadline, 1);
+        return result;
+    }
+
+    /**
+     * Returns the number of scheduled retries.
+     *
+     * @return the number of scheduled retries
+     */
+    public int getPendingRetries() {
+        return pendingRetries.get();
+    }
+
+    /**
+     * Publishes the message and schedules the next attempt if it fails.
+     *
+     * @param messageClient the client to publish with
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     * @param result the future of the publishing
+     * @param deadline the time limit of the message in epoch milliseconds
+     * @param attempt the number of the attempt, the first one is 1
+     */
+    private void attempt(MessageClient messageClient,
+                         byte[] message,
+                         ProducingProperties producingProperties,
+                         CompletableFuture<Void> result,
+                         long deadline,
+                         int attempt) {
+        try {
+            messageClient.publish(message, producingProperties);
+            result.complete(null);
+        } catch (ConnectionException e) {
+            long backoff = retryPolicy.backoffMillis(attempt);
+            if (attempt >= retryPolicy.getMaxAttempts() || System.currentTimeMillis() + backoff > deadline) {
+                log.error("Cannot publish to {} after {} attempts", producingProperties.getTopic(), attempt, e);
+                result.completeExceptionally(e);
+                return;
+            }
+            log.debug("Publishing to {} failed, attempt {} will be retried in {} ms", producingProperties.getTopic(), attempt, backoff);
+            pendingRetries.incrementAndGet();
+            timer.schedule(() -> executor.execute(() -> {
+                pendingRetries.decrementAndGet();
+                attempt(messageClient, message, producingProperties, result, deadline, attempt + 1);
+            }), backoff, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
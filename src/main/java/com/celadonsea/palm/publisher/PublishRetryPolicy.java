@@ -0,0 +1,132 @@
+package com.celadonsea.palm.publisher;
+
+import lombok.Getter;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how failed publishing should be retried: the number of attempts,
+ * the exponential backoff between them with random jitter and the deadline of a message.
+ *
+ * The backoff before the n-th retry is initialBackoff * multiplier^(n-1), limited by
+ * the maximal backoff, and changed randomly with maximum +/- jitter ratio.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see PublishRetrier
+ */
+@Getter
+public class PublishRetryPolicy {
+
+    /**
+     * Maximal number of attempts including the first one
+     * -- GETTER --
+     * Returns the maximal number of attempts including the first one
+     *
+     * @return the maximal number of attempts
+     */
+    private final int maxAttempts;
+
+    /**
+     * Backoff before the first retry in milliseconds
+     * -- GETTER --
+     * Returns the backoff before the first retry in milliseconds
+     *
+     * @return the initial backoff
+     */
+    private final long initialBackoffMillis;
+
+    /**
+     * Maximal backoff between two attempts in milliseconds
+     * -- GETTER --
+     * Returns the maximal backoff between two attempts in milliseconds
+     *
+     * @return the maximal backoff
+     */
+    private final long maxBackoffMillis;
+
+    /**
+     * Multiplier of the backoff after each retry
+     * -- GETTER --
+     * Returns the multiplier of the backoff
+     *
+     * @return the backoff multiplier
+     */
+    private final double multiplier;
+
+    /**
+     * Maximal random change of the backoff as a ratio between 0 and 1
+     * -- GETTER --
+     * Returns the maximal random change of the backoff
+     *
+     * @return the jitter ratio
+     */
+    private final double jitter;
+
+    /**
+     * Time limit of a message from its first attempt in milliseconds
+     * -- GETTER --
+     * Returns the time limit of a message from its first attempt in milliseconds
+     *
+     * @return the deadline of a message
+     */
+    private final long deadlineMillis;
+
+    /**
+     * Constructs the retry policy.
+     *
+     * @param maxAttempts maximal number of attempts including the first one
+     * @param initialBackoff backoff before the first retry
+     * @param maxBackoff maximal backoff between two attempts
+     * @param multiplier multiplier of the backoff after each retry
+     * @param jitter maximal random change of the backoff as a ratio between 0 and 1
+     * @param deadline time limit of a message from its first attempt
+     * @param timeUnit unit of the backoff and deadline values
+     * @throws IllegalArgumentException if any of the values is out of its range
+     */
+    public PublishRetryPolicy(int maxAttempts,
+                              long initialBackoff,
+                              long maxBackoff,
+                              double multiplier,
+                              double jitter,
+                              long deadline,
+                              TimeUnit timeUnit) {
+        Assert.isTrue(maxAttempts > 0, "Maximal number of attempts must be positive");
+        Assert.isTrue(initialBackoff >= 0 && maxBackoff >= initialBackoff, "Invalid backoff range");
+        Assert.isTrue(multiplier >= 1, "Backoff multiplier must be at least 1");
+        Assert.isTrue(jitter >= 0 && jitter <= 1, "Jitter must be between 0 and 1");
+        Assert.isTrue(deadline > 0, "Deadline must be positive");
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = timeUnit.toMillis(initialBackoff);
+        this.maxBackoffMillis = timeUnit.toMillis(maxBackoff);
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.deadlineMillis = timeUnit.toMillis(deadline);
+    }
+
+    /**
+     * Returns the default retry policy: 5 attempts, backoff from 100 milliseconds to 10 seconds
+     * doubled after each retry with 20% jitter and one minute deadline.
+     *
+     * @return the default retry policy
+     */
+    public static PublishRetryPolicy defaultPolicy() {
+        return new PublishRetryPolicy(5, 100, 10_000, 2.0, 0.2, 60_000, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Calculates the backoff after the given failed attempt.
+     *
+     * @param attempt the number of the failed attempt, the first one is 1
+     * @return the backoff in milliseconds
+     */
+    public long backoffMillis(int attempt) {
+        double backoff = Math.min(maxBackoffMillis, initialBackoffMillis * Math.pow(multiplier, attempt - 1));
+        if (jitter > 0) {
+            backoff *= 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        }
+        return Math.max(0, Math.round(backoff));
+    }
+}
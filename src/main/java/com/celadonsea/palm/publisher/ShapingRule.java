@@ -0,0 +1,122 @@
+package com.celadonsea.palm.publisher;
+
+import lombok.Getter;
+import org.springframework.util.Assert;
+
+/**
+ * Describes a traffic class of the outgoing messages for the {@link TrafficShaper}.
+ *
+ * The messages belong to the class if their topic matches to the topic filter of the
+ * rule. The filter can be a topic prefix (my/backfill/) or a topic template with wildcards
+ * and topic variables (my/{device}/history/#). The rate of the class is limited by
+ * messages and bytes per second, zero means no limit. The weight defines the share of the
+ * class if more classes have queued messages at the same time.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see TrafficShaper
+ */
+@Getter
+public class ShapingRule {
+
+    /**
+     * Default maximal number of queued messages of a class
+     */
+    public static final int DEFAULT_MAX_QUEUE_DEPTH = 10_000;
+
+    /**
+     * Name of the traffic class
+     * -- GETTER --
+     * Returns the name of the traffic class
+     *
+     * @return the name of the class
+     */
+    private final String name;
+
+    /**
+     * Topic prefix or topic template of the class
+     * -- GETTER --
+     * Returns the topic prefix or topic template of the class
+     *
+     * @return the topic filter of the class
+     */
+    private final String topicFilter;
+
+    /**
+     * Maximal number of messages per second, zero means no limit
+     * -- GETTER --
+     * Returns the maximal number of messages per second
+     *
+     * @return the message rate limit
+     */
+    private final double messagesPerSecond;
+
+    /**
+     * Maximal number of payload bytes per second, zero means no limit
+     * -- GETTER --
+     * Returns the maximal number of payload bytes per second
+     *
+     * @return the byte rate limit
+     */
+    private final long bytesPerSecond;
+
+    /**
+     * Relative share of the class in the outbound scheduler
+     * -- GETTER --
+     * Returns the relative share of the class in the outbound scheduler
+     *
+     * @return the weight of the class
+     */
+    private final int weight;
+
+    /**
+     * Maximal number of queued messages, the publishing is rejected over it
+     * -- GETTER --
+     * Returns the maximal number of queued messages
+     *
+     * @return the maximal queue depth
+     */
+    private final int maxQueueDepth;
+
+    /**
+     * Constructs a rule with the default queue depth.
+     *
+     * @param name name of the traffic class
+     * @param topicFilter topic prefix or topic template of the class
+     * @param messagesPerSecond maximal number of messages per second, zero means no limit
+     * @param bytesPerSecond maximal number of payload bytes per second, zero means no limit
+     * @param weight relative share of the class in the outbound scheduler
+     * @throws IllegalArgumentException if the name or the filter is empty, a rate is negative or the weight is not positive
+     */
+    public ShapingRule(String name, String topicFilter, double messagesPerSecond, long bytesPerSecond, int weight) {
+        this(name, topicFilter, messagesPerSecond, bytesPerSecond, weight, DEFAULT_MAX_QUEUE_DEPTH);
+    }
+
+    /**
+     * Constructs a rule.
+     *
+     * @param name name of the traffic class
+     * @param topicFilter topic prefix or topic template of the class
+     * @param messagesPerSecond maximal number of messages per second, zero means no limit
+     * @param bytesPerSecond maximal number of payload bytes per second, zero means no limit
+     * @param weight relative share of the class in the outbound scheduler
+     * @param maxQueueDepth maximal number of queued messages
+     * @throws IllegalArgumentException if the name or the filter is empty, a rate is negative,
+     *         the weight or the queue depth is not positive
+     */
+    public ShapingRule(String name, String topicFilter, double messagesPerSecond, long bytesPerSecond,
+                       int weight, int maxQueueDepth) {
+        Assert.hasText(name, "Traffic class name must be set");
+        Assert.hasText(topicFilter, "Topic filter must be set");
+        Assert.isTrue(messagesPerSecond >= 0, "Message rate must not be negative");
+        Assert.isTrue(bytesPerSecond >= 0, "Byte rate must not be negative");
+        Assert.isTrue(weight > 0, "Weight must be positive");
+        Assert.isTrue(maxQueueDepth > 0, "Maximal queue depth must be positive");
+        this.name = name;
+        this.topicFilter = topicFilter;
+        this.messagesPerSecond = messagesPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+        this.weight = weight;
+        this.maxQueueDepth = maxQueueDepth;
+    }
+}
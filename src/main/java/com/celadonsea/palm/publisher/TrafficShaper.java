@@ -0,0 +1,716 @@
+package com.celadonsea.palm.publisher;
+
+import com.celadonsea.palm.client.MessageClient;
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.topic.TopicFormat;
+import com.celadonsea.palm.topic.TopicMatcher;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * Limits the rate of the outgoing messages per traffic class.
+ *
+ * Every {@link ShapingRule} defines a traffic class with token buckets for the messages and
+ * the bytes per second. The shaped classes share the token buckets of the link budget too.
+ * A message within the rate of its class and of the link is published immediately on the
+ * caller thread. A message over the rate is queued and published later by the scheduler
+ * thread, which serves the classes by weighted deficit round robin: a backlogged class gets
+ * a quantum of bytes proportional to its weight in every round, and it keeps its turn while
+ * it waits for the link budget. So the link budget is divided by the weights of the
+ * backlogged classes. Without a link budget the classes are limited only by their own rates
+ * and the weights have no effect. Messages which don't belong to any class are not shaped,
+ * so the live traffic is never queued behind the shaped traffic.
+ *
+ * The order of the messages is kept within a traffic class.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see ShapingRule
+ * @see com.celadonsea.palm.client.ShapingMessageClient
+ */
+@Slf4j
+public class TrafficShaper {
+
+    /**
+     * Number of bytes a class with weight 1 may send in a round of the scheduler
+     */
+    public static final int QUANTUM_BYTES = 1024;
+
+    /**
+     * Waiting time of the scheduler if the queued messages are over the rate
+     */
+    private static final long THROTTLED_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Waiting time of the scheduler if there is no queued message
+     */
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * The traffic classes in the order of the rules
+     */
+    private final List<TrafficClass> trafficClasses;
+
+    /**
+     * The budget of the link shared by the traffic classes
+     */
+    private final RateLimit link;
+
+    /**
+     * True if the scheduler thread was started
+     */
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    /**
+     * The scheduler thread
+     */
+    private volatile Thread scheduler;
+
+    /**
+     * True if the shaper was stopped
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Constructs the shaper without link budget. The first matching rule defines the class of a message.
+     *
+     * @param rules the shaping rules
+     * @param topicFormat the topic format for the topic templates, it may be null if only prefixes are used
+     * @throws IllegalArgumentException if the rules are null or a template is used without topic format
+     */
+    public TrafficShaper(List<ShapingRule> rules, TopicFormat topicFormat) {
+        this(rules, topicFormat, 0, 0);
+    }
+
+    /**
+     * Constructs the shaper with a link budget shared by the classes. The first matching
+     * rule defines the class of a message.
+     *
+     * @param rules the shaping rules
+     * @param topicFormat the topic format for the topic templates, it may be null if only prefixes are used
+     * @param linkMessagesPerSecond maximal number of shaped messages per second, zero means no limit
+     * @param linkBytesPerSecond maximal number of shaped payload bytes per second, zero means no limit
+     * @throws IllegalArgumentException if the rules are null, a template is used without topic format
+     *         or a link rate is negative
+     */
+    public TrafficShaper(List<ShapingRule> rules, TopicFormat topicFormat, double linkMessagesPerSecond, long linkBytesPerSecond) {
+        Assert.notNull(rules, "Shaping rules must be set");
+        Assert.isTrue(linkMessagesPerSecond >= 0, "Link message rate must not be negative");
+        Assert.isTrue(linkBytesPerSecond >= 0, "Link byte rate must not be negative");
+        this.link = new RateLimit(linkMessagesPerSecond, linkBytesPerSecond);
+        List<TrafficClass> classes = new ArrayList<>(rules.size());
+        for (ShapingRule rule : rules) {
+            classes.add(new TrafficClass(rule, matcher(rule.getTopicFilter(), topicFormat), link));
+        }
+        this.trafficClasses = Collections.unmodifiableList(classes);
+    }
+
+    /**
+     * Publishes the message immediately if it's within the rate of its class or it's not shaped,
+     * otherwise it queues the message for the scheduler.
+     *
+     * @param messageClient the client which publishes the message
+     * @param message message payload
+     * @param producingProperties properties for the publishing
+     * @throws ConnectionException if the queue of the class is full or the shaper was stopped
+     */
+    public void publish(MessageClient messageClient, byte[] message, ProducingProperties producingProperties) {
+        TrafficClass trafficClass = classify(producingProperties.getTopic());
+        if (trafficClass == null) {
+            messageClient.publish(message, producingProperties);
+            return;
+        }
+        if (trafficClass.tryPass(message.length)) {
+            messageClient.publish(message, producingProperties);
+            trafficClass.recordPublished(0);
+            return;
+        }
+        if (stopped) {
+            throw new ConnectionException("Traffic shaper is stopped");
+        }
+        trafficClass.enqueue(new QueuedMessage(messageClient, message, producingProperties, System.nanoTime()));
+        start();
+        LockSupport.unpark(scheduler);
+    }
+
+    /**
+     * Returns the traffic class of the topic.
+     *
+     * @param topic the topic of a message
+     * @return the class of the first matching rule, or null if the topic is not shaped
+     */
+    public TrafficClass classify(String topic) {
+        for (TrafficClass trafficClass : trafficClasses) {
+            if (trafficClass.matcher.test(topic)) {
+                return trafficClass;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the traffic classes with their metrics.
+     *
+     * @return the traffic classes in the order of the rules
+     */
+    public List<TrafficClass> getTrafficClasses() {
+        return trafficClasses;
+    }
+
+    /**
+     * Stops the scheduler thread. The queued messages are discarded.
+     */
+    public void stop() {
+        stopped = true;
+        Thread thread = scheduler;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        for (TrafficClass trafficClass : trafficClasses) {
+            int discarded = trafficClass.clear();
+            if (discarded > 0) {
+                log.warn("{} queued messages of traffic class {} are discarded", discarded, trafficClass.getRule().getName());
+            }
+        }
+    }
+
+    /**
+     * Starts the scheduler thread if it's not running yet.
+     */
+    private void start() {
+        if (started.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::schedule, "palm-traffic-shaper");
+            thread.setDaemon(true);
+            scheduler = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * The loop of the scheduler thread. The current class gets its quantum when its turn
+     * starts, and it keeps the turn while its deficit and rate allow the next message, even
+     * if it has to wait for the link budget. The scheduler waits if a whole round was idle.
+     */
+    private void schedule() {
+        int current = 0;
+        boolean turnStarted = false;
+        int idleTurns = 0;
+        while (!stopped) {
+            TrafficClass trafficClass = trafficClasses.get(current);
+            if (!turnStarted) {
+                trafficClass.grantQuantum(System.nanoTime());
+                turnStarted = true;
+            }
+            QueuedMessage queuedMessage = trafficClass.poll();
+            if (queuedMessage != null) {
+                publishQueued(trafficClass, queuedMessage);
+                idleTurns = 0;
+            } else if (trafficClass.hasTurn()) {
+                LockSupport.parkNanos(this, THROTTLED_WAIT_NANOS);
+            } else {
+                current = (current + 1) % trafficClasses.size();
+                turnStarted = false;
+                if (++idleTurns >= trafficClasses.size()) {
+                    idleTurns = 0;
+                    LockSupport.parkNanos(this, isBacklogged() ? THROTTLED_WAIT_NANOS : IDLE_WAIT_NANOS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if any class has queued messages.
+     *
+     * @return true if a class is backlogged
+     */
+    private boolean isBacklogged() {
+        for (TrafficClass trafficClass : trafficClasses) {
+            if (trafficClass.getQueueDepth() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Publishes a queued message. The failure is logged, because the caller already returned.
+     *
+     * @param trafficClass the class of the message
+     * @param queuedMessage the queued message
+     */
+    private void publishQueued(TrafficClass trafficClass, QueuedMessage queuedMessage) {
+        try {
+            queuedMessage.messageClient.publish(queuedMessage.message, queuedMessage.producingProperties);
+            trafficClass.recordPublished(System.nanoTime() - queuedMessage.enqueueTime);
+        } catch (RuntimeException e) {
+            trafficClass.failedCount.incrementAndGet();
+            log.error("Cannot publish queued message to {}", queuedMessage.producingProperties.getTopic(), e);
+        } finally {
+            trafficClass.finishPublishing();
+        }
+    }
+
+    /**
+     * Creates the matcher of a topic filter. The filter is a template if it contains
+     * wildcards or topic variables, otherwise it's a topic prefix.
+     *
+     * @param topicFilter the topic prefix or template
+     * @param topicFormat the topic format
+     * @return the predicate of the matching topics
+     */
+    private static Predicate<String> matcher(String topicFilter, TopicFormat topicFormat) {
+        boolean template = topicFilter.indexOf('{') >= 0
+            || (topicFormat != null
+                && (topicFilter.indexOf(topicFormat.getSingleLevelWildcard()) >= 0
+                    || topicFilter.indexOf(topicFormat.getMultiLevelWildcard()) >= 0));
+        if (!template) {
+            return topic -> topic != null && topic.startsWith(topicFilter);
+        }
+        Assert.notNull(topicFormat, "Topic format must be set for the topic template " + topicFilter);
+        return TopicMatcher.compile(topicFilter, topicFormat)::matches;
+    }
+
+    /**
+     * A message waiting for the scheduler.
+     */
+    private static final class QueuedMessage {
+
+        /**
+         * The client which publishes the message
+         */
+        private final MessageClient messageClient;
+
+        /**
+         * Message payload
+         */
+        private final byte[] message;
+
+        /**
+         * Properties for the publishing
+         */
+        private final ProducingProperties producingProperties;
+
+        /**
+         * Time of the queueing in nanoseconds
+         */
+        private final long enqueueTime;
+
+        /**
+         * Constructs a queued message.
+         *
+         * @param messageClient the client which publishes the message
+         * @param message message payload
+         * @param producingProperties properties for the publishing
+         * @param enqueueTime time of the queueing in nanoseconds
+         */
+        private QueuedMessage(MessageClient messageClient, byte[] message, ProducingProperties producingProperties, long enqueueTime) {
+            this.messageClient = messageClient;
+            this.message = message;
+            this.producingProperties = producingProperties;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+
+    /**
+     * A traffic class with its token buckets, queue and metrics.
+     */
+    public static final class TrafficClass {
+
+        /**
+         * The rule of the class
+         * -- GETTER --
+         * Returns the rule of the class
+         *
+         * @return the shaping rule
+         */
+        @Getter
+        private final ShapingRule rule;
+
+        /**
+         * Matcher of the topics of the class
+         */
+        private final Predicate<String> matcher;
+
+        /**
+         * The queued messages, guarded by the class instance
+         */
+        private final Deque<QueuedMessage> queue = new ArrayDeque<>();
+
+        /**
+         * Number of messages published through the class
+         */
+        private final AtomicLong publishedCount = new AtomicLong();
+
+        /**
+         * Number of messages which had to be queued
+         */
+        private final AtomicLong queuedCount = new AtomicLong();
+
+        /**
+         * Number of messages rejected because of the full queue
+         */
+        private final AtomicLong rejectedCount = new AtomicLong();
+
+        /**
+         * Number of queued messages which could not be published
+         */
+        private final AtomicLong failedCount = new AtomicLong();
+
+        /**
+         * Sum of the queueing delays in nanoseconds
+         */
+        private final AtomicLong totalDelay = new AtomicLong();
+
+        /**
+         * The longest queueing delay in nanoseconds
+         */
+        private final AtomicLong maxDelay = new AtomicLong();
+
+        /**
+         * The token buckets of the class, guarded by the class instance
+         */
+        private final RateLimit rate;
+
+        /**
+         * The token buckets of the link shared by the classes, guarded by the link instance
+         */
+        private final RateLimit link;
+
+        /**
+         * Bytes the class may send in the current round of the scheduler, guarded by the class instance
+         */
+        private long deficit;
+
+        /**
+         * True while the scheduler publishes a message of the class, guarded by the class instance
+         */
+        private boolean publishing;
+
+        /**
+         * Constructs the class with full token buckets.
+         *
+         * @param rule the rule of the class
+         * @param matcher matcher of the topics of the class
+         * @param link the token buckets of the link
+         */
+        private TrafficClass(ShapingRule rule, Predicate<String> matcher, RateLimit link) {
+            this.rule = rule;
+            this.matcher = matcher;
+            this.rate = new RateLimit(rule.getMessagesPerSecond(), rule.getBytesPerSecond());
+            this.link = link;
+        }
+
+        /**
+         * Returns the number of queued messages.
+         *
+         * @return the queue depth of the class
+         */
+        public synchronized int getQueueDepth() {
+            return queue.size();
+        }
+
+        /**
+         * Returns the number of messages published through the class.
+         *
+         * @return the number of published messages
+         */
+        public long getPublishedCount() {
+            return publishedCount.get();
+        }
+
+        /**
+         * Returns the number of messages which were over the rate and had to be queued.
+         *
+         * @return the number of queued messages
+         */
+        public long getQueuedCount() {
+            return queuedCount.get();
+        }
+
+        /**
+         * Returns the number of messages rejected because of the full queue.
+         *
+         * @return the number of rejected messages
+         */
+        public long getRejectedCount() {
+            return rejectedCount.get();
+        }
+
+        /**
+         * Returns the number of queued messages which could not be published.
+         *
+         * @return the number of failed messages
+         */
+        public long getFailedCount() {
+            return failedCount.get();
+        }
+
+        /**
+         * Returns the average delay of the published messages caused by the shaping.
+         *
+         * @return the average delay in milliseconds
+         */
+        public double getAverageDelayMillis() {
+            long published = publishedCount.get();
+            return published == 0 ? 0 : totalDelay.get() / (published * 1_000_000.0);
+        }
+
+        /**
+         * Returns the longest delay of a published message caused by the shaping.
+         *
+         * @return the maximal delay in milliseconds
+         */
+        public double getMaxDelayMillis() {
+            return maxDelay.get() / 1_000_000.0;
+        }
+
+        /**
+         * Takes the tokens for a message to publish it on the caller thread. It's possible
+         * only if there is no queued message, so the order of the messages is kept.
+         *
+         * @param size the size of the message
+         * @return true if the message may be published immediately
+         */
+        private synchronized boolean tryPass(int size) {
+            if (!queue.isEmpty() || publishing) {
+                return false;
+            }
+            return tryConsume(size);
+        }
+
+        /**
+         * Queues a message.
+         *
+         * @param queuedMessage the message to queue
+         * @throws ConnectionException if the queue is full
+         */
+        private synchronized void enqueue(QueuedMessage queuedMessage) {
+            if (queue.size() >= rule.getMaxQueueDepth()) {
+                rejectedCount.incrementAndGet();
+                throw new ConnectionException("Queue of traffic class " + rule.getName() + " is full");
+            }
+            queue.addLast(queuedMessage);
+            queuedCount.incrementAndGet();
+        }
+
+        /**
+         * Adds the quantum of the round to the deficit. The deficit is limited,
+         * so a throttled class can't save a burst for later.
+         *
+         * @param now the current time in nanoseconds
+         */
+        private synchronized void grantQuantum(long now) {
+            QueuedMessage head = queue.peekFirst();
+            if (head == null) {
+                deficit = 0;
+                return;
+            }
+            rate.refill(now);
+            long quantum = (long) QUANTUM_BYTES * rule.getWeight();
+            deficit = Math.min(deficit + quantum, quantum + head.message.length);
+        }
+
+        /**
+         * Returns true if the deficit and the rate of the class allow the next queued
+         * message, so only the link budget may hold it back.
+         *
+         * @return true if the class may keep its turn
+         */
+        private synchronized boolean hasTurn() {
+            QueuedMessage head = queue.peekFirst();
+            if (head == null || head.message.length > deficit) {
+                return false;
+            }
+            rate.refill(System.nanoTime());
+            return rate.canConsume(head.message.length);
+        }
+
+        /**
+         * Takes the next queued message if the deficit and the tokens allow it.
+         *
+         * @return the next message to publish or null
+         */
+        private synchronized QueuedMessage poll() {
+            QueuedMessage head = queue.peekFirst();
+            if (head == null) {
+                deficit = 0;
+                return null;
+            }
+            if (head.message.length > deficit || !tryConsume(head.message.length)) {
+                return null;
+            }
+            deficit -= head.message.length;
+            publishing = true;
+            return queue.pollFirst();
+        }
+
+        /**
+         * Marks the end of the publishing of a queued message.
+         */
+        private synchronized void finishPublishing() {
+            publishing = false;
+        }
+
+        /**
+         * Removes all queued messages.
+         *
+         * @return the number of removed messages
+         */
+        private synchronized int clear() {
+            int size = queue.size();
+            queue.clear();
+            return size;
+        }
+
+        /**
+         * Updates the metrics with a published message.
+         *
+         * @param delay the queueing delay in nanoseconds
+         */
+        private void recordPublished(long delay) {
+            publishedCount.incrementAndGet();
+            totalDelay.addAndGet(delay);
+            long longest = maxDelay.get();
+            while (delay > longest && !maxDelay.compareAndSet(longest, delay)) {
+                longest = maxDelay.get();
+            }
+        }
+
+        /**
+         * Takes the tokens of a message from the buckets of the class and of the link
+         * if they are available in both of them.
+         *
+         * @param size the size of the message
+         * @return true if the tokens were taken
+         */
+        private boolean tryConsume(int size) {
+            long now = System.nanoTime();
+            rate.refill(now);
+            if (!rate.canConsume(size)) {
+                return false;
+            }
+            synchronized (link) {
+                link.refill(now);
+                if (!link.canConsume(size)) {
+                    return false;
+                }
+                link.consume(size);
+            }
+            rate.consume(size);
+            return true;
+        }
+    }
+
+    /**
+     * Token buckets for the messages and the bytes per second. The buckets hold
+     * one second of the rate, zero rate means no limit. It's not thread safe,
+     * the owner guards it.
+     */
+    private static final class RateLimit {
+
+        /**
+         * Maximal number of messages per second, zero means no limit
+         */
+        private final double messagesPerSecond;
+
+        /**
+         * Maximal number of bytes per second, zero means no limit
+         */
+        private final long bytesPerSecond;
+
+        /**
+         * Available message tokens
+         */
+        private double messageTokens;
+
+        /**
+         * Available byte tokens
+         */
+        private double byteTokens;
+
+        /**
+         * Time of the last refill in nanoseconds
+         */
+        private long lastRefill;
+
+        /**
+         * Constructs the buckets full.
+         *
+         * @param messagesPerSecond maximal number of messages per second, zero means no limit
+         * @param bytesPerSecond maximal number of bytes per second, zero means no limit
+         */
+        private RateLimit(double messagesPerSecond, long bytesPerSecond) {
+            this.messagesPerSecond = messagesPerSecond;
+            this.bytesPerSecond = bytesPerSecond;
+            this.messageTokens = messageCapacity();
+            this.byteTokens = bytesPerSecond;
+            this.lastRefill = System.nanoTime();
+        }
+
+        /**
+         * Returns true if the tokens of a message are available. A message bigger than the
+         * byte bucket can pass if the bucket is full, the bucket goes negative then.
+         *
+         * @param size the size of the message
+         * @return true if the message is within the rate
+         */
+        private boolean canConsume(int size) {
+            if (messagesPerSecond > 0 && messageTokens < 1) {
+                return false;
+            }
+            return bytesPerSecond <= 0 || byteTokens >= Math.min(size, bytesPerSecond);
+        }
+
+        /**
+         * Takes the tokens of a message.
+         *
+         * @param size the size of the message
+         */
+        private void consume(int size) {
+            if (messagesPerSecond > 0) {
+                messageTokens--;
+            }
+            if (bytesPerSecond > 0) {
+                byteTokens -= size;
+            }
+        }
+
+        /**
+         * Adds the tokens of the elapsed time to the buckets.
+         *
+         * @param now the current time in nanoseconds
+         */
+        private void refill(long now) {
+            double seconds = (now - lastRefill) / 1_000_000_000.0;
+            lastRefill = now;
+            if (messagesPerSecond > 0) {
+                messageTokens = Math.min(messageCapacity(), messageTokens + seconds * messagesPerSecond);
+            }
+            if (bytesPerSecond > 0) {
+                byteTokens = Math.min(bytesPerSecond, byteTokens + seconds * bytesPerSecond);
+            }
+        }
+
+        /**
+         * Returns the capacity of the message bucket, at least one message.
+         *
+         * @return the capacity of the message bucket
+         */
+        private double messageCapacity() {
+            return Math.max(1, messagesPerSecond);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.celadonsea.palm.scanner;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Tracks the calls of a {@link com.celadonsea.palm.annotation.Listener @Listener} method until
+ * their completion.
+ * <p>
+ * A listener returning a {@link CompletionStage} is in flight until the stage completes, so the
+ * dispatch thread is released right after the method returns. If the listener has a
+ * {@link com.celadonsea.palm.annotation.Listener#maxInFlight() limit}, the dispatch of a new
+ * message waits for a free permit, so the number of pending asynchronous calls is bounded.
+ * The failures of the asynchronous calls are logged, and the completions are passed to the
+ * {@link ListenerCompletionHandler} if there is one.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see ListenerCallbackPostProcessor
+ */
+@Slf4j
+final class CompletionTracker {
+
+    /**
+     * The subscribed topic definition of the listener for the logging
+     */
+    private final String subscribedTopic;
+
+    /**
+     * The permits of the concurrent calls, null if they aren't limited
+     */
+    private final Semaphore permits;
+
+    /**
+     * The callback of the completions, null if there is no callback
+     */
+    private final ListenerCompletionHandler completionHandler;
+
+    /**
+     * Constructs the tracker.
+     *
+     * @param subscribedTopic the subscribed topic definition of the listener
+     * @param maxInFlight the maximum number of the calls in flight, 0 for no limit
+     * @param completionHandler the callback of the completions or null
+     */
+    CompletionTracker(String subscribedTopic, int maxInFlight, ListenerCompletionHandler completionHandler) {
+        this.subscribedTopic = subscribedTopic;
+        this.permits = maxInFlight > 0 ? new Semaphore(maxInFlight) : null;
+        this.completionHandler = completionHandler;
+    }
+
+    /**
+     * Waits for a permit of a new call if the calls are limited.
+     *
+     * @return false if the thread is interrupted while waiting
+     */
+    boolean acquire() {
+        if (permits != null) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Completes a call with the return value of the listener method. If it's a
+     * {@link CompletionStage}, the call is completed when the stage completes.
+     *
+     * @param topic the topic of the message
+     * @param content the message payload
+     * @param result the return value of the listener method
+     */
+    void returned(String topic, byte[] content, Object result) {
+        if (result instanceof CompletionStage) {
+            ((CompletionStage<?>) result).whenComplete((value, failure) -> {
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                if (cause != null) {
+                    log.error("Asynchronous listener failed for topic {}", subscribedTopic, cause);
+                }
+                complete(topic, content, value, cause);
+            });
+        } else {
+            complete(topic, content, result, null);
+        }
+    }
+
+    /**
+     * Completes a call with the exception of the listener method.
+     *
+     * @param topic the topic of the message
+     * @param content the message payload
+     * @param failure the exception of the listener method
+     */
+    void failed(String topic, byte[] content, Throwable failure) {
+        complete(topic, content, null, failure);
+    }
+
+    /**
+     * Releases the permit of the call and notifies the completion handler.
+     *
+     * @param topic the topic of the message
+     * @param content the message payload
+     * @param result the result of the listener or null
+     * @param failure the exception of the listener or null
+     */
+    private void complete(String topic, byte[] content, Object result, Throwable failure) {
+        if (permits != null) {
+            permits.release();
+        }
+        if (completionHandler != null) {
+            try {
+                completionHandler.onCompletion(topic, content, result, failure);
+            } catch (RuntimeException e) {
+                log.error("Listener completion handler failed for topic {}", subscribedTopic, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.celadonsea.palm.scanner;
+
+/**
+ * Calls a {@link com.celadonsea.palm.annotation.Listener @Listener} method directly. The
+ * implementations are generated at compile time by the listener registry processor, so
+ * the call is a plain method call with the casts of the arguments.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see GeneratedListeners
+ * @see ListenerInvoker
+ */
+@FunctionalInterface
+public interface GeneratedInvoker {
+
+    /**
+     * Calls the listener method of the messaging controller.
+     *
+     * @param messagingController the messaging controller
+     * @param parameters the arguments of the method
+     * @return the return value of the method, null for void methods
+     * @throws Throwable any exception of the listener method or the argument casts
+     */
+    Object invoke(Object messagingController, Object[] parameters) throws Throwable;
+}
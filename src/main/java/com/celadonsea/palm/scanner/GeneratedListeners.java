@@ -0,0 +1,34 @@
+package com.celadonsea.palm.scanner;
+
+import java.util.List;
+
+/**
+ * The precomputed {@link com.celadonsea.palm.annotation.Listener @Listener} methods of a
+ * {@link com.celadonsea.palm.annotation.MessagingController @MessagingController} class.
+ * <p>
+ * The implementations are generated at compile time by the listener registry processor
+ * and registered in META-INF/services, so the {@link ListenerRegistry} finds them with
+ * the {@link java.util.ServiceLoader}. The messaging controllers without generated listeners
+ * are scanned by reflection.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see ListenerRegistry
+ * @see ListenerDefinition
+ */
+public interface GeneratedListeners {
+
+    /**
+     * Returns the messaging controller class of the listeners.
+     *
+     * @return the messaging controller class
+     */
+    Class<?> getControllerType();
+
+    /**
+     * Returns the definitions of the listener methods.
+     *
+     * @return the listener definitions
+     */
+    List<ListenerDefinition> getListeners();
+}
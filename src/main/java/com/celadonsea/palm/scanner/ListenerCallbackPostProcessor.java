@@ -3,26 +3,53 @@ package com.celadonsea.palm.scanner;
 import com.celadonsea.palm.annotation.Listener;
 import com.celadonsea.palm.annotation.MessageBody;
 import com.celadonsea.palm.annotation.MessagingController;
+import com.celadonsea.palm.annotation.SendTo;
 import com.celadonsea.palm.annotation.TopicParameter;
+import com.celadonsea.palm.client.FlowPublisher;
+import com.celadonsea.palm.client.LocalMessageConsumer;
+import com.celadonsea.palm.client.LoopbackMessageClient;
 import com.celadonsea.palm.client.MessageClient;
+import com.celadonsea.palm.codec.MessageCodecs;
+import com.celadonsea.palm.codec.MessageDecoder;
 import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.core.HashedWheelTimer;
+import com.celadonsea.palm.message.InboundMessage;
+import com.celadonsea.palm.message.Lazy;
 import com.celadonsea.palm.message.MessageContext;
+import com.celadonsea.palm.message.RequestEnvelope;
 import com.celadonsea.palm.topic.TopicFormat;
 import com.celadonsea.palm.topic.TopicParser;
-import com.fasterxml.jackson.databind.JavaType;
+import com.celadonsea.palm.topic.TopicTemplate;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.ResolvableType;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A method post processor for {@link Listener @Listener} annotated methods to
@@ -32,7 +59,16 @@ import java.util.function.Function;
  * 1., Parameter analysis
  * 2., Topic preparation
  * 3., Call back method preparation as lambda function
- * 4., Topic subscription with the prepared topic and lambda function
+ * 4., Topic subscription with the prepared topic and lambda function, deferred to the
+ *     context refresh if a {@link SubscriptionRegistrar} is set
+ * <p>
+ * A listener with a {@link Publisher} message body is called only once at the registration
+ * with a {@link FlowPublisher} of the message bodies instead of the call back per message.
+ * <p>
+ * If the message is a {@link RequestEnvelope request}, the return value of the listener is
+ * published to the reply topic of the request. The return value of a listener annotated with
+ * {@link SendTo @SendTo} is published to the topic of the annotation. The incomplete output
+ * batches are published and their timer is stopped when the post processor is destroyed.
  *
  * @author Rafael Revesz
  * @see Listener
@@ -40,13 +76,95 @@ import java.util.function.Function;
  * @since 1.0
  */
 @Slf4j
-@RequiredArgsConstructor
-public class ListenerCallbackPostProcessor {
+public class ListenerCallbackPostProcessor implements DisposableBean {
+
+    /**
+     * The codecs for deserialize the payload to a given message body class definition
+     */
+    private final MessageCodecs messageCodecs;
+
+    /**
+     * The registrar deferring the subscriptions to the context refresh, null for immediate subscription
+     */
+    private final SubscriptionRegistrar subscriptionRegistrar;
+
+    /**
+     * The callback of the completed listener calls, null if there is no callback
+     */
+    private final ListenerCompletionHandler completionHandler;
+
+    /**
+     * The timer of the output batches, created on demand
+     */
+    private HashedWheelTimer outputTimer;
+
+    /**
+     * The publishers of the batched outputs, guarded by the post processor
+     */
+    private final List<OutputPublisher> batchingPublishers = new ArrayList<>();
+
+    /**
+     * Constructs the post processor with a default object mapper.
+     */
+    public ListenerCallbackPostProcessor() {
+        this(new ObjectMapper());
+    }
+
+    /**
+     * Constructs the post processor with the given object mapper. The readers of the
+     * message bodies are created from it at the registration of the listeners, so the
+     * object mapper must be configured before.
+     *
+     * @param objectMapper the object mapper for the message bodies
+     * @throws IllegalArgumentException if the object mapper is null
+     */
+    public ListenerCallbackPostProcessor(ObjectMapper objectMapper) {
+        this(new MessageCodecs(objectMapper));
+    }
+
+    /**
+     * Constructs the post processor with the given codecs. The decoders of the
+     * message bodies are created from them at the registration of the listeners.
+     *
+     * @param messageCodecs the codecs of the message bodies
+     * @throws IllegalArgumentException if the codecs are null
+     */
+    public ListenerCallbackPostProcessor(MessageCodecs messageCodecs) {
+        this(messageCodecs, null);
+    }
+
+    /**
+     * Constructs the post processor with the given codecs and subscription registrar.
+     * The subscriptions are passed to the registrar instead of the message client,
+     * so they can be subscribed together at the refresh of the application context.
+     *
+     * @param messageCodecs the codecs of the message bodies
+     * @param subscriptionRegistrar the registrar of the subscriptions, null for immediate subscription
+     * @throws IllegalArgumentException if the codecs are null
+     */
+    public ListenerCallbackPostProcessor(MessageCodecs messageCodecs, SubscriptionRegistrar subscriptionRegistrar) {
+        this(messageCodecs, subscriptionRegistrar, null);
+    }
 
     /**
-     * Object mapper is for deserialize JSON string to a given message body class definition
+     * Constructs the post processor with the given codecs, subscription registrar and
+     * completion handler. The handler is notified when a listener call is completed,
+     * the calls of the methods returning a {@link java.util.concurrent.CompletionStage CompletionStage}
+     * are completed when the stage completes.
+     *
+     * @param messageCodecs the codecs of the message bodies
+     * @param subscriptionRegistrar the registrar of the subscriptions, null for immediate subscription
+     * @param completionHandler the callback of the completed listener calls, null for no callback
+     * @throws IllegalArgumentException if the codecs are null
      */
-    private ObjectMapper objectMapper = new ObjectMapper();
+    public ListenerCallbackPostProcessor(MessageCodecs messageCodecs,
+                                         SubscriptionRegistrar subscriptionRegistrar,
+                                         ListenerCompletionHandler completionHandler) {
+        Assert.notNull(messageCodecs, "Message codecs must be set");
+        this.messageCodecs = messageCodecs;
+        this.subscriptionRegistrar = subscriptionRegistrar;
+        this.completionHandler = completionHandler;
+    }
 
     /**
      * The entry point of the post processing provides the automatic topic subscription
@@ -70,18 +188,55 @@ public class ListenerCallbackPostProcessor {
                                       Listener methodAnnotation,
                                       MessagingController controllerAnnotation) {
 
+        Parameter[] methodParameters = method.getParameters();
+        ParameterDescriptor[] parameterDescriptors = new ParameterDescriptor[methodParameters.length];
+        for (int index = 0; index < methodParameters.length; index++) {
+            parameterDescriptors[index] = analyzeParameterType(methodParameters[index]);
+        }
+        processListenerDefinition(messagingController, client, ListenerDefinition.of(method, methodAnnotation, parameterDescriptors), controllerAnnotation);
+    }
+
+    /**
+     * Subscribes a listener described by an already analyzed definition. The definitions
+     * are generated at compile time, or created from the reflective scan of the
+     * {@link Listener @Listener} methods.
+     *
+     * @param messagingController  the new {@link com.celadonsea.palm.annotation.MessagingController @MessagingController} bean
+     * @param client               the required message client
+     * @param listenerDefinition   the definition of the listener method
+     * @param controllerAnnotation the annotation containing the defined base topic and the optional exchange value
+     * @see #processListenerMethod(Object, MessageClient, Method, Listener, MessagingController)
+     */
+    public void processListenerDefinition(Object messagingController,
+                                          MessageClient client,
+                                          ListenerDefinition listenerDefinition,
+                                          MessagingController controllerAnnotation) {
+
         TopicFormat topicFormat = client.getTopicFormat();
         String exchange = controllerAnnotation.exchange();
 
-        List<ParameterDescriptor> parameters = new ArrayList<>();
-        for (Parameter parameter : method.getParameters()) {
-            parameters.add(analyzeParameterType(parameter));
+        String codecName = "".equals(listenerDefinition.getCodec().trim()) ? controllerAnnotation.codec() : listenerDefinition.getCodec();
+
+        ParameterDescriptor[] parameterDescriptors = listenerDefinition.getParameterDescriptors();
+        int flowIndex = findFlowParameter(parameterDescriptors);
+        ParameterBinder[] parameterBinders = new ParameterBinder[parameterDescriptors.length];
+        for (int index = 0; index < parameterDescriptors.length; index++) {
+            parameterBinders[index] = flowIndex < 0 ? compileParameterBinder(parameterDescriptors[index], codecName) : ParameterBinder.EMPTY;
         }
+        MessageFilter messageFilter = compileFilter(listenerDefinition.getFilter(), codecName);
 
-        String topicDefinition = prepareTopic(topicFormat, controllerAnnotation.topic(), methodAnnotation.value());
+        String topicDefinition = prepareTopic(topicFormat, controllerAnnotation.topic(), listenerDefinition.getTopic());
 
         String transformedTopicDefinition = getTransformedTopicDefinition(topicDefinition, client.topicTransformer());
 
+        OutputDefinition output = listenerDefinition.getOutput();
+        Assert.isTrue(output == null || flowIndex < 0, "@SendTo is not supported for listener " + listenerDefinition.getMethodName() + " with Publisher message body");
+        TopicTemplate outputTemplate = output == null ? null : compileOutputTemplate(output, transformedTopicDefinition, topicFormat);
+        OutputPublisher outputPublisher = output == null ? null : createOutputPublisher(client, output, outputTemplate, codecName);
+        boolean contextRequired = Arrays.stream(parameterDescriptors).anyMatch(this::requiresContext)
+            || (messageFilter != null && messageFilter.isTopicVariablesRequired())
+            || (outputTemplate != null && outputTemplate.hasVariables());
+
         String subscribedTopic = TopicParser.changeSubscriptionFormatForMessageBrokers(topicDefinition, topicFormat);
 
         ConsumingProperties consumingProperties;
@@ -91,7 +246,276 @@ public class ListenerCallbackPostProcessor {
             consumingProperties = new ConsumingProperties(subscribedTopic);
         }
 
-        client.subscribe(consumingProperties, (topic, message) -> subscriptionLambda(messagingController, method, parameters, transformedTopicDefinition, topic, topicFormat, message));
+        ListenerInvoker invoker = listenerDefinition.createInvoker(messagingController);
+        if (flowIndex >= 0) {
+            Type elementType = getWrappedType(parameterDescriptors[flowIndex].getType(), Publisher.class);
+            FlowPublisher<Object> publisher = new FlowPublisher<>(client, consumingProperties,
+                flowConverter(elementType, codecName, messageFilter, transformedTopicDefinition, topicFormat),
+                FlowPublisher.DEFAULT_BUFFER_SIZE,
+                (properties, messageConsumer) -> subscribe(client, properties, messageConsumer));
+            parameterBinders[flowIndex] = (messageContext, content) -> publisher;
+            subscriptionLambda(invoker, new CompletionTracker(transformedTopicDefinition, 0, null), null, null, parameterBinders,
+                null, false, transformedTopicDefinition, subscribedTopic, topicFormat, null);
+            return;
+        }
+        CompletionTracker completionTracker = new CompletionTracker(transformedTopicDefinition, listenerDefinition.getMaxInFlight(), completionHandler);
+        ReplyRouter replyRouter = new ReplyRouter(client, "".equals(codecName.trim()) ? messageCodecs.getDefaultCodec() : messageCodecs.get(codecName.trim()));
+
+        BiConsumer<String, byte[]> messageConsumer = (topic, message) -> subscriptionLambda(invoker, completionTracker, replyRouter, outputPublisher, parameterBinders, messageFilter, contextRequired, transformedTopicDefinition, topic, topicFormat, message);
+        int bodyIndex = findLocalBodyParameter(parameterDescriptors);
+        if (bodyIndex >= 0 && messageFilter == null) {
+            messageConsumer = localConsumer(messageConsumer, localBodyClass(parameterDescriptors[bodyIndex]), bodyIndex,
+                invoker, completionTracker, outputPublisher, parameterBinders, contextRequired, transformedTopicDefinition, topicFormat);
+        }
+        subscribe(client, consumingProperties, messageConsumer);
+    }
+
+    /**
+     * Returns the index of the message body parameter which can take a published object
+     * directly, when the message is delivered in the same JVM.
+     *
+     * @param parameterDescriptors the parameter descriptions of the listener
+     * @return the index of the message body parameter or -1 if the body has to be decoded
+     * @see LoopbackMessageClient
+     */
+    private int findLocalBodyParameter(ParameterDescriptor[] parameterDescriptors) {
+        for (int index = 0; index < parameterDescriptors.length; index++) {
+            ParameterDescriptor parameterDescriptor = parameterDescriptors[index];
+            if (parameterDescriptor != null && parameterDescriptor.isBody()) {
+                return localBodyClass(parameterDescriptor) != null ? index : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the class of the message body if the published objects of the class can be
+     * passed to the listener as they are. The primitive types are boxed.
+     *
+     * @param parameterDescriptor the description of the message body
+     * @return the class of the message body, or null if the body is a wrapper or a generic type
+     */
+    private Class<?> localBodyClass(ParameterDescriptor parameterDescriptor) {
+        if (parameterDescriptor.getClazz() != null) {
+            return ClassUtils.resolvePrimitiveIfNecessary(parameterDescriptor.getClazz());
+        }
+        Type type = parameterDescriptor.getType();
+        if (!(type instanceof Class)
+            || getWrappedType(type, Lazy.class, Supplier.class, Iterator.class, Stream.class, Publisher.class) != null) {
+            return null;
+        }
+        return (Class<?>) type;
+    }
+
+    /**
+     * Wraps the message consumer of the listener so it can take the objects published in the
+     * same JVM without the encoding and the decoding. The objects of other types are refused,
+     * so they are encoded and arrive to the message consumer.
+     *
+     * @param messageConsumer the message consumer of the payloads
+     * @param bodyClass the class of the message body
+     * @param bodyIndex the index of the message body parameter
+     * @param invoker the prepared invoker of the listener method
+     * @param completionTracker the tracker of the listener calls
+     * @param outputPublisher the publisher of the return values, null if the listener has no output
+     * @param parameterBinders the compiled binders of the parameters
+     * @param contextRequired true if a binder needs the message context
+     * @param subscribedTopic topic definition
+     * @param topicFormat topic format description
+     * @return the message consumer which takes the published objects too
+     * @see LoopbackMessageClient
+     */
+    private LocalMessageConsumer localConsumer(BiConsumer<String, byte[]> messageConsumer,
+                                               Class<?> bodyClass,
+                                               int bodyIndex,
+                                               ListenerInvoker invoker,
+                                               CompletionTracker completionTracker,
+                                               OutputPublisher outputPublisher,
+                                               ParameterBinder[] parameterBinders,
+                                               boolean contextRequired,
+                                               String subscribedTopic,
+                                               TopicFormat topicFormat) {
+        return new LocalMessageConsumer() {
+
+            @Override
+            public boolean acceptObject(String topic, Object message) {
+                if (!bodyClass.isInstance(message)) {
+                    return false;
+                }
+                ParameterBinder[] localBinders = parameterBinders.clone();
+                localBinders[bodyIndex] = (messageContext, content) -> message;
+                subscriptionLambda(invoker, completionTracker, null, outputPublisher, localBinders,
+                    null, contextRequired, subscribedTopic, topic, topicFormat, null);
+                return true;
+            }
+
+            @Override
+            public void accept(String topic, byte[] message) {
+                messageConsumer.accept(topic, message);
+            }
+        };
+    }
+
+    /**
+     * Compiles the topic template of the listener output and checks that its variables are
+     * defined in the topic of the listener.
+     *
+     * @param output the output definition of the listener
+     * @param subscribedTopic the topic definition of the listener
+     * @param topicFormat the topic format of the client
+     * @return the compiled topic template
+     * @throws IllegalArgumentException if the template is invalid or has an unknown variable
+     */
+    private TopicTemplate compileOutputTemplate(OutputDefinition output, String subscribedTopic, TopicFormat topicFormat) {
+        TopicTemplate topicTemplate = TopicTemplate.compile(output.getTopic());
+        Set<String> topicVariables = TopicParser.parseVariables(subscribedTopic, subscribedTopic, topicFormat).keySet();
+        for (String variable : topicTemplate.getVariableNames()) {
+            Assert.isTrue(topicVariables.contains(variable),
+                "Variable " + variable + " of @SendTo topic " + output.getTopic() + " is not defined in topic " + subscribedTopic);
+        }
+        return topicTemplate;
+    }
+
+    /**
+     * Creates the publisher of the listener output with the encoder of the return type. The
+     * value of a {@link CompletionStage} is encoded, and a list of values if the output is batched.
+     *
+     * @param client the message client of the listener
+     * @param output the output definition of the listener
+     * @param topicTemplate the compiled topic template
+     * @param codecName the name of the codec, empty for the default codec
+     * @return the publisher of the listener output
+     * @throws IllegalArgumentException if the listener has no return value or the codec cannot encode it
+     */
+    private OutputPublisher createOutputPublisher(MessageClient client, OutputDefinition output, TopicTemplate topicTemplate, String codecName) {
+        Type returnType = output.getReturnType();
+        Assert.isTrue(returnType != void.class && returnType != Void.class, "@SendTo listener must return a value");
+        Type valueType = getWrappedType(returnType, CompletionStage.class, CompletableFuture.class);
+        if (valueType == null) {
+            valueType = returnType;
+        }
+        if (output.getBatchSize() == 1) {
+            return new OutputPublisher(client, topicTemplate, messageCodecs.encoder(codecName, valueType),
+                output.getQos(), 1, 0, null);
+        }
+        Class<?> elementClass = valueType instanceof Class ? ClassUtils.resolvePrimitiveIfNecessary((Class<?>) valueType) : null;
+        Type batchType = ResolvableType.forClassWithGenerics(List.class,
+            elementClass != null ? ResolvableType.forClass(elementClass) : ResolvableType.forType(valueType)).getType();
+        OutputPublisher outputPublisher = new OutputPublisher(client, topicTemplate, messageCodecs.encoder(codecName, batchType),
+            output.getQos(), output.getBatchSize(), output.getLingerMillis(), outputTimer());
+        synchronized (this) {
+            batchingPublishers.add(outputPublisher);
+        }
+        return outputPublisher;
+    }
+
+    /**
+     * Returns the timer of the output batches. It's created at the registration of the
+     * first listener with batched output.
+     *
+     * @return the timer of the output batches
+     */
+    private synchronized HashedWheelTimer outputTimer() {
+        if (outputTimer == null) {
+            outputTimer = new HashedWheelTimer("palm-output-batch");
+        }
+        return outputTimer;
+    }
+
+    /**
+     * Publishes the incomplete output batches and stops the timer of the batches.
+     */
+    @Override
+    public synchronized void destroy() {
+        batchingPublishers.forEach(OutputPublisher::close);
+        batchingPublishers.clear();
+        if (outputTimer != null) {
+            outputTimer.stop();
+            outputTimer = null;
+        }
+    }
+
+    /**
+     * Subscribes the message consumer through the subscription registrar if it's set,
+     * otherwise directly.
+     *
+     * @param client the message client
+     * @param consumingProperties the consuming properties
+     * @param messageConsumer the message consumer function
+     */
+    private void subscribe(MessageClient client, ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer) {
+        if (subscriptionRegistrar != null) {
+            subscriptionRegistrar.register(client, consumingProperties, messageConsumer);
+        } else {
+            client.subscribe(consumingProperties, messageConsumer);
+        }
+    }
+
+    /**
+     * Returns the index of the message body parameter with {@link Publisher} type. Such listeners
+     * are called only once at the registration with a publisher of the message bodies.
+     *
+     * @param parameterDescriptors the parameter descriptions of the listener
+     * @return the index of the publisher parameter or -1 if there is no such parameter
+     */
+    private int findFlowParameter(ParameterDescriptor[] parameterDescriptors) {
+        for (int index = 0; index < parameterDescriptors.length; index++) {
+            ParameterDescriptor parameterDescriptor = parameterDescriptors[index];
+            if (parameterDescriptor != null && parameterDescriptor.isBody()
+                && getWrappedType(parameterDescriptor.getType(), Publisher.class) != null) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates the converter of the arrived messages to the elements of a flow listener.
+     * The elements are the {@link InboundMessage messages} themselves, or the message bodies
+     * decoded like a message body parameter. The messages rejected by the filter are converted
+     * to null, so they're dropped by the publisher.
+     *
+     * @param elementType the type of the published elements
+     * @param codecName the name of the message body codec, empty for the detection by content-type marker
+     * @param messageFilter the compiled filter of the listener or null
+     * @param subscribedTopic the topic definition of the listener
+     * @param topicFormat the topic format description
+     * @return the converter of the arrived messages
+     */
+    private BiFunction<String, byte[], Object> flowConverter(Type elementType,
+                                                             String codecName,
+                                                             MessageFilter messageFilter,
+                                                             String subscribedTopic,
+                                                             TopicFormat topicFormat) {
+        BiFunction<String, byte[], Object> converter;
+        if (elementType == InboundMessage.class) {
+            converter = InboundMessage::new;
+        } else {
+            ParameterBinder elementBinder = compileBodyBinder(bodyDescriptor(elementType), codecName);
+            converter = (topic, content) -> elementBinder.bind(null, content);
+        }
+        if (messageFilter == null) {
+            return converter;
+        }
+        return (topic, content) -> {
+            MessageContext messageContext = messageFilter.isTopicVariablesRequired() ? new MessageContext(topic, subscribedTopic, topicFormat) : null;
+            return messageFilter.test(messageContext, content) ? converter.apply(topic, content) : null;
+        };
+    }
+
+    /**
+     * Compiles the filter of a listener. The payload is parsed by the token decoder of the codec.
+     *
+     * @param filter the filter expression, empty for no filter
+     * @param codecName the name of the message body codec, empty for the detection by content-type marker
+     * @return the compiled filter or null if no filter is defined
+     * @throws IllegalArgumentException if the filter is invalid, or it refers to the payload of a codec without token stream
+     */
+    private MessageFilter compileFilter(String filter, String codecName) {
+        if ("".equals(filter.trim())) {
+            return null;
+        }
+        return MessageFilter.compile(filter, () -> messageCodecs.tokenDecoder(codecName));
     }
 
     /**
@@ -190,7 +614,7 @@ public class ListenerCallbackPostProcessor {
      * @param clazz the class of the method parameter
      * @return true if the class is one of the supported simple type, otherwise false
      */
-    private boolean hasSupportedSimpleType(Class clazz) {
+    private boolean hasSupportedSimpleType(Class<?> clazz) {
         return clazz == String.class ||
             clazz == byte[].class ||
             clazz == Integer.class ||
@@ -204,139 +628,285 @@ public class ListenerCallbackPostProcessor {
     }
 
     /**
-     * This method will be used as a lambda function calling at message arrive.
-     * It will prepare all the parameters and call the given method with them.
+     * Compiles the binder of a parameter from its description. The binder contains
+     * the already selected conversion, so the binding of a message doesn't need
+     * any role or type check.
      *
-     * @param messagingController  the messaging controller bean
-     * @param method               the method to call
-     * @param parameterDescriptors list of parameter descriptions
-     * @param subscribedTopic      topic definition
-     * @param topic                incoming topic
-     * @param topicFormat          topic format description (coming from message client)
-     * @param content              message body as raw format
+     * @param parameterDescriptor the parameter description coming from the pre analysis
+     * @param codecName the name of the message body codec, empty for the detection by content-type marker
+     * @return the binder of the parameter
      */
-    private void subscriptionLambda(Object messagingController,
-                                    Method method,
-                                    List<ParameterDescriptor> parameterDescriptors,
-                                    String subscribedTopic,
-                                    String topic,
-                                    TopicFormat topicFormat,
-                                    byte[] content) {
-        try {
-            Object[] parameters = new Object[parameterDescriptors.size()];
-            Map<String, String> parsedVariables = TopicParser.parseVariables(
-                topic,
-                subscribedTopic,
-                topicFormat);
-            int parameterCount = 0;
-            MessageContext messageContext = new MessageContext(topic, subscribedTopic, parsedVariables);
-            for (ParameterDescriptor parameterDescriptor : parameterDescriptors) {
-                if (parameterDescriptor.isEmpty()) {
-                    parameters[parameterCount] = null;
-                } else if (parameterDescriptor.isContext()) {
-                    parameters[parameterCount] = messageContext;
-                } else if (parameterDescriptor.isBody()) {
-                    parameters[parameterCount] = parseBody(content, parameterDescriptor);
-                } else { // topic parameter
-                    parameters[parameterCount] = parseTopicParameter(parsedVariables, parameterDescriptor);
-                }
+    private ParameterBinder compileParameterBinder(ParameterDescriptor parameterDescriptor, String codecName) {
+        if (parameterDescriptor == null || parameterDescriptor.isEmpty()) {
+            return ParameterBinder.EMPTY;
+        }
+        if (parameterDescriptor.isContext()) {
+            return ParameterBinder.CONTEXT;
+        }
+        if (parameterDescriptor.isBody()) {
+            return compileBodyBinder(parameterDescriptor, codecName);
+        }
+        return compileTopicParameterBinder(parameterDescriptor);
+    }
 
-                parameterCount++;
-            }
-            method.invoke(messagingController, parameters);
-        } catch (IllegalAccessException | InvocationTargetException e) {
-            log.error("Cannot call listener method for topic {}", subscribedTopic, e);
+    /**
+     * Returns true if the binder of the parameter needs the message context, that's
+     * the message context and the topic parameters. The context isn't created for
+     * the messages of listeners without such parameters.
+     *
+     * @param parameterDescriptor the parameter description coming from the pre analysis
+     * @return true if the parameter needs the message context
+     */
+    private boolean requiresContext(ParameterDescriptor parameterDescriptor) {
+        return parameterDescriptor != null && !parameterDescriptor.isEmpty() && !parameterDescriptor.isBody();
+    }
+
+    /**
+     * Compiles the binder of the message body.
+     * If the message body parameter has one of the supported simple type than it will
+     * be converted with the corresponding method. If the parameter is a {@link Lazy} or
+     * {@link Supplier}, the conversion of its type argument is deferred to the first access.
+     * If the parameter is an {@link Iterator} or a {@link Stream}, the array payload is decoded
+     * element by element during the iteration.
+     * Otherwise the decoder of the message codec deserializes the raw format to the requested type.
+     *
+     * @param parameterDescriptor the description of the message body type
+     * @param codecName the name of the message body codec, empty for the detection by content-type marker
+     * @return the binder of the message body
+     */
+    private ParameterBinder compileBodyBinder(ParameterDescriptor parameterDescriptor, String codecName) {
+        Class<?> clazz = parameterDescriptor.getClazz();
+        if (clazz == byte[].class) {
+            return (messageContext, content) -> content;
+        }
+        if (clazz == String.class) {
+            return (messageContext, content) -> new String(content);
+        }
+        if (hasSupportedSimpleType(clazz)) {
+            Function<String, Object> converter = simpleTypeConverter(clazz);
+            return (messageContext, content) -> converter.apply(new String(content));
+        }
+        Type lazyValueType = getWrappedType(parameterDescriptor.getType(), Lazy.class, Supplier.class);
+        if (lazyValueType != null) {
+            ParameterBinder valueBinder = compileBodyBinder(bodyDescriptor(lazyValueType), codecName);
+            return (messageContext, content) -> new Lazy<>(content, raw -> valueBinder.bind(messageContext, raw));
+        }
+        Type iteratorElementType = getWrappedType(parameterDescriptor.getType(), Iterator.class);
+        if (iteratorElementType != null) {
+            MessageDecoder elementDecoder = messageCodecs.elementDecoder(codecName, iteratorElementType);
+            return (messageContext, content) -> parseBody(content, elementDecoder);
         }
+        Type streamElementType = getWrappedType(parameterDescriptor.getType(), Stream.class);
+        if (streamElementType != null) {
+            MessageDecoder elementDecoder = messageCodecs.elementDecoder(codecName, streamElementType);
+            return (messageContext, content) -> toStream((Iterator<?>) parseBody(content, elementDecoder));
+        }
+        MessageDecoder messageDecoder = messageCodecs.decoder(codecName, parameterDescriptor.getType());
+        return (messageContext, content) -> parseBody(content, messageDecoder);
+    }
+
+    /**
+     * Creates the description of a message body with the given type, like the parameter analysis.
+     *
+     * @param type the type of the message body
+     * @return the description of the message body
+     */
+    private ParameterDescriptor bodyDescriptor(Type type) {
+        return type instanceof Class && hasSupportedSimpleType((Class<?>) type)
+            ? new ParameterDescriptor(ParameterDescriptor.PARAMETER_NAME_BODY, (Class<?>) type)
+            : new ParameterDescriptor(ParameterDescriptor.PARAMETER_NAME_BODY, type);
+    }
+
+    /**
+     * Returns the type argument of a wrapper message body type, like {@link Lazy} or {@link Stream}.
+     *
+     * @param type the type of the message body parameter
+     * @param wrapperTypes the accepted wrapper types with one type parameter
+     * @return the type argument, Object for raw types, or null if the type is not one of the wrapper types
+     */
+    private Type getWrappedType(Type type, Class<?>... wrapperTypes) {
+        Type rawType = type instanceof ParameterizedType ? ((ParameterizedType) type).getRawType() : type;
+        if (!Arrays.asList(wrapperTypes).contains(rawType)) {
+            return null;
+        }
+        return type instanceof ParameterizedType ? ((ParameterizedType) type).getActualTypeArguments()[0] : Object.class;
     }
 
     /**
-     * The method provides the converted value of a topic parameter.
+     * Wraps the iterator of the array elements to a sequential stream. Closing the stream
+     * closes the iterator if it's closeable.
+     *
+     * @param iterator the iterator of the array elements, it may be null if the payload cannot be read
+     * @return the stream of the array elements, or null
+     */
+    private Stream<?> toStream(Iterator<?> iterator) {
+        if (iterator == null) {
+            return null;
+        }
+        Stream<?> stream = StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+        if (iterator instanceof Closeable) {
+            stream = stream.onClose(() -> {
+                try {
+                    ((Closeable) iterator).close();
+                } catch (IOException e) {
+                    log.warn("Cannot close message body iterator", e);
+                }
+            });
+        }
+        return stream;
+    }
+
+    /**
+     * Compiles the binder of a topic parameter.
      * Topic parameter annotation refers to topic variables defined in the topic definition
      * (eg. /basetopic/subtopic/{topicvariable}).
-     * The topicVariables contains all the parsed variables from the topic definition.
-     * The method will return a value if the parameter has a supported simple type and
-     * the requested parameter ID is present in the topicVariables map.
+     * The binder will return a value if the parameter has a supported simple type and
+     * the requested parameter ID is present in the parsed variables of the message context.
      * Otherwise it returns null.
      *
-     * @param topicVariables      parsed topic variable IDs and values
      * @param parameterDescriptor the description of the topic parameter type
-     * @return the converted topic parameter
+     * @return the binder of the topic parameter
      */
-    private Object parseTopicParameter(Map<String, String> topicVariables, ParameterDescriptor parameterDescriptor) {
-        Object obj = null;
-        String parameterValue = topicVariables.get(parameterDescriptor.getName());
-        if (hasSupportedSimpleType(parameterDescriptor.getClazz())) {
-            obj = parseSupportedSimpleTypes(parameterDescriptor, parameterValue.getBytes());
+    private ParameterBinder compileTopicParameterBinder(ParameterDescriptor parameterDescriptor) {
+        String name = parameterDescriptor.getName();
+        Class<?> clazz = parameterDescriptor.getClazz();
+        if (!hasSupportedSimpleType(clazz)) {
+            return ParameterBinder.EMPTY;
         }
-        return obj;
+        if (clazz == byte[].class) {
+            return (messageContext, content) -> {
+                String value = messageContext.getParameterMap().get(name);
+                return value == null ? null : value.getBytes();
+            };
+        }
+        Function<String, Object> converter = simpleTypeConverter(clazz);
+        return (messageContext, content) -> converter.apply(messageContext.getParameterMap().get(name));
     }
 
     /**
-     * The method provides the converted value of the message body as raw format.
-     * If the message body parameter has one of the supported simple type than it will
-     * be converted with the corresponding method. Otherwise the object mapper tries to
-     * deserialize the raw format to the requested type.
+     * This method will be used as a lambda function calling at message arrive.
+     * It will bind all the parameters with the compiled binders and call the listener with them.
+     * The message context is created only if a binder or the filter needs it, and the topic variables
+     * are parsed only if they are requested from the context. The messages rejected by the filter
+     * are dropped before the binding.
+     * The dispatch thread isn't blocked by the listeners returning a
+     * {@link java.util.concurrent.CompletionStage CompletionStage}, their completion is tracked by
+     * the completion tracker, which limits the calls in flight too.
+     * The payload of a {@link RequestEnvelope request} is unwrapped before the filter and the
+     * binding, and the return value of the listener is published to the reply topic of the request.
+     * The return value is published to the {@link SendTo @SendTo} topic too, if the listener has one.
      *
-     * @param content             message content as raw format
-     * @param parameterDescriptor the description of the message body type
-     * @return the converted message body
+     * @param invoker              the prepared invoker of the listener method
+     * @param completionTracker    the tracker of the listener calls
+     * @param replyRouter          the publisher of the replies, null if the listener cannot reply
+     * @param outputPublisher      the publisher of the return values, null if the listener has no output
+     * @param parameterBinders     the compiled binders of the parameters
+     * @param messageFilter        the compiled filter of the listener or null
+     * @param contextRequired      true if a binder or the filter needs the message context
+     * @param subscribedTopic      topic definition
+     * @param topic                incoming topic
+     * @param topicFormat          topic format description (coming from message client)
+     * @param content              message body as raw format, null if the body binder holds a published object
      */
-    private Object parseBody(byte[] content, ParameterDescriptor parameterDescriptor) {
-        Object obj = null;
-        if (hasSupportedSimpleType(parameterDescriptor.getClazz())) {
-            obj = parseSupportedSimpleTypes(parameterDescriptor, content);
-        } else {
+    private void subscriptionLambda(ListenerInvoker invoker,
+                                    CompletionTracker completionTracker,
+                                    ReplyRouter replyRouter,
+                                    OutputPublisher outputPublisher,
+                                    ParameterBinder[] parameterBinders,
+                                    MessageFilter messageFilter,
+                                    boolean contextRequired,
+                                    String subscribedTopic,
+                                    String topic,
+                                    TopicFormat topicFormat,
+                                    byte[] content) {
+        RequestEnvelope requestEnvelope = replyRouter != null ? RequestEnvelope.unwrap(content) : null;
+        if (requestEnvelope != null) {
+            content = requestEnvelope.getPayload();
+        }
+        try {
+            MessageContext messageContext = contextRequired ? new MessageContext(topic, subscribedTopic, topicFormat) : null;
+            if (messageFilter != null && !messageFilter.test(messageContext, content)) {
+                log.trace("Message of topic {} is rejected by filter {}", topic, messageFilter);
+                return;
+            }
+            Object[] parameters = new Object[parameterBinders.length];
+            for (int index = 0; index < parameterBinders.length; index++) {
+                parameters[index] = parameterBinders[index].bind(messageContext, content);
+            }
+            if (!completionTracker.acquire()) {
+                log.warn("Interrupted while waiting for a listener call in flight, message of topic {} is dropped", topic);
+                return;
+            }
+            Object result;
             try {
-                JavaType javaType = objectMapper.getTypeFactory().constructType(parameterDescriptor.getType());
-                obj = objectMapper.readValue(content, javaType);
-            } catch (IOException e) {
-                log.error("Cannot read message", e);
+                result = invoker.invoke(parameters);
+            } catch (InvocationTargetException e) {
+                completionTracker.failed(topic, content, e.getCause());
+                throw e;
+            }
+            completionTracker.returned(topic, content, result);
+            if (requestEnvelope != null) {
+                replyRouter.reply(requestEnvelope.getReplyTopic(), result);
             }
+            if (outputPublisher != null) {
+                outputPublisher.publish(messageContext, result);
+            }
+        } catch (InvocationTargetException e) {
+            log.error("Cannot call listener method for topic {}", subscribedTopic, e);
+        }
+    }
+
+    /**
+     * The method provides the deserialized value of the message body as raw format.
+     * The decoder was prepared for the type of the message body parameter at the registration.
+     *
+     * @param content        message content as raw format
+     * @param messageDecoder the decoder of the message body type
+     * @return the converted message body or null if it cannot be deserialized
+     */
+    private Object parseBody(byte[] content, MessageDecoder messageDecoder) {
+        Object obj = null;
+        try {
+            obj = messageDecoder.decode(content);
+        } catch (IOException e) {
+            log.error("Cannot read message", e);
         }
         return obj;
     }
 
     /**
-     * This method provides a converting function from byte array to a defined
-     * data type. The destination type is coming in the parameter descriptor.
-     * It won't be any conversion if the requested type is byte array, any other
-     * cases the payload will be converted first to string.
+     * This method provides a converting function from string to a defined numeric type.
+     * The payload and the topic variables will be converted first to string.
      * IMPORTANT: 1 as byte won't be parsed from the byte array {1} but from {49}
      * Steps:
      * byte array {49} -> string "1"
      * string "1" -> byte 1
      * <p>
-     * It's the same for all numeric types.
+     * The primitive types get their default value if the string cannot be converted,
+     * the wrapper types get null.
      *
-     * @param parameterDescriptor the parameter description coming from the pre analysis
-     * @param content             the message payload
-     * @return the converted value
+     * @param clazz the requested type, one of the supported simple types except byte array
+     * @return the converting function
      */
-    private Object parseSupportedSimpleTypes(ParameterDescriptor parameterDescriptor, byte[] content) {
-        String stringContent = new String(content);
-        Object obj = null;
-        if (parameterDescriptor.getClazz() == String.class) {
-            obj = stringContent;
-        } else if (parameterDescriptor.getClazz() == byte[].class) {
-            obj = content;
-        } else if (parameterDescriptor.getClazz() == Integer.class) {
-            obj = parseInteger(stringContent, null);
-        } else if (parameterDescriptor.getClazz() == int.class) {
-            obj = parseInteger(stringContent, 0);
-        } else if (parameterDescriptor.getClazz() == Long.class) {
-            obj = parseLong(stringContent, null);
-        } else if (parameterDescriptor.getClazz() == long.class) {
-            obj = parseLong(stringContent, 0L);
-        } else if (parameterDescriptor.getClazz() == Byte.class) {
-            obj = parseByte(stringContent, null);
-        } else if (parameterDescriptor.getClazz() == byte.class) {
-            obj = parseByte(stringContent, (byte) 0);
-        } else if (parameterDescriptor.getClazz() == Short.class) {
-            obj = parseShort(stringContent, null);
-        } else if (parameterDescriptor.getClazz() == short.class) {
-            obj = parseShort(stringContent, (short) 0);
+    private Function<String, Object> simpleTypeConverter(Class<?> clazz) {
+        if (clazz == Integer.class) {
+            return value -> parseInteger(value, null);
+        } else if (clazz == int.class) {
+            return value -> parseInteger(value, 0);
+        } else if (clazz == Long.class) {
+            return value -> parseLong(value, null);
+        } else if (clazz == long.class) {
+            return value -> parseLong(value, 0L);
+        } else if (clazz == Byte.class) {
+            return value -> parseByte(value, null);
+        } else if (clazz == byte.class) {
+            return value -> parseByte(value, (byte) 0);
+        } else if (clazz == Short.class) {
+            return value -> parseShort(value, null);
+        } else if (clazz == short.class) {
+            return value -> parseShort(value, (short) 0);
         }
-        return obj;
+        return value -> value;
     }
 
     /**
@@ -0,0 +1,462 @@
+package com.celadonsea.palm.scanner;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.ClassUtils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+/**
+ * Compiles {@link com.celadonsea.palm.annotation.Listener @Listener} methods to direct calls
+ * at runtime with the {@link LambdaMetafactory}.
+ * <p>
+ * The direct method handle of the listener is turned into an implementation of a functional
+ * interface of its parameter count, which takes the messaging controller as its first argument.
+ * The arguments are spread from the array by a small {@link GeneratedInvoker} lambda of the
+ * parameter count, so the listener is called by a plain interface call which the JIT can
+ * inline, without the access check, the argument array copy and the method handle chain.
+ * <p>
+ * The spun classes belong to the package and the class loader of this class, so only the
+ * public instance methods of public classes with at most {@link #MAX_PARAMETER_COUNT}
+ * parameters are compiled, whose types are visible from the class loader of the framework.
+ * The other methods are called through a method handle by the {@link ListenerInvoker}.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see ListenerInvoker
+ */
+@Slf4j
+final class ListenerCalls {
+
+    /**
+     * The maximal number of parameters of a compiled listener method
+     */
+    static final int MAX_PARAMETER_COUNT = 6;
+
+    /**
+     * The functional interfaces of the listener methods with return value by parameter count
+     */
+    private static final Class<?>[] CALL_TYPES = {Call0.class, Call1.class, Call2.class, Call3.class, Call4.class, Call5.class, Call6.class};
+
+    /**
+     * The functional interfaces of the void listener methods by parameter count
+     */
+    private static final Class<?>[] RUN_TYPES = {Run0.class, Run1.class, Run2.class, Run3.class, Run4.class, Run5.class, Run6.class};
+
+    /**
+     * Utility class, it's not instantiated.
+     */
+    private ListenerCalls() {
+    }
+
+    /**
+     * Compiles the listener method to a direct call.
+     *
+     * @param method the listener method
+     * @return the invoker of the method, or null if the method cannot be compiled
+     */
+    static GeneratedInvoker compile(Method method) {
+        if (!isCompilable(method)) {
+            return null;
+        }
+        boolean returning = method.getReturnType() != void.class;
+        int parameterCount = method.getParameterCount();
+        Class<?> functionalType = returning ? CALL_TYPES[parameterCount] : RUN_TYPES[parameterCount];
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle implementation = lookup.unreflect(method);
+            MethodType erasedType = returning
+                ? MethodType.genericMethodType(parameterCount + 1)
+                : MethodType.genericMethodType(parameterCount + 1).changeReturnType(void.class);
+            MethodType instantiatedType = implementation.type().wrap();
+            if (!returning) {
+                instantiatedType = instantiatedType.changeReturnType(void.class);
+            }
+            CallSite callSite = LambdaMetafactory.metafactory(lookup, "call", MethodType.methodType(functionalType),
+                erasedType, implementation, instantiatedType);
+            Object call = callSite.getTarget().invoke();
+            return returning ? spread(parameterCount, call) : spreadVoid(parameterCount, call);
+        } catch (LambdaConversionException | IllegalAccessException e) {
+            log.debug("Listener method {} cannot be compiled, it's called through a method handle", method, e);
+            return null;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot compile listener method " + method, e);
+        }
+    }
+
+    /**
+     * Returns true if the spun class can access and resolve the method.
+     *
+     * @param method the listener method
+     * @return true if the method can be compiled
+     */
+    private static boolean isCompilable(Method method) {
+        if (method.getParameterCount() > MAX_PARAMETER_COUNT
+            || Modifier.isStatic(method.getModifiers())
+            || !Modifier.isPublic(method.getModifiers())) {
+            return false;
+        }
+        for (Class<?> type = method.getDeclaringClass(); type != null; type = type.getEnclosingClass()) {
+            if (!Modifier.isPublic(type.getModifiers())) {
+                return false;
+            }
+        }
+        return isVisible(method.getDeclaringClass())
+            && isVisible(method.getReturnType())
+            && Arrays.stream(method.getParameterTypes()).allMatch(ListenerCalls::isVisible);
+    }
+
+    /**
+     * Returns true if the type can be resolved from the class loader of the framework.
+     *
+     * @param type the type of the listener method
+     * @return true if the type is primitive or visible
+     */
+    private static boolean isVisible(Class<?> type) {
+        return type.isPrimitive() || ClassUtils.isVisible(type, ListenerCalls.class.getClassLoader());
+    }
+
+    /**
+     * Returns the invoker spreading the argument array to a listener call with return value.
+     *
+     * @param parameterCount the number of the parameters
+     * @param call the implementation of the functional interface of the parameter count
+     * @return the invoker of the call
+     */
+    private static GeneratedInvoker spread(int parameterCount, Object call) {
+        switch (parameterCount) {
+            case 0:
+                Call0 call0 = (Call0) call;
+                return (controller, parameters) -> call0.call(controller);
+            case 1:
+                Call1 call1 = (Call1) call;
+                return (controller, parameters) -> call1.call(controller, parameters[0]);
+            case 2:
+                Call2 call2 = (Call2) call;
+                return (controller, parameters) -> call2.call(controller, parameters[0], parameters[1]);
+            case 3:
+                Call3 call3 = (Call3) call;
+                return (controller, parameters) -> call3.call(controller, parameters[0], parameters[1], parameters[2]);
+            case 4:
+                Call4 call4 = (Call4) call;
+                return (controller, parameters) -> call4.call(controller, parameters[0], parameters[1], parameters[2], parameters[3]);
+            case 5:
+                Call5 call5 = (Call5) call;
+                return (controller, parameters) -> call5.call(controller, parameters[0], parameters[1], parameters[2], parameters[3], parameters[4]);
+            case 6:
+                Call6 call6 = (Call6) call;
+                return (controller, parameters) -> call6.call(controller, parameters[0], parameters[1], parameters[2], parameters[3], parameters[4], parameters[5]);
+            default:
+                throw new IllegalArgumentException("Too many listener parameters: " + parameterCount);
+        }
+    }
+
+    /**
+     * Returns the invoker spreading the argument array to a void listener call.
+     *
+     * @param parameterCount the number of the parameters
+     * @param call the implementation of the functional interface of the parameter count
+     * @return the invoker of the call
+     */
+    private static GeneratedInvoker spreadVoid(int parameterCount, Object call) {
+        switch (parameterCount) {
+            case 0:
+                Run0 run0 = (Run0) call;
+                return (controller, parameters) -> {
+                    run0.call(controller);
+                    return null;
+                };
+            case 1:
+                Run1 run1 = (Run1) call;
+                return (controller, parameters) -> {
+                    run1.call(controller, parameters[0]);
+                    return null;
+                };
+            case 2:
+                Run2 run2 = (Run2) call;
+                return (controller, parameters) -> {
+                    run2.call(controller, parameters[0], parameters[1]);
+                    return null;
+                };
+            case 3:
+                Run3 run3 = (Run3) call;
+                return (controller, parameters) -> {
+                    run3.call(controller, parameters[0], parameters[1], parameters[2]);
+                    return null;
+                };
+            case 4:
+                Run4 run4 = (Run4) call;
+                return (controller, parameters) -> {
+                    run4.call(controller, parameters[0], parameters[1], parameters[2], parameters[3]);
+                    return null;
+                };
+            case 5:
+                Run5 run5 = (Run5) call;
+                return (controller, parameters) -> {
+                    run5.call(controller, parameters[0], parameters[1], parameters[2], parameters[3], parameters[4]);
+                    return null;
+                };
+            case 6:
+                Run6 run6 = (Run6) call;
+                return (controller, parameters) -> {
+                    run6.call(controller, parameters[0], parameters[1], parameters[2], parameters[3], parameters[4], parameters[5]);
+                    return null;
+                };
+            default:
+                throw new IllegalArgumentException("Too many listener parameters: " + parameterCount);
+        }
+    }
+
+    /**
+     * A listener call with 0 parameters and return value.
+     */
+    @FunctionalInterface
+    interface Call0 {
+
+        /**
+         * Calls the listener method.
+         *
+         * @param controller the messaging controller
+         * @return the return value of the method
+         */
+        Object call(Object controller);
+    }
+
+    /**
+     * A void listener call with 0 parameters.
+     */
+    @FunctionalInterface
+    interface Run0 {
+
+        /**
+         * Calls the listener method.
+         *
+         * @param controller the messaging controller
+         */
+        void call(Object controller);
+    }
+
+    /**
+     * A listener call with 1 parameter and return value.
+     */
+    @FunctionalInterface
+    interface Call1 {
+
+        /**
+         * Calls the listener method.
+         *
+         * @param controller the messaging controller
+         * @param p0 argument 0 of the method
+         * @return the return value of the method
+         */
+        Object call(Object controller, Object p0);
+    }
+
+    /**
+     * A void listener call with 1 parameter.
+     */
+    @FunctionalInterface
+    interface Run1 {
+
+        /**
+         * Calls the listener method.
+         *
+         * @param controller the messaging controller
+         * @param p0 argument 0 of the method
+         */
+        void call(Object controller, Object p0);
+    }
+
+    /**
+     * A listener call with 2 parameters and return value.
+     */
+    @FunctionalInterface
+    interface Call2 {
+
+        /**
+         * Calls the listener method.
+         *
+         * @param controller the messaging controller
+         * @param p0 argument 0 of the method
+         * @param p1 argument 1 of the method
+         * @return the return value of the method
+         */
+        Object call(Object controller, Object p0, Object p1);
+    }
+
+    /**
+     * A void listener call with 2 parameters.
+     */
+    @FunctionalInterface
+    interface Run2 {
+
+        /**
+         * Calls the listener method.
+         *
+         * @param controller the messaging controller
+         * @param p0 argument 0 of the method
+         * @param p1 argument 1 of the method
+         */
+        void call(Object controller, Object p0, Object p1);
+    }
+
+    /**
+     * A listener call with 3 parameters and return value.
+     */
+    @FunctionalInterface
+    interface Call3 {
+
+        /**
+         * Calls the listener method.
+         *
+         * @param controller the messaging controller
+         * @param p0 argument 0 of the method
+         * @param p1 argument 1 of the method
+         * @param p2 argument 2 of the method
+         * @return the return value of the method
+         */
+        Object call(Object controller, Object p0, Object p1, Object p2);
+    }
+
+    /**
+     * A void listener call with 3 parameters.
+     */
+    @FunctionalInterface
+    interface Run3 {
+
+        /**
+         * Calls the listener method.
+         *
+         * @param controller the messaging controller
+         * @param p0 argument 0 of the method
+         * @param p1 argument 1 of the method
+         * @param p2 argument 2 of the method
+         */
+        void call(Object controller, Object p0, Object p1, Object p2);
+    }
+
+    /**
+     * A listener call with 4 parameters and return value.
+     */
+    @FunctionalInterface
+    interface Call4 {
+
+        /**
+         * Calls the listener method.
+         *
+         * @param controller the messaging controller
+         * @param p0 argument 0 of the method
+         * @param p1 argument 1 of the method
+         * @param p2 argument 2 of the method
+         * @param p3 argument 3 of the method
+         * @return the return value of the method
+         */
+        Object call(Object controller, Object p0, Object p1, Object p2, Object p3);
+    }
+
+    /**
+     * A void listener call with 4 parameters.
+     */
+    @FunctionalInterface
+    interface Run4 {
+
+        /**
+         * Calls the listener method.
+         *
+         * @param controller the messaging controller
+         * @param p0 argument 0 of the method
+         * @param p1 argument 1 of the method
+         * @param p2 argument 2 of the method
+         * @param p3 argument 3 of the method
+         */
+        void call(Object controller, Object p0, Object p1, Object p2, Object p3);
+    }
+
+    /**
+     * A listener call with 5 parameters and return value.
+     */
+    @FunctionalInterface
+    interface Call5 {
+
+        /**
+         * Calls the listener method.
+         *
+         * @param controller the messaging controller
+         * @param p0 argument 0 of the method
+         * @param p1 argument 1 of the method
+         * @param p2 argument 2 of the method
+         * @param p3 argument 3 of the method
+         * @param p4 argument 4 of the method
+         * @return the return value of the method
+         */
+        Object call(Object controller, Object p0, Object p1, Object p2, Object p3, Object p4);
+    }
+
+    /**
+     * A void listener call with 5 parameters.
+     */
+    @FunctionalInterface
+    interface Run5 {
+
+        /**
+         * Calls the listener method.
+         *
+         * @param controller the messaging controller
+         * @param p0 argument 0 of the method
+         * @param p1 argument 1 of the method
+         * @param p2 argument 2 of the method
+         * @param p3 argument 3 of the method
+         * @param p4 argument 4 of the method
+         */
+        void call(Object controller, Object p0, Object p1, Object p2, Object p3, Object p4);
+    }
+
+    /**
+     * A listener call with 6 parameters and return value.
+     */
+    @FunctionalInterface
+    interface Call6 {
+
+        /**
+         * Calls the listener method.
+         *
+         * @param controller the messaging controller
+         * @param p0 argument 0 of the method
+         * @param p1 argument 1 of the method
+         * @param p2 argument 2 of the method
+         * @param p3 argument 3 of the method
+         * @param p4 argument 4 of the method
+         * @param p5 argument 5 of the method
+         * @return the return value of the method
+         */
+        Object call(Object controller, Object p0, Object p1, Object p2, Object p3, Object p4, Object p5);
+    }
+
+    /**
+     * A void listener call with 6 parameters.
+     */
+    @FunctionalInterface
+    interface Run6 {
+
+        /**
+         * Calls the listener method.
+         *
+         * @param controller the messaging controller
+         * @param p0 argument 0 of the method
+         * @param p1 argument 1 of the method
+         * @param p2 argument 2 of the method
+         * @param p3 argument 3 of the method
+         * @param p4 argument 4 of the method
+         * @param p5 argument 5 of the method
+         */
+        void call(Object controller, Object p0, Object p1, Object p2, Object p3, Object p4, Object p5);
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.celadonsea.palm.scanner;
+
+/**
+ * Callback of the completed {@link com.celadonsea.palm.annotation.Listener @Listener} calls.
+ * <p>
+ * A synchronous listener is completed when the method returns or throws an exception,
+ * a listener returning a {@link java.util.concurrent.CompletionStage CompletionStage} is
+ * completed when the stage completes. The callback is the extension point of the message
+ * acknowledgement and the completion metrics, it's called on the thread completing the
+ * listener, so it mustn't block.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see ListenerCallbackPostProcessor
+ */
+@FunctionalInterface
+public interface ListenerCompletionHandler {
+
+    /**
+     * Called when a listener call is completed.
+     *
+     * @param topic the topic of the message
+     * @param content the message payload
+     * @param result the result of the listener, null for void methods or on failure
+     * @param failure the exception of the listener, null on success
+     */
+    void onCompletion(String topic, byte[] content, Object result, Throwable failure);
+}
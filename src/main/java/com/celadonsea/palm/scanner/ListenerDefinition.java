@@ -0,0 +1,242 @@
+package com.celadonsea.palm.scanner;
+
+import com.celadonsea.palm.annotation.Listener;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+
+/**
+ * Describes a {@link Listener @Listener} method with the already analyzed values:
+ * the sub topic, the codec name, the filter, the limit of the calls in flight, the parameter
+ * descriptions, the output and the invoker.
+ * <p>
+ * The definitions are either generated at compile time, or created from the
+ * reflective scan of the messaging controller. The method itself is resolved
+ * only on demand in the first case.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see GeneratedListeners
+ * @see ListenerCallbackPostProcessor
+ */
+@Getter
+public final class ListenerDefinition {
+
+    /**
+     * The class declaring the listener method
+     */
+    private final Class<?> declaringClass;
+
+    /**
+     * The name of the listener method
+     */
+    private final String methodName;
+
+    /**
+     * The parameter types of the listener method
+     */
+    private final Class<?>[] parameterTypes;
+
+    /**
+     * The sub topic defined by the {@link Listener @Listener} annotation
+     */
+    private final String topic;
+
+    /**
+     * The codec name defined by the {@link Listener @Listener} annotation, empty if not defined
+     */
+    private final String codec;
+
+    /**
+     * The filter defined by the {@link Listener @Listener} annotation, empty if not defined
+     */
+    private final String filter;
+
+    /**
+     * The maximum number of the calls in flight defined by the {@link Listener @Listener} annotation, 0 for no limit
+     */
+    private final int maxInFlight;
+
+    /**
+     * The descriptions of the method parameters
+     */
+    private final ParameterDescriptor[] parameterDescriptors;
+
+    /**
+     * The output defined by the {@link com.celadonsea.palm.annotation.SendTo @SendTo} annotation, null if not defined
+     */
+    private final OutputDefinition output;
+
+    /**
+     * The generated direct invoker, null if the method is called through a method handle
+     */
+    private final GeneratedInvoker generatedInvoker;
+
+    /**
+     * The listener method, resolved on demand for the generated definitions
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile Method method;
+
+    /**
+     * Constructs the definition of a generated listener.
+     *
+     * @param declaringClass the class declaring the listener method
+     * @param methodName the name of the listener method
+     * @param parameterTypes the parameter types of the listener method
+     * @param topic the sub topic of the listener
+     * @param codec the codec name of the listener, empty if not defined
+     * @param filter the filter of the listener, empty if not defined
+     * @param maxInFlight the maximum number of the calls in flight, 0 for no limit
+     * @param parameterDescriptors the descriptions of the method parameters
+     * @param generatedInvoker the direct invoker of the method
+     * @throws IllegalArgumentException if any argument is null
+     */
+    public ListenerDefinition(Class<?> declaringClass,
+                              String methodName,
+                              Class<?>[] parameterTypes,
+                              String topic,
+                              String codec,
+                              String filter,
+                              int maxInFlight,
+                              ParameterDescriptor[] parameterDescriptors,
+                              GeneratedInvoker generatedInvoker) {
+        this(declaringClass, methodName, parameterTypes, topic, codec, filter, maxInFlight, parameterDescriptors, null, generatedInvoker);
+    }
+
+    /**
+     * Constructs the definition of a generated listener with output.
+     *
+     * @param declaringClass the class declaring the listener method
+     * @param methodName the name of the listener method
+     * @param parameterTypes the parameter types of the listener method
+     * @param topic the sub topic of the listener
+     * @param codec the codec name of the listener, empty if not defined
+     * @param filter the filter of the listener, empty if not defined
+     * @param maxInFlight the maximum number of the calls in flight, 0 for no limit
+     * @param parameterDescriptors the descriptions of the method parameters
+     * @param output the output of the listener, null if not defined
+     * @param generatedInvoker the direct invoker of the method
+     * @throws IllegalArgumentException if any argument except the output is null
+     */
+    public ListenerDefinition(Class<?> declaringClass,
+                              String methodName,
+                              Class<?>[] parameterTypes,
+                              String topic,
+                              String codec,
+                              String filter,
+                              int maxInFlight,
+                              ParameterDescriptor[] parameterDescriptors,
+                              OutputDefinition output,
+                              GeneratedInvoker generatedInvoker) {
+        this(declaringClass, methodName, parameterTypes, topic, codec, filter, maxInFlight, parameterDescriptors, output, generatedInvoker, null);
+        Assert.notNull(generatedInvoker, "Generated invoker must be set");
+    }
+
+    /**
+     * Constructs the definition.
+     *
+     * @param declaringClass the class declaring the listener method
+     * @param methodName the name of the listener method
+     * @param parameterTypes the parameter types of the listener method
+     * @param topic the sub topic of the listener
+     * @param codec the codec name of the listener, empty if not defined
+     * @param filter the filter of the listener, empty if not defined
+     * @param maxInFlight the maximum number of the calls in flight, 0 for no limit
+     * @param parameterDescriptors the descriptions of the method parameters
+     * @param output the output of the listener or null
+     * @param generatedInvoker the direct invoker of the method or null
+     * @param method the listener method or null
+     */
+    private ListenerDefinition(Class<?> declaringClass,
+                               String methodName,
+                               Class<?>[] parameterTypes,
+                               String topic,
+                               String codec,
+                               String filter,
+                               int maxInFlight,
+                               ParameterDescriptor[] parameterDescriptors,
+                               OutputDefinition output,
+                               GeneratedInvoker generatedInvoker,
+                               Method method) {
+        Assert.notNull(declaringClass, "Declaring class must be set");
+        Assert.notNull(methodName, "Method name must be set");
+        Assert.notNull(parameterTypes, "Parameter types must be set");
+        Assert.notNull(topic, "Topic must be set");
+        Assert.notNull(codec, "Codec must be set");
+        Assert.notNull(filter, "Filter must be set");
+        Assert.notNull(parameterDescriptors, "Parameter descriptors must be set");
+        this.declaringClass = declaringClass;
+        this.methodName = methodName;
+        this.parameterTypes = parameterTypes;
+        this.topic = topic;
+        this.codec = codec;
+        this.filter = filter;
+        this.maxInFlight = maxInFlight;
+        this.parameterDescriptors = parameterDescriptors;
+        this.output = output;
+        this.generatedInvoker = generatedInvoker;
+        this.method = method;
+    }
+
+    /**
+     * Creates the definition of a reflectively scanned listener method.
+     *
+     * @param method the listener method
+     * @param listener the {@link Listener @Listener} annotation of the method
+     * @param parameterDescriptors the descriptions of the method parameters
+     * @return the listener definition
+     * @throws IllegalArgumentException if the method or the annotation is null
+     */
+    public static ListenerDefinition of(Method method, Listener listener, ParameterDescriptor[] parameterDescriptors) {
+        Assert.notNull(method, "Listener method must be set");
+        Assert.notNull(listener, "Listener annotation must be set");
+        return new ListenerDefinition(method.getDeclaringClass(), method.getName(), method.getParameterTypes(),
+            listener.value(), listener.codec(), listener.filter(), listener.maxInFlight(), parameterDescriptors,
+            OutputDefinition.of(method), null, method);
+    }
+
+    /**
+     * Returns the listener method. It's resolved by its name and parameter types at the
+     * first call for the generated definitions.
+     *
+     * @return the listener method
+     * @throws IllegalStateException if the method doesn't exist
+     */
+    public Method getMethod() {
+        Method resolvedMethod = method;
+        if (resolvedMethod == null) {
+            resolvedMethod = ReflectionUtils.findMethod(declaringClass, methodName, parameterTypes);
+            if (resolvedMethod == null) {
+                throw new IllegalStateException("Listener method " + methodName + " not found in " + declaringClass.getName());
+            }
+            method = resolvedMethod;
+        }
+        return resolvedMethod;
+    }
+
+    /**
+     * Returns the {@link Listener @Listener} annotation of the method.
+     *
+     * @return the listener annotation
+     */
+    public Listener getListener() {
+        return getMethod().getAnnotation(Listener.class);
+    }
+
+    /**
+     * Creates the invoker of the listener method for the given messaging controller.
+     *
+     * @param messagingController the messaging controller
+     * @return the invoker of the method
+     */
+    public ListenerInvoker createInvoker(Object messagingController) {
+        if (generatedInvoker != null) {
+            return ListenerInvoker.of(messagingController, generatedInvoker, parameterTypes.length);
+        }
+        return ListenerInvoker.of(messagingController, method);
+    }
+}
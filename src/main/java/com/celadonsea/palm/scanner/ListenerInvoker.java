@@ -0,0 +1,143 @@
+package com.celadonsea.palm.scanner;
+
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Calls a {@link com.celadonsea.palm.annotation.Listener @Listener} method through an invoker
+ * prepared once at the registration of the listener.
+ * <p>
+ * The listener method is compiled to a direct call by the {@link ListenerCalls} if it's possible.
+ * Otherwise (eg. for non-public methods or more than {@link ListenerCalls#MAX_PARAMETER_COUNT}
+ * parameters) it's called through a method handle, which is bound to the messaging controller,
+ * spread to an argument array and adapted to the (Object[])Object signature. The handle saves
+ * only the access check and the argument array copy of the reflective call, the JIT can't
+ * inline the listener method through it.
+ * <p>
+ * The listeners generated at compile time are called through their {@link GeneratedInvoker}
+ * without any method handle.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see ListenerCallbackPostProcessor
+ */
+public final class ListenerInvoker {
+
+    /**
+     * The generic signature of the prepared handles
+     */
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    /**
+     * The bound and spread method handle with (Object[])Object signature, null for generated and compiled invokers
+     */
+    private final MethodHandle methodHandle;
+
+    /**
+     * The messaging controller of the generated or compiled invoker
+     */
+    private final Object target;
+
+    /**
+     * The generated or compiled direct invoker, null for method handles
+     */
+    private final GeneratedInvoker generatedInvoker;
+
+    /**
+     * Number of the parameters of the listener method
+     */
+    private final int parameterCount;
+
+    /**
+     * Constructs the invoker.
+     *
+     * @param methodHandle the prepared method handle or null
+     * @param target the messaging controller of the generated invoker
+     * @param generatedInvoker the generated invoker or null
+     * @param parameterCount number of the parameters of the listener method
+     */
+    private ListenerInvoker(MethodHandle methodHandle, Object target, GeneratedInvoker generatedInvoker, int parameterCount) {
+        this.methodHandle = methodHandle;
+        this.target = target;
+        this.generatedInvoker = generatedInvoker;
+        this.parameterCount = parameterCount;
+    }
+
+    /**
+     * Prepares the invoker of a listener method.
+     *
+     * @param target the messaging controller, it's ignored for static methods
+     * @param method the listener method
+     * @return the invoker of the method
+     * @throws IllegalArgumentException if the method is null or not accessible
+     */
+    public static ListenerInvoker of(Object target, Method method) {
+        Assert.notNull(method, "Listener method must be set");
+        GeneratedInvoker compiled = ListenerCalls.compile(method);
+        if (compiled != null) {
+            return new ListenerInvoker(null, target, compiled, method.getParameterCount());
+        }
+        try {
+            ReflectionUtils.makeAccessible(method);
+            MethodHandle methodHandle = MethodHandles.lookup().unreflect(method);
+            if (!Modifier.isStatic(method.getModifiers())) {
+                methodHandle = methodHandle.bindTo(target);
+            }
+            int parameterCount = method.getParameterCount();
+            methodHandle = methodHandle.asType(methodHandle.type().generic())
+                .asSpreader(Object[].class, parameterCount)
+                .asType(INVOKER_TYPE);
+            return new ListenerInvoker(methodHandle, null, null, parameterCount);
+        } catch (IllegalAccessException | SecurityException e) {
+            throw new IllegalArgumentException("Cannot access listener method " + method, e);
+        }
+    }
+
+    /**
+     * Prepares the invoker of a generated listener.
+     *
+     * @param target the messaging controller
+     * @param generatedInvoker the generated direct invoker
+     * @param parameterCount number of the parameters of the listener method
+     * @return the invoker of the method
+     * @throws IllegalArgumentException if the generated invoker is null
+     */
+    public static ListenerInvoker of(Object target, GeneratedInvoker generatedInvoker, int parameterCount) {
+        Assert.notNull(generatedInvoker, "Generated invoker must be set");
+        return new ListenerInvoker(null, target, generatedInvoker, parameterCount);
+    }
+
+    /**
+     * Calls the listener method with the given arguments.
+     *
+     * @param parameters the arguments of the method, the length must be equal to the number of parameters
+     * @return the return value of the method, null for void methods
+     * @throws InvocationTargetException if the method or the argument conversion throws an exception
+     */
+    public Object invoke(Object[] parameters) throws InvocationTargetException {
+        try {
+            if (generatedInvoker != null) {
+                return generatedInvoker.invoke(target, parameters);
+            }
+            return (Object) methodHandle.invokeExact(parameters);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * Returns the number of the parameters of the listener method.
+     *
+     * @return the number of parameters
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+}
@@ -4,7 +4,6 @@ import com.celadonsea.palm.annotation.Listener;
 import com.celadonsea.palm.annotation.MessagingController;
 import com.celadonsea.palm.client.MessageClient;
 import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.util.ReflectionUtils;
 
 import java.lang.reflect.Method;
@@ -37,19 +36,17 @@ public class ListenerMethodCallback implements ReflectionUtils.MethodCallback {
     private final ListenerCallbackPostProcessor listenerCallbackPostProcessor;
 
     /**
-     * Bean factory for {@link ListenerMethodCallback @ListenerMethodCallback} to
-     * access message {@link com.celadonsea.palm.client.MessageClient @MessageClient}
-     * from the spring context.
+     * The message {@link MessageClient client} of the controller, resolved by the
+     * {@link MessagingControllerPostProcessor @MessagingControllerPostProcessor}.
      */
-    private final ConfigurableListableBeanFactory configurableBeanFactory;
+    private final MessageClient client;
 
     /**
      * Filters the incoming methods with {@link Listener @Listener} annotation and
      * the containing class with {@link MessagingController @MessagingController} annotation.
      *
-     * The listener process will be applied for the filtered methods. The required
-     * {@link MessageClient @MessageClient} will be return from the spring context
-     * by the {@link ConfigurableListableBeanFactory @ConfigurableListableBeanFactory}.
+     * The listener process will be applied for the filtered methods with the
+     * {@link MessageClient @MessageClient} of the controller.
      *
      * @param method method from a {@link MessagingController @MessagingController} annotated bean
      */
@@ -59,7 +56,6 @@ public class ListenerMethodCallback implements ReflectionUtils.MethodCallback {
             return;
         }
         MessagingController controllerAnnotation = bean.getClass().getAnnotation(MessagingController.class);
-        MessageClient client = (MessageClient)configurableBeanFactory.getBean(controllerAnnotation.client());
         listenerCallbackPostProcessor.processListenerMethod(
             bean,
             client,
@@ -0,0 +1,56 @@
+package com.celadonsea.palm.scanner;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of the {@link GeneratedListeners generated listeners}. The generated classes are
+ * loaded once with the {@link ServiceLoader} and indexed by the messaging controller class.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see GeneratedListeners
+ * @see MessagingControllerPostProcessor
+ */
+@Slf4j
+public class ListenerRegistry {
+
+    /**
+     * The generated listeners by the messaging controller class
+     */
+    private final Map<Class<?>, GeneratedListeners> generatedListeners;
+
+    /**
+     * Constructs the registry with the generated listeners visible from the given class loader.
+     *
+     * @param classLoader the class loader of the generated listeners
+     */
+    public ListenerRegistry(ClassLoader classLoader) {
+        Map<Class<?>, GeneratedListeners> listenersByType = new HashMap<>();
+        try {
+            for (GeneratedListeners listeners : ServiceLoader.load(GeneratedListeners.class, classLoader)) {
+                listenersByType.put(listeners.getControllerType(), listeners);
+            }
+        } catch (ServiceConfigurationError e) {
+            log.warn("Cannot load the generated listeners, the messaging controllers will be scanned by reflection", e);
+            listenersByType.clear();
+        }
+        log.debug("{} generated listener registries found", listenersByType.size());
+        this.generatedListeners = Collections.unmodifiableMap(listenersByType);
+    }
+
+    /**
+     * Returns the generated listeners of the messaging controller class.
+     *
+     * @param controllerType the messaging controller class
+     * @return the generated listeners or null if the class has no generated listeners
+     */
+    public GeneratedListeners find(Class<?> controllerType) {
+        return generatedListeners.get(controllerType);
+    }
+}
@@ -0,0 +1,638 @@
+package com.celadonsea.palm.scanner;
+
+import com.celadonsea.palm.codec.MessageDecoder;
+import com.celadonsea.palm.message.MessageContext;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * The compiled {@link com.celadonsea.palm.annotation.Listener#filter() filter} of a listener.
+ * <p>
+ * The predicate is parsed once at the registration of the listener. At message arrive it's
+ * evaluated first with the topic variables only, and the payload is scanned by a streaming
+ * parser only if the result isn't known yet. The scan skips the objects and arrays which don't
+ * contain any of the referenced JSON pointers, and it stops as soon as the result is known,
+ * so the rejected messages are never deserialized.
+ * <p>
+ * The evaluation is three-valued during the scan: a comparison of a value not yet seen is
+ * unknown, and the combinations are decided as soon as possible (eg. false &amp;&amp; unknown).
+ * After the end of the payload the values not found are missing, and a missing value isn't
+ * equal to any literal.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see com.celadonsea.palm.annotation.Listener#filter()
+ * @see ListenerCallbackPostProcessor
+ */
+@Slf4j
+public final class MessageFilter {
+
+    /**
+     * The original filter expression
+     */
+    private final String expression;
+
+    /**
+     * The root of the parsed predicate
+     */
+    private final Condition condition;
+
+    /**
+     * The referenced JSON pointers of the payload
+     */
+    private final Set<String> pointers;
+
+    /**
+     * Indicates that the predicate refers to topic variables
+     */
+    private final boolean topicVariablesRequired;
+
+    /**
+     * The decoder returning a parser of the payload, null if the predicate refers only to topic variables
+     */
+    private final MessageDecoder tokenDecoder;
+
+    /**
+     * Constructs the filter.
+     *
+     * @param expression the original filter expression
+     * @param condition the root of the parsed predicate
+     * @param pointers the referenced JSON pointers
+     * @param topicVariablesRequired true if the predicate refers to topic variables
+     * @param tokenDecoder the decoder returning a parser of the payload or null
+     */
+    private MessageFilter(String expression, Condition condition, Set<String> pointers,
+                          boolean topicVariablesRequired, MessageDecoder tokenDecoder) {
+        this.expression = expression;
+        this.condition = condition;
+        this.pointers = pointers;
+        this.topicVariablesRequired = topicVariablesRequired;
+        this.tokenDecoder = tokenDecoder;
+    }
+
+    /**
+     * Compiles a filter expression.
+     *
+     * @param expression the filter expression
+     * @param tokenDecoderSupplier provides the decoder returning a parser of the payload, it's called
+     *                             only if the expression refers to the payload
+     * @return the compiled filter
+     * @throws IllegalArgumentException if the expression is invalid, or the codec doesn't support the token stream
+     */
+    public static MessageFilter compile(String expression, Supplier<MessageDecoder> tokenDecoderSupplier) {
+        Assert.hasText(expression, "Filter expression must be set");
+        ExpressionParser expressionParser = new ExpressionParser(expression);
+        Condition condition = expressionParser.parse();
+        Set<String> pointers = Collections.unmodifiableSet(expressionParser.pointers);
+        MessageDecoder tokenDecoder = pointers.isEmpty() ? null : tokenDecoderSupplier.get();
+        return new MessageFilter(expression, condition, pointers, expressionParser.topicVariablesRequired, tokenDecoder);
+    }
+
+    /**
+     * Returns true if the predicate refers to topic variables, so the message context is
+     * necessary for the evaluation.
+     *
+     * @return true if the topic variables are required
+     */
+    public boolean isTopicVariablesRequired() {
+        return topicVariablesRequired;
+    }
+
+    /**
+     * Evaluates the filter for an arrived message. A payload which cannot be parsed is rejected.
+     *
+     * @param messageContext the context of the message, it can be null if no topic variables are required
+     * @param content the message payload
+     * @return true if the message is accepted
+     */
+    public boolean test(MessageContext messageContext, byte[] content) {
+        Map<String, String> topicVariables = topicVariablesRequired ? messageContext.getParameterMap() : Collections.emptyMap();
+        Values values = new Values(topicVariables);
+        Boolean result = condition.evaluate(values);
+        if (result != null) {
+            return result;
+        }
+        try (JsonParser parser = (JsonParser) tokenDecoder.decode(content)) {
+            result = scan(parser, values);
+        } catch (IOException e) {
+            log.warn("Cannot filter message by {}, it's rejected", expression, e);
+            return false;
+        }
+        if (result != null) {
+            return result;
+        }
+        values.complete = true;
+        return Boolean.TRUE.equals(condition.evaluate(values));
+    }
+
+    /**
+     * Scans the payload until the result of the predicate is known or the payload ends.
+     *
+     * @param parser the parser of the payload
+     * @param values the values of the evaluation
+     * @return the result or null if it's unknown at the end of the payload
+     * @throws IOException if the payload cannot be parsed
+     */
+    private Boolean scan(JsonParser parser, Values values) throws IOException {
+        int remaining = pointers.size();
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            if (token == JsonToken.FIELD_NAME || token.isStructEnd()) {
+                continue;
+            }
+            String pointer = parser.getParsingContext().pathAsPointer().toString();
+            if (pointers.contains(pointer)) {
+                if (values.contentValues.putIfAbsent(pointer, Value.of(token, parser)) == null) {
+                    remaining--;
+                }
+                if (token.isStructStart()) {
+                    parser.skipChildren();
+                }
+                Boolean result = condition.evaluate(values);
+                if (result != null || remaining == 0) {
+                    return result;
+                }
+            } else if (token.isStructStart() && !isOnPath(pointer)) {
+                parser.skipChildren();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if any referenced JSON pointer is below the given one.
+     *
+     * @param pointer the pointer of an object or array
+     * @return true if the children have to be scanned
+     */
+    private boolean isOnPath(String pointer) {
+        for (String target : pointers) {
+            if (target.length() > pointer.length() && target.startsWith(pointer) && target.charAt(pointer.length()) == '/') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the filter expression.
+     *
+     * @return the filter expression
+     */
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * A node of the parsed predicate.
+     */
+    private interface Condition {
+
+        /**
+         * Evaluates the node.
+         *
+         * @param values the known values
+         * @return the result or null if it's unknown
+         */
+        Boolean evaluate(Values values);
+    }
+
+    /**
+     * An operand of a comparison.
+     */
+    private interface Operand {
+
+        /**
+         * Returns the value of the operand.
+         *
+         * @param values the known values
+         * @return the value or null if it's unknown
+         */
+        Value resolve(Values values);
+    }
+
+    /**
+     * The values known during the evaluation of a message.
+     */
+    private static final class Values {
+
+        /**
+         * The topic variables of the message
+         */
+        private final Map<String, String> topicVariables;
+
+        /**
+         * The values of the JSON pointers found in the payload
+         */
+        private final Map<String, Value> contentValues = new HashMap<>();
+
+        /**
+         * Indicates that the whole payload is scanned, so the values not found are missing
+         */
+        private boolean complete;
+
+        /**
+         * Constructs the values.
+         *
+         * @param topicVariables the topic variables of the message
+         */
+        private Values(Map<String, String> topicVariables) {
+            this.topicVariables = topicVariables;
+        }
+    }
+
+    /**
+     * Kinds of the compared values.
+     */
+    private enum Kind {
+        STRING, NUMBER, BOOLEAN, NULL, CONTAINER, TOPIC, MISSING
+    }
+
+    /**
+     * A value of the payload, a topic variable or a literal.
+     */
+    private static final class Value {
+
+        /**
+         * The value of the JSON pointers and topic variables which don't exist
+         */
+        private static final Value MISSING = new Value(Kind.MISSING, null);
+
+        /**
+         * The kind of the value
+         */
+        private final Kind kind;
+
+        /**
+         * The textual value
+         */
+        private final String text;
+
+        /**
+         * Constructs the value.
+         *
+         * @param kind the kind of the value
+         * @param text the textual value
+         */
+        private Value(Kind kind, String text) {
+            this.kind = kind;
+            this.text = text;
+        }
+
+        /**
+         * Returns the value of the current token.
+         *
+         * @param token the current token
+         * @param parser the parser positioned at the token
+         * @return the value of the token
+         * @throws IOException if the value cannot be read
+         */
+        private static Value of(JsonToken token, JsonParser parser) throws IOException {
+            switch (token) {
+                case VALUE_STRING:
+                    return new Value(Kind.STRING, parser.getText());
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    return new Value(Kind.NUMBER, parser.getText());
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    return new Value(Kind.BOOLEAN, parser.getText());
+                case VALUE_NULL:
+                    return new Value(Kind.NULL, null);
+                default:
+                    return new Value(Kind.CONTAINER, null);
+            }
+        }
+
+        /**
+         * Compares two values. Numbers are compared by their numeric values, topic variables
+         * are compared by their text with any literal, and the missing values and the objects
+         * or arrays aren't equal to anything.
+         *
+         * @param other the other value
+         * @return true if the values are equal
+         */
+        private boolean isEqualTo(Value other) {
+            if (kind == Kind.MISSING || other.kind == Kind.MISSING || kind == Kind.CONTAINER || other.kind == Kind.CONTAINER) {
+                return false;
+            }
+            if (kind == Kind.TOPIC || other.kind == Kind.TOPIC) {
+                return text != null && text.equals(other.text);
+            }
+            if (kind != other.kind) {
+                return false;
+            }
+            if (kind == Kind.NUMBER) {
+                return new BigDecimal(text).compareTo(new BigDecimal(other.text)) == 0;
+            }
+            return kind == Kind.NULL || text.equals(other.text);
+        }
+    }
+
+    /**
+     * Recursive descent parser of the filter expressions:
+     * <pre>
+     * or         := and ('||' and)*
+     * and        := unary ('&amp;&amp;' unary)*
+     * unary      := '!' unary | '(' or ')' | comparison
+     * comparison := operand ('==' | '!=') operand
+     * operand    := /json/pointer | {topicVariable} | 'string' | "string" | number | true | false | null
+     * </pre>
+     */
+    private static final class ExpressionParser {
+
+        /**
+         * The parsed expression
+         */
+        private final String expression;
+
+        /**
+         * The referenced JSON pointers
+         */
+        private final Set<String> pointers = new LinkedHashSet<>();
+
+        /**
+         * Indicates that the expression refers to topic variables
+         */
+        private boolean topicVariablesRequired;
+
+        /**
+         * The current position in the expression
+         */
+        private int position;
+
+        /**
+         * Constructs the parser.
+         *
+         * @param expression the expression to parse
+         */
+        private ExpressionParser(String expression) {
+            this.expression = expression;
+        }
+
+        /**
+         * Parses the whole expression.
+         *
+         * @return the root of the predicate
+         * @throws IllegalArgumentException if the expression is invalid
+         */
+        private Condition parse() {
+            Condition condition = parseOr();
+            skipWhitespace();
+            if (position < expression.length()) {
+                throw error("Unexpected character");
+            }
+            return condition;
+        }
+
+        /**
+         * Parses a disjunction.
+         *
+         * @return the parsed node
+         */
+        private Condition parseOr() {
+            Condition left = parseAnd();
+            while (consume("||")) {
+                Condition first = left;
+                Condition second = parseAnd();
+                left = values -> {
+                    Boolean firstResult = first.evaluate(values);
+                    if (Boolean.TRUE.equals(firstResult)) {
+                        return true;
+                    }
+                    Boolean secondResult = second.evaluate(values);
+                    if (Boolean.TRUE.equals(secondResult)) {
+                        return true;
+                    }
+                    return firstResult == null || secondResult == null ? null : Boolean.FALSE;
+                };
+            }
+            return left;
+        }
+
+        /**
+         * Parses a conjunction.
+         *
+         * @return the parsed node
+         */
+        private Condition parseAnd() {
+            Condition left = parseUnary();
+            while (consume("&&")) {
+                Condition first = left;
+                Condition second = parseUnary();
+                left = values -> {
+                    Boolean firstResult = first.evaluate(values);
+                    if (Boolean.FALSE.equals(firstResult)) {
+                        return false;
+                    }
+                    Boolean secondResult = second.evaluate(values);
+                    if (Boolean.FALSE.equals(secondResult)) {
+                        return false;
+                    }
+                    return firstResult == null || secondResult == null ? null : Boolean.TRUE;
+                };
+            }
+            return left;
+        }
+
+        /**
+         * Parses a negation, a group or a comparison.
+         *
+         * @return the parsed node
+         */
+        private Condition parseUnary() {
+            if (consume("!=")) {
+                throw error("Missing operand");
+            }
+            if (consume("!")) {
+                Condition negated = parseUnary();
+                return values -> {
+                    Boolean result = negated.evaluate(values);
+                    return result == null ? null : !result;
+                };
+            }
+            if (consume("(")) {
+                Condition grouped = parseOr();
+                if (!consume(")")) {
+                    throw error("Missing )");
+                }
+                return grouped;
+            }
+            Operand left = parseOperand();
+            boolean equal;
+            if (consume("==")) {
+                equal = true;
+            } else if (consume("!=")) {
+                equal = false;
+            } else {
+                throw error("Missing == or !=");
+            }
+            Operand right = parseOperand();
+            return values -> {
+                Value leftValue = left.resolve(values);
+                Value rightValue = right.resolve(values);
+                if (leftValue == null || rightValue == null) {
+                    return null;
+                }
+                return leftValue.isEqualTo(rightValue) == equal;
+            };
+        }
+
+        /**
+         * Parses an operand.
+         *
+         * @return the parsed operand
+         */
+        private Operand parseOperand() {
+            skipWhitespace();
+            if (position >= expression.length()) {
+                throw error("Missing operand");
+            }
+            char first = expression.charAt(position);
+            if (first == '/') {
+                String pointer = readWhile(character -> !Character.isWhitespace(character) && "=!&|()".indexOf(character) < 0);
+                pointers.add(pointer);
+                return values -> {
+                    Value value = values.contentValues.get(pointer);
+                    if (value == null && values.complete) {
+                        return Value.MISSING;
+                    }
+                    return value;
+                };
+            }
+            if (first == '{') {
+                int end = expression.indexOf('}', position);
+                if (end < 0) {
+                    throw error("Missing }");
+                }
+                String name = expression.substring(position + 1, end);
+                position = end + 1;
+                topicVariablesRequired = true;
+                return values -> {
+                    String text = values.topicVariables.get(name);
+                    return text == null ? Value.MISSING : new Value(Kind.TOPIC, text);
+                };
+            }
+            Value literal = parseLiteral(first);
+            return values -> literal;
+        }
+
+        /**
+         * Parses a literal.
+         *
+         * @param first the first character of the literal
+         * @return the value of the literal
+         */
+        private Value parseLiteral(char first) {
+            if (first == '\'' || first == '"') {
+                StringBuilder text = new StringBuilder();
+                position++;
+                while (position < expression.length() && expression.charAt(position) != first) {
+                    if (expression.charAt(position) == '\\' && position + 1 < expression.length()) {
+                        position++;
+                    }
+                    text.append(expression.charAt(position++));
+                }
+                if (position >= expression.length()) {
+                    throw error("Unterminated string");
+                }
+                position++;
+                return new Value(Kind.STRING, text.toString());
+            }
+            if (first == '-' || Character.isDigit(first)) {
+                String number = readWhile(character -> Character.isDigit(character) || "+-.eE".indexOf(character) >= 0);
+                try {
+                    new BigDecimal(number);
+                } catch (NumberFormatException e) {
+                    throw error("Invalid number " + number);
+                }
+                return new Value(Kind.NUMBER, number);
+            }
+            String word = readWhile(Character::isLetter);
+            switch (word) {
+                case "true":
+                case "false":
+                    return new Value(Kind.BOOLEAN, word);
+                case "null":
+                    return new Value(Kind.NULL, null);
+                default:
+                    throw error("Invalid operand");
+            }
+        }
+
+        /**
+         * Reads the characters while they match the condition.
+         *
+         * @param condition the condition of the characters
+         * @return the read characters
+         */
+        private String readWhile(CharCondition condition) {
+            int start = position;
+            while (position < expression.length() && condition.matches(expression.charAt(position))) {
+                position++;
+            }
+            return expression.substring(start, position);
+        }
+
+        /**
+         * Consumes the token if it comes next.
+         *
+         * @param token the expected token
+         * @return true if the token is consumed
+         */
+        private boolean consume(String token) {
+            skipWhitespace();
+            if (expression.startsWith(token, position)) {
+                position += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Skips the whitespace characters.
+         */
+        private void skipWhitespace() {
+            while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+                position++;
+            }
+        }
+
+        /**
+         * Creates the exception of an invalid expression.
+         *
+         * @param message the description of the error
+         * @return the exception
+         */
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position + " of filter " + expression);
+        }
+    }
+
+    /**
+     * Condition of the characters of a token.
+     */
+    @FunctionalInterface
+    private interface CharCondition {
+
+        /**
+         * Checks the character.
+         *
+         * @param character the character
+         * @return true if the character belongs to the token
+         */
+        boolean matches(char character);
+    }
+}
@@ -1,17 +1,34 @@
 package com.celadonsea.palm.scanner;
 
 import com.celadonsea.palm.annotation.MessagingController;
-import lombok.RequiredArgsConstructor;
+import com.celadonsea.palm.client.MessageClient;
+import com.celadonsea.palm.client.ShardedMessageClient;
+import com.celadonsea.palm.config.MessageClientConfig;
+import com.celadonsea.palm.security.CredentialStore;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.util.Assert;
 import org.springframework.util.ReflectionUtils;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * A bean post processor for {@link MessagingController @MessagingController} that will be
  * triggered by the spring auto-detection. It starts processing of the
  * {@link com.celadonsea.palm.annotation.Listener @Listener} annotated methods
  * after the initialization of the bean.
+ * <p>
+ * The listeners generated at compile time are subscribed from the {@link ListenerRegistry}
+ * without the reflective method scan, the other messaging controllers are scanned by reflection.
+ * <p>
+ * The listeners of a controller with {@link MessagingController#parallelism() parallelism}
+ * greater than one are subscribed by a {@link ShardedMessageClient} which is created once per
+ * client bean from the configuration of the client, and it shares the subscriptions of its
+ * connections in a group named after the client bean. These clients are disconnected when the
+ * post processor is destroyed with the spring context.
  *
  * @author Rafael Revesz
  * @since 1.0
@@ -20,8 +37,7 @@ import org.springframework.util.ReflectionUtils;
  * @see ListenerMethodCallback
  */
 @Slf4j
-@RequiredArgsConstructor
-public class MessagingControllerPostProcessor implements BeanPostProcessor {
+public class MessagingControllerPostProcessor implements BeanPostProcessor, DisposableBean {
 
     /**
      * Bean factory for {@link ListenerMethodCallback @ListenerMethodCallback} to
@@ -36,6 +52,52 @@ public class MessagingControllerPostProcessor implements BeanPostProcessor {
      */
     private final ListenerCallbackPostProcessor listenerCallbackPostProcessor;
 
+    /**
+     * Registry of the listeners generated at compile time
+     */
+    private final ListenerRegistry listenerRegistry;
+
+    /**
+     * The clients opened for the parallel consumption by the name of the client bean
+     */
+    private final Map<String, ShardedMessageClient> parallelClients = new ConcurrentHashMap<>();
+
+    /**
+     * The parallelism of the controllers by the name of the client bean
+     */
+    private final Map<String, Integer> clientParallelism = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs the post processor with the generated listeners visible from the
+     * bean class loader.
+     *
+     * @param configurableBeanFactory bean factory for access beans from the spring context
+     * @param listenerCallbackPostProcessor the post processor for listener callback
+     */
+    public MessagingControllerPostProcessor(ConfigurableListableBeanFactory configurableBeanFactory,
+                                            ListenerCallbackPostProcessor listenerCallbackPostProcessor) {
+        this(configurableBeanFactory, listenerCallbackPostProcessor, new ListenerRegistry(configurableBeanFactory.getBeanClassLoader()));
+    }
+
+    /**
+     * Constructs the post processor.
+     *
+     * @param configurableBeanFactory bean factory for access beans from the spring context
+     * @param listenerCallbackPostProcessor the post processor for listener callback
+     * @param listenerRegistry registry of the listeners generated at compile time
+     * @throws IllegalArgumentException if any argument is null
+     */
+    public MessagingControllerPostProcessor(ConfigurableListableBeanFactory configurableBeanFactory,
+                                            ListenerCallbackPostProcessor listenerCallbackPostProcessor,
+                                            ListenerRegistry listenerRegistry) {
+        Assert.notNull(configurableBeanFactory, "Bean factory must be set");
+        Assert.notNull(listenerCallbackPostProcessor, "Listener callback post processor must be set");
+        Assert.notNull(listenerRegistry, "Listener registry must be set");
+        this.configurableBeanFactory = configurableBeanFactory;
+        this.listenerCallbackPostProcessor = listenerCallbackPostProcessor;
+        this.listenerRegistry = listenerRegistry;
+    }
+
     /**
      * Returns the new bean instance without any modification.
      * @param bean the new bean instance
@@ -66,16 +128,85 @@ public class MessagingControllerPostProcessor implements BeanPostProcessor {
     /**
      * Filters the {@link MessagingController @MessagingController} annotated beans and
      * start the scan of the {@link com.celadonsea.palm.annotation.Listener @Listener}
-     * annotated methods.
+     * annotated methods. The generated listeners of the bean class are subscribed
+     * without scan if they exist.
      *
      * @param bean the new bean instance
      */
     private void scanListenerAnnotation(Object bean) {
         if (bean.getClass().isAnnotationPresent(MessagingController.class)) {
             log.debug("Load message controller {}", bean.getClass().getName());
-            ReflectionUtils.MethodCallback methodCallback = new ListenerMethodCallback(bean, listenerCallbackPostProcessor, configurableBeanFactory);
+            GeneratedListeners generatedListeners = listenerRegistry.find(bean.getClass());
+            if (generatedListeners != null) {
+                MessagingController controllerAnnotation = bean.getClass().getAnnotation(MessagingController.class);
+                MessageClient client = resolveClient(controllerAnnotation);
+                for (ListenerDefinition listenerDefinition : generatedListeners.getListeners()) {
+                    listenerCallbackPostProcessor.processListenerDefinition(bean, client, listenerDefinition, controllerAnnotation);
+                }
+                return;
+            }
+            MessageClient client = resolveClient(bean.getClass().getAnnotation(MessagingController.class));
+            ReflectionUtils.MethodCallback methodCallback = new ListenerMethodCallback(bean, listenerCallbackPostProcessor, client);
             ReflectionUtils.doWithMethods(bean.getClass(), methodCallback);
         }
     }
 
+    /**
+     * Returns the message client of a controller: the client bean, or the client of the
+     * parallel consumption if the parallelism is greater than one.
+     *
+     * @param controllerAnnotation the annotation of the controller
+     * @return the message client of the listeners
+     * @throws IllegalStateException if the controllers of the client have different parallelism
+     */
+    private MessageClient resolveClient(MessagingController controllerAnnotation) {
+        int parallelism = Math.max(1, controllerAnnotation.parallelism());
+        Integer recorded = clientParallelism.putIfAbsent(controllerAnnotation.client(), parallelism);
+        Assert.state(recorded == null || recorded == parallelism,
+            "Message client " + controllerAnnotation.client() + " is already consumed with parallelism " + recorded);
+        if (parallelism == 1) {
+            return (MessageClient) configurableBeanFactory.getBean(controllerAnnotation.client());
+        }
+        return parallelClients.computeIfAbsent(controllerAnnotation.client(),
+            clientName -> createParallelClient(clientName, controllerAnnotation));
+    }
+
+    /**
+     * Creates and connects the client of the parallel consumption. The connections are opened
+     * with the configuration of the controller, and the credential store of the spring context
+     * if the connection is secured.
+     *
+     * @param clientName the name of the client bean, it's the share group of the subscriptions
+     * @param controllerAnnotation the annotation of the controller
+     * @return the connected client
+     * @throws IllegalStateException if the configuration is not set and the spring context has
+     *                               no or more message client configuration beans
+     */
+    private ShardedMessageClient createParallelClient(String clientName, MessagingController controllerAnnotation) {
+        MessageClientConfig messageClientConfig = "".equals(controllerAnnotation.clientConfig().trim())
+            ? configurableBeanFactory.getBeanProvider(MessageClientConfig.class).getIfUnique()
+            : configurableBeanFactory.getBean(controllerAnnotation.clientConfig(), MessageClientConfig.class);
+        Assert.state(messageClientConfig != null,
+            "No unique message client configuration for the parallel consumption of client " + clientName + ", set the clientConfig of the controller");
+        CredentialStore credentialStore = messageClientConfig.isConnectionSecured()
+            ? configurableBeanFactory.getBeanProvider(CredentialStore.class).getIfUnique()
+            : null;
+        ShardedMessageClient client = new ShardedMessageClient(messageClientConfig, credentialStore, controllerAnnotation.parallelism(), clientName);
+        client.connect();
+        log.info("Messages of client {} are consumed by {} connections", clientName, controllerAnnotation.parallelism());
+        return client;
+    }
+
+    /**
+     * Disconnects the connections of the parallel consumption.
+     */
+    @Override
+    public void destroy() {
+        parallelClients.forEach((clientName, client) -> {
+            client.disconnect();
+            log.info("Connections of the parallel consumption of client {} are closed", clientName);
+        });
+        parallelClients.clear();
+    }
+
 }
@@ -0,0 +1,83 @@
+package com.celadonsea.palm.scanner;
+
+import com.celadonsea.palm.annotation.SendTo;
+import lombok.Getter;
+import org.springframework.util.Assert;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+
+/**
+ * Describes the output of a {@link com.celadonsea.palm.annotation.Listener @Listener} method
+ * defined by the {@link SendTo @SendTo} annotation: the topic template, the publishing
+ * attributes and the generic return type of the method.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see ListenerDefinition
+ */
+@Getter
+public final class OutputDefinition {
+
+    /**
+     * The topic template of the output messages
+     */
+    private final String topic;
+
+    /**
+     * The quality of service of the output messages, -1 for the default of the client
+     */
+    private final int qos;
+
+    /**
+     * The maximum number of the return values in one message
+     */
+    private final int batchSize;
+
+    /**
+     * The maximum delay of an incomplete batch in milliseconds
+     */
+    private final long lingerMillis;
+
+    /**
+     * The generic return type of the listener method
+     */
+    private final Type returnType;
+
+    /**
+     * Constructs the definition.
+     *
+     * @param topic the topic template of the output messages
+     * @param qos the quality of service, -1 for the default of the client
+     * @param batchSize the maximum number of the return values in one message
+     * @param lingerMillis the maximum delay of an incomplete batch in milliseconds
+     * @param returnType the generic return type of the listener method
+     * @throws IllegalArgumentException if the topic is empty, the return type is null, or the batch size
+     *                                  or the linger time is not positive
+     */
+    public OutputDefinition(String topic, int qos, int batchSize, long lingerMillis, Type returnType) {
+        Assert.hasText(topic, "Output topic must be set");
+        Assert.notNull(returnType, "Return type must be set");
+        Assert.isTrue(batchSize > 0, "Batch size must be positive");
+        Assert.isTrue(batchSize == 1 || lingerMillis > 0, "Linger time of the batches must be positive");
+        this.topic = topic;
+        this.qos = qos;
+        this.batchSize = batchSize;
+        this.lingerMillis = lingerMillis;
+        this.returnType = returnType;
+    }
+
+    /**
+     * Creates the output definition of a reflectively scanned listener method.
+     *
+     * @param method the listener method
+     * @return the output definition or null if the method has no {@link SendTo @SendTo} annotation
+     */
+    public static OutputDefinition of(Method method) {
+        SendTo sendTo = method.getAnnotation(SendTo.class);
+        if (sendTo == null) {
+            return null;
+        }
+        return new OutputDefinition(sendTo.value(), sendTo.qos(), sendTo.batchSize(), sendTo.lingerMillis(), method.getGenericReturnType());
+    }
+}
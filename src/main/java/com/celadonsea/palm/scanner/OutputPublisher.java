@@ -0,0 +1,209 @@
+package com.celadonsea.palm.scanner;
+
+import com.celadonsea.palm.client.MessageClient;
+import com.celadonsea.palm.codec.MessageEncoder;
+import com.celadonsea.palm.core.HashedWheelTimer;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.message.MessageContext;
+import com.celadonsea.palm.topic.TopicTemplate;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the return values of a {@link com.celadonsea.palm.annotation.Listener @Listener} method
+ * to the topic of its {@link com.celadonsea.palm.annotation.SendTo @SendTo} annotation.
+ * <p>
+ * The topic template is compiled and the encoder of the return type is created at the registration,
+ * so a return value costs only the topic generation and the serialization. If the batch size is
+ * greater than one, the values are collected per topic, and a batch is published as an array when
+ * it's full or when its first value has waited for the linger time. The linger timeouts are
+ * scheduled on a {@link HashedWheelTimer}. The incomplete batches are published at the closing,
+ * and the values returned after it are published one by one.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see ListenerCallbackPostProcessor
+ */
+@Slf4j
+final class OutputPublisher {
+
+    /**
+     * The client of the listener publishing the outputs
+     */
+    private final MessageClient messageClient;
+
+    /**
+     * The compiled topic template
+     */
+    private final TopicTemplate topicTemplate;
+
+    /**
+     * The encoder of the single values, or of the lists of values if the outputs are batched
+     */
+    private final MessageEncoder messageEncoder;
+
+    /**
+     * The quality of service of the outputs
+     */
+    private final int qos;
+
+    /**
+     * The maximum number of the values in a batch, 1 if the outputs aren't batched
+     */
+    private final int batchSize;
+
+    /**
+     * The maximum delay of an incomplete batch in milliseconds
+     */
+    private final long lingerMillis;
+
+    /**
+     * The timer of the linger timeouts, null if the outputs aren't batched
+     */
+    private final HashedWheelTimer timer;
+
+    /**
+     * The incomplete batches by topic, guarded by the map itself
+     */
+    private final Map<String, List<Object>> batches = new HashMap<>();
+
+    /**
+     * True if the publisher was closed, guarded by the batches
+     */
+    private boolean closed;
+
+    /**
+     * Constructs the publisher.
+     *
+     * @param messageClient the client of the listener
+     * @param topicTemplate the compiled topic template
+     * @param messageEncoder the encoder of the values, or of the lists of values if the batch size is greater than one
+     * @param qos the quality of service of the outputs
+     * @param batchSize the maximum number of the values in a batch
+     * @param lingerMillis the maximum delay of an incomplete batch in milliseconds
+     * @param timer the timer of the linger timeouts, it's used only for batches
+     */
+    OutputPublisher(MessageClient messageClient,
+                    TopicTemplate topicTemplate,
+                    MessageEncoder messageEncoder,
+                    int qos,
+                    int batchSize,
+                    long lingerMillis,
+                    HashedWheelTimer timer) {
+        this.messageClient = messageClient;
+        this.topicTemplate = topicTemplate;
+        this.messageEncoder = messageEncoder;
+        this.qos = qos;
+        this.batchSize = batchSize;
+        this.lingerMillis = lingerMillis;
+        this.timer = timer;
+    }
+
+    /**
+     * Publishes the return value of the listener. Null values aren't published.
+     *
+     * @param messageContext the context of the incoming message, it may be null if the template has no variable
+     * @param result the return value of the listener method
+     */
+    void publish(MessageContext messageContext, Object result) {
+        if (result instanceof CompletionStage) {
+            ((CompletionStage<?>) result).whenComplete((value, failure) -> {
+                if (failure == null) {
+                    output(messageContext, value);
+                }
+            });
+        } else {
+            output(messageContext, result);
+        }
+    }
+
+    /**
+     * Publishes the value directly or adds it to the batch of its topic.
+     *
+     * @param messageContext the context of the incoming message
+     * @param value the value to publish
+     */
+    private void output(MessageContext messageContext, Object value) {
+        if (value == null) {
+            return;
+        }
+        String topic;
+        try {
+            topic = topicTemplate.expand(messageContext == null ? null : messageContext.getParameterMap());
+        } catch (IllegalArgumentException e) {
+            log.error("Cannot generate output topic from {}", topicTemplate, e);
+            return;
+        }
+        if (batchSize == 1) {
+            send(topic, value);
+            return;
+        }
+        List<Object> fullBatch = null;
+        synchronized (batches) {
+            List<Object> batch = closed ? new ArrayList<>(1) : batches.get(topic);
+            if (batch == null) {
+                batch = new ArrayList<>(batchSize);
+                batches.put(topic, batch);
+                List<Object> scheduledBatch = batch;
+                timer.schedule(() -> flush(topic, scheduledBatch), lingerMillis, TimeUnit.MILLISECONDS);
+            }
+            batch.add(value);
+            if (closed || batch.size() >= batchSize) {
+                batches.remove(topic);
+                fullBatch = batch;
+            }
+        }
+        if (fullBatch != null) {
+            send(topic, fullBatch);
+        }
+    }
+
+    /**
+     * Publishes the batch after the linger time if it wasn't published since.
+     *
+     * @param topic the topic of the batch
+     * @param batch the batch scheduled at its creation
+     */
+    private void flush(String topic, List<Object> batch) {
+        synchronized (batches) {
+            if (!batches.remove(topic, batch)) {
+                return;
+            }
+        }
+        send(topic, batch);
+    }
+
+    /**
+     * Publishes the incomplete batches and closes the publisher.
+     */
+    void close() {
+        Map<String, List<Object>> openBatches;
+        synchronized (batches) {
+            closed = true;
+            openBatches = new HashMap<>(batches);
+            batches.clear();
+        }
+        openBatches.forEach(this::send);
+    }
+
+    /**
+     * Encodes and publishes a value or a batch.
+     *
+     * @param topic the output topic
+     * @param value the value or the list of the batched values
+     */
+    private void send(String topic, Object value) {
+        try {
+            messageClient.publish(messageEncoder.encode(value), new ProducingProperties(topic, qos));
+        } catch (IOException | RuntimeException e) {
+            log.error("Cannot publish output to {}", topic, e);
+        }
+    }
+}
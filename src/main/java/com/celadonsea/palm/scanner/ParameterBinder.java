@@ -0,0 +1,38 @@
+package com.celadonsea.palm.scanner;
+
+import com.celadonsea.palm.message.MessageContext;
+
+/**
+ * Provides the value of a {@link com.celadonsea.palm.annotation.Listener @Listener} method parameter
+ * for an arrived message.
+ * <p>
+ * The binders are compiled once from the {@link ParameterDescriptor parameter descriptors} at the
+ * registration of the listener, so the binding of a message doesn't need any parameter role
+ * or type check.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see ListenerCallbackPostProcessor
+ */
+@FunctionalInterface
+public interface ParameterBinder {
+
+    /**
+     * Binder of the unknown and unused parameters
+     */
+    ParameterBinder EMPTY = (messageContext, content) -> null;
+
+    /**
+     * Binder of the message context parameter
+     */
+    ParameterBinder CONTEXT = (messageContext, content) -> messageContext;
+
+    /**
+     * Returns the value of the parameter for the arrived message.
+     *
+     * @param messageContext the context of the arrived message
+     * @param content the message payload
+     * @return the value of the parameter
+     */
+    Object bind(MessageContext messageContext, byte[] content);
+}
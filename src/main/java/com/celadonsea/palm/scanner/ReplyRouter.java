@@ -0,0 +1,97 @@
+package com.celadonsea.palm.scanner;
+
+import com.celadonsea.palm.client.MessageClient;
+import com.celadonsea.palm.codec.MessageCodec;
+import com.celadonsea.palm.core.ProducingProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Publishes the return values of a {@link com.celadonsea.palm.annotation.Listener @Listener} method
+ * to the reply topics of the {@link com.celadonsea.palm.message.RequestEnvelope requests}.
+ * <p>
+ * The values are encoded with the codec of the listener, byte arrays are published as they are.
+ * A null value (eg. of a void method) is replied with an empty payload, so the requester is
+ * notified about the processing. If the value is a {@link CompletionStage}, its result is replied
+ * when it completes. The replies carry only the payload, there is no error reply: a failed stage
+ * is logged and not replied, just like a listener which throws an exception, so the request
+ * expires at the requester.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see ListenerCallbackPostProcessor
+ * @see com.celadonsea.palm.client.RequestingMessageClient
+ */
+@Slf4j
+final class ReplyRouter {
+
+    /**
+     * Quality of service of the replies
+     */
+    private static final int REPLY_QOS = 1;
+
+    /**
+     * The client of the listener publishing the replies
+     */
+    private final MessageClient messageClient;
+
+    /**
+     * The codec of the return values
+     */
+    private final MessageCodec messageCodec;
+
+    /**
+     * Constructs the router.
+     *
+     * @param messageClient the client of the listener
+     * @param messageCodec the codec of the return values
+     */
+    ReplyRouter(MessageClient messageClient, MessageCodec messageCodec) {
+        this.messageClient = messageClient;
+        this.messageCodec = messageCodec;
+    }
+
+    /**
+     * Publishes the return value of the listener to the reply topic.
+     *
+     * @param replyTopic the reply topic of the request
+     * @param result the return value of the listener method
+     */
+    void reply(String replyTopic, Object result) {
+        if (result instanceof CompletionStage) {
+            ((CompletionStage<?>) result).whenComplete((value, failure) -> {
+                if (failure == null) {
+                    publish(replyTopic, value);
+                } else {
+                    log.error("Listener failed, no reply is sent to {}", replyTopic, failure);
+                }
+            });
+        } else {
+            publish(replyTopic, result);
+        }
+    }
+
+    /**
+     * Encodes and publishes the reply.
+     *
+     * @param replyTopic the reply topic of the request
+     * @param value the value to reply
+     */
+    private void publish(String replyTopic, Object value) {
+        try {
+            byte[] payload;
+            if (value == null) {
+                payload = new byte[0];
+            } else if (value instanceof byte[]) {
+                payload = (byte[]) value;
+            } else {
+                payload = messageCodec.encode(value);
+            }
+            messageClient.publish(payload, new ProducingProperties(replyTopic, REPLY_QOS));
+        } catch (IOException | RuntimeException e) {
+            log.error("Cannot reply to {}", replyTopic, e);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.celadonsea.palm.scanner;
+
+import com.celadonsea.palm.client.MessageClient;
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.ConsumingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects the subscriptions of the {@link com.celadonsea.palm.annotation.Listener @Listener}
+ * methods during the bean creation and subscribes them when the application context is refreshed.
+ * <p>
+ * The subscriptions are grouped by message client and passed to
+ * {@link MessageClient#subscribe(Map)} at once, and the clients are subscribed concurrently,
+ * so the startup isn't serialized behind one broker round trip per listener, and no message
+ * arrives before the whole context is ready. The subscriptions registered after the refresh
+ * (eg. lazy controllers) are subscribed immediately.
+ * <p>
+ * The number of the subscriptions and the duration of the last flush are available as
+ * startup metrics.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ * @see ListenerCallbackPostProcessor
+ */
+@Slf4j
+public class SubscriptionRegistrar implements ApplicationListener<ContextRefreshedEvent> {
+
+    /**
+     * Maximum number of the threads subscribing the clients concurrently
+     */
+    private static final int MAX_SUBSCRIBER_THREADS = 8;
+
+    /**
+     * The collected subscriptions by message client, in the order of the registration
+     */
+    private final Map<MessageClient, Map<ConsumingProperties, BiConsumer<String, byte[]>>> pendingSubscriptions = new IdentityHashMap<>();
+
+    /**
+     * Indicates that the context is refreshed and the subscriptions aren't collected anymore
+     */
+    private boolean refreshed;
+
+    /**
+     * Number of the subscribed topics
+     */
+    private final AtomicInteger subscriptionCount = new AtomicInteger();
+
+    /**
+     * Number of the message clients subscribed at the last flush
+     */
+    private volatile int clientCount;
+
+    /**
+     * Duration of the last flush in milliseconds
+     */
+    private volatile long subscriptionTimeMillis;
+
+    /**
+     * Registers a subscription. It's collected until the context refresh and subscribed
+     * immediately afterwards.
+     *
+     * @param client the message client
+     * @param consumingProperties the consuming properties
+     * @param messageConsumer the message consumer function
+     * @throws IllegalArgumentException if any argument is null
+     */
+    public void register(MessageClient client, ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer) {
+        Assert.notNull(client, "Message client must be set");
+        Assert.notNull(consumingProperties, "Consuming properties must be set");
+        Assert.notNull(messageConsumer, "Message consumer must be set");
+        synchronized (pendingSubscriptions) {
+            if (!refreshed) {
+                pendingSubscriptions.computeIfAbsent(client, key -> new LinkedHashMap<>()).put(consumingProperties, messageConsumer);
+                return;
+            }
+        }
+        client.subscribe(consumingProperties, messageConsumer);
+        subscriptionCount.incrementAndGet();
+    }
+
+    /**
+     * Subscribes the collected subscriptions at the refresh of the application context.
+     *
+     * @param event the refresh event
+     * @throws ConnectionException if any subscription fails
+     */
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        flush();
+    }
+
+    /**
+     * Subscribes the collected subscriptions grouped by message client. The clients are
+     * subscribed concurrently if there are more of them, and the method returns when all
+     * of them are subscribed.
+     *
+     * @throws ConnectionException if any subscription fails
+     */
+    public void flush() {
+        Map<MessageClient, Map<ConsumingProperties, BiConsumer<String, byte[]>>> subscriptions;
+        synchronized (pendingSubscriptions) {
+            refreshed = true;
+            if (pendingSubscriptions.isEmpty()) {
+                return;
+            }
+            subscriptions = new IdentityHashMap<>(pendingSubscriptions);
+            pendingSubscriptions.clear();
+        }
+
+        long start = System.nanoTime();
+        int topicCount = subscriptions.values().stream().mapToInt(Map::size).sum();
+        if (subscriptions.size() == 1) {
+            subscriptions.forEach(this::subscribe);
+        } else {
+            subscribeConcurrently(subscriptions);
+        }
+        subscriptionTimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        clientCount = subscriptions.size();
+        subscriptionCount.addAndGet(topicCount);
+        log.info("Subscribed {} topics of {} message clients in {} ms", topicCount, clientCount, subscriptionTimeMillis);
+    }
+
+    /**
+     * Subscribes the clients on separate threads and waits for all of them.
+     *
+     * @param subscriptions the subscriptions by message client
+     * @throws ConnectionException if any subscription fails
+     */
+    private void subscribeConcurrently(Map<MessageClient, Map<ConsumingProperties, BiConsumer<String, byte[]>>> subscriptions) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(subscriptions.size(), MAX_SUBSCRIBER_THREADS), runnable -> {
+            Thread thread = new Thread(runnable, "palm-subscriber-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            subscriptions.forEach((client, clientSubscriptions) ->
+                futures.add(CompletableFuture.runAsync(() -> subscribe(client, clientSubscriptions), executorService)));
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ConnectionException("Subscription failed", e);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Subscribes the topics of a message client with one call.
+     *
+     * @param client the message client
+     * @param clientSubscriptions the subscriptions of the client
+     */
+    private void subscribe(MessageClient client, Map<ConsumingProperties, BiConsumer<String, byte[]>> clientSubscriptions) {
+        long start = System.nanoTime();
+        client.subscribe(Collections.unmodifiableMap(clientSubscriptions));
+        log.debug("Subscribed {} topics of {} in {} ms", clientSubscriptions.size(), client.getClass().getSimpleName(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Returns the number of the subscribed topics.
+     *
+     * @return the number of subscriptions
+     */
+    public int getSubscriptionCount() {
+        return subscriptionCount.get();
+    }
+
+    /**
+     * Returns the number of the message clients subscribed at the last flush.
+     *
+     * @return the number of clients
+     */
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    /**
+     * Returns the duration of the last flush in milliseconds.
+     *
+     * @return the subscription time
+     */
+    public long getSubscriptionTimeMillis() {
+        return subscriptionTimeMillis;
+    }
+
+    /**
+     * Returns the number of the subscriptions waiting for the context refresh.
+     *
+     * @return the number of pending subscriptions
+     */
+    public int getPendingCount() {
+        synchronized (pendingSubscriptions) {
+            return pendingSubscriptions.values().stream().mapToInt(Map::size).sum();
+        }
+    }
+}
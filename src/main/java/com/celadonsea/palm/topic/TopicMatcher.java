@@ -0,0 +1,144 @@
+package com.celadonsea.palm.topic;
+
+import org.springframework.util.Assert;
+
+/**
+ * Matches topics against a subscription filter or a topic template level by level,
+ * without regular expressions.
+ * <p>
+ * The filter levels are compared with the topic levels:
+ *   single-level wildcard and topic variables ({variable}) match exactly one level
+ *   multi-level wildcard at the end of the filter matches the rest of the topic (zero or more levels)
+ *   any other level must be equal to the topic level
+ * <p>
+ * For example with the format / + #:
+ *   my/{device}/+/#  matches  my/sensor/temperature/now
+ *   my/{device}/+/#  matches  my/sensor/temperature
+ *   my/{device}      doesn't match  my/sensor/temperature
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+public class TopicMatcher {
+
+    /**
+     * The levels of the filter
+     */
+    private final String[] levels;
+
+    /**
+     * The topic format of the filter
+     */
+    private final TopicFormat topicFormat;
+
+    /**
+     * Hidden constructor, use {@link #compile(String, TopicFormat)}.
+     *
+     * @param levels the levels of the filter
+     * @param topicFormat the topic format
+     */
+    private TopicMatcher(String[] levels, TopicFormat topicFormat) {
+        this.levels = levels;
+        this.topicFormat = topicFormat;
+    }
+
+    /**
+     * Compiles a subscription filter or topic template to a matcher.
+     *
+     * @param filter the subscription filter or topic template
+     * @param topicFormat the topic format (message broker specific)
+     * @return the matcher of the filter
+     * @throws IllegalArgumentException if the filter or the format is null or the multi-level wildcard is not the last level
+     */
+    public static TopicMatcher compile(String filter, TopicFormat topicFormat) {
+        Assert.notNull(filter, "Topic filter must be set");
+        Assert.notNull(topicFormat, "Topic format must be set");
+        String[] levels = split(filter, topicFormat.getLevelSeparator());
+        for (int index = 0; index < levels.length - 1; index++) {
+            Assert.isTrue(!isMultiLevelWildcard(levels[index], topicFormat),
+                "Multi-level wildcard must be the last level of the topic filter: " + filter);
+        }
+        return new TopicMatcher(levels, topicFormat);
+    }
+
+    /**
+     * Returns true if the topic matches to the filter.
+     *
+     * @param topic the topic to check
+     * @return true if the topic matches, otherwise false
+     */
+    public boolean matches(String topic) {
+        if (topic == null) {
+            return false;
+        }
+        char separator = topicFormat.getLevelSeparator();
+        int start = 0;
+        for (String level : levels) {
+            if (isMultiLevelWildcard(level, topicFormat)) {
+                return true;
+            }
+            if (start > topic.length()) {
+                return false;
+            }
+            int end = topic.indexOf(separator, start);
+            if (end < 0) {
+                end = topic.length();
+            }
+            if (!isSingleLevel(level)
+                && (end - start != level.length() || !topic.regionMatches(start, level, 0, level.length()))) {
+                return false;
+            }
+            start = end + 1;
+        }
+        return start == topic.length() + 1;
+    }
+
+    /**
+     * Returns true if the level matches exactly one topic level.
+     *
+     * @param level the filter level
+     * @return true if the level is a single-level wildcard or a topic variable
+     */
+    private boolean isSingleLevel(String level) {
+        return (level.length() == 1 && level.charAt(0) == topicFormat.getSingleLevelWildcard())
+            || (level.startsWith("{") && level.endsWith("}"));
+    }
+
+    /**
+     * Returns true if the level is a multi-level wildcard.
+     *
+     * @param level the filter level
+     * @param topicFormat the topic format
+     * @return true if the level is a multi-level wildcard
+     */
+    private static boolean isMultiLevelWildcard(String level, TopicFormat topicFormat) {
+        return level.length() == 1 && level.charAt(0) == topicFormat.getMultiLevelWildcard();
+    }
+
+    /**
+     * Splits the filter to levels, empty levels are kept.
+     *
+     * @param filter the filter
+     * @param separator the level separator
+     * @return the levels of the filter
+     */
+    private static String[] split(String filter, char separator) {
+        int count = 1;
+        for (int index = 0; index < filter.length(); index++) {
+            if (filter.charAt(index) == separator) {
+                count++;
+            }
+        }
+        String[] levels = new String[count];
+        int start = 0;
+        for (int index = 0; index < count; index++) {
+            int end = filter.indexOf(separator, start);
+            if (end < 0) {
+                end = filter.length();
+            }
+            levels[index] = filter.substring(start, end);
+            start = end + 1;
+        }
+        return levels;
+    }
+}
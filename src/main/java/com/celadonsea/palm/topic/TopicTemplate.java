@@ -0,0 +1,128 @@
+package com.celadonsea.palm.topic;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Topic template compiled once to literal parts and variables, so a topic is generated
+ * by appending the parts without the regular expressions of {@link TopicParser#generate(String, Map)}.
+ * <p>
+ * For example:
+ *   template:   sensors/{deviceId}/enriched
+ *   variables:  deviceId -&gt; 42
+ *   topic:      sensors/42/enriched
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+public class TopicTemplate {
+
+    /**
+     * The original template
+     */
+    private final String template;
+
+    /**
+     * The literal parts of the template, the variables are between them
+     */
+    private final String[] literals;
+
+    /**
+     * The variable names in order of their appearance, the i-th variable follows the i-th literal
+     */
+    private final String[] variables;
+
+    /**
+     * Hidden constructor, use {@link #compile(String)}.
+     *
+     * @param template the original template
+     * @param literals the literal parts
+     * @param variables the variable names
+     */
+    private TopicTemplate(String template, String[] literals, String[] variables) {
+        this.template = template;
+        this.literals = literals;
+        this.variables = variables;
+    }
+
+    /**
+     * Compiles the template.
+     *
+     * @param template the topic template with {variable} placeholders
+     * @return the compiled template
+     * @throws IllegalArgumentException if the template is empty or a placeholder is not closed or empty
+     */
+    public static TopicTemplate compile(String template) {
+        Assert.hasText(template, "Topic template must be set");
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        int start = 0;
+        int open = template.indexOf('{');
+        while (open >= 0) {
+            int close = template.indexOf('}', open);
+            Assert.isTrue(close > open + 1, "Invalid variable in topic template: " + template);
+            literals.add(template.substring(start, open));
+            variables.add(template.substring(open + 1, close));
+            start = close + 1;
+            open = template.indexOf('{', start);
+        }
+        literals.add(template.substring(start));
+        return new TopicTemplate(template, literals.toArray(new String[0]), variables.toArray(new String[0]));
+    }
+
+    /**
+     * Returns the names of the variables of the template.
+     *
+     * @return the variable names
+     */
+    public Set<String> getVariableNames() {
+        Set<String> names = new LinkedHashSet<>();
+        Collections.addAll(names, variables);
+        return names;
+    }
+
+    /**
+     * Returns true if the template has any variable.
+     *
+     * @return true if the template has variable
+     */
+    public boolean hasVariables() {
+        return variables.length > 0;
+    }
+
+    /**
+     * Generates the topic with the values of the variables.
+     *
+     * @param values the values by variable name, may be null if the template has no variable
+     * @return the generated topic
+     * @throws IllegalArgumentException if a variable has no value
+     */
+    public String expand(Map<String, String> values) {
+        if (variables.length == 0) {
+            return literals[0];
+        }
+        StringBuilder topic = new StringBuilder(template.length() + 16);
+        for (int index = 0; index < variables.length; index++) {
+            String value = values == null ? null : values.get(variables[index]);
+            Assert.notNull(value, "No value of variable " + variables[index] + " for topic template " + template);
+            topic.append(literals[index]).append(value);
+        }
+        return topic.append(literals[variables.length]).toString();
+    }
+
+    /**
+     * Returns the original template.
+     *
+     * @return the template
+     */
+    @Override
+    public String toString() {
+        return template;
+    }
+}
@@ -0,0 +1,544 @@
+package com.celadonsea.palm.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Annotation processor which generates the listener registries of the
+ * {@code @MessagingController} classes at compile time.
+ * <p>
+ * A {@code <Controller>_PalmListeners} class is generated for each messaging controller
+ * next to it. It implements {@code com.celadonsea.palm.scanner.GeneratedListeners} and
+ * contains the attributes and the parameter descriptions of the
+ * {@code @Listener} methods, and invokers calling the methods directly. The generated classes
+ * are registered in META-INF/services, so they're found at startup without the reflective
+ * method scan and the method handle lookups.
+ * <p>
+ * A controller is skipped with a note if its listeners cannot be called from a generated
+ * class of the same package, e.g. private methods or generic types. These controllers are
+ * scanned by reflection at runtime as before.
+ *
+ * @author Rafael Revesz
+ * @since 1.0
+ */
+@SupportedAnnotationTypes(ListenerRegistryProcessor.MESSAGING_CONTROLLER)
+public class ListenerRegistryProcessor extends AbstractProcessor {
+
+    /**
+     * Name of the messaging controller annotation
+     */
+    static final String MESSAGING_CONTROLLER = "com.celadonsea.palm.annotation.MessagingController";
+
+    /**
+     * Name of the listener annotation
+     */
+    private static final String LISTENER = "com.celadonsea.palm.annotation.Listener";
+
+    /**
+     * Name of the topic parameter annotation
+     */
+    private static final String TOPIC_PARAMETER = "com.celadonsea.palm.annotation.TopicParameter";
+
+    /**
+     * Name of the message body annotation
+     */
+    private static final String MESSAGE_BODY = "com.celadonsea.palm.annotation.MessageBody";
+
+    /**
+     * Name of the send to annotation
+     */
+    private static final String SEND_TO = "com.celadonsea.palm.annotation.SendTo";
+
+    /**
+     * Name of the message context class
+     */
+    private static final String MESSAGE_CONTEXT = "com.celadonsea.palm.message.MessageContext";
+
+    /**
+     * Name of the service interface implemented by the generated classes
+     */
+    private static final String GENERATED_LISTENERS = "com.celadonsea.palm.scanner.GeneratedListeners";
+
+    /**
+     * Name of the listener definition class
+     */
+    private static final String LISTENER_DEFINITION = "com.celadonsea.palm.scanner.ListenerDefinition";
+
+    /**
+     * Name of the output definition class
+     */
+    private static final String OUTPUT_DEFINITION = "com.celadonsea.palm.scanner.OutputDefinition";
+
+    /**
+     * Name of the parameter descriptor class
+     */
+    private static final String PARAMETER_DESCRIPTOR = "com.celadonsea.palm.scanner.ParameterDescriptor";
+
+    /**
+     * Suffix of the generated class names
+     */
+    private static final String GENERATED_SUFFIX = "_PalmListeners";
+
+    /**
+     * Message body types which are converted without codec, as in the reflective analysis
+     */
+    private static final Set<String> SIMPLE_BODY_TYPES = new TreeSet<>(Arrays.asList(
+        "java.lang.String", "byte[]", "java.lang.Integer", "int", "java.lang.Long", "long",
+        "java.lang.Short", "short", "java.lang.Byte", "byte"));
+
+    /**
+     * Names of the generated classes, they're registered as services at the end of the processing
+     */
+    private final Set<String> generatedClasses = new TreeSet<>();
+
+    /**
+     * Returns the latest supported source version, the processor uses only the element API.
+     *
+     * @return the latest supported source version
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * Generates the listener registries of the messaging controllers of the round and
+     * writes the service registration in the last round.
+     *
+     * @param annotations the processed annotations
+     * @param roundEnvironment the environment of the round
+     * @return false, the annotations aren't claimed
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+        if (roundEnvironment.processingOver()) {
+            writeServiceRegistration();
+            return false;
+        }
+        TypeElement controllerAnnotation = processingEnv.getElementUtils().getTypeElement(MESSAGING_CONTROLLER);
+        if (controllerAnnotation == null) {
+            return false;
+        }
+        for (Element element : roundEnvironment.getElementsAnnotatedWith(controllerAnnotation)) {
+            if (element.getKind() == ElementKind.CLASS) {
+                processController((TypeElement) element);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Generates the listener registry of a messaging controller, if all of its listeners
+     * can be called directly.
+     *
+     * @param controller the messaging controller class
+     */
+    private void processController(TypeElement controller) {
+        String packageName = processingEnv.getElementUtils().getPackageOf(controller).getQualifiedName().toString();
+        String reason = checkController(controller);
+        List<ExecutableElement> listeners = new ArrayList<>();
+        if (reason == null) {
+            for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(controller))) {
+                if (findAnnotation(method, LISTENER) != null) {
+                    reason = checkListener(method, packageName);
+                    if (reason != null) {
+                        break;
+                    }
+                    listeners.add(method);
+                }
+            }
+        }
+        if (reason != null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                "No listener registry is generated, the controller is scanned by reflection: " + reason, controller);
+            return;
+        }
+
+        String generatedName = generatedName(controller, packageName);
+        String qualifiedName = packageName.isEmpty() ? generatedName : packageName + "." + generatedName;
+        try {
+            JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(qualifiedName, controller);
+            try (PrintWriter writer = new PrintWriter(sourceFile.openWriter())) {
+                writeRegistry(writer, controller, packageName, generatedName, listeners);
+            }
+            generatedClasses.add(qualifiedName);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                "Cannot generate the listener registry " + qualifiedName + ": " + e.getMessage(), controller);
+        }
+    }
+
+    /**
+     * Checks if the messaging controller class is accessible from the generated class.
+     *
+     * @param controller the messaging controller class
+     * @return the reason of the skip or null if the class is supported
+     */
+    private String checkController(TypeElement controller) {
+        if (!controller.getTypeParameters().isEmpty()) {
+            return "generic controller class";
+        }
+        Element element = controller;
+        while (element instanceof TypeElement) {
+            TypeElement type = (TypeElement) element;
+            if (type.getModifiers().contains(Modifier.PRIVATE)) {
+                return "private controller class";
+            }
+            if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+                return "inner controller class";
+            }
+            if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+                return "local controller class";
+            }
+            element = type.getEnclosingElement();
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the listener method can be called directly from the generated class.
+     *
+     * @param method the listener method
+     * @param packageName the package of the generated class
+     * @return the reason of the skip or null if the method is supported
+     */
+    private String checkListener(ExecutableElement method, String packageName) {
+        if (!method.getTypeParameters().isEmpty()) {
+            return "generic listener method " + method.getSimpleName();
+        }
+        if (!isAccessible(method, packageName)) {
+            return "inaccessible listener method " + method.getSimpleName();
+        }
+        for (VariableElement parameter : method.getParameters()) {
+            if (!isAccessible(parameter.asType(), packageName)) {
+                return "inaccessible parameter type " + parameter.asType() + " of listener method " + method.getSimpleName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if an element is accessible from the given package.
+     *
+     * @param element the element
+     * @param packageName the package of the generated class
+     * @return true if the element is accessible
+     */
+    private boolean isAccessible(Element element, String packageName) {
+        Set<Modifier> modifiers = element.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        if (modifiers.contains(Modifier.PUBLIC)) {
+            return true;
+        }
+        return packageName.equals(processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString());
+    }
+
+    /**
+     * Checks if a type and its type arguments are accessible from the given package.
+     *
+     * @param type the type
+     * @param packageName the package of the generated class
+     * @return true if the type can be used in the generated class
+     */
+    private boolean isAccessible(TypeMirror type, String packageName) {
+        if (type.getKind().isPrimitive()) {
+            return true;
+        }
+        if (type.getKind() == TypeKind.ARRAY) {
+            return isAccessible(((ArrayType) type).getComponentType(), packageName);
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        DeclaredType declaredType = (DeclaredType) type;
+        Element element = declaredType.asElement();
+        while (element instanceof TypeElement) {
+            if (!isAccessible(element, packageName)) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        for (TypeMirror typeArgument : declaredType.getTypeArguments()) {
+            if (typeArgument.getKind() != TypeKind.WILDCARD && !isAccessible(typeArgument, packageName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the source of the generated listener registry.
+     *
+     * @param writer the writer of the source file
+     * @param controller the messaging controller class
+     * @param packageName the package of the controller
+     * @param generatedName the simple name of the generated class
+     * @param listeners the listener methods
+     */
+    private void writeRegistry(PrintWriter writer, TypeElement controller, String packageName,
+                               String generatedName, List<ExecutableElement> listeners) {
+        String controllerName = controller.getQualifiedName().toString();
+        if (!packageName.isEmpty()) {
+            writer.println("package " + packageName + ";");
+            writer.println();
+        }
+        writer.println("/**");
+        writer.println(" * Listener registry of {@link " + controllerName + "} generated by " + getClass().getName() + ".");
+        writer.println(" */");
+        writer.println("public final class " + generatedName + " implements " + GENERATED_LISTENERS + " {");
+        writer.println();
+        writer.println("    @Override");
+        writer.println("    public Class<?> getControllerType() {");
+        writer.println("        return " + controllerName + ".class;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    @Override");
+        writer.println("    @SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+        writer.println("    public java.util.List<" + LISTENER_DEFINITION + "> getListeners() {");
+        writer.println("        return java.util.Arrays.<" + LISTENER_DEFINITION + ">asList(");
+        for (int index = 0; index < listeners.size(); index++) {
+            writeListener(writer, controllerName, listeners.get(index));
+            writer.println(index < listeners.size() - 1 ? "," : "");
+        }
+        writer.println("        );");
+        writer.println("    }");
+        writer.println("}");
+    }
+
+    /**
+     * Writes the definition of a listener method.
+     *
+     * @param writer the writer of the source file
+     * @param controllerName the qualified name of the messaging controller
+     * @param method the listener method
+     */
+    private void writeListener(PrintWriter writer, String controllerName, ExecutableElement method) {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> listener =
+            processingEnv.getElementUtils().getElementValuesWithDefaults(findAnnotation(method, LISTENER));
+        List<? extends VariableElement> parameters = method.getParameters();
+
+        StringBuilder parameterTypes = new StringBuilder();
+        StringBuilder descriptors = new StringBuilder();
+        StringBuilder arguments = new StringBuilder();
+        for (int index = 0; index < parameters.size(); index++) {
+            VariableElement parameter = parameters.get(index);
+            String separator = index == 0 ? "" : ", ";
+            parameterTypes.append(separator).append(erasure(parameter.asType())).append(".class");
+            descriptors.append(separator).append(descriptor(parameter));
+            arguments.append(separator).append('(').append(parameter.asType()).append(") parameters[").append(index).append(']');
+        }
+
+        String target = method.getModifiers().contains(Modifier.STATIC)
+            ? controllerName
+            : "((" + controllerName + ") controller)";
+        String call = target + "." + method.getSimpleName() + "(" + arguments + ")";
+        String body = method.getReturnType().getKind() == TypeKind.VOID
+            ? "{ " + call + "; return null; }"
+            : "{ return " + call + "; }";
+
+        writer.println("            new " + LISTENER_DEFINITION + "(");
+        writer.println("                " + controllerName + ".class,");
+        writer.println("                " + processingEnv.getElementUtils().getConstantExpression(method.getSimpleName().toString()) + ",");
+        writer.println("                new Class<?>[] {" + parameterTypes + "},");
+        writer.println("                " + annotationLiteral(listener, "value") + ",");
+        writer.println("                " + annotationLiteral(listener, "codec") + ",");
+        writer.println("                " + annotationLiteral(listener, "filter") + ",");
+        writer.println("                " + annotationLiteral(listener, "maxInFlight") + ",");
+        writer.println("                new " + PARAMETER_DESCRIPTOR + "[] {" + descriptors + "},");
+        writer.println("                " + output(method) + ",");
+        writer.print("                (controller, parameters) -> " + body + ")");
+    }
+
+    /**
+     * Creates the source of the output definition of a listener method.
+     *
+     * @param method the listener method
+     * @return the source creating the output definition or null if the method has no send to annotation
+     */
+    private String output(ExecutableElement method) {
+        AnnotationMirror sendTo = findAnnotation(method, SEND_TO);
+        if (sendTo == null) {
+            return "null";
+        }
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+            processingEnv.getElementUtils().getElementValuesWithDefaults(sendTo);
+        return "new " + OUTPUT_DEFINITION + "("
+            + annotationLiteral(values, "value") + ", "
+            + annotationLiteral(values, "qos") + ", "
+            + annotationLiteral(values, "batchSize") + ", "
+            + annotationLiteral(values, "lingerMillis") + ", "
+            + typeLiteral(method.getReturnType()) + ")";
+    }
+
+    /**
+     * Creates the source of the parameter description with the rules of the reflective analysis:
+     * annotated parameters are topic parameters or the message body, parameters without
+     * runtime annotation are the message context or empty ones.
+     *
+     * @param parameter the method parameter
+     * @return the source creating the parameter descriptor
+     */
+    private String descriptor(VariableElement parameter) {
+        TypeMirror type = parameter.asType();
+        String erasure = erasure(type);
+        AnnotationMirror topicParameter = findAnnotation(parameter, TOPIC_PARAMETER);
+        if (topicParameter != null) {
+            Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                processingEnv.getElementUtils().getElementValuesWithDefaults(topicParameter);
+            return "new " + PARAMETER_DESCRIPTOR + "(" + annotationLiteral(values, "value") + ", " + erasure + ".class)";
+        }
+        if (findAnnotation(parameter, MESSAGE_BODY) != null) {
+            if (SIMPLE_BODY_TYPES.contains(erasure)) {
+                return "new " + PARAMETER_DESCRIPTOR + "(" + PARAMETER_DESCRIPTOR + ".PARAMETER_NAME_BODY, " + erasure + ".class)";
+            }
+            return "new " + PARAMETER_DESCRIPTOR + "(" + PARAMETER_DESCRIPTOR + ".PARAMETER_NAME_BODY, " + typeLiteral(type) + ")";
+        }
+        if (!hasRuntimeAnnotation(parameter) && MESSAGE_CONTEXT.equals(erasure)) {
+            return PARAMETER_DESCRIPTOR + ".context()";
+        }
+        return PARAMETER_DESCRIPTOR + ".empty()";
+    }
+
+    /**
+     * Writes the service registration of the generated classes.
+     */
+    private void writeServiceRegistration() {
+        if (generatedClasses.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject serviceFile = processingEnv.getFiler()
+                .createResource(StandardLocation.CLASS_OUTPUT, "", "META-INF/services/" + GENERATED_LISTENERS);
+            try (Writer writer = serviceFile.openWriter()) {
+                for (String generatedClass : generatedClasses) {
+                    writer.write(generatedClass);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                "Cannot register the listener registries: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the annotation of the element by the annotation class name.
+     *
+     * @param element the annotated element
+     * @param annotationName the qualified name of the annotation class
+     * @return the annotation or null if the element isn't annotated with it
+     */
+    private AnnotationMirror findAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the element has any annotation retained at runtime, because only these
+     * are visible for the reflective analysis.
+     *
+     * @param element the annotated element
+     * @return true if the element has runtime annotation
+     */
+    private boolean hasRuntimeAnnotation(Element element) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            Retention retention = annotation.getAnnotationType().asElement().getAnnotation(Retention.class);
+            if (retention != null && retention.value() == RetentionPolicy.RUNTIME) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the value of an annotation attribute as a Java literal.
+     *
+     * @param values the attribute values with defaults
+     * @param name the name of the attribute
+     * @return the literal of the value, the strings are quoted and escaped
+     */
+    private String annotationLiteral(Map<? extends ExecutableElement, ? extends AnnotationValue> values, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return processingEnv.getElementUtils().getConstantExpression(entry.getValue().getValue());
+            }
+        }
+        return "\"\"";
+    }
+
+    /**
+     * Returns the source of a generic type. The types without type arguments are class literals,
+     * the parameterized types are captured by a type reference.
+     *
+     * @param type the type
+     * @return the source of the type as {@link java.lang.reflect.Type}
+     */
+    private String typeLiteral(TypeMirror type) {
+        String erasure = erasure(type);
+        return erasure.equals(type.toString())
+            ? "(java.lang.reflect.Type) " + erasure + ".class"
+            : "new com.fasterxml.jackson.core.type.TypeReference<" + type + ">() { }.getType()";
+    }
+
+    /**
+     * Returns the source name of the erasure of a type.
+     *
+     * @param type the type
+     * @return the name of the erased type
+     */
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    /**
+     * Returns the simple name of the generated class. The names of the enclosing classes
+     * are joined for nested controllers.
+     *
+     * @param controller the messaging controller class
+     * @param packageName the package of the controller
+     * @return the simple name of the generated class
+     */
+    private String generatedName(TypeElement controller, String packageName) {
+        String qualifiedName = controller.getQualifiedName().toString();
+        String nestedName = packageName.isEmpty() ? qualifiedName : qualifiedName.substring(packageName.length() + 1);
+        return nestedName.replace('.', '_') + GENERATED_SUFFIX;
+    }
+}
@@ -0,0 +1,221 @@
+package com.celadonsea.palm.broker;
+
+import com.celadonsea.palm.client.MessageClient;
+import com.celadonsea.palm.client.MessageClientFactory;
+import com.celadonsea.palm.client.NioMqttMessageClient;
+import com.celadonsea.palm.config.MessageClientConfig;
+import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.mqtt.BufferPool;
+import com.celadonsea.palm.mqtt.EventLoopGroup;
+import com.celadonsea.palm.mqtt.MqttPackets;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+public class EmbeddedMqttBrokerTest {
+
+    private EventLoopGroup eventLoopGroup = new EventLoopGroup("broker-test", 2);
+
+    private EmbeddedMqttBroker broker;
+
+    private List<NioMqttMessageClient> clients = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setup() {
+        broker = new EmbeddedMqttBroker(new InetSocketAddress("localhost", 0), eventLoopGroup, new BufferPool(1024, 16));
+        broker.start();
+    }
+
+    @After
+    public void tearDown() {
+        clients.forEach(NioMqttMessageClient::disconnect);
+        broker.stop();
+        eventLoopGroup.close();
+    }
+
+    @Test
+    public void shouldRouteMessagesWithQos0And1() {
+        MessageClient subscriber = connect("subscriber", brokerUrl());
+        NioMqttMessageClient publisher = connect("publisher", brokerUrl());
+        Queue<String> messages = new ConcurrentLinkedQueue<>();
+        subscriber.subscribe(new ConsumingProperties("sensors/+/temperature"), (topic, message) -> messages.add(topic + "=" + new String(message)));
+
+        publisher.publish("20".getBytes(), new ProducingProperties("sensors/1/temperature", 0));
+        publisher.publish("21".getBytes(), new ProducingProperties("sensors/2/temperature", 1));
+        publisher.publish("22".getBytes(), new ProducingProperties("sensors/3/temperature", 2));
+        publisher.publish("ignored".getBytes(), new ProducingProperties("sensors/3/humidity", 1));
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> messages.size() == 3);
+        Assert.assertTrue(messages.containsAll(Arrays.asList("sensors/1/temperature=20", "sensors/2/temperature=21", "sensors/3/temperature=22")));
+        Assert.assertEquals(0, publisher.getUnacknowledgedCount());
+    }
+
+    @Test
+    public void shouldSendRetainedMessageToLateSubscriber() {
+        MessageClient publisher = connect("retaining", brokerUrl());
+        publisher.publish("on".getBytes(), new ProducingProperties("lights/kitchen", 1, true));
+        await().atMost(2, TimeUnit.SECONDS).until(() -> broker.getRetainedCount() == 1);
+
+        MessageClient subscriber = connect("late", brokerUrl());
+        Queue<String> messages = new ConcurrentLinkedQueue<>();
+        subscriber.subscribe(new ConsumingProperties("lights/#"), (topic, message) -> messages.add(new String(message)));
+        await().atMost(2, TimeUnit.SECONDS).until(() -> "on".equals(messages.peek()));
+
+        publisher.publish(new byte[0], new ProducingProperties("lights/kitchen", 1, true));
+        await().atMost(2, TimeUnit.SECONDS).until(() -> broker.getRetainedCount() == 0);
+    }
+
+    @Test
+    public void shouldBalanceSharedSubscription() {
+        Queue<String> first = new ConcurrentLinkedQueue<>();
+        Queue<String> second = new ConcurrentLinkedQueue<>();
+        connect("worker1", brokerUrl()).subscribe(new ConsumingProperties("$share/workers/jobs/#"), (topic, message) -> first.add(new String(message)));
+        connect("worker2", brokerUrl()).subscribe(new ConsumingProperties("$share/workers/jobs/#"), (topic, message) -> second.add(new String(message)));
+        MessageClient publisher = connect("dispatcher", brokerUrl());
+
+        for (int index = 0; index < 10; index++) {
+            publisher.publish(String.valueOf(index).getBytes(), new ProducingProperties("jobs/" + index, 1));
+        }
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> first.size() + second.size() == 10);
+        Assert.assertEquals(5, first.size());
+        Assert.assertEquals(5, second.size());
+    }
+
+    @Test
+    public void shouldDropSubscriptionsOfClosedSession() {
+        NioMqttMessageClient subscriber = connect("leaving", brokerUrl());
+        subscriber.subscribe(new ConsumingProperties("news"), (topic, message) -> { });
+        Assert.assertEquals(1, broker.getSessionCount());
+
+        subscriber.disconnect();
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> broker.getSessionCount() == 0);
+    }
+
+    @Test
+    public void shouldCloseConnectionOfTooLargePacket() throws IOException {
+        EmbeddedMqttBroker limited = new EmbeddedMqttBroker(new InetSocketAddress("localhost", 0), eventLoopGroup, new BufferPool(1024, 16), 4096);
+        limited.start();
+        try (Socket socket = new Socket("localhost", limited.getPort())) {
+            socket.setSoTimeout(2000);
+            OutputStream output = socket.getOutputStream();
+            output.write(bytes(MqttPackets.connect("oversized", 60, true)));
+            InputStream input = socket.getInputStream();
+            Assert.assertEquals(MqttPackets.CONNACK << 4, input.read());
+            await().atMost(2, TimeUnit.SECONDS).until(() -> limited.getSessionCount() == 1);
+
+            // PUBLISH header announcing a remaining length of 200 MB
+            output.write(new byte[]{(byte) (MqttPackets.PUBLISH << 4), (byte) 0x80, (byte) 0x84, (byte) 0xAF, (byte) 0x5F});
+            output.flush();
+
+            await().atMost(2, TimeUnit.SECONDS).until(() -> limited.getSessionCount() == 0);
+            input.skip(3);
+            Assert.assertEquals(-1, input.read());
+        } finally {
+            limited.stop();
+        }
+    }
+
+    @Test
+    public void shouldStartBrokerFromEmbeddedUrl() {
+        String url = "embedded://localhost:0";
+        MessageClient subscriber = MessageClientFactory.getFactory().getClient(config("embedded-subscriber", url));
+        subscriber.connect();
+        clients.add((NioMqttMessageClient) subscriber);
+        MessageClient publisher = connect("embedded-publisher", url);
+        Queue<String> messages = new ConcurrentLinkedQueue<>();
+        subscriber.subscribe(new ConsumingProperties("greeting"), (topic, message) -> messages.add(new String(message)));
+
+        publisher.publish("hello".getBytes(), new ProducingProperties("greeting", 1));
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> "hello".equals(messages.peek()));
+        EmbeddedMqttBroker embedded = EmbeddedMqttBroker.forUrl(url);
+        Assert.assertEquals(2, embedded.getSessionCount());
+        clients.forEach(NioMqttMessageClient::disconnect);
+        embedded.stop();
+    }
+
+    private byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private String brokerUrl() {
+        return "tcp://localhost:" + broker.getPort();
+    }
+
+    private NioMqttMessageClient connect(String clientId, String url) {
+        NioMqttMessageClient client = new NioMqttMessageClient(config(clientId, url), eventLoopGroup, new BufferPool(1024, 16));
+        client.connect();
+        clients.add(client);
+        return client;
+    }
+
+    private MessageClientConfig config(String clientId, String url) {
+        return new MessageClientConfig() {
+            @Override
+            public String getClientDialect() {
+                return "com.celadonsea.palm.client.NioMqttMessageClient";
+            }
+
+            @Override
+            public String getClientId() {
+                return clientId;
+            }
+
+            @Override
+            public String getBrokerUrl() {
+                return url;
+            }
+
+            @Override
+            public int getConnectionTimeout() {
+                return 2;
+            }
+
+            @Override
+            public int getQos() {
+                return 1;
+            }
+
+            @Override
+            public boolean isConnectionSecured() {
+                return false;
+            }
+
+            @Override
+            public int getMaxThread() {
+                return 2;
+            }
+
+            @Override
+            public int getThreadKeepAliveTime() {
+                return 1;
+            }
+
+            @Override
+            public int getMaxInFlight() {
+                return 100;
+            }
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package com.celadonsea.palm.broker;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SubscriptionTrieTest {
+
+    private SubscriptionTrie<String, String> trie = new SubscriptionTrie<>();
+
+    @Test
+    public void shouldMatchExactAndWildcardFilters() {
+        trie.subscribe("a/b/c", null, "exact", "exact");
+        trie.subscribe("a/+/c", null, "single", "single");
+        trie.subscribe("a/#", null, "multi", "multi");
+        trie.subscribe("#", null, "all", "all");
+        trie.subscribe("a/b", null, "other", "other");
+
+        Assert.assertEquals(Arrays.asList("all", "exact", "multi", "single"), match("a/b/c"));
+        Assert.assertEquals(Arrays.asList("all", "multi"), match("a"));
+        Assert.assertEquals(Arrays.asList("all", "multi", "other"), match("a/b"));
+        Assert.assertEquals(Collections.singletonList("all"), match("b/c"));
+    }
+
+    @Test
+    public void shouldNotMatchSystemTopicsWithFirstLevelWildcards() {
+        trie.subscribe("#", null, "all", "all");
+        trie.subscribe("+/broker", null, "single", "single");
+        trie.subscribe("$SYS/#", null, "system", "system");
+
+        Assert.assertEquals(Collections.singletonList("system"), match("$SYS/broker"));
+    }
+
+    @Test
+    public void shouldSelectOneMemberOfSharedGroupInRoundRobin() {
+        trie.subscribe("jobs/+", "workers", "first", "first");
+        trie.subscribe("jobs/+", "workers", "second", "second");
+        trie.subscribe("jobs/#", null, "audit", "audit");
+
+        List<String> matched = new ArrayList<>();
+        for (int index = 0; index < 4; index++) {
+            trie.match("jobs/" + index, matched::add);
+        }
+
+        Assert.assertEquals(4, Collections.frequency(matched, "audit"));
+        Assert.assertEquals(2, Collections.frequency(matched, "first"));
+        Assert.assertEquals(2, Collections.frequency(matched, "second"));
+    }
+
+    @Test
+    public void shouldRemoveEmptyNodesOnUnsubscribe() {
+        trie.subscribe("a/b/c", null, "key", "value");
+        trie.subscribe("a/+", "group", "key", "value");
+
+        Assert.assertTrue(trie.unsubscribe("a/b/c", null, "key"));
+        Assert.assertFalse(trie.unsubscribe("a/b/c", null, "key"));
+        Assert.assertTrue(trie.unsubscribe("a/+", "group", "key"));
+
+        Assert.assertTrue(trie.isEmpty());
+        Assert.assertTrue(match("a/b/c").isEmpty());
+    }
+
+    private List<String> match(String topic) {
+        List<String> matched = new ArrayList<>();
+        trie.match(topic, matched::add);
+        Collections.sort(matched);
+        return matched;
+    }
+}
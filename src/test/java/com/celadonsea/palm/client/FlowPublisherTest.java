@@ -0,0 +1,144 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.message.InboundMessage;
+import org.junit.Assert;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+public class FlowPublisherTest {
+
+    private FlowControlledClient messageClient = new FlowControlledClient();
+
+    private FlowPublisher<InboundMessage> flowPublisher = new FlowPublisher<>(messageClient,
+        new ConsumingProperties("my/topic"), InboundMessage::new, 4, messageClient::subscribe);
+
+    @Test
+    public void shouldEmitByDemand() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        flowPublisher.subscribe(subscriber);
+
+        arrive("first", "second", "third");
+        Assert.assertTrue(subscriber.received.isEmpty());
+
+        subscriber.subscription.request(2);
+        Assert.assertEquals("[first, second]", subscriber.received.toString());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        arrive("fourth");
+        Assert.assertEquals("[first, second, third, fourth]", subscriber.received.toString());
+    }
+
+    @Test
+    public void shouldPauseClientWhileBufferIsFull() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        flowPublisher.subscribe(subscriber);
+
+        arrive("1", "2", "3", "4");
+        Assert.assertTrue(messageClient.paused);
+        arrive("5");
+        Assert.assertEquals(1, flowPublisher.getDroppedCount());
+
+        subscriber.subscription.request(1);
+        Assert.assertTrue(messageClient.paused);
+        subscriber.subscription.request(1);
+        Assert.assertFalse(messageClient.paused);
+        Assert.assertEquals("[1, 2]", subscriber.received.toString());
+    }
+
+    @Test
+    public void shouldAcceptOneSubscriberAtATime() {
+        RecordingSubscriber first = new RecordingSubscriber();
+        RecordingSubscriber second = new RecordingSubscriber();
+        flowPublisher.subscribe(first);
+
+        flowPublisher.subscribe(second);
+        Assert.assertTrue(second.error instanceof IllegalStateException);
+
+        first.subscription.cancel();
+        RecordingSubscriber third = new RecordingSubscriber();
+        flowPublisher.subscribe(third);
+        third.subscription.request(1);
+        arrive("after cancel");
+        Assert.assertEquals("[after cancel]", third.received.toString());
+        Assert.assertEquals(1, messageClient.subscriptionCount);
+    }
+
+    @Test
+    public void shouldSignalInvalidRequest() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        flowPublisher.subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+
+        Assert.assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    private void arrive(String... payloads) {
+        for (String payload : payloads) {
+            messageClient.messageConsumer.accept("my/topic", payload.getBytes());
+        }
+    }
+
+    private static class RecordingSubscriber implements Subscriber<InboundMessage> {
+
+        private final List<String> received = new ArrayList<>();
+
+        private Subscription subscription;
+
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(InboundMessage message) {
+            received.add(new String(message.getContent()));
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    private static class FlowControlledClient extends TestMessageClient {
+
+        private BiConsumer<String, byte[]> messageConsumer;
+
+        private int subscriptionCount;
+
+        private boolean paused;
+
+        FlowControlledClient() {
+            super(null);
+        }
+
+        @Override
+        public void subscribe(ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer) {
+            this.messageConsumer = messageConsumer;
+            subscriptionCount++;
+        }
+
+        @Override
+        public void pause(ConsumingProperties consumingProperties) {
+            paused = true;
+        }
+
+        @Override
+        public void resume(ConsumingProperties consumingProperties) {
+            paused = false;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.config.MessageClientConfig;
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.core.ProducingProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+public class InMemoryMessageClientTest {
+
+    private List<InMemoryMessageClient> clients = new CopyOnWriteArrayList<>();
+
+    private InMemoryBroker broker;
+
+    @After
+    public void tearDown() {
+        clients.forEach(InMemoryMessageClient::disconnect);
+        if (broker != null) {
+            InMemoryBroker.unregister(broker);
+        }
+    }
+
+    @Test
+    public void shouldRouteMessagesByWildcards() {
+        broker = InMemoryBroker.forUrl("memory://routing");
+        MessageClient publisher = MessageClientFactory.getFactory().getClient(config("memory://routing", 1));
+        publisher.connect();
+        clients.add((InMemoryMessageClient) publisher);
+        InMemoryMessageClient subscriber = connect(1);
+        Queue<String> single = new ConcurrentLinkedQueue<>();
+        Queue<String> multi = new ConcurrentLinkedQueue<>();
+        subscriber.subscribe(new ConsumingProperties("sensors/+/temperature"), (topic, message) -> single.add(topic + "=" + new String(message)));
+        subscriber.subscribe(new ConsumingProperties("sensors/#"), (topic, message) -> multi.add(topic + "=" + new String(message)));
+
+        publisher.publish("21".getBytes(), new ProducingProperties("sensors/1/temperature"));
+        publisher.publish("55".getBytes(), new ProducingProperties("sensors/1/humidity"));
+        publisher.publish("x".getBytes(), new ProducingProperties("devices/1/temperature"));
+
+        await().atMost(1, TimeUnit.SECONDS).until(() -> multi.size() == 2);
+        Assert.assertArrayEquals(new String[] {"sensors/1/temperature=21", "sensors/1/humidity=55"}, multi.toArray());
+        Assert.assertArrayEquals(new String[] {"sensors/1/temperature=21"}, single.toArray());
+    }
+
+    @Test
+    public void shouldBalanceSharedSubscription() {
+        broker = new InMemoryBroker("shared");
+        InMemoryMessageClient first = connect(1);
+        InMemoryMessageClient second = connect(1);
+        Queue<String> firstMessages = new ConcurrentLinkedQueue<>();
+        Queue<String> secondMessages = new ConcurrentLinkedQueue<>();
+        first.subscribe(new ConsumingProperties("$share/workers/jobs/+"), (topic, message) -> firstMessages.add(new String(message)));
+        second.subscribe(new ConsumingProperties("$share/workers/jobs/+"), (topic, message) -> secondMessages.add(new String(message)));
+
+        for (int index = 0; index < 4; index++) {
+            first.publish(String.valueOf(index).getBytes(), new ProducingProperties("jobs/import"));
+        }
+
+        await().atMost(1, TimeUnit.SECONDS).until(() -> firstMessages.size() + secondMessages.size() == 4);
+        Assert.assertEquals(2, firstMessages.size());
+        Assert.assertEquals(2, secondMessages.size());
+    }
+
+    @Test
+    public void shouldEmulateQualityOfServiceOfFullQueue() {
+        broker = new InMemoryBroker("qos", 0, 2, 50);
+        InMemoryMessageClient client = connect(1);
+        Queue<String> messages = new ConcurrentLinkedQueue<>();
+        ConsumingProperties consumingProperties = new ConsumingProperties("events");
+        client.subscribe(consumingProperties, (topic, message) -> messages.add(new String(message)));
+        client.pause(consumingProperties);
+
+        client.publish("a".getBytes(), new ProducingProperties("events", 1));
+        client.publish("b".getBytes(), new ProducingProperties("events", 1));
+        client.publish("c".getBytes(), new ProducingProperties("events", 0));
+        try {
+            client.publish("d".getBytes(), new ProducingProperties("events", 1));
+            Assert.fail("QoS 1 message should not be dropped");
+        } catch (ConnectionException e) {
+            Assert.assertTrue(e.getMessage().contains("queue of the subscription is full"));
+        }
+        Assert.assertEquals(1, broker.getDroppedCount());
+        Assert.assertTrue(messages.isEmpty());
+
+        client.resume(consumingProperties);
+
+        await().atMost(1, TimeUnit.SECONDS).until(() -> messages.size() == 2);
+        Assert.assertArrayEquals(new String[] {"a", "b"}, messages.toArray());
+    }
+
+    @Test
+    public void shouldDelayDeliveriesWithLatency() {
+        broker = new InMemoryBroker("latency", 100, InMemoryBroker.DEFAULT_QUEUE_CAPACITY, InMemoryBroker.DEFAULT_BLOCK_TIMEOUT_MILLIS);
+        InMemoryMessageClient client = connect(0);
+        Queue<Long> arrivals = new ConcurrentLinkedQueue<>();
+        client.subscribe(new ConsumingProperties("slow"), (topic, message) -> arrivals.add(System.nanoTime()));
+
+        long start = System.nanoTime();
+        client.publish("late".getBytes(), new ProducingProperties("slow"));
+
+        await().atMost(1, TimeUnit.SECONDS).until(() -> !arrivals.isEmpty());
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(arrivals.peek() - start) >= 90);
+    }
+
+    @Test(expected = ConnectionException.class)
+    public void shouldNotPublishBeforeConnect() {
+        broker = new InMemoryBroker("offline");
+        new InMemoryMessageClient(config("memory://offline", 0), broker).publish("a".getBytes(), new ProducingProperties("any"));
+    }
+
+    private InMemoryMessageClient connect(int qos) {
+        InMemoryMessageClient client = new InMemoryMessageClient(config("memory://" + broker.getName(), qos), broker);
+        client.connect();
+        clients.add(client);
+        return client;
+    }
+
+    private MessageClientConfig config(String brokerUrl, int qos) {
+        return new MessageClientConfig() {
+            @Override
+            public String getClientDialect() {
+                return "com.celadonsea.palm.client.InMemoryMessageClient";
+            }
+
+            @Override
+            public String getClientId() {
+                return "memoryTest";
+            }
+
+            @Override
+            public String getBrokerUrl() {
+                return brokerUrl;
+            }
+
+            @Override
+            public int getConnectionTimeout() {
+                return 0;
+            }
+
+            @Override
+            public int getQos() {
+                return qos;
+            }
+
+            @Override
+            public boolean isConnectionSecured() {
+                return false;
+            }
+
+            @Override
+            public int getMaxThread() {
+                return 2;
+            }
+
+            @Override
+            public int getThreadKeepAliveTime() {
+                return 1;
+            }
+        };
+    }
+}
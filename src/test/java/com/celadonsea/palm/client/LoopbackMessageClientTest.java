@@ -0,0 +1,163 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.TestPojo;
+import com.celadonsea.palm.codec.JacksonMessageCodec;
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+public class LoopbackMessageClientTest {
+
+    private RecordingClient messageClient = new RecordingClient();
+
+    private LoopbackMessageClient loopbackClient = new LoopbackMessageClient(messageClient, Runnable::run,
+        Collections.singletonList("local/#"), LoopbackMessageClient.DEFAULT_ECHO_TIMEOUT_MILLIS);
+
+    private CountingCodec codec = new CountingCodec();
+
+    private List<String> received = new ArrayList<>();
+
+    @Test
+    public void shouldDeliverLocallyAndDropBrokerCopy() {
+        loopbackClient.subscribe(new ConsumingProperties("sensors/+"), (topic, message) -> received.add(topic + "=" + new String(message)));
+
+        loopbackClient.publish("21".getBytes(), new ProducingProperties("sensors/1", 1));
+        Assert.assertEquals(Collections.singletonList("sensors/1=21"), received);
+        Assert.assertEquals(1, messageClient.getPublishedMessages().get(messageClient.getMessageKey("sensors/1", 1)).size());
+
+        BiConsumer<String, byte[]> brokerConsumer = messageClient.consumers.get("sensors/+");
+        brokerConsumer.accept("sensors/1", "21".getBytes());
+        brokerConsumer.accept("sensors/1", "21".getBytes());
+        brokerConsumer.accept("sensors/2", "22".getBytes());
+
+        Assert.assertEquals(3, received.size());
+        Assert.assertEquals("sensors/1=21", received.get(1));
+        Assert.assertEquals("sensors/2=22", received.get(2));
+    }
+
+    @Test
+    public void shouldNotExpectBrokerCopyOfFailedPublishing() {
+        loopbackClient.subscribe(new ConsumingProperties("sensors/+"), (topic, message) -> received.add(topic + "=" + new String(message)));
+        messageClient.failing = true;
+
+        try {
+            loopbackClient.publish("21".getBytes(), new ProducingProperties("sensors/1", 1));
+            Assert.fail("Publishing should fail");
+        } catch (ConnectionException e) {
+            Assert.assertTrue(received.isEmpty());
+        }
+        messageClient.consumers.get("sensors/+").accept("sensors/1", "21".getBytes());
+
+        Assert.assertEquals(Collections.singletonList("sensors/1=21"), received);
+    }
+
+    @Test
+    public void shouldExpectBrokerCopyOfOriginalPayload() {
+        loopbackClient.subscribe(new ConsumingProperties("sensors/+"), (topic, message) -> received.add(topic));
+        byte[] message = "21".getBytes();
+
+        loopbackClient.publish(message, new ProducingProperties("sensors/1", 1));
+        message[0] = '3';
+        messageClient.consumers.get("sensors/+").accept("sensors/1", "21".getBytes());
+
+        Assert.assertEquals(1, received.size());
+    }
+
+    @Test
+    public void shouldNotPublishLocalOnlyTopicsToBroker() {
+        loopbackClient.subscribe(new ConsumingProperties("local/+"), (topic, message) -> received.add(topic + "=" + new String(message)));
+
+        loopbackClient.publish("ping".getBytes(), new ProducingProperties("local/cache"));
+
+        Assert.assertEquals(Collections.singletonList("local/cache=ping"), received);
+        Assert.assertTrue(messageClient.getPublishedMessages().isEmpty());
+    }
+
+    @Test
+    public void shouldPassPublishedObjectWithoutEncoding() {
+        List<Object> objects = new ArrayList<>();
+        loopbackClient.subscribe(new ConsumingProperties("local/pojo"), new LocalMessageConsumer() {
+            @Override
+            public boolean acceptObject(String topic, Object message) {
+                return objects.add(message);
+            }
+
+            @Override
+            public void accept(String topic, byte[] message) {
+                received.add(new String(message));
+            }
+        });
+        TestPojo pojo = new TestPojo(1, "local");
+
+        loopbackClient.publishObject(pojo, codec, new ProducingProperties("local/pojo"));
+
+        Assert.assertEquals(1, objects.size());
+        Assert.assertSame(pojo, objects.get(0));
+        Assert.assertTrue(received.isEmpty());
+        Assert.assertEquals(0, codec.encodeCount);
+    }
+
+    @Test
+    public void shouldEncodePublishedObjectOnceForBrokerAndPlainConsumers() {
+        loopbackClient.subscribe(new ConsumingProperties("pojo/+"), (topic, message) -> received.add(new String(message)));
+        loopbackClient.subscribe(new ConsumingProperties("pojo/#"), (topic, message) -> received.add(new String(message)));
+
+        loopbackClient.publishObject(new TestPojo(2, "remote"), codec, new ProducingProperties("pojo/1"));
+
+        Assert.assertEquals(2, received.size());
+        Assert.assertEquals("{\"a\":2,\"b\":\"remote\"}", received.get(0));
+        Assert.assertEquals(received.get(0), received.get(1));
+        Assert.assertEquals(1, messageClient.getPublishedMessages().get(messageClient.getMessageKey("pojo/1", 0)).size());
+        Assert.assertEquals(1, codec.encodeCount);
+    }
+
+    private static class RecordingClient extends TestMessageClient {
+
+        private Map<String, BiConsumer<String, byte[]>> consumers = new HashMap<>();
+
+        private boolean failing;
+
+        RecordingClient() {
+            super(null);
+        }
+
+        @Override
+        public void publish(byte[] message, ProducingProperties producingProperties) {
+            if (failing) {
+                throw new ConnectionException("Broker is not available");
+            }
+            super.publish(message, producingProperties);
+        }
+
+        @Override
+        public void subscribe(ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer) {
+            consumers.put(consumingProperties.getTopic(), messageConsumer);
+        }
+    }
+
+    private static class CountingCodec extends JacksonMessageCodec {
+
+        private int encodeCount;
+
+        CountingCodec() {
+            super("json", new ObjectMapper(), null);
+        }
+
+        @Override
+        public byte[] encode(Object message) throws IOException {
+            encodeCount++;
+            return super.encode(message);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.config.MessageClientConfig;
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.mqtt.BufferPool;
+import com.celadonsea.palm.mqtt.EventLoopGroup;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+public class NioMqttMessageClientTest {
+
+    private StandInMqttBroker broker;
+
+    private EventLoopGroup eventLoopGroup = new EventLoopGroup("mqtt-test", 1);
+
+    private BufferPool bufferPool = new BufferPool(1024, 16);
+
+    private List<NioMqttMessageClient> clients = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setup() throws IOException {
+        broker = new StandInMqttBroker();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        clients.forEach(NioMqttMessageClient::disconnect);
+        broker.close();
+        eventLoopGroup.close();
+    }
+
+    @Test
+    public void shouldPublishAndReceiveWithEveryQos() {
+        NioMqttMessageClient subscriber = connect("subscriber", 0);
+        NioMqttMessageClient publisher = connect("publisher", 0);
+        Queue<String> messages = new ConcurrentLinkedQueue<>();
+        subscriber.subscribe(new ConsumingProperties("sensors/+/temperature"), (topic, message) -> messages.add(topic + "=" + new String(message)));
+
+        publisher.publish("20".getBytes(), new ProducingProperties("sensors/1/temperature", 0));
+        publisher.publish("21".getBytes(), new ProducingProperties("sensors/2/temperature", 1));
+        publisher.publish(ByteBuffer.wrap("xx22".getBytes(), 2, 2), new ProducingProperties("sensors/3/temperature", 2));
+        publisher.publish("ignored".getBytes(), new ProducingProperties("sensors/3/humidity", 1));
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> messages.size() == 3 && publisher.getUnacknowledgedCount() == 0);
+        Assert.assertTrue(messages.containsAll(Arrays.asList("sensors/1/temperature=20", "sensors/2/temperature=21", "sensors/3/temperature=22")));
+    }
+
+    @Test
+    public void shouldDecodePacketsLargerThanPooledBuffer() {
+        NioMqttMessageClient client = connect("large", 0);
+        Queue<byte[]> messages = new ConcurrentLinkedQueue<>();
+        client.subscribe(new ConsumingProperties("large"), (topic, message) -> messages.add(message));
+        byte[] payload = new byte[100_000];
+        for (int index = 0; index < payload.length; index++) {
+            payload[index] = (byte) index;
+        }
+
+        client.publish(payload, new ProducingProperties("large", 1));
+        client.publish("small".getBytes(), new ProducingProperties("large", 1));
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> messages.size() == 2);
+        Assert.assertTrue(messages.stream().anyMatch(message -> Arrays.equals(payload, message)));
+        Assert.assertTrue(messages.stream().anyMatch(message -> "small".equals(new String(message))));
+    }
+
+    @Test
+    public void shouldStopReadingWhilePaused() throws InterruptedException {
+        NioMqttMessageClient subscriber = connect("paused-subscriber", 0);
+        NioMqttMessageClient publisher = connect("paused-publisher", 0);
+        Queue<String> messages = new ConcurrentLinkedQueue<>();
+        ConsumingProperties consumingProperties = new ConsumingProperties("paused/#");
+        subscriber.subscribe(consumingProperties, (topic, message) -> messages.add(new String(message)));
+
+        subscriber.pause(consumingProperties);
+        for (int index = 0; index < 10; index++) {
+            publisher.publish(String.valueOf(index).getBytes(), new ProducingProperties("paused/" + index, 1));
+        }
+        await().atMost(2, TimeUnit.SECONDS).until(() -> broker.getPublishCount() == 10);
+        Thread.sleep(200);
+        Assert.assertTrue(messages.isEmpty());
+
+        subscriber.resume(consumingProperties);
+        await().atMost(2, TimeUnit.SECONDS).until(() -> messages.size() == 10);
+    }
+
+    @Test
+    public void shouldServeManyConnectionsWithOneEventLoop() {
+        Queue<String> messages = new ConcurrentLinkedQueue<>();
+        for (int index = 0; index < 20; index++) {
+            NioMqttMessageClient client = connect("client" + index, 0);
+            client.subscribe(new ConsumingProperties("broadcast"), (topic, message) -> messages.add(new String(message)));
+        }
+        Assert.assertEquals(20, broker.getConnectionCount());
+
+        clients.get(0).publish("hello".getBytes(), new ProducingProperties("broadcast"));
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> messages.size() == 20);
+    }
+
+    @Test
+    public void shouldCoalesceBurstOfMessages() {
+        NioMqttMessageClient subscriber = connect("burst-subscriber", 0);
+        NioMqttMessageClient publisher = connect("burst-publisher", 0);
+        Queue<String> messages = new ConcurrentLinkedQueue<>();
+        subscriber.subscribe(new ConsumingProperties("burst/#"), (topic, message) -> messages.add(new String(message)));
+
+        for (int index = 0; index < 1000; index++) {
+            publisher.publish(String.valueOf(index).getBytes(), new ProducingProperties("burst/" + (index % 10), 1));
+        }
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> messages.size() == 1000 && publisher.getUnacknowledgedCount() == 0);
+        Assert.assertEquals(1000, broker.getPublishCount());
+    }
+
+    @Test
+    public void shouldReleaseInFlightWindowOnAcknowledgement() {
+        NioMqttMessageClient publisher = connect("windowed", 1);
+
+        for (int index = 0; index < 250; index++) {
+            publisher.publisher().topic("window/{id}").variable("id", index).qos(1).message(String.valueOf(index)).publish();
+        }
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> publisher.getUnacknowledgedCount() == 0);
+        Assert.assertEquals(250, broker.getPublishCount());
+    }
+
+    @Test
+    public void shouldReconnectAndResubscribeAfterConnectionLoss() throws IOException {
+        NioMqttMessageClient client = connect("reconnecting", 0);
+        Queue<String> messages = new ConcurrentLinkedQueue<>();
+        client.subscribe(new ConsumingProperties("state"), (topic, message) -> messages.add(new String(message)));
+
+        broker.dropConnections();
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> {
+            try {
+                client.publish("again".getBytes(), new ProducingProperties("state"));
+                return !messages.isEmpty();
+            } catch (ConnectionException e) {
+                return false;
+            }
+        });
+        Assert.assertEquals("again", messages.peek());
+    }
+
+    @Test
+    public void shouldBeCreatedByFactory() {
+        MessageClient client = MessageClientFactory.getFactory().getClient(config("factory", 0));
+
+        Assert.assertTrue(client instanceof NioMqttMessageClient);
+    }
+
+    @Test(expected = ConnectionException.class)
+    public void shouldFailIfBrokerIsNotAvailable() throws IOException {
+        broker.close();
+
+        connect("offline", 0);
+    }
+
+    private NioMqttMessageClient connect(String clientId, int qos) {
+        NioMqttMessageClient client = new NioMqttMessageClient(config(clientId, qos), eventLoopGroup, bufferPool);
+        client.connect();
+        clients.add(client);
+        return client;
+    }
+
+    private MessageClientConfig config(String clientId, int qos) {
+        return new MessageClientConfig() {
+            @Override
+            public String getClientDialect() {
+                return "com.celadonsea.palm.client.NioMqttMessageClient";
+            }
+
+            @Override
+            public String getClientId() {
+                return clientId;
+            }
+
+            @Override
+            public String getBrokerUrl() {
+                return broker.getUrl();
+            }
+
+            @Override
+            public int getConnectionTimeout() {
+                return 2;
+            }
+
+            @Override
+            public int getQos() {
+                return qos;
+            }
+
+            @Override
+            public boolean isConnectionSecured() {
+                return false;
+            }
+
+            @Override
+            public int getMaxThread() {
+                return 2;
+            }
+
+            @Override
+            public int getThreadKeepAliveTime() {
+                return 1;
+            }
+
+            @Override
+            public int getMaxInFlight() {
+                return 100;
+            }
+        };
+    }
+}
@@ -0,0 +1,107 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.core.HashedWheelTimer;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.message.RequestEnvelope;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+public class RequestingMessageClientTest {
+
+    private HashedWheelTimer timer = new HashedWheelTimer("request-test");
+
+    private ReplyingClient messageClient = new ReplyingClient();
+
+    private RequestingMessageClient requestingClient = new RequestingMessageClient(messageClient, timer);
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void shouldCompleteRequestWithReply() throws Exception {
+        CompletableFuture<byte[]> first = requestingClient.request("service/echo", "ping".getBytes(), 5000);
+        CompletableFuture<byte[]> second = requestingClient.request("service/echo", "pong".getBytes(), 5000);
+
+        Assert.assertEquals(1, messageClient.subscriptionCount);
+        Assert.assertTrue(messageClient.replyTopic.endsWith("/#"));
+        List<byte[]> requests = messageClient.getPublishedMessages().get(messageClient.getMessageKey("service/echo", 1));
+        RequestEnvelope secondRequest = RequestEnvelope.unwrap(requests.get(1));
+        Assert.assertEquals("pong", new String(secondRequest.getPayload()));
+
+        messageClient.replyConsumer.accept(secondRequest.getReplyTopic(), "second reply".getBytes());
+
+        Assert.assertEquals("second reply", new String(second.get(1, TimeUnit.SECONDS)));
+        Assert.assertFalse(first.isDone());
+        Assert.assertEquals(1, requestingClient.getPendingRequests());
+    }
+
+    @Test
+    public void shouldExpireRequestWithoutReply() throws Exception {
+        CompletableFuture<byte[]> reply = requestingClient.request("service/slow", "ping".getBytes(), 50);
+
+        try {
+            reply.get(5, TimeUnit.SECONDS);
+            Assert.fail("Request should expire");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Assert.assertEquals(0, requestingClient.getPendingRequests());
+
+        RequestEnvelope request = RequestEnvelope.unwrap(
+            messageClient.getPublishedMessages().get(messageClient.getMessageKey("service/slow", 1)).get(0));
+        messageClient.replyConsumer.accept(request.getReplyTopic(), "late".getBytes());
+        Assert.assertEquals(0, requestingClient.getPendingRequests());
+    }
+
+    @Test
+    public void shouldFailRequestIfItCannotBePublished() {
+        messageClient.failing = true;
+
+        CompletableFuture<byte[]> reply = requestingClient.request("service/echo", "ping".getBytes(), 5000);
+
+        Assert.assertTrue(reply.isCompletedExceptionally());
+        Assert.assertEquals(0, requestingClient.getPendingRequests());
+    }
+
+    private static class ReplyingClient extends TestMessageClient {
+
+        private String replyTopic;
+
+        private BiConsumer<String, byte[]> replyConsumer;
+
+        private int subscriptionCount;
+
+        private boolean failing;
+
+        ReplyingClient() {
+            super(null);
+        }
+
+        @Override
+        public void subscribe(ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer) {
+            replyTopic = consumingProperties.getTopic();
+            replyConsumer = messageConsumer;
+            subscriptionCount++;
+        }
+
+        @Override
+        public void publish(byte[] message, ProducingProperties producingProperties) {
+            if (failing) {
+                throw new ConnectionException("Connection lost");
+            }
+            super.publish(message, producingProperties);
+        }
+    }
+}
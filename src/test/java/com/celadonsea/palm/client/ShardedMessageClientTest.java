@@ -0,0 +1,193 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.broker.EmbeddedMqttBroker;
+import com.celadonsea.palm.config.MessageClientConfig;
+import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.core.ProducingProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.awaitility.Awaitility.await;
+
+public class ShardedMessageClientTest {
+
+    private InMemoryBroker broker;
+
+    private ShardedMessageClient client;
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.disconnect();
+        }
+        if (broker != null) {
+            InMemoryBroker.unregister(broker);
+        }
+    }
+
+    @Test
+    public void shouldPublishMessagesOfTopicByOneShard() {
+        client = new ShardedMessageClient(config("com.celadonsea.palm.client.TestMessageClient", "test://", "sharded"), 4);
+        client.connect();
+
+        for (int index = 0; index < 100; index++) {
+            client.publish(String.valueOf(index).getBytes(), new ProducingProperties("topic/" + (index % 10)));
+        }
+
+        List<TestMessageClient> shards = client.getShards().stream().map(TestMessageClient.class::cast).collect(Collectors.toList());
+        for (int topic = 0; topic < 10; topic++) {
+            String key = shards.get(0).getMessageKey("topic/" + topic, TestMessageClient.DEFAULT_QOS);
+            List<TestMessageClient> publishers = shards.stream()
+                .filter(shard -> shard.getPublishedMessages().containsKey(key))
+                .collect(Collectors.toList());
+            Assert.assertEquals(1, publishers.size());
+            List<String> messages = publishers.get(0).getPublishedMessages().get(key).stream().map(String::new).collect(Collectors.toList());
+            final int expectedTopic = topic;
+            Assert.assertEquals(IntStream.range(0, 10).mapToObj(index -> String.valueOf(index * 10 + expectedTopic)).collect(Collectors.toList()), messages);
+        }
+        Assert.assertTrue(shards.stream().filter(shard -> !shard.getPublishedMessages().isEmpty()).count() > 1);
+    }
+
+    @Test
+    public void shouldMergeMessagesOfShardsWithoutDuplicates() {
+        broker = InMemoryBroker.forUrl("memory://sharded");
+        client = new ShardedMessageClient(config("com.celadonsea.palm.client.InMemoryMessageClient", "memory://sharded", "sharded"), 3);
+        client.connect();
+        Queue<String> plain = new ConcurrentLinkedQueue<>();
+        Queue<String> shared = new ConcurrentLinkedQueue<>();
+        client.subscribe(new ConsumingProperties("jobs/#"), (topic, message) -> plain.add(new String(message)));
+        client.subscribe(new ConsumingProperties("$share/workers/jobs/+"), (topic, message) -> shared.add(new String(message)));
+
+        for (int index = 0; index < 30; index++) {
+            client.publish(String.valueOf(index).getBytes(), new ProducingProperties("jobs/" + (index % 5), 1));
+        }
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> plain.size() == 30 && shared.size() == 30);
+        Assert.assertEquals(30, plain.stream().distinct().count());
+        Assert.assertEquals(30, shared.stream().distinct().count());
+    }
+
+    @Test
+    public void shouldOpenConnectionPerShardWithSuffixedClientId() {
+        String url = "embedded://127.0.0.1:0";
+        client = new ShardedMessageClient(config("com.celadonsea.palm.client.NioMqttMessageClient", url, "sharded"), 3);
+        client.connect();
+        EmbeddedMqttBroker embedded = EmbeddedMqttBroker.forUrl(url);
+        try {
+            Assert.assertEquals(3, embedded.getSessionCount());
+        } finally {
+            client.disconnect();
+            embedded.stop();
+        }
+    }
+
+    @Test
+    public void shouldPassConfigurationToShards() {
+        client = new ShardedMessageClient(config("com.celadonsea.palm.client.TestMessageClient", "test://", "sharded"), 3);
+
+        for (MessageClient shard : client.getShards()) {
+            MessageClientConfig shardConfig = ((TestMessageClient) shard).getMessageClientConfig();
+            Assert.assertEquals(4096, shardConfig.getMaxPacketSize());
+            Assert.assertEquals(1, shardConfig.getMaxThread());
+            Assert.assertEquals("test://", shardConfig.getBrokerUrl());
+        }
+    }
+
+    @Test
+    public void shouldSubscribeSharedTopicsByEveryShardWithoutTopicTransformer() {
+        List<MessageClient> shards = IntStream.range(0, 3).mapToObj(index -> new SubscriptionRecordingClient()).collect(Collectors.toList());
+        client = new ShardedMessageClient(shards, "workers");
+
+        client.subscribe(new ConsumingProperties("jobs/+"), (topic, message) -> { });
+        client.subscribe(new ConsumingProperties("$share/others/jobs/#"), (topic, message) -> { });
+
+        for (MessageClient shard : shards) {
+            Assert.assertEquals(Arrays.asList("$share/workers/jobs/+", "$share/others/jobs/#"), ((SubscriptionRecordingClient) shard).topics);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveShardCount() {
+        new ShardedMessageClient(config("com.celadonsea.palm.client.TestMessageClient", "test://", "sharded"), 0);
+    }
+
+    private MessageClientConfig config(String dialect, String brokerUrl, String clientId) {
+        return new MessageClientConfig() {
+            @Override
+            public String getClientDialect() {
+                return dialect;
+            }
+
+            @Override
+            public String getClientId() {
+                return clientId;
+            }
+
+            @Override
+            public String getBrokerUrl() {
+                return brokerUrl;
+            }
+
+            @Override
+            public int getConnectionTimeout() {
+                return 2;
+            }
+
+            @Override
+            public int getQos() {
+                return 1;
+            }
+
+            @Override
+            public boolean isConnectionSecured() {
+                return false;
+            }
+
+            @Override
+            public int getMaxThread() {
+                return 2;
+            }
+
+            @Override
+            public int getThreadKeepAliveTime() {
+                return 1;
+            }
+
+            @Override
+            public int getMaxPacketSize() {
+                return 4096;
+            }
+        };
+    }
+
+    private static class SubscriptionRecordingClient extends TestMessageClient {
+
+        private List<String> topics = new ArrayList<>();
+
+        SubscriptionRecordingClient() {
+            super(null);
+        }
+
+        @Override
+        public void subscribe(ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer) {
+            topics.add(consumingProperties.getTopic());
+        }
+
+        @Override
+        public Function<String, String> topicTransformer() {
+            return null;
+        }
+    }
+}
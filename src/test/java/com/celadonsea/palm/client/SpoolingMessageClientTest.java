@@ -0,0 +1,71 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.publisher.MessageSpool;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+public class SpoolingMessageClientTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldSpoolMessagesWhileBrokerIsUnreachable() throws IOException {
+        boolean[] brokerAvailable = {false};
+        TestMessageClient testMessageClient = new TestMessageClient(null) {
+            @Override
+            public void connect() {
+                brokerAvailable[0] = true;
+            }
+
+            @Override
+            public void publish(byte[] message, ProducingProperties producingProperties) {
+                if (!brokerAvailable[0]) {
+                    throw new ConnectionException("Broker is unreachable");
+                }
+                super.publish(message, producingProperties);
+            }
+        };
+        MessageSpool messageSpool = new MessageSpool(temporaryFolder.newFolder(), 1024 * 1024, 64 * 1024);
+        SpoolingMessageClient messageClient = new SpoolingMessageClient(testMessageClient, messageSpool);
+
+        messageClient.publisher().topic("spool/{id}").variable("id", 1).message("first").publish();
+        messageClient.publisher().topic("spool/{id}").variable("id", 1).message("second").publish();
+        Assert.assertEquals(2, messageSpool.size());
+
+        messageClient.connect();
+        await().atMost(1, TimeUnit.SECONDS).until(messageSpool::isEmpty);
+        messageClient.publisher().topic("spool/{id}").variable("id", 1).message("third").publish();
+
+        List<byte[]> messages = testMessageClient.getPublishedMessages().get(testMessageClient.getMessageKey("spool/1", 0));
+        Assert.assertEquals(3, messages.size());
+        Assert.assertEquals("first", new String(messages.get(0)));
+        Assert.assertEquals("third", new String(messages.get(2)));
+        messageClient.shutdown();
+    }
+
+    @Test
+    public void shouldPassMessageArrayToConnectedClientWithoutCopy() throws IOException {
+        TestMessageClient testMessageClient = new TestMessageClient(null);
+        MessageSpool messageSpool = new MessageSpool(temporaryFolder.newFolder(), 1024 * 1024, 64 * 1024);
+        SpoolingMessageClient messageClient = new SpoolingMessageClient(testMessageClient, messageSpool);
+        byte[] message = "direct".getBytes();
+
+        messageClient.publish(message, new ProducingProperties("spool/direct", 1));
+
+        List<byte[]> messages = testMessageClient.getPublishedMessages().get(testMessageClient.getMessageKey("spool/direct", 1));
+        Assert.assertSame(message, messages.get(0));
+        Assert.assertTrue(messageSpool.isEmpty());
+        messageClient.shutdown();
+    }
+}
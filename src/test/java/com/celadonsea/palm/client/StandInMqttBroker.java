@@ -0,0 +1,195 @@
+package com.celadonsea.palm.client;
+
+import com.celadonsea.palm.topic.TopicFormat;
+import com.celadonsea.palm.topic.TopicMatcher;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal blocking MQTT 3.1.1 broker for the tests. It accepts every connection, routes the
+ * messages to the matching subscriptions with QoS 0 and completes the QoS 1 and 2 flows of
+ * the publishers. It's written with plain streams, so it doesn't share code with the client.
+ */
+@Slf4j
+public class StandInMqttBroker implements AutoCloseable {
+
+    private static final TopicFormat TOPIC_FORMAT = new TopicFormat('/', '+', '#');
+
+    private final ServerSocket serverSocket;
+
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+    private final Map<Socket, List<TopicMatcher>> subscriptions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger publishCount = new AtomicInteger();
+
+    public StandInMqttBroker() throws IOException {
+        serverSocket = new ServerSocket(0);
+        Thread acceptor = new Thread(this::accept, "stand-in-broker");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public String getUrl() {
+        return "tcp://localhost:" + serverSocket.getLocalPort();
+    }
+
+    public int getPublishCount() {
+        return publishCount.get();
+    }
+
+    public int getConnectionCount() {
+        return sockets.size();
+    }
+
+    public void dropConnections() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                Thread reader = new Thread(() -> serve(socket), "stand-in-connection");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            while (true) {
+                int header = input.readUnsignedByte();
+                byte[] body = new byte[readRemainingLength(input)];
+                input.readFully(body);
+                handle(socket, header >>> 4, header & 0x0F, new DataInputStream(new ByteArrayInputStream(body)), body.length);
+            }
+        } catch (IOException e) {
+            log.debug("Stand-in connection closed: {}", e.getMessage());
+        } finally {
+            subscriptions.remove(socket);
+            sockets.remove(socket);
+        }
+    }
+
+    private void handle(Socket socket, int type, int flags, DataInputStream body, int length) throws IOException {
+        switch (type) {
+            case 1:
+                write(socket, 0x20, new byte[] {0, 0});
+                break;
+            case 3:
+                publishCount.incrementAndGet();
+                byte[] topic = new byte[body.readUnsignedShort()];
+                body.readFully(topic);
+                int qos = (flags >> 1) & 0x03;
+                int packetId = qos > 0 ? body.readUnsignedShort() : 0;
+                byte[] payload = new byte[length - 2 - topic.length - (qos > 0 ? 2 : 0)];
+                body.readFully(payload);
+                if (qos == 1) {
+                    write(socket, 0x40, shortBytes(packetId));
+                } else if (qos == 2) {
+                    write(socket, 0x50, shortBytes(packetId));
+                }
+                route(new String(topic, StandardCharsets.UTF_8), topic, payload);
+                break;
+            case 6:
+                write(socket, 0x70, shortBytes(body.readUnsignedShort()));
+                break;
+            case 8:
+                int subscribeId = body.readUnsignedShort();
+                ByteArrayOutputStream codes = new ByteArrayOutputStream();
+                codes.write(shortBytes(subscribeId));
+                while (body.available() > 0) {
+                    byte[] filter = new byte[body.readUnsignedShort()];
+                    body.readFully(filter);
+                    body.readUnsignedByte();
+                    subscriptions.computeIfAbsent(socket, key -> new CopyOnWriteArrayList<>())
+                        .add(TopicMatcher.compile(new String(filter, StandardCharsets.UTF_8), TOPIC_FORMAT));
+                    codes.write(0);
+                }
+                write(socket, 0x90, codes.toByteArray());
+                break;
+            case 12:
+                write(socket, 0xD0, new byte[0]);
+                break;
+            case 14:
+                socket.close();
+                break;
+            default:
+                log.warn("Stand-in broker ignores packet type {}", type);
+        }
+    }
+
+    private void route(String topic, byte[] topicBytes, byte[] payload) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(body);
+        data.writeShort(topicBytes.length);
+        data.write(topicBytes);
+        data.write(payload);
+        for (Map.Entry<Socket, List<TopicMatcher>> subscription : subscriptions.entrySet()) {
+            if (subscription.getValue().stream().anyMatch(matcher -> matcher.matches(topic))) {
+                write(subscription.getKey(), 0x30, body.toByteArray());
+            }
+        }
+    }
+
+    private void write(Socket socket, int header, byte[] body) throws IOException {
+        ByteArrayOutputStream packet = new ByteArrayOutputStream();
+        packet.write(header);
+        int length = body.length;
+        do {
+            int digit = length & 0x7F;
+            length >>>= 7;
+            packet.write(length > 0 ? digit | 0x80 : digit);
+        } while (length > 0);
+        packet.write(body);
+        synchronized (socket) {
+            OutputStream output = socket.getOutputStream();
+            output.write(packet.toByteArray());
+            output.flush();
+        }
+    }
+
+    private int readRemainingLength(DataInputStream input) throws IOException {
+        int length = 0;
+        int shift = 0;
+        int digit;
+        do {
+            digit = input.readUnsignedByte();
+            length |= (digit & 0x7F) << shift;
+            shift += 7;
+        } while ((digit & 0x80) != 0);
+        return length;
+    }
+
+    private byte[] shortBytes(int value) {
+        return new byte[] {(byte) (value >> 8), (byte) value};
+    }
+}
@@ -27,6 +27,7 @@ public class TestMessageClient implements MessageClient {
     @Getter
     private CallBack callBack;
 
+    @Getter
     private MessageClientConfig messageClientConfig;
 
     private TopicFormat topicFormat = new TopicFormat('/', '+', '#');
@@ -0,0 +1,99 @@
+package com.celadonsea.palm.codec;
+
+import com.celadonsea.palm.TestPojo;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+public class MessageCodecsTest {
+
+    private MessageCodecs messageCodecs = new MessageCodecs(new ObjectMapper());
+
+    @Test
+    public void shouldDetectBinaryFormatsByMarker() throws Exception {
+        MessageDecoder messageDecoder = messageCodecs.decoder("", TestPojo.class);
+
+        for (String codecName : new String[]{JacksonMessageCodec.JSON, JacksonMessageCodec.SMILE, JacksonMessageCodec.CBOR}) {
+            byte[] content = messageCodecs.get(codecName).encode(pojo(7, codecName));
+            TestPojo decoded = (TestPojo) messageDecoder.decode(content);
+            Assert.assertEquals(7, decoded.getA());
+            Assert.assertEquals(codecName, decoded.getB());
+        }
+    }
+
+    @Test
+    public void shouldDecodeWithNamedCodec() throws Exception {
+        byte[] content = messageCodecs.get(JacksonMessageCodec.CBOR).encode(pojo(3, "cbor"));
+
+        TestPojo decoded = (TestPojo) messageCodecs.decoder(JacksonMessageCodec.CBOR, TestPojo.class).decode(content);
+
+        Assert.assertEquals(3, decoded.getA());
+        Assert.assertTrue(content.length < messageCodecs.get(JacksonMessageCodec.JSON).encode(pojo(3, "cbor")).length);
+    }
+
+    @Test
+    public void shouldPassRawPayloadThrough() throws Exception {
+        byte[] content = messageCodecs.get(RawMessageCodec.RAW).encode(ByteBuffer.wrap("raw".getBytes()));
+
+        Assert.assertEquals("raw", messageCodecs.decoder(RawMessageCodec.RAW, String.class).decode(content));
+        Assert.assertSame(content, messageCodecs.decoder(RawMessageCodec.RAW, byte[].class).decode(content));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldDecodeArrayElementByElement() throws Exception {
+        TestPojo[] pojos = new TestPojo[1000];
+        for (int index = 0; index < pojos.length; index++) {
+            pojos[index] = pojo(index, "element" + index);
+        }
+        byte[] content = messageCodecs.get(JacksonMessageCodec.SMILE).encode(pojos);
+
+        Iterator<TestPojo> iterator = (Iterator<TestPojo>) messageCodecs.elementDecoder("", TestPojo.class).decode(content);
+
+        int count = 0;
+        while (iterator.hasNext()) {
+            Assert.assertEquals(count, iterator.next().getA());
+            count++;
+        }
+        Assert.assertEquals(pojos.length, count);
+    }
+
+    @Test
+    public void shouldCarryOverObjectMapperModulesToBinaryFormats() throws Exception {
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(TestPojo.class, new JsonSerializer<TestPojo>() {
+            @Override
+            public void serialize(TestPojo value, JsonGenerator generator, SerializerProvider serializers) throws IOException {
+                generator.writeString(value.getA() + "/" + value.getB());
+            }
+        });
+        MessageCodecs customCodecs = new MessageCodecs(new ObjectMapper().registerModule(module));
+
+        for (String codecName : new String[]{JacksonMessageCodec.SMILE, JacksonMessageCodec.CBOR}) {
+            byte[] content = customCodecs.get(codecName).encode(pojo(5, codecName));
+            Assert.assertEquals("5/" + codecName, customCodecs.decoder(codecName, String.class).decode(content));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectStreamingWithRawCodec() {
+        messageCodecs.elementDecoder(RawMessageCodec.RAW, TestPojo.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownCodec() {
+        messageCodecs.decoder("avro", TestPojo.class);
+    }
+
+    private TestPojo pojo(int a, String b) {
+        return new TestPojo(a, b);
+    }
+}
@@ -4,13 +4,25 @@ import com.celadonsea.palm.TestPojo;
 import com.celadonsea.palm.annotation.Listener;
 import com.celadonsea.palm.annotation.MessageBody;
 import com.celadonsea.palm.annotation.MessagingController;
+import com.celadonsea.palm.annotation.SendTo;
 import com.celadonsea.palm.annotation.TopicParameter;
+import com.celadonsea.palm.message.Lazy;
 import com.celadonsea.palm.message.Message;
 import com.celadonsea.palm.message.MessageContext;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @MessagingController(topic = "any/{any2}/any3", client = "testClient")
@@ -19,6 +31,9 @@ public class TestMessagingController {
     @Getter
     private String incomingMessage;
 
+    @Getter
+    private Queue<CompletableFuture<Void>> pendingCompletions = new ConcurrentLinkedQueue<>();
+
     @Listener("topic1/{var1}")
     public void listenerMethod(@TopicParameter("any2") String any2,
                                @TopicParameter("var1") String var1,
@@ -85,6 +100,110 @@ public class TestMessagingController {
         incomingMessage = new String(message);
     }
 
+    @Listener("topic10")
+    public void lazyPojoListenerMethod(@TopicParameter("any2") String any2,
+                                       @MessageBody Lazy<TestPojo> message) {
+
+        if ("skip".equals(any2)) {
+            incomingMessage = "skipped#" + message.isResolved() + "#" + new String(message.getRaw());
+        } else {
+            incomingMessage = message.get().getA() + "#" + message.get().getB() + "#" + message.isResolved();
+        }
+    }
+
+    @Listener("topic11")
+    public void supplierIntListenerMethod(@MessageBody Supplier<Integer> message) {
+
+        incomingMessage = String.valueOf(message.get() + 1);
+    }
+
+    @Listener(value = "topic12", codec = "cbor")
+    public void cborPojoListenerMethod(@MessageBody TestPojo message) {
+
+        incomingMessage = message.getA() + "#" + message.getB();
+    }
+
+    @Listener("topic13")
+    public void streamPojoListenerMethod(@MessageBody Stream<TestPojo> messages) {
+
+        incomingMessage = messages.map(TestPojo::getB).collect(Collectors.joining(","));
+    }
+
+    @Listener("topic14")
+    public void iteratorPojoListenerMethod(@MessageBody Iterator<TestPojo> messages) {
+
+        int sum = 0;
+        while (messages.hasNext()) {
+            sum += messages.next().getA();
+        }
+        incomingMessage = String.valueOf(sum);
+    }
+
+    @Listener(value = "topic15", filter = "/alarm/type == 'ALARM' && {any2} != 'test'")
+    public void filteredListenerMethod(@MessageBody String message) {
+
+        incomingMessage = message;
+    }
+
+    @Listener(value = "topic16", maxInFlight = 1)
+    public CompletableFuture<Void> asyncListenerMethod(@MessageBody String message) {
+
+        incomingMessage = message;
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        pendingCompletions.add(completion);
+        return completion;
+    }
+
+    @Listener("topic17")
+    public void publisherPojoListenerMethod(@MessageBody Publisher<TestPojo> messages) {
+
+        messages.subscribe(new Subscriber<TestPojo>() {
+
+            private Subscription subscription;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(TestPojo message) {
+                incomingMessage = message.getA() + "#" + message.getB();
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                incomingMessage = throwable.getMessage();
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    @Listener("topic18")
+    public TestPojo replyingListenerMethod(@MessageBody TestPojo request) {
+
+        return new TestPojo(request.getA() + 1, request.getB().toUpperCase());
+    }
+
+    @Listener("topic19/{deviceId}")
+    @SendTo("out/{any2}/{deviceId}")
+    public TestPojo enrichingListenerMethod(@MessageBody TestPojo message) {
+
+        return new TestPojo(message.getA() * 10, message.getB() + "-enriched");
+    }
+
+    @Listener("topic20")
+    @SendTo(value = "batched", qos = 1, batchSize = 2, lingerMillis = 100)
+    public CompletableFuture<String> batchingListenerMethod(@MessageBody String message) {
+
+        return CompletableFuture.completedFuture(message.toUpperCase());
+    }
+
     @Listener("longrunning")
     public void longRunningMethod(@MessageBody byte[] message) {
         log.info("Long running method started...");
@@ -0,0 +1,55 @@
+package com.celadonsea.palm.core;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+
+public class HashedWheelTimerTest {
+
+    private HashedWheelTimer timer = new HashedWheelTimer("test-timer", 5, TimeUnit.MILLISECONDS, 8);
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void shouldRunTaskAfterDelay() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        timer.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(45));
+    }
+
+    @Test
+    public void shouldRunTasksBeyondOneWheelRound() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(2);
+        long start = System.nanoTime();
+        timer.schedule(latch::countDown, 10, TimeUnit.MILLISECONDS);
+        timer.schedule(latch::countDown, 120, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(115));
+    }
+
+    @Test
+    public void shouldNotRunCancelledTask() throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = timer.schedule(counter::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+        timer.schedule(counter::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(timeout.cancel());
+        await().atMost(1, TimeUnit.SECONDS).until(() -> timer.getPendingCount() == 0);
+        TimeUnit.MILLISECONDS.sleep(50);
+        Assert.assertEquals(1, counter.get());
+        Assert.assertFalse(timeout.isExpired());
+    }
+}
@@ -1,19 +1,30 @@
 package com.celadonsea.palm.listener;
 
+import com.celadonsea.palm.TestPojo;
 import com.celadonsea.palm.annotation.Listener;
 import com.celadonsea.palm.annotation.MessagingController;
+import com.celadonsea.palm.client.LoopbackMessageClient;
 import com.celadonsea.palm.client.MessageClient;
 import com.celadonsea.palm.client.TestMessageClient;
+import com.celadonsea.palm.codec.JacksonMessageCodec;
 import com.celadonsea.palm.config.MessageClientConfig;
 import com.celadonsea.palm.controller.SharedMessageController;
 import com.celadonsea.palm.controller.TestMessagingController;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.message.RequestEnvelope;
 import com.celadonsea.palm.scanner.ListenerCallbackPostProcessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
@@ -238,6 +249,184 @@ public class CallBackTest {
         await().atMost(1, TimeUnit.SECONDS).until(testControllerHasTheRightValue(content));
     }
 
+    @Test
+    public void shouldReceiveLazyPojoMessage() {
+        callBack.messageArrived(
+            "any/read/any3/topic10",
+            ("{'a':50,'b':'hello lazy messaging'}".replaceAll("'", "\"").getBytes()));
+
+        await().atMost(1, TimeUnit.SECONDS).until(testControllerHasTheRightValue("50#hello lazy messaging#true"));
+    }
+
+    @Test
+    public void shouldNotDecodeSkippedLazyMessage() {
+        callBack.messageArrived(
+            "any/skip/any3/topic10",
+            "not a json".getBytes());
+
+        await().atMost(1, TimeUnit.SECONDS).until(testControllerHasTheRightValue("skipped#false#not a json"));
+    }
+
+    @Test
+    public void shouldReceiveSupplierIntMessage() {
+        callBack.messageArrived(
+            "any/topicvariable1c/any3/topic11",
+            "41".getBytes());
+
+        await().atMost(1, TimeUnit.SECONDS).until(testControllerHasTheRightValue("42"));
+    }
+
+    @Test
+    public void shouldDetectSmileMessage() throws IOException {
+        callBack.messageArrived(
+            "any/topicvariable1d/any3/topic3",
+            JacksonMessageCodec.smile().encode(new TestPojo(52, "hello smile messaging")));
+
+        await().atMost(1, TimeUnit.SECONDS).until(testControllerHasTheRightValue("52#hello smile messaging#topicvariable1d"));
+    }
+
+    @Test
+    public void shouldReceiveMessageWithListenerCodec() throws IOException {
+        callBack.messageArrived(
+            "any/topicvariable1d/any3/topic12",
+            JacksonMessageCodec.cbor().encode(new TestPojo(54, "hello cbor messaging")));
+
+        await().atMost(1, TimeUnit.SECONDS).until(testControllerHasTheRightValue("54#hello cbor messaging"));
+    }
+
+    @Test
+    public void shouldReceiveArrayMessageAsStream() {
+        callBack.messageArrived(
+            "any/topicvariable1d/any3/topic13",
+            ("[{'a':1,'b':'first'},{'a':2,'b':'second'},{'a':3,'b':'third'}]".replaceAll("'", "\"").getBytes()));
+
+        await().atMost(1, TimeUnit.SECONDS).until(testControllerHasTheRightValue("first,second,third"));
+    }
+
+    @Test
+    public void shouldReceiveArrayMessageAsIterator() {
+        callBack.messageArrived(
+            "any/topicvariable1d/any3/topic14",
+            ("[{'a':1,'b':'first'},{'a':2,'b':'second'},{'a':3,'b':'third'}]".replaceAll("'", "\"").getBytes()));
+
+        await().atMost(1, TimeUnit.SECONDS).until(testControllerHasTheRightValue("6"));
+    }
+
+    @Test
+    public void shouldReceiveMessageAcceptedByFilter() {
+        callBack.messageArrived(
+            "any/device/any3/topic15",
+            ("{'id':1,'details':{'alarm':{'type':'INFO'}},'alarm':{'level':3,'type':'ALARM'}}".replaceAll("'", "\"").getBytes()));
+
+        await().atMost(1, TimeUnit.SECONDS).until(testControllerHasTheRightValue(
+            "{'id':1,'details':{'alarm':{'type':'INFO'}},'alarm':{'level':3,'type':'ALARM'}}".replaceAll("'", "\"")));
+    }
+
+    @Test
+    public void shouldDropMessageRejectedByFilter() {
+        callBack.messageArrived(
+            "any/device/any3/topic15",
+            ("{'alarm':{'type':'INFO'}}".replaceAll("'", "\"").getBytes()));
+        callBack.messageArrived(
+            "any/test/any3/topic15",
+            ("{'alarm':{'type':'ALARM'}}".replaceAll("'", "\"").getBytes()));
+
+        await()
+            .pollDelay(200, TimeUnit.MILLISECONDS)
+            .atMost(1, TimeUnit.SECONDS)
+            .until(() -> testMessagingController.getIncomingMessage() == null);
+    }
+
+    @Test
+    public void shouldLimitAsyncListenerCallsInFlight() {
+        callBack.messageArrived("any/topicvariable1/any3/topic16", "first".getBytes());
+        await().atMost(1, TimeUnit.SECONDS).until(testControllerHasTheRightValue("first"));
+
+        callBack.messageArrived("any/topicvariable1/any3/topic16", "second".getBytes());
+        await()
+            .pollDelay(200, TimeUnit.MILLISECONDS)
+            .atMost(1, TimeUnit.SECONDS)
+            .until(testControllerHasTheRightValue("first"));
+
+        testMessagingController.getPendingCompletions().poll().complete(null);
+        await().atMost(1, TimeUnit.SECONDS).until(testControllerHasTheRightValue("second"));
+    }
+
+    @Test
+    public void shouldPublishMessagesToPublisherListener() {
+        callBack.messageArrived(
+            "any/topicvariable1/any3/topic17",
+            ("{'a':7,'b':'published'}".replaceAll("'", "\"").getBytes()));
+
+        await().atMost(1, TimeUnit.SECONDS).until(testControllerHasTheRightValue("7#published"));
+    }
+
+    @Test
+    public void shouldPublishReturnValueToReplyTopic() {
+        callBack.messageArrived(
+            "any/topicvariable1/any3/topic18",
+            RequestEnvelope.wrap("reply/42", "{'a':41,'b':'question'}".replaceAll("'", "\"").getBytes()));
+
+        String replyKey = ((TestMessageClient) messageClient).getMessageKey("reply/42", 1);
+        await().atMost(1, TimeUnit.SECONDS).until(() -> ((TestMessageClient) messageClient).getPublishedMessages().containsKey(replyKey));
+        byte[] reply = ((TestMessageClient) messageClient).getPublishedMessages().get(replyKey).get(0);
+        Assert.assertEquals("{'a':42,'b':'QUESTION'}".replaceAll("'", "\""), new String(reply));
+    }
+
+    @Test
+    public void shouldPassLocallyPublishedObjectsToListener() {
+        LoopbackMessageClient loopbackClient = new LoopbackMessageClient(messageClient, Runnable::run,
+            Collections.singletonList("any/+/any3/#"), LoopbackMessageClient.DEFAULT_ECHO_TIMEOUT_MILLIS);
+        TestMessagingController localController = new TestMessagingController();
+        messageClient = loopbackClient;
+        register(localController);
+        JacksonMessageCodec codec = JacksonMessageCodec.json(new ObjectMapper());
+
+        loopbackClient.publishObject(new TestPojo(3, "local"), codec, new ProducingProperties("any/site2/any3/topic3"));
+        Assert.assertEquals("3#local#site2", localController.getIncomingMessage());
+
+        loopbackClient.publishObject(7, codec, new ProducingProperties("any/site2/any3/topic5"));
+        Assert.assertEquals("7", localController.getIncomingMessage());
+        Assert.assertNull(testMessagingController.getIncomingMessage());
+    }
+
+    @Test
+    public void shouldPublishReturnValueToSendToTopic() {
+        callBack.messageArrived(
+            "any/site1/any3/topic19/device7",
+            "{'a':4,'b':'raw'}".replaceAll("'", "\"").getBytes());
+
+        String outputKey = ((TestMessageClient) messageClient).getMessageKey("out/site1/device7", 0);
+        await().atMost(1, TimeUnit.SECONDS).until(() -> ((TestMessageClient) messageClient).getPublishedMessages().containsKey(outputKey));
+        byte[] output = ((TestMessageClient) messageClient).getPublishedMessages().get(outputKey).get(0);
+        Assert.assertEquals("{'a':40,'b':'raw-enriched'}".replaceAll("'", "\""), new String(output));
+    }
+
+    @Test
+    public void shouldPublishReturnValuesInBatches() throws IOException {
+        callBack.messageArrived("any/topicvariable1/any3/topic20", "first".getBytes());
+        callBack.messageArrived("any/topicvariable1/any3/topic20", "second".getBytes());
+        await().pollDelay(50, TimeUnit.MILLISECONDS).atMost(1, TimeUnit.SECONDS).until(() -> batches().size() == 1);
+        callBack.messageArrived("any/topicvariable1/any3/topic20", "third".getBytes());
+        await().atMost(1, TimeUnit.SECONDS).until(() -> batches().size() == 2);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        String[] fullBatch = objectMapper.readValue(batches().get(0), String[].class);
+        String[] lingeredBatch = objectMapper.readValue(batches().get(1), String[].class);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("FIRST", "SECOND")), new HashSet<>(Arrays.asList(fullBatch)));
+        Assert.assertArrayEquals(new String[]{"THIRD"}, lingeredBatch);
+    }
+
+    @Test
+    public void shouldPublishOpenBatchesOnDestroy() throws IOException {
+        callBack.messageArrived("any/topicvariable1/any3/topic20", "first".getBytes());
+
+        listenerCallbackPostProcessor.destroy();
+
+        await().atMost(1, TimeUnit.SECONDS).until(() -> batches().size() == 1);
+        Assert.assertArrayEquals(new String[]{"FIRST"}, new ObjectMapper().readValue(batches().get(0), String[].class));
+    }
+
     @Test
     public void shouldStartSeparateThreadsForEachMessage() {
         byte sleepTime = 2;
@@ -271,4 +460,9 @@ public class CallBackTest {
     private Callable<Boolean> testControllerHasTheRightValue(String expectedMessage) {
         return () -> expectedMessage.equals(testMessagingController.getIncomingMessage());
     }
+
+    private List<byte[]> batches() {
+        TestMessageClient testMessageClient = (TestMessageClient) messageClient;
+        return testMessageClient.getPublishedMessages().getOrDefault(testMessageClient.getMessageKey("batched", 1), Collections.emptyList());
+    }
 }
@@ -0,0 +1,29 @@
+package com.celadonsea.palm.message;
+
+import com.celadonsea.palm.topic.TopicFormat;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class MessageContextTest {
+
+    @Test
+    public void shouldParseParametersAtFirstAccess() {
+        MessageContext messageContext = new MessageContext("my/sensor/temperature", "my/{device}/{type}", new TopicFormat('/', '+', '#'));
+
+        Map<String, String> parameterMap = messageContext.getParameterMap();
+
+        Assert.assertEquals("sensor", parameterMap.get("device"));
+        Assert.assertEquals("temperature", parameterMap.get("type"));
+        Assert.assertSame(parameterMap, messageContext.getParameterMap());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailAtAccessForNotMatchingTopic() {
+        MessageContext messageContext = new MessageContext("my/sensor", "my/{device}/{type}", new TopicFormat('/', '+', '#'));
+
+        Assert.assertEquals("my/sensor", messageContext.getTopic());
+        messageContext.getParameterMap();
+    }
+}
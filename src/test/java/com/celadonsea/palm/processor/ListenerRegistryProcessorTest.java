@@ -0,0 +1,157 @@
+package com.celadonsea.palm.processor;
+
+import com.celadonsea.palm.annotation.MessagingController;
+import com.celadonsea.palm.client.TestMessageClient;
+import com.celadonsea.palm.core.ConsumingProperties;
+import com.celadonsea.palm.scanner.GeneratedListeners;
+import com.celadonsea.palm.scanner.ListenerCallbackPostProcessor;
+import com.celadonsea.palm.scanner.ListenerDefinition;
+import com.celadonsea.palm.scanner.ListenerRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.lang.reflect.ParameterizedType;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+public class ListenerRegistryProcessorTest {
+
+    private static final String SENSOR_CONTROLLER =
+        "package com.example;\n" +
+        "import com.celadonsea.palm.annotation.*;\n" +
+        "import com.celadonsea.palm.message.MessageContext;\n" +
+        "import java.util.*;\n" +
+        "@MessagingController(client = \"client\", topic = \"sensor/{device}\")\n" +
+        "public class SensorController {\n" +
+        "    public final List<String> received = Collections.synchronizedList(new ArrayList<>());\n" +
+        "    @Listener(value = \"temperature\", filter = \"/0 == 21\")\n" +
+        "    void temperature(@TopicParameter(\"device\") String device, @MessageBody List<Integer> values, MessageContext context, String unused) {\n" +
+        "        received.add(device + values + context.getTopic() + unused);\n" +
+        "    }\n" +
+        "    @Listener(value = \"status\", codec = \"raw\")\n" +
+        "    @SendTo(value = \"echo/{device}\", qos = 1)\n" +
+        "    public String status(@MessageBody byte[] status) {\n" +
+        "        return new String(status);\n" +
+        "    }\n" +
+        "}\n";
+
+    private static final String HIDDEN_CONTROLLER =
+        "package com.example;\n" +
+        "import com.celadonsea.palm.annotation.*;\n" +
+        "@MessagingController(client = \"client\")\n" +
+        "public class HiddenController {\n" +
+        "    @Listener(\"hidden\")\n" +
+        "    private void hidden() {\n" +
+        "    }\n" +
+        "}\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ClassLoader classLoader;
+
+    @Before
+    public void setup() throws Exception {
+        File sources = temporaryFolder.newFolder("sources");
+        File classes = temporaryFolder.newFolder("classes");
+        File sensorSource = new File(sources, "SensorController.java");
+        File hiddenSource = new File(sources, "HiddenController.java");
+        Files.write(sensorSource.toPath(), SENSOR_CONTROLLER.getBytes(StandardCharsets.UTF_8));
+        Files.write(hiddenSource.toPath(), HIDDEN_CONTROLLER.getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            Iterable<? extends JavaFileObject> compilationUnits = fileManager.getJavaFileObjects(sensorSource, hiddenSource);
+            List<String> options = Arrays.asList(
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", classes.getAbsolutePath(),
+                "-s", sources.getAbsolutePath());
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, options, null, compilationUnits);
+            task.setProcessors(Collections.singletonList(new ListenerRegistryProcessor()));
+            Assert.assertTrue(task.call());
+        }
+        classLoader = new URLClassLoader(new URL[]{classes.toURI().toURL()}, getClass().getClassLoader());
+    }
+
+    @Test
+    public void shouldGenerateListenerRegistry() throws Exception {
+        Class<?> sensorController = classLoader.loadClass("com.example.SensorController");
+        ListenerRegistry listenerRegistry = new ListenerRegistry(classLoader);
+
+        GeneratedListeners generatedListeners = listenerRegistry.find(sensorController);
+        Assert.assertNotNull(generatedListeners);
+        Assert.assertNull(listenerRegistry.find(classLoader.loadClass("com.example.HiddenController")));
+
+        ListenerDefinition temperature = findListener(generatedListeners, "temperature");
+        Assert.assertEquals("temperature", temperature.getTopic());
+        Assert.assertEquals("", temperature.getCodec());
+        Assert.assertEquals("/0 == 21", temperature.getFilter());
+        Assert.assertEquals("device", temperature.getParameterDescriptors()[0].getName());
+        Assert.assertEquals(String.class, temperature.getParameterDescriptors()[0].getClazz());
+        Assert.assertTrue(temperature.getParameterDescriptors()[1].isBody());
+        Assert.assertTrue(temperature.getParameterDescriptors()[1].getType() instanceof ParameterizedType);
+        Assert.assertTrue(temperature.getParameterDescriptors()[2].isContext());
+        Assert.assertTrue(temperature.getParameterDescriptors()[3].isEmpty());
+        Assert.assertEquals(sensorController.getDeclaredMethod("temperature", String.class, List.class,
+            com.celadonsea.palm.message.MessageContext.class, String.class), temperature.getMethod());
+
+        ListenerDefinition status = findListener(generatedListeners, "status");
+        Assert.assertEquals("raw", status.getCodec());
+        Assert.assertNull(temperature.getOutput());
+        Assert.assertEquals("echo/{device}", status.getOutput().getTopic());
+        Assert.assertEquals(1, status.getOutput().getQos());
+        Assert.assertEquals(String.class, status.getOutput().getReturnType());
+        Assert.assertEquals(byte[].class, status.getParameterDescriptors()[0].getClazz());
+        Object result = status.createInvoker(sensorController.newInstance()).invoke(new Object[]{"online".getBytes()});
+        Assert.assertEquals("online", result);
+    }
+
+    @Test
+    public void shouldSubscribeGeneratedListener() throws Exception {
+        Class<?> sensorController = classLoader.loadClass("com.example.SensorController");
+        Object controller = sensorController.newInstance();
+        Map<String, BiConsumer<String, byte[]>> subscriptions = new HashMap<>();
+        TestMessageClient messageClient = new TestMessageClient(null) {
+            @Override
+            public void subscribe(ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer) {
+                subscriptions.put(consumingProperties.getTopic(), messageConsumer);
+            }
+        };
+
+        GeneratedListeners generatedListeners = new ListenerRegistry(classLoader).find(sensorController);
+        ListenerCallbackPostProcessor listenerCallbackPostProcessor = new ListenerCallbackPostProcessor();
+        for (ListenerDefinition listenerDefinition : generatedListeners.getListeners()) {
+            listenerCallbackPostProcessor.processListenerDefinition(controller, messageClient, listenerDefinition,
+                sensorController.getAnnotation(MessagingController.class));
+        }
+        Assert.assertEquals(2, subscriptions.size());
+        subscriptions.get("sensor/+/temperature").accept("sensor/dev1/temperature", "[21,22]".getBytes());
+        subscriptions.get("sensor/+/temperature").accept("sensor/dev2/temperature", "[20,22]".getBytes());
+
+        Assert.assertEquals(Collections.singletonList("dev1[21, 22]sensor/dev1/temperaturenull"),
+            sensorController.getField("received").get(controller));
+    }
+
+    private ListenerDefinition findListener(GeneratedListeners generatedListeners, String methodName) {
+        return generatedListeners.getListeners().stream()
+            .filter(listenerDefinition -> listenerDefinition.getMethodName().equals(methodName))
+            .findFirst()
+            .orElseThrow(IllegalStateException::new);
+    }
+}
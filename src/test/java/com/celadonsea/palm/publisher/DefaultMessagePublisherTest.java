@@ -1,10 +1,15 @@
 package com.celadonsea.palm.publisher;
 
+import com.celadonsea.palm.TestPojo;
 import com.celadonsea.palm.client.MessageClient;
 import com.celadonsea.palm.client.TestMessageClient;
+import com.celadonsea.palm.codec.JacksonMessageCodec;
+import com.celadonsea.palm.core.ProducingProperties;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+
 public class DefaultMessagePublisherTest {
 
     @Test
@@ -39,4 +44,60 @@ public class DefaultMessagePublisherTest {
         Assert.assertEquals(2, ((TestMessageClient) messageClient).getPublishedMessages().get(messageKey).size());
         Assert.assertEquals(1, ((TestMessageClient) messageClient).getPublishedMessages().get(messageKey2).size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldPublishByteBufferMessageWithCopy() {
+        MessageClient messageClient = new TestMessageClient(null);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(32);
+        buffer.put("xxHello buffer".getBytes());
+        buffer.flip();
+        buffer.position(2);
+
+        messageClient
+            .publisher()
+            .message(buffer)
+            .topic("hello/buffer")
+            .publish();
+
+        String messageKey = ((TestMessageClient) messageClient).getMessageKey("hello/buffer", 0);
+        Assert.assertEquals("Hello buffer", new String(((TestMessageClient) messageClient).getPublishedMessages().get(messageKey).get(0)));
+        Assert.assertEquals(2, buffer.position());
+    }
+
+    @Test
+    public void shouldPassByteBufferToClientWithoutCopy() {
+        ByteBuffer[] publishedBuffer = new ByteBuffer[1];
+        MessageClient messageClient = new TestMessageClient(null) {
+            @Override
+            public void publish(ByteBuffer message, ProducingProperties producingProperties) {
+                publishedBuffer[0] = message;
+            }
+        };
+        ByteBuffer buffer = ByteBuffer.wrap("Hello buffer".getBytes());
+
+        messageClient
+            .publisher()
+            .message(buffer)
+            .topic("hello/buffer")
+            .publish();
+
+        Assert.assertSame(buffer, publishedBuffer[0]);
+    }
+
+    @Test
+    public void shouldPublishEncodedMessage() throws Exception {
+        MessageClient messageClient = new TestMessageClient(null);
+        JacksonMessageCodec messageCodec = JacksonMessageCodec.smile();
+
+        messageClient
+            .publisher()
+            .message(new TestPojo(42, "smile"), messageCodec)
+            .topic("hello/smile")
+            .publish();
+
+        String messageKey = ((TestMessageClient) messageClient).getMessageKey("hello/smile", 0);
+        byte[] content = ((TestMessageClient) messageClient).getPublishedMessages().get(messageKey).get(0);
+        Assert.assertTrue(messageCodec.matches(content));
+        Assert.assertEquals("smile", ((TestPojo) messageCodec.decoder(TestPojo.class).decode(content)).getB());
+    }
+}
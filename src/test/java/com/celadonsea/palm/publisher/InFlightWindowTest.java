@@ -0,0 +1,52 @@
+package com.celadonsea.palm.publisher;
+
+import com.celadonsea.palm.core.ConnectionException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+public class InFlightWindowTest {
+
+    @Test
+    public void shouldRejectIfWindowIsFull() {
+        InFlightWindow inFlightWindow = new InFlightWindow(2, InFlightWindow.WindowFullPolicy.REJECT, 0, TimeUnit.MILLISECONDS);
+        inFlightWindow.acquire();
+        inFlightWindow.acquire();
+        Assert.assertEquals(1.0, inFlightWindow.getOccupancy(), 0.0);
+
+        try {
+            inFlightWindow.acquire();
+            Assert.fail("Full window should reject the message");
+        } catch (ConnectionException e) {
+            Assert.assertEquals(1, inFlightWindow.getRejectedCount());
+        }
+
+        inFlightWindow.release();
+        inFlightWindow.acquire();
+        Assert.assertEquals(2, inFlightWindow.getHighWaterMark());
+    }
+
+    @Test(expected = ConnectionException.class)
+    public void shouldTimeOutIfNoPermitIsReleased() {
+        InFlightWindow inFlightWindow = new InFlightWindow(1, InFlightWindow.WindowFullPolicy.TIMEOUT, 50, TimeUnit.MILLISECONDS);
+        inFlightWindow.acquire();
+        inFlightWindow.acquire();
+    }
+
+    @Test
+    public void shouldBlockUntilPermitIsReleased() {
+        InFlightWindow inFlightWindow = new InFlightWindow(1);
+        inFlightWindow.acquire();
+
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(inFlightWindow::acquire);
+        Assert.assertFalse(blocked.isDone());
+
+        inFlightWindow.release();
+        await().atMost(1, TimeUnit.SECONDS).until(blocked::isDone);
+        Assert.assertEquals(1, inFlightWindow.getInFlight());
+    }
+}
@@ -0,0 +1,124 @@
+package com.celadonsea.palm.publisher;
+
+import com.celadonsea.palm.client.TestMessageClient;
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.ProducingProperties;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class MessageSpoolTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldDrainMessagesInOrder() throws IOException {
+        MessageSpool messageSpool = new MessageSpool(temporaryFolder.newFolder(), 1024 * 1024, 64 * 1024);
+        messageSpool.append("first".getBytes(), new ProducingProperties("spool/topic", 1));
+        messageSpool.append("second".getBytes(), new ProducingProperties("spool/topic", 1));
+        messageSpool.append("third".getBytes(), new ProducingProperties("spool/topic", 1));
+        Assert.assertEquals(3, messageSpool.size());
+
+        TestMessageClient messageClient = new TestMessageClient(null);
+        Assert.assertTrue(messageSpool.drainTo(messageClient));
+
+        List<byte[]> messages = messageClient.getPublishedMessages().get(messageClient.getMessageKey("spool/topic", 1));
+        Assert.assertEquals(3, messages.size());
+        Assert.assertEquals("first", new String(messages.get(0)));
+        Assert.assertEquals("second", new String(messages.get(1)));
+        Assert.assertEquals("third", new String(messages.get(2)));
+        Assert.assertTrue(messageSpool.isEmpty());
+    }
+
+    @Test
+    public void shouldKeepPendingMessagesAfterReopen() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        MessageSpool messageSpool = new MessageSpool(directory, 1024 * 1024, 64 * 1024);
+        messageSpool.append("published".getBytes(), new ProducingProperties("spool/topic", "spool.exchange", 2));
+        messageSpool.append("pending".getBytes(), new ProducingProperties("spool/topic", "spool.exchange", 2));
+        Assert.assertTrue(messageSpool.remove(messageSpool.peek()));
+        messageSpool.close();
+
+        MessageSpool reopenedSpool = new MessageSpool(directory, 1024 * 1024, 64 * 1024);
+        Assert.assertEquals(1, reopenedSpool.size());
+        MessageSpool.SpooledMessage message = reopenedSpool.peek();
+        Assert.assertEquals("pending", new String(message.getPayload()));
+        Assert.assertEquals("spool/topic", message.getTopic());
+        Assert.assertEquals("spool.exchange", message.getExchange());
+        Assert.assertEquals(2, message.getQos());
+    }
+
+    @Test
+    public void shouldKeepRetainFlagAfterReopen() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        MessageSpool messageSpool = new MessageSpool(directory, 1024 * 1024, 64 * 1024);
+        messageSpool.append("retained".getBytes(), new ProducingProperties("spool/status", 1, true));
+        messageSpool.append("plain".getBytes(), new ProducingProperties("spool/status", 1));
+        messageSpool.close();
+
+        MessageSpool reopenedSpool = new MessageSpool(directory, 1024 * 1024, 64 * 1024);
+        MessageSpool.SpooledMessage retained = reopenedSpool.peek();
+        Assert.assertEquals("retained", new String(retained.getPayload()));
+        Assert.assertTrue(retained.isRetained());
+        Assert.assertTrue(retained.getProducingProperties().isRetained());
+        Assert.assertEquals(1, retained.getProducingProperties().getQos());
+        Assert.assertTrue(reopenedSpool.remove(retained));
+        Assert.assertFalse(reopenedSpool.peek().getProducingProperties().isRetained());
+    }
+
+    @Test
+    public void shouldReopenForcedSpool() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        MessageSpool messageSpool = new MessageSpool(directory, 1024 * 1024, 64 * 1024, 1);
+        messageSpool.append("forced".getBytes(), new ProducingProperties("spool/topic", 1));
+        messageSpool.close();
+
+        MessageSpool reopenedSpool = new MessageSpool(directory, 1024 * 1024, 64 * 1024);
+        Assert.assertEquals(1, reopenedSpool.size());
+        Assert.assertEquals("forced", new String(reopenedSpool.peek().getPayload()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNegativeForceInterval() throws IOException {
+        new MessageSpool(temporaryFolder.newFolder(), 1024 * 1024, 64 * 1024, -1);
+    }
+
+    @Test
+    public void shouldEvictOldestSegmentIfQuotaExceeded() throws IOException {
+        MessageSpool messageSpool = new MessageSpool(temporaryFolder.newFolder(), 512, 256);
+        for (int i = 0; i < 10; i++) {
+            messageSpool.append(new byte[80], new ProducingProperties("spool/" + i));
+        }
+
+        Assert.assertTrue(messageSpool.getEvictedCount() > 0);
+        Assert.assertEquals(10, messageSpool.size() + messageSpool.getEvictedCount());
+        Assert.assertNotEquals("spool/0", messageSpool.peek().getTopic());
+    }
+
+    @Test
+    public void shouldStopDrainingOnConnectionError() throws IOException {
+        MessageSpool messageSpool = new MessageSpool(temporaryFolder.newFolder(), 1024 * 1024, 64 * 1024);
+        messageSpool.append("first".getBytes(), new ProducingProperties("spool/topic"));
+        messageSpool.append("second".getBytes(), new ProducingProperties("spool/broken"));
+
+        TestMessageClient messageClient = new TestMessageClient(null) {
+            @Override
+            public void publish(byte[] message, ProducingProperties producingProperties) {
+                if ("spool/broken".equals(producingProperties.getTopic())) {
+                    throw new ConnectionException("Broker is unreachable");
+                }
+                super.publish(message, producingProperties);
+            }
+        };
+
+        Assert.assertFalse(messageSpool.drainTo(messageClient));
+        Assert.assertEquals(1, messageSpool.size());
+        Assert.assertEquals("second", new String(messageSpool.peek().getPayload()));
+    }
+}
@@ -0,0 +1,76 @@
+package com.celadonsea.palm.publisher;
+
+import com.celadonsea.palm.client.TestMessageClient;
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.HashedWheelTimer;
+import com.celadonsea.palm.core.ProducingProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PublishRetrierTest {
+
+    private HashedWheelTimer timer = new HashedWheelTimer("retry-timer", 5, TimeUnit.MILLISECONDS, 64);
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void shouldPublishAfterTransientFailures() throws Exception {
+        TestMessageClient messageClient = failingClient(2);
+        PublishRetrier publishRetrier = new PublishRetrier(
+            new PublishRetryPolicy(5, 10, 100, 2.0, 0.1, 5000, TimeUnit.MILLISECONDS),
+            timer);
+
+        CompletableFuture<Void> result = publishRetrier.publish(messageClient, "retried".getBytes(), new ProducingProperties("retry/topic", 1));
+        result.get(2, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1, messageClient.getPublishedMessages().get(messageClient.getMessageKey("retry/topic", 1)).size());
+        Assert.assertEquals(0, publishRetrier.getPendingRetries());
+    }
+
+    @Test
+    public void shouldFailAfterMaxAttempts() throws Exception {
+        TestMessageClient messageClient = failingClient(Integer.MAX_VALUE);
+        PublishRetrier publishRetrier = new PublishRetrier(
+            new PublishRetryPolicy(3, 5, 10, 2.0, 0, 5000, TimeUnit.MILLISECONDS),
+            timer);
+
+        CompletableFuture<Void> result = publishRetrier.publish(messageClient, "failed".getBytes(), new ProducingProperties("retry/topic", 1));
+        try {
+            result.get(2, TimeUnit.SECONDS);
+            Assert.fail("Publishing should fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof ConnectionException);
+        }
+        Assert.assertNull(messageClient.getPublishedMessages().get(messageClient.getMessageKey("retry/topic", 1)));
+    }
+
+    @Test
+    public void shouldIncreaseBackoffExponentially() {
+        PublishRetryPolicy retryPolicy = new PublishRetryPolicy(10, 100, 1000, 2.0, 0, 60_000, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(100, retryPolicy.backoffMillis(1));
+        Assert.assertEquals(400, retryPolicy.backoffMillis(3));
+        Assert.assertEquals(1000, retryPolicy.backoffMillis(8));
+    }
+
+    private TestMessageClient failingClient(int failures) {
+        AtomicInteger attempts = new AtomicInteger();
+        return new TestMessageClient(null) {
+            @Override
+            public void publish(byte[] message, ProducingProperties producingProperties) {
+                if (attempts.incrementAndGet() <= failures) {
+                    throw new ConnectionException("Broker is unreachable");
+                }
+                super.publish(message, producingProperties);
+            }
+        };
+    }
+}
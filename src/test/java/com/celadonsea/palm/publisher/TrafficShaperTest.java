@@ -0,0 +1,142 @@
+package com.celadonsea.palm.publisher;
+
+import com.celadonsea.palm.client.TestMessageClient;
+import com.celadonsea.palm.core.ConnectionException;
+import com.celadonsea.palm.core.ProducingProperties;
+import com.celadonsea.palm.topic.TopicFormat;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+public class TrafficShaperTest {
+
+    private TopicFormat topicFormat = new TopicFormat('/', '+', '#');
+
+    private TrafficShaper trafficShaper;
+
+    @After
+    public void tearDown() {
+        trafficShaper.stop();
+    }
+
+    @Test
+    public void shouldQueueMessagesOverTheRate() throws Exception {
+        TestMessageClient messageClient = synchronizedClient();
+        trafficShaper = new TrafficShaper(
+            Collections.singletonList(new ShapingRule("backfill", "my/backfill/", 10, 0, 1)), topicFormat);
+
+        for (int index = 0; index < 15; index++) {
+            trafficShaper.publish(messageClient, "history".getBytes(), new ProducingProperties("my/backfill/data", 0));
+        }
+        TrafficShaper.TrafficClass trafficClass = trafficShaper.classify("my/backfill/data");
+        Assert.assertEquals(5, trafficClass.getQueuedCount());
+        Assert.assertEquals(10, published(messageClient, "my/backfill/data"));
+
+        waitFor(() -> published(messageClient, "my/backfill/data") == 15);
+        Assert.assertEquals(0, trafficClass.getQueueDepth());
+        Assert.assertEquals(15, trafficClass.getPublishedCount());
+        Assert.assertTrue(trafficClass.getMaxDelayMillis() >= 300);
+    }
+
+    @Test
+    public void shouldNotShapeUnmatchedTopics() {
+        TestMessageClient messageClient = synchronizedClient();
+        trafficShaper = new TrafficShaper(
+            Collections.singletonList(new ShapingRule("backfill", "my/{device}/history/#", 1, 0, 1)), topicFormat);
+
+        for (int index = 0; index < 5; index++) {
+            trafficShaper.publish(messageClient, "live".getBytes(), new ProducingProperties("my/sensor/live", 0));
+        }
+
+        Assert.assertEquals(5, published(messageClient, "my/sensor/live"));
+        Assert.assertNull(trafficShaper.classify("my/sensor/live"));
+        Assert.assertNotNull(trafficShaper.classify("my/sensor/history/2018"));
+    }
+
+    @Test
+    public void shouldRejectIfQueueIsFull() {
+        TestMessageClient messageClient = synchronizedClient();
+        trafficShaper = new TrafficShaper(
+            Collections.singletonList(new ShapingRule("backfill", "my/backfill/", 0, 10, 1, 1)), topicFormat);
+
+        trafficShaper.publish(messageClient, new byte[10], new ProducingProperties("my/backfill/data", 0));
+        trafficShaper.publish(messageClient, new byte[10], new ProducingProperties("my/backfill/data", 0));
+        try {
+            trafficShaper.publish(messageClient, new byte[10], new ProducingProperties("my/backfill/data", 0));
+            Assert.fail("Publishing should be rejected");
+        } catch (ConnectionException e) {
+            Assert.assertEquals(1, trafficShaper.classify("my/backfill/data").getRejectedCount());
+        }
+    }
+
+    @Test
+    public void shouldServeClassesByWeight() throws Exception {
+        TestMessageClient messageClient = synchronizedClient();
+        List<ShapingRule> rules = Arrays.asList(
+            new ShapingRule("heavy", "my/heavy/", 0, 0, 3),
+            new ShapingRule("light", "my/light/", 0, 0, 1));
+        trafficShaper = new TrafficShaper(rules, topicFormat, 0, 40_000);
+
+        for (int index = 0; index < 60; index++) {
+            trafficShaper.publish(messageClient, new byte[1024], new ProducingProperties("my/heavy/data", 0));
+            trafficShaper.publish(messageClient, new byte[1024], new ProducingProperties("my/light/data", 0));
+        }
+        TrafficShaper.TrafficClass heavy = trafficShaper.classify("my/heavy/data");
+        TrafficShaper.TrafficClass light = trafficShaper.classify("my/light/data");
+        Assert.assertTrue(heavy.getQueuedCount() >= 30 && light.getQueuedCount() >= 30);
+
+        waitFor(() -> published(messageClient, "my/heavy/data") == 60);
+        long heavyServed = heavy.getQueuedCount();
+        long lightServed = published(messageClient, "my/light/data") - (60 - light.getQueuedCount());
+        Assert.assertTrue("Served " + heavyServed + " heavy and " + lightServed + " light messages",
+            lightServed * 2 <= heavyServed && heavyServed <= lightServed * 4);
+
+        waitFor(() -> published(messageClient, "my/light/data") == 60);
+        Assert.assertEquals(0, light.getQueueDepth());
+    }
+
+    @Test
+    public void shouldLimitShapedTrafficByLinkBudget() throws Exception {
+        TestMessageClient messageClient = synchronizedClient();
+        trafficShaper = new TrafficShaper(
+            Collections.singletonList(new ShapingRule("backfill", "my/backfill/", 0, 0, 1)), topicFormat, 10, 0);
+
+        for (int index = 0; index < 15; index++) {
+            trafficShaper.publish(messageClient, "history".getBytes(), new ProducingProperties("my/backfill/data", 0));
+            trafficShaper.publish(messageClient, "live".getBytes(), new ProducingProperties("my/live/data", 0));
+        }
+
+        Assert.assertEquals(10, published(messageClient, "my/backfill/data"));
+        Assert.assertEquals(15, published(messageClient, "my/live/data"));
+        waitFor(() -> published(messageClient, "my/backfill/data") == 15);
+    }
+
+    private int published(TestMessageClient messageClient, String topic) {
+        synchronized (messageClient) {
+            List<byte[]> messages = messageClient.getPublishedMessages().get(messageClient.getMessageKey(topic, 0));
+            return messages == null ? 0 : messages.size();
+        }
+    }
+
+    private void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(condition.getAsBoolean());
+    }
+
+    private TestMessageClient synchronizedClient() {
+        return new TestMessageClient(null) {
+            @Override
+            public synchronized void publish(byte[] message, ProducingProperties producingProperties) {
+                super.publish(message, producingProperties);
+            }
+        };
+    }
+}
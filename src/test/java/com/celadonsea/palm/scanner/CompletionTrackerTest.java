@@ -0,0 +1,55 @@
+package com.celadonsea.palm.scanner;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class CompletionTrackerTest {
+
+    private List<String> completions = new CopyOnWriteArrayList<>();
+
+    private CompletionTracker completionTracker = new CompletionTracker("my/topic", 1,
+        (topic, content, result, failure) -> completions.add(topic + "#" + result + "#" + (failure == null ? null : failure.getMessage())));
+
+    @Test
+    public void shouldCompleteWhenStageCompletes() {
+        CompletableFuture<String> stage = new CompletableFuture<>();
+        Assert.assertTrue(completionTracker.acquire());
+
+        completionTracker.returned("my/topic", new byte[0], stage);
+        Assert.assertTrue(completions.isEmpty());
+
+        stage.complete("done");
+        Assert.assertEquals("my/topic#done#null", completions.get(0));
+        Assert.assertTrue(completionTracker.acquire());
+    }
+
+    @Test
+    public void shouldUnwrapFailureOfStage() {
+        Assert.assertTrue(completionTracker.acquire());
+
+        completionTracker.returned("my/topic", new byte[0],
+            CompletableFuture.supplyAsync(() -> { throw new IllegalStateException("failed"); }).thenApply(value -> value));
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (completions.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        Assert.assertEquals("my/topic#null#failed", completions.get(0));
+    }
+
+    @Test
+    public void shouldCompleteSynchronousResult() {
+        Assert.assertTrue(completionTracker.acquire());
+
+        completionTracker.returned("my/topic", new byte[0], "value");
+        Assert.assertTrue(completionTracker.acquire());
+        completionTracker.failed("my/topic", new byte[0], new IllegalArgumentException("wrong"));
+
+        Assert.assertEquals("my/topic#value#null", completions.get(0));
+        Assert.assertEquals("my/topic#null#wrong", completions.get(1));
+    }
+}
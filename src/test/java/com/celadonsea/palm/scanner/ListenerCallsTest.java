@@ -0,0 +1,94 @@
+package com.celadonsea.palm.scanner;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+
+public class ListenerCallsTest {
+
+    @Test
+    public void shouldCompilePublicListenerWithReturnValue() throws Throwable {
+        GeneratedInvoker invoker = ListenerCalls.compile(PublicListeners.class.getMethod("join",
+            String.class, int.class, long.class, short.class, byte.class, Object.class));
+
+        Assert.assertNotNull(invoker);
+        Assert.assertEquals("body-1-2-3-4-context",
+            invoker.invoke(new PublicListeners(), new Object[]{"body", 1, 2L, (short) 3, (byte) 4, "context"}));
+    }
+
+    @Test
+    public void shouldCompileVoidListenerAndBoxedPrimitiveResult() throws Throwable {
+        PublicListeners listeners = new PublicListeners();
+        GeneratedInvoker voidInvoker = ListenerCalls.compile(PublicListeners.class.getMethod("listen", String.class, int.class));
+        GeneratedInvoker countInvoker = ListenerCalls.compile(PublicListeners.class.getMethod("count"));
+
+        Assert.assertNull(voidInvoker.invoke(listeners, new Object[]{"body", 2}));
+        Assert.assertEquals("body-2", listeners.received);
+        Assert.assertEquals(1, countInvoker.invoke(listeners, new Object[0]));
+    }
+
+    @Test
+    public void shouldNotCompileInaccessibleOrLongListener() throws Exception {
+        Assert.assertNull(ListenerCalls.compile(PublicListeners.class.getDeclaredMethod("hidden")));
+        Assert.assertNull(ListenerCalls.compile(PublicListeners.class.getMethod("tooLong",
+            int.class, int.class, int.class, int.class, int.class, int.class, int.class)));
+        Assert.assertNull(ListenerCalls.compile(PrivateListeners.class.getDeclaredMethod("listen")));
+    }
+
+    @Test
+    public void shouldFallBackToMethodHandleAboveMaxParameterCount() throws Exception {
+        ListenerInvoker listenerInvoker = ListenerInvoker.of(new PublicListeners(), PublicListeners.class.getMethod("tooLong",
+            int.class, int.class, int.class, int.class, int.class, int.class, int.class));
+
+        Assert.assertEquals(28, listenerInvoker.invoke(new Object[]{1, 2, 3, 4, 5, 6, 7}));
+    }
+
+    @Test
+    public void shouldWrapExceptionOfCompiledListener() throws Exception {
+        ListenerInvoker listenerInvoker = ListenerInvoker.of(new PublicListeners(), PublicListeners.class.getMethod("fail"));
+
+        try {
+            listenerInvoker.invoke(new Object[0]);
+            Assert.fail("Listener exception should be thrown");
+        } catch (InvocationTargetException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public static class PublicListeners {
+
+        private String received;
+
+        private int calls;
+
+        public String join(String body, int id, long time, short level, byte flag, Object context) {
+            return body + "-" + id + "-" + time + "-" + level + "-" + flag + "-" + context;
+        }
+
+        public void listen(String body, int id) {
+            received = body + "-" + id;
+        }
+
+        public int count() {
+            return ++calls;
+        }
+
+        public int tooLong(int a, int b, int c, int d, int e, int f, int g) {
+            return a + b + c + d + e + f + g;
+        }
+
+        public void fail() {
+            throw new IllegalStateException("listener failure");
+        }
+
+        private void hidden() {
+        }
+    }
+
+    private static class PrivateListeners {
+
+        public void listen() {
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.celadonsea.palm.scanner;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+
+public class ListenerInvokerTest {
+
+    @Test
+    public void shouldCallListenerWithPrimitiveParameters() throws Exception {
+        Listeners listeners = new Listeners();
+        ListenerInvoker listenerInvoker = ListenerInvoker.of(listeners,
+            Listeners.class.getDeclaredMethod("listen", String.class, int.class, long.class));
+
+        Object result = listenerInvoker.invoke(new Object[]{"body", 2, 3L});
+
+        Assert.assertNull(result);
+        Assert.assertEquals("body-2-3", listeners.received);
+        Assert.assertEquals(3, listenerInvoker.getParameterCount());
+    }
+
+    @Test
+    public void shouldWrapListenerException() throws Exception {
+        ListenerInvoker listenerInvoker = ListenerInvoker.of(new Listeners(),
+            Listeners.class.getDeclaredMethod("fail"));
+
+        try {
+            listenerInvoker.invoke(new Object[0]);
+            Assert.fail("Listener exception should be thrown");
+        } catch (InvocationTargetException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private static class Listeners {
+
+        private String received;
+
+        private void listen(String body, int id, long time) {
+            received = body + "-" + id + "-" + time;
+        }
+
+        private void fail() {
+            throw new IllegalStateException("listener failure");
+        }
+    }
+}
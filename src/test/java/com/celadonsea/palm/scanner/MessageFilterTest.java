@@ -0,0 +1,61 @@
+package com.celadonsea.palm.scanner;
+
+import com.celadonsea.palm.codec.MessageCodecs;
+import com.celadonsea.palm.message.MessageContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class MessageFilterTest {
+
+    private MessageCodecs messageCodecs = new MessageCodecs(new ObjectMapper());
+
+    @Test
+    public void shouldEvaluateJsonPointers() {
+        MessageFilter messageFilter = compile("/type == 'ALARM' && (/level == 3 || /tags/0 == \"urgent\")");
+
+        Assert.assertTrue(messageFilter.test(null, json("{'payload':{'type':'INFO'},'type':'ALARM','level':3.0}")));
+        Assert.assertTrue(messageFilter.test(null, json("{'tags':['urgent'],'type':'ALARM','level':1}")));
+        Assert.assertFalse(messageFilter.test(null, json("{'type':'ALARM','level':'3'}")));
+        Assert.assertFalse(messageFilter.test(null, json("{'level':3}")));
+    }
+
+    @Test
+    public void shouldStopScanWhenResultIsKnown() {
+        MessageFilter messageFilter = compile("/type == 'ALARM' && /level != null");
+
+        Assert.assertFalse(messageFilter.test(null, json("{'type':'INFO', this isn't json")));
+        Assert.assertFalse(messageFilter.test(null, json("{'type':'ALARM', this isn't json")));
+    }
+
+    @Test
+    public void shouldEvaluateTopicVariablesWithoutPayload() {
+        MessageFilter messageFilter = compile("!({device} == 'test' || {id} == 42)");
+        MessageContext messageContext = new MessageContext("my/sensor/7", "my/{device}/{id}", Collections.singletonMap("device", "sensor"));
+
+        Assert.assertTrue(messageFilter.isTopicVariablesRequired());
+        Assert.assertTrue(messageFilter.test(messageContext, null));
+        Assert.assertFalse(messageFilter.test(
+            new MessageContext("my/test/7", "my/{device}/{id}", Collections.singletonMap("device", "test")), null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidExpression() {
+        compile("/type = 'ALARM'");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectPayloadFilterOfRawCodec() {
+        MessageFilter.compile("/type == 'ALARM'", () -> messageCodecs.tokenDecoder("raw"));
+    }
+
+    private MessageFilter compile(String expression) {
+        return MessageFilter.compile(expression, () -> messageCodecs.tokenDecoder(""));
+    }
+
+    private byte[] json(String content) {
+        return content.replaceAll("'", "\"").getBytes();
+    }
+}
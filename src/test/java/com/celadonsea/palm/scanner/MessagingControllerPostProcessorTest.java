@@ -0,0 +1,176 @@
+package com.celadonsea.palm.scanner;
+
+import com.celadonsea.palm.annotation.Listener;
+import com.celadonsea.palm.annotation.MessageBody;
+import com.celadonsea.palm.annotation.MessagingController;
+import com.celadonsea.palm.client.InMemoryBroker;
+import com.celadonsea.palm.client.InMemoryMessageClient;
+import com.celadonsea.palm.client.MessageClientFactory;
+import com.celadonsea.palm.config.MessageClientConfig;
+import com.celadonsea.palm.core.ProducingProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+public class MessagingControllerPostProcessorTest {
+
+    private InMemoryBroker broker;
+
+    private InMemoryMessageClient publisher;
+
+    private InMemoryMessageClient client;
+
+    private MessagingControllerPostProcessor postProcessor;
+
+    private Queue<String> messages = new ConcurrentLinkedQueue<>();
+
+    private Queue<String> threads = new ConcurrentLinkedQueue<>();
+
+    @Before
+    public void setup() {
+        broker = InMemoryBroker.forUrl("memory://parallel");
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("memoryConfig", config());
+        client = (InMemoryMessageClient) MessageClientFactory.getFactory().getClient(config());
+        client.connect();
+        beanFactory.registerSingleton("memoryClient", client);
+        postProcessor = new MessagingControllerPostProcessor(beanFactory, new ListenerCallbackPostProcessor());
+        publisher = new InMemoryMessageClient(config(), broker);
+        publisher.connect();
+    }
+
+    @After
+    public void tearDown() {
+        postProcessor.destroy();
+        publisher.disconnect();
+        client.disconnect();
+        InMemoryBroker.unregister(broker);
+    }
+
+    @Test
+    public void shouldConsumeWithSharedSubscriptionOfEveryConnection() {
+        postProcessor.postProcessAfterInitialization(new ParallelController(), "parallelController");
+
+        for (int index = 0; index < 30; index++) {
+            publisher.publish(String.valueOf(index).getBytes(), new ProducingProperties("jobs/" + index, 1));
+        }
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> messages.size() == 30);
+        Assert.assertEquals(30, messages.stream().distinct().count());
+        Assert.assertEquals(3, threads.stream().map(name -> name.substring(0, name.lastIndexOf("-thread-"))).distinct().count());
+    }
+
+    @Test
+    public void shouldDisconnectParallelConsumptionOnDestroy() throws InterruptedException {
+        postProcessor.postProcessAfterInitialization(new ParallelController(), "parallelController");
+        publisher.publish("before".getBytes(), new ProducingProperties("jobs/1", 1));
+        await().atMost(2, TimeUnit.SECONDS).until(() -> messages.size() == 1);
+
+        postProcessor.destroy();
+        publisher.publish("after".getBytes(), new ProducingProperties("jobs/2", 1));
+        Thread.sleep(200);
+
+        Assert.assertEquals(1, messages.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectDifferentParallelismOfSameClient() {
+        postProcessor.postProcessAfterInitialization(new ParallelController(), "parallelController");
+
+        postProcessor.postProcessAfterInitialization(new OtherParallelController(), "otherParallelController");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectParallelControllerAfterSingleOneOfSameClient() {
+        postProcessor.postProcessAfterInitialization(new SingleController(), "singleController");
+
+        postProcessor.postProcessAfterInitialization(new ParallelController(), "parallelController");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectSingleControllerAfterParallelOneOfSameClient() {
+        postProcessor.postProcessAfterInitialization(new ParallelController(), "parallelController");
+
+        postProcessor.postProcessAfterInitialization(new SingleController(), "singleController");
+    }
+
+    @MessagingController(topic = "jobs", client = "memoryClient", parallelism = 3)
+    public class ParallelController {
+
+        @Listener("{id}")
+        public void job(@MessageBody String message) {
+            messages.add(message);
+            threads.add(Thread.currentThread().getName());
+        }
+    }
+
+    @MessagingController(topic = "other", client = "memoryClient", parallelism = 2)
+    public class OtherParallelController {
+
+        @Listener("{id}")
+        public void job(@MessageBody String message) {
+            messages.add(message);
+        }
+    }
+
+    @MessagingController(topic = "single", client = "memoryClient")
+    public class SingleController {
+
+        @Listener("{id}")
+        public void job(@MessageBody String message) {
+            messages.add(message);
+        }
+    }
+
+    private MessageClientConfig config() {
+        return new MessageClientConfig() {
+            @Override
+            public String getClientDialect() {
+                return "com.celadonsea.palm.client.InMemoryMessageClient";
+            }
+
+            @Override
+            public String getClientId() {
+                return "parallel";
+            }
+
+            @Override
+            public String getBrokerUrl() {
+                return "memory://parallel";
+            }
+
+            @Override
+            public int getConnectionTimeout() {
+                return 0;
+            }
+
+            @Override
+            public int getQos() {
+                return 1;
+            }
+
+            @Override
+            public boolean isConnectionSecured() {
+                return false;
+            }
+
+            @Override
+            public int getMaxThread() {
+                return 2;
+            }
+
+            @Override
+            public int getThreadKeepAliveTime() {
+                return 1;
+            }
+        };
+    }
+}
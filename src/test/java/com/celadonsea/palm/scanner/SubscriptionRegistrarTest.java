@@ -0,0 +1,76 @@
+package com.celadonsea.palm.scanner;
+
+import com.celadonsea.palm.client.TestMessageClient;
+import com.celadonsea.palm.core.ConsumingProperties;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import static org.mockito.Mockito.mock;
+
+public class SubscriptionRegistrarTest {
+
+    private SubscriptionRegistrar subscriptionRegistrar = new SubscriptionRegistrar();
+
+    @Test
+    public void shouldSubscribeGroupedAtContextRefresh() {
+        RecordingMessageClient firstClient = new RecordingMessageClient();
+        RecordingMessageClient secondClient = new RecordingMessageClient();
+
+        subscriptionRegistrar.register(firstClient, new ConsumingProperties("first/a"), (topic, message) -> { });
+        subscriptionRegistrar.register(secondClient, new ConsumingProperties("second/a"), (topic, message) -> { });
+        subscriptionRegistrar.register(firstClient, new ConsumingProperties("first/b"), (topic, message) -> { });
+        Assert.assertTrue(firstClient.subscribedTopics.isEmpty());
+        Assert.assertEquals(3, subscriptionRegistrar.getPendingCount());
+
+        subscriptionRegistrar.onApplicationEvent(new ContextRefreshedEvent(mock(ApplicationContext.class)));
+
+        Assert.assertEquals(1, firstClient.batchCount);
+        Assert.assertEquals(1, secondClient.batchCount);
+        Assert.assertEquals("[first/a, first/b]", firstClient.subscribedTopics.toString());
+        Assert.assertEquals("[second/a]", secondClient.subscribedTopics.toString());
+        Assert.assertEquals(0, subscriptionRegistrar.getPendingCount());
+        Assert.assertEquals(3, subscriptionRegistrar.getSubscriptionCount());
+        Assert.assertEquals(2, subscriptionRegistrar.getClientCount());
+    }
+
+    @Test
+    public void shouldSubscribeImmediatelyAfterRefresh() {
+        RecordingMessageClient messageClient = new RecordingMessageClient();
+        subscriptionRegistrar.flush();
+
+        subscriptionRegistrar.register(messageClient, new ConsumingProperties("late/topic"), (topic, message) -> { });
+
+        Assert.assertEquals("[late/topic]", messageClient.subscribedTopics.toString());
+        Assert.assertEquals(0, messageClient.batchCount);
+        Assert.assertEquals(1, subscriptionRegistrar.getSubscriptionCount());
+    }
+
+    private static class RecordingMessageClient extends TestMessageClient {
+
+        private final List<String> subscribedTopics = new ArrayList<>();
+
+        private int batchCount;
+
+        RecordingMessageClient() {
+            super(null);
+        }
+
+        @Override
+        public synchronized void subscribe(Map<ConsumingProperties, BiConsumer<String, byte[]>> subscriptions) {
+            batchCount++;
+            subscriptions.keySet().forEach(consumingProperties -> subscribedTopics.add(consumingProperties.getTopic()));
+        }
+
+        @Override
+        public synchronized void subscribe(ConsumingProperties consumingProperties, BiConsumer<String, byte[]> messageConsumer) {
+            subscribedTopics.add(consumingProperties.getTopic());
+        }
+    }
+}
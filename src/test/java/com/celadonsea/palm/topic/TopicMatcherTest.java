@@ -0,0 +1,34 @@
+package com.celadonsea.palm.topic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TopicMatcherTest {
+
+    private TopicFormat topicFormat = new TopicFormat('/', '+', '#');
+
+    @Test
+    public void shouldMatchTemplateLevels() {
+        TopicMatcher topicMatcher = TopicMatcher.compile("my/{device}/+/now", topicFormat);
+
+        Assert.assertTrue(topicMatcher.matches("my/sensor/temperature/now"));
+        Assert.assertFalse(topicMatcher.matches("my/sensor/temperature"));
+        Assert.assertFalse(topicMatcher.matches("my/sensor/temperature/now/later"));
+        Assert.assertFalse(topicMatcher.matches("your/sensor/temperature/now"));
+    }
+
+    @Test
+    public void shouldMatchMultiLevelWildcard() {
+        TopicMatcher topicMatcher = TopicMatcher.compile("my/+/#", topicFormat);
+
+        Assert.assertTrue(topicMatcher.matches("my/sensor"));
+        Assert.assertTrue(topicMatcher.matches("my/sensor/temperature/now"));
+        Assert.assertFalse(topicMatcher.matches("my"));
+        Assert.assertTrue(TopicMatcher.compile("#", topicFormat).matches("any/topic"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMultiLevelWildcardInTheMiddle() {
+        TopicMatcher.compile("my/#/now", topicFormat);
+    }
+}
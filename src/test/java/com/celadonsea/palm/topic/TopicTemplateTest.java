@@ -0,0 +1,34 @@
+package com.celadonsea.palm.topic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class TopicTemplateTest {
+
+    @Test
+    public void shouldExpandVariables() {
+        TopicTemplate topicTemplate = TopicTemplate.compile("{site}/sensors/{deviceId}/enriched");
+        Map<String, String> values = new HashMap<>();
+        values.put("site", "north");
+        values.put("deviceId", "42");
+
+        Assert.assertEquals("north/sensors/42/enriched", topicTemplate.expand(values));
+        Assert.assertTrue(topicTemplate.getVariableNames().contains("deviceId"));
+    }
+
+    @Test
+    public void shouldReturnTemplateWithoutVariables() {
+        TopicTemplate topicTemplate = TopicTemplate.compile("sensors/all");
+
+        Assert.assertFalse(topicTemplate.hasVariables());
+        Assert.assertEquals("sensors/all", topicTemplate.expand(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMissingValue() {
+        TopicTemplate.compile("sensors/{deviceId}").expand(new HashMap<>());
+    }
+}